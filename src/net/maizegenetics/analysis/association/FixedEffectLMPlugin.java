@@ -170,6 +170,7 @@ public class FixedEffectLMPlugin extends AbstractPlugin {
         	myLM.minimumClassSize(minClassSize.value());
         	myLM.appendAddDom(appendAddDom.value());
         	myLM.solve();
+        	incrementCounter("sites", ((GenotypePhenotype) myDatum.getData()).genotypeTable().numberOfSites());
         	if (saveAsFile.value()) return null;
         	else return new DataSet(myLM.datumList(), this);
     	} 
@@ -87,6 +87,34 @@ public class AvroConstants {
         taxa, positions, genotype
     };
 
+    public static enum GENOTYPE_BLOCK_INDICES {
+        taxon_start, site_start, num_taxa, num_sites, genotypes
+    };
+
+    /**
+     * Schema for one block of genotypes (up to GENOTYPE_BLOCK_SIZE taxa by
+     * GENOTYPE_BLOCK_SIZE sites). Genotypes are stored site major (i.e. index
+     * is site offset * num_taxa + taxon offset). Each block is its own record
+     * in the data file, so files can be written and read one block at a time.
+     */
+    public static final Schema GENOTYPE_BLOCK_SCHEMA = SchemaBuilder
+            .builder("net.maizegenetics")
+            .record("genotypeBlock")
+            .fields()
+            .name(GENOTYPE_BLOCK_INDICES.taxon_start.name()).type().intType().noDefault()
+            .name(GENOTYPE_BLOCK_INDICES.site_start.name()).type().intType().noDefault()
+            .name(GENOTYPE_BLOCK_INDICES.num_taxa.name()).type().intType().noDefault()
+            .name(GENOTYPE_BLOCK_INDICES.num_sites.name()).type().intType().noDefault()
+            .name(GENOTYPE_BLOCK_INDICES.genotypes.name()).type().bytesType().noDefault()
+            .endRecord();
+
+    public static final String META_FORMAT = "tassel.format";
+    public static final String META_FORMAT_GENOTYPE_BLOCKS = "genotype_blocks";
+    public static final String META_NUM_TAXA = "tassel.num_taxa";
+    public static final String META_NUM_SITES = "tassel.num_sites";
+    public static final String META_TAXA = "tassel.taxa";
+    public static final String META_POSITIONS = "tassel.positions";
+
     public static long getCacheKey(int taxon, int site) {
         return GOBIIAvroGenotypeCallTable.getCacheKey(taxon, site);
     }
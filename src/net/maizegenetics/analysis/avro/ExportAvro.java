@@ -5,21 +5,36 @@
  */
 package net.maizegenetics.analysis.avro;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import net.maizegenetics.dna.snp.GenotypeTable;
 import net.maizegenetics.dna.snp.ImportUtils;
 import net.maizegenetics.util.LoggingUtils;
 import net.maizegenetics.util.Utils;
 import org.apache.avro.Schema;
-import org.apache.avro.SchemaBuilder;
 import org.apache.avro.file.CodecFactory;
 import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
 import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.EncoderFactory;
 import org.apache.log4j.Logger;
 
 /**
+ * Exports genotype table to an Avro data file. Taxa and positions are stored
+ * in the file metadata. Genotypes are stored as one record per block
+ * (AvroConstants.GENOTYPE_BLOCK_SCHEMA) of up to 256 taxa by 256 sites. Blocks
+ * are ordered by site block, then taxa block, and each block is followed by a
+ * sync marker, so the file is splittable and blocks can be read on demand
+ * (see ImportAvro). Site blocks are encoded in parallel.
  *
  * @author Terry Casstevens
  */
@@ -39,46 +54,93 @@ public class ExportAvro {
 
             int numTaxa = genotype.numberOfTaxa();
             int numSites = genotype.numberOfSites();
+            int numSiteBlocks = (numSites + AvroConstants.GENOTYPE_BLOCK_SIZE - 1) / AvroConstants.GENOTYPE_BLOCK_SIZE;
+            int numBlocksPerBatch = Runtime.getRuntime().availableProcessors() * 2;
 
-            SchemaBuilder.FieldAssembler<Schema> genotypeSchemaBuilder = SchemaBuilder
-                    .builder("net.maizegenetics")
-                    .record("genotype")
-                    .fields();
-            for (int s = 0; s < numSites; s += AvroConstants.GENOTYPE_BLOCK_SIZE) {
-                for (int t = 0; t < numTaxa; t += AvroConstants.GENOTYPE_BLOCK_SIZE) {
-                    genotypeSchemaBuilder = genotypeSchemaBuilder
-                            .name(AvroConstants.getKey(t, s))
-                            .type(AvroConstants.BYTE_BLOCK_SCHEMA)
-                            .noDefault();
-                }
-            }
-            Schema genotypeSchema = genotypeSchemaBuilder.endRecord();
-
-            Schema tasselSchema = SchemaBuilder
-                    .builder("net.maizegenetics")
-                    .record("tassel")
-                    .fields()
-                    .name("taxa").type(AvroConstants.TAXA_SCHEMA).noDefault()
-                    .name("positions").type(AvroConstants.POSITIONS_SCHEMA).noDefault()
-                    .name("genotype").type(genotypeSchema).noDefault()
-                    .endRecord();
-
-            DatumWriter<GenericRecord> datumWriter = new GenericDatumWriter<>(tasselSchema);
+            DatumWriter<GenericRecord> datumWriter = new GenericDatumWriter<>(AvroConstants.GENOTYPE_BLOCK_SCHEMA);
             try (DataFileWriter<GenericRecord> dataFileWriter = new DataFileWriter<>(datumWriter)) {
                 dataFileWriter.setCodec(CodecFactory.snappyCodec());
-                dataFileWriter.create(tasselSchema, new File(filename));
-                dataFileWriter.append(new GenericRecordGenotypeTable(tasselSchema, genotype));
+                dataFileWriter.setMeta(AvroConstants.META_FORMAT, AvroConstants.META_FORMAT_GENOTYPE_BLOCKS);
+                dataFileWriter.setMeta(AvroConstants.META_NUM_TAXA, numTaxa);
+                dataFileWriter.setMeta(AvroConstants.META_NUM_SITES, numSites);
+                dataFileWriter.setMeta(AvroConstants.META_TAXA, encode(AvroConstants.TAXA_SCHEMA, new GenericArrayTaxa(genotype.taxa())));
+                dataFileWriter.setMeta(AvroConstants.META_POSITIONS, encode(AvroConstants.POSITIONS_SCHEMA, new GenericArrayPositions(genotype.positions())));
+                dataFileWriter.create(AvroConstants.GENOTYPE_BLOCK_SCHEMA, new File(filename));
+
+                for (int batchStart = 0; batchStart < numSiteBlocks; batchStart += numBlocksPerBatch) {
+                    int batchEnd = Math.min(numSiteBlocks, batchStart + numBlocksPerBatch);
+                    List<List<byte[]>> encoded = IntStream.range(batchStart, batchEnd)
+                            .parallel()
+                            .mapToObj(siteBlock -> encodeSiteBlock(genotype, siteBlock * AvroConstants.GENOTYPE_BLOCK_SIZE))
+                            .collect(Collectors.toList());
+                    for (List<byte[]> siteBlock : encoded) {
+                        for (byte[] block : siteBlock) {
+                            dataFileWriter.appendEncoded(ByteBuffer.wrap(block));
+                            dataFileWriter.sync();
+                        }
+                    }
+                }
             }
 
         } catch (Exception e) {
             myLogger.debug(e.getMessage(), e);
             throw new IllegalStateException("ExportAvro: write: problem writing file: " + filename + ". " + e.getMessage());
         }
-        
+
         return filename;
 
     }
-    
+
+    /**
+     * Encodes all taxa blocks for the site block starting at given site.
+     */
+    private static List<byte[]> encodeSiteBlock(GenotypeTable genotype, int startSite) {
+
+        int numTaxa = genotype.numberOfTaxa();
+        int numSites = Math.min(AvroConstants.GENOTYPE_BLOCK_SIZE, genotype.numberOfSites() - startSite);
+        byte[][] siteGenotypes = new byte[numSites][];
+        for (int s = 0; s < numSites; s++) {
+            siteGenotypes[s] = genotype.genotypeAllTaxa(startSite + s);
+        }
+
+        DatumWriter<GenericRecord> datumWriter = new GenericDatumWriter<>(AvroConstants.GENOTYPE_BLOCK_SCHEMA);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BinaryEncoder encoder = null;
+        List<byte[]> result = new ArrayList<>();
+        for (int startTaxon = 0; startTaxon < numTaxa; startTaxon += AvroConstants.GENOTYPE_BLOCK_SIZE) {
+            int blockTaxa = Math.min(AvroConstants.GENOTYPE_BLOCK_SIZE, numTaxa - startTaxon);
+            byte[] genotypes = new byte[numSites * blockTaxa];
+            for (int s = 0; s < numSites; s++) {
+                System.arraycopy(siteGenotypes[s], startTaxon, genotypes, s * blockTaxa, blockTaxa);
+            }
+            GenericRecord record = new GenericData.Record(AvroConstants.GENOTYPE_BLOCK_SCHEMA);
+            record.put(AvroConstants.GENOTYPE_BLOCK_INDICES.taxon_start.name(), startTaxon);
+            record.put(AvroConstants.GENOTYPE_BLOCK_INDICES.site_start.name(), startSite);
+            record.put(AvroConstants.GENOTYPE_BLOCK_INDICES.num_taxa.name(), blockTaxa);
+            record.put(AvroConstants.GENOTYPE_BLOCK_INDICES.num_sites.name(), numSites);
+            record.put(AvroConstants.GENOTYPE_BLOCK_INDICES.genotypes.name(), ByteBuffer.wrap(genotypes));
+            try {
+                output.reset();
+                encoder = EncoderFactory.get().binaryEncoder(output, encoder);
+                datumWriter.write(record, encoder);
+                encoder.flush();
+            } catch (IOException e) {
+                throw new IllegalStateException("ExportAvro: encodeSiteBlock: problem encoding block: taxon: " + startTaxon + " site: " + startSite + ". " + e.getMessage());
+            }
+            result.add(output.toByteArray());
+        }
+        return result;
+
+    }
+
+    private static byte[] encode(Schema schema, Object datum) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(output, null);
+        new GenericDatumWriter<>(schema).write(datum, encoder);
+        encoder.flush();
+        return output.toByteArray();
+    }
+
     public static void main(String[] args) {
         LoggingUtils.setupDebugLogging();
         GenotypeTable genotype = ImportUtils.read("mdp_genotype.hmp.txt");
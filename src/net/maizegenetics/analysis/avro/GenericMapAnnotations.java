@@ -7,6 +7,7 @@ package net.maizegenetics.analysis.avro;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -86,7 +87,7 @@ public class GenericMapAnnotations implements Map<String, String> {
     @Override
     public Set<Entry<String, String>> entrySet() {
         if (myAnnotations == null) {
-            return null;
+            return Collections.emptySet();
         } else {
             return new HashSet<>(Arrays.asList(myAnnotations.getAllAnnotationEntries()));
         }
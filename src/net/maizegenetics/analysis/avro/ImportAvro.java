@@ -5,6 +5,8 @@
  */
 package net.maizegenetics.analysis.avro;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -20,8 +22,12 @@ import net.maizegenetics.taxa.TaxaList;
 import net.maizegenetics.taxa.TaxaListBuilder;
 import net.maizegenetics.taxa.Taxon;
 import net.maizegenetics.util.GeneralAnnotationStorage;
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileReader;
 import org.apache.avro.generic.GenericArray;
+import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.DecoderFactory;
 import org.apache.avro.util.Utf8;
 
 /**
@@ -34,6 +40,55 @@ public class ImportAvro {
         // utility
     }
 
+    /**
+     * Reads genotype table from Avro data file written by ExportAvro. Taxa
+     * and positions are read from the file metadata. Genotype blocks are read
+     * on demand as they are accessed. Files written by earlier versions, with
+     * the whole table in one record, are read into memory.
+     *
+     * @param filename filename
+     *
+     * @return genotype table
+     */
+    public static GenotypeTable read(String filename) {
+
+        int numTaxa;
+        int numSites;
+        TaxaList taxa;
+        PositionList positions;
+        try (DataFileReader<GenericRecord> reader = new DataFileReader<>(new File(filename), new GenericDatumReader<>())) {
+            String format = reader.getMetaString(AvroConstants.META_FORMAT);
+            if (format == null) {
+                // Earlier versions of ExportAvro wrote the whole table as one record
+                if (!reader.hasNext()) {
+                    throw new IllegalStateException("ImportAvro: read: file has no genotype table: " + filename);
+                }
+                return genotypeTable(reader.next());
+            }
+            if (!AvroConstants.META_FORMAT_GENOTYPE_BLOCKS.equals(format)) {
+                throw new IllegalStateException("ImportAvro: read: unknown format: " + format + " in file: " + filename + ". It may have been written by a newer version of TASSEL.");
+            }
+            numTaxa = (int) reader.getMetaLong(AvroConstants.META_NUM_TAXA);
+            numSites = (int) reader.getMetaLong(AvroConstants.META_NUM_SITES);
+            taxa = taxa(decodeArray(AvroConstants.TAXA_SCHEMA, reader.getMeta(AvroConstants.META_TAXA)));
+            positions = positions(decodeArray(AvroConstants.POSITIONS_SCHEMA, reader.getMeta(AvroConstants.META_POSITIONS)));
+        } catch (IOException e) {
+            throw new IllegalStateException("ImportAvro: read: problem reading file: " + filename + ". " + e.getMessage());
+        }
+
+        if ((taxa.numberOfTaxa() != numTaxa) || (positions.numberOfSites() != numSites)) {
+            throw new IllegalStateException("ImportAvro: read: number of taxa or sites doesn't match metadata: " + filename);
+        }
+
+        GenotypeCallTable genotypes = GOBIIAvroGenotypeCallTable.getInstance(numTaxa, numSites, false, filename);
+        return GenotypeTableBuilder.getInstance(genotypes, positions, taxa, null, null, null, null, null);
+
+    }
+
+    private static GenericArray<GenericRecord> decodeArray(Schema schema, byte[] data) throws IOException {
+        return new GenericDatumReader<GenericArray<GenericRecord>>(schema).read(null, DecoderFactory.get().binaryDecoder(data, null));
+    }
+
     public static GenotypeTable genotypeTable(GenericRecord genotypeTable) {
 
         TaxaList taxa = taxa((GenericArray<GenericRecord>) genotypeTable.get(AvroConstants.GENOTYPE_TABLE_COMPONENTS.taxa.name()));
@@ -105,22 +105,24 @@ public class CombineDataSetsPlugin extends AbstractPlugin {
         DataSet input = (DataSet) event.getSource();
         Plugin creator = input.getCreator();
 
-        if (myOnceDataSets.containsKey(creator)) {
-            Object value = myOnceDataSets.get(creator);
-            if (value != null) {
-                throw new IllegalStateException("CombineDataSetsPlugin: dataSetReturned: this plugin should only return data once: " + creator);
-            } else {
-                myOnceDataSets.put(creator, input);
-            }
-        } else if (myDataSets.containsKey(creator)) {
-            Object value = myDataSets.get(creator);
-            if (value != null) {
-                throw new IllegalStateException("CombineDataSetsPlugin: dataSetReturned: this plugin should only return data once per iteration: " + creator);
+        synchronized (myDataSets) {
+            if (myOnceDataSets.containsKey(creator)) {
+                Object value = myOnceDataSets.get(creator);
+                if (value != null) {
+                    throw new IllegalStateException("CombineDataSetsPlugin: dataSetReturned: this plugin should only return data once: " + creator);
+                } else {
+                    myOnceDataSets.put(creator, input);
+                }
+            } else if (myDataSets.containsKey(creator)) {
+                Object value = myDataSets.get(creator);
+                if (value != null) {
+                    throw new IllegalStateException("CombineDataSetsPlugin: dataSetReturned: this plugin should only return data once per iteration: " + creator);
+                } else {
+                    myDataSets.put(creator, input);
+                }
             } else {
-                myDataSets.put(creator, input);
+                throw new IllegalStateException("CombineDataSetsPlugin: dataSetReturned: can not receive data from unknown plugin: " + creator);
             }
-        } else {
-            throw new IllegalStateException("CombineDataSetsPlugin: dataSetReturned: can not receive data from unknown plugin: " + creator);
         }
 
         performFunction(null);
@@ -194,6 +194,14 @@ public class ExportPlugin extends AbstractPlugin {
 
         if (filename != null) {
             myLogger.info("performFunction: wrote dataset: " + input.getData(0).getName() + " to file: " + filename);
+            File file = new File(filename);
+            if (file.isFile()) {
+                incrementCounter("bytesWritten", file.length());
+            }
+            if (data instanceof GenotypeTable) {
+                incrementCounter("sites", ((GenotypeTable) data).numberOfSites());
+                incrementCounter("taxa", ((GenotypeTable) data).numberOfTaxa());
+            }
         }
 
         return null;
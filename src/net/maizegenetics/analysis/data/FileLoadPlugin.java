@@ -18,6 +18,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Pattern;
 import javax.swing.*;
+import net.maizegenetics.analysis.avro.ImportAvro;
 import net.maizegenetics.analysis.gobii.GOBIIPlugin;
 import net.maizegenetics.dna.map.TOPMUtils;
 import net.maizegenetics.dna.snp.GenotypeTable;
@@ -112,6 +113,7 @@ public class FileLoadPlugin extends AbstractPlugin {
     public static final String FILE_EXT_TOPM_TEXT = ".topm.txt";
     public static final String FILE_EXT_FASTA = ".fasta";
     public static final String FILE_EXT_PHYLIP = ".phy";
+    public static final String FILE_EXT_AVRO = ".avro";
 
     /**
      * Creates a new instance of FileLoadPlugin. This only used by TASSEL GUI to
@@ -318,6 +320,10 @@ public class FileLoadPlugin extends AbstractPlugin {
                     myLogger.info("guessAtUnknowns: type: " + TasselFileType.VCF);
                     alreadyLoaded.add(myOpenFiles[i]);
                     tds = processDatum(myOpenFiles[i], TasselFileType.VCF);
+                } else if (myOpenFiles[i].endsWith(FILE_EXT_AVRO)) {
+                    myLogger.info("guessAtUnknowns: type: " + TasselFileType.Avro);
+                    alreadyLoaded.add(myOpenFiles[i]);
+                    tds = processDatum(myOpenFiles[i], TasselFileType.Avro);
                 } else if (myOpenFiles[i].endsWith(FILE_EXT_PHYLIP) || myOpenFiles[i].endsWith(FILE_EXT_PHYLIP + ".gz")) {
                     myLogger.info("guessAtUnknowns: type: " + TasselFileType.Sequence);
                     alreadyLoaded.add(myOpenFiles[i]);
@@ -581,6 +587,11 @@ public class FileLoadPlugin extends AbstractPlugin {
                     result = FilterJSONUtils.importJSONToFilter(inFile);
                     break;
                 }
+                case Avro: {
+                    suffix = FILE_EXT_AVRO;
+                    result = ImportAvro.read(inFile);
+                    break;
+                }
                 default: {
                     throw new IllegalStateException("Unknown Format: " + theFT + ".\n  Please check file format or select specific format.");
                 }
@@ -591,7 +602,16 @@ public class FileLoadPlugin extends AbstractPlugin {
             throw new IllegalStateException("Problem loading file: " + inFile + ".\n  Error: " + e.getMessage());
         }
 
+        File file = new File(inFile);
+        if (file.isFile()) {
+            incrementCounter("bytesRead", file.length());
+        }
+
         if (result != null) {
+            if (result instanceof GenotypeTable) {
+                incrementCounter("sites", ((GenotypeTable) result).numberOfSites());
+                incrementCounter("taxa", ((GenotypeTable) result).numberOfTaxa());
+            }
             Datum td = new Datum(Utils.getFilename(inFile, suffix), result, null);
             return new DataSet(td, this);
         }
@@ -0,0 +1,366 @@
+/*
+ * GenotypeFileSorter
+ */
+package net.maizegenetics.analysis.data;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import net.maizegenetics.dna.map.Chromosome;
+import net.maizegenetics.util.Utils;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Sorts a Hapmap or VCF file by position without loading it as a
+ * GenotypeTable. Site lines are read as text into runs limited by the buffer
+ * size. Each run is sorted in parallel and written to a temporary file while
+ * the next run is read. The runs are then merged into the output file. Only
+ * two runs are in memory at once, so the buffer size, not the file size,
+ * bounds the memory used.
+ * <p>
+ * Sites are ordered as Position.compareTo() orders them when the file is
+ * imported: by chromosome, physical position, and SNP name. (Neither format
+ * gives strand or cM when imported.) Sites with equal keys keep their order
+ * in the input. Lines are written as they are read.
+ */
+final class GenotypeFileSorter {
+
+    private static final Logger myLogger = Logger.getLogger(GenotypeFileSorter.class);
+
+    // Estimated heap used by a line beyond its characters
+    private static final int LINE_OVERHEAD_BYTES = 96;
+    private static final int MAX_RUNS_PER_MERGE = 64;
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+
+    private final int myChrColumn;
+    private final int myPosColumn;
+    private final int myIDColumn;
+    private final boolean myIsVCF;
+    private final long myRunBytes;
+    private final File myTempDir;
+    private final ConcurrentHashMap<String, Chromosome> myChromosomes = new ConcurrentHashMap<>();
+    private final List<File> myTempFiles = new ArrayList<>();
+
+    private GenotypeFileSorter(boolean isVCF, long bufferBytes, File tempDir) {
+        myIsVCF = isVCF;
+        if (isVCF) {
+            myChrColumn = 0;
+            myPosColumn = 1;
+            myIDColumn = 2;
+        } else {
+            myChrColumn = 2;
+            myPosColumn = 3;
+            myIDColumn = 0;
+        }
+        myRunBytes = Math.max(1, bufferBytes / 2);
+        myTempDir = tempDir;
+    }
+
+    /**
+     * Sorts a Hapmap file.
+     *
+     * @param inputFile input file (may be gzipped)
+     * @param outputFile output file (gzipped if it ends with .gz)
+     * @param bufferBytes maximum bytes of site lines held in memory
+     * @param tempDir directory for temporary files
+     */
+    static void sortHapmap(String inputFile, String outputFile, long bufferBytes, File tempDir) {
+        new GenotypeFileSorter(false, bufferBytes, tempDir).sort(inputFile, outputFile);
+    }
+
+    /**
+     * Sorts a VCF file.
+     *
+     * @param inputFile input file (may be gzipped)
+     * @param outputFile output file (gzipped if it ends with .gz)
+     * @param bufferBytes maximum bytes of site lines held in memory
+     * @param tempDir directory for temporary files
+     */
+    static void sortVCF(String inputFile, String outputFile, long bufferBytes, File tempDir) {
+        new GenotypeFileSorter(true, bufferBytes, tempDir).sort(inputFile, outputFile);
+    }
+
+    private void sort(String inputFile, String outputFile) {
+
+        long start = System.nanoTime();
+        ExecutorService spiller = Executors.newSingleThreadExecutor();
+        try (BufferedReader reader = Utils.getBufferedReader(inputFile, IO_BUFFER_SIZE)) {
+
+            if (reader == null) {
+                throw new IllegalArgumentException("GenotypeFileSorter: sort: can't read: " + inputFile);
+            }
+
+            List<String> header = new ArrayList<>();
+            String line = reader.readLine();
+            if (myIsVCF) {
+                while ((line != null) && line.startsWith("#")) {
+                    header.add(line);
+                    line = reader.readLine();
+                }
+            } else if (line != null) {
+                header.add(line);
+                line = reader.readLine();
+            }
+
+            List<File> runs = new ArrayList<>();
+            Future<File> previous = null;
+            long numSites = 0;
+            while (line != null) {
+                List<String> lines = new ArrayList<>();
+                long bytes = 0;
+                while ((line != null) && (bytes < myRunBytes)) {
+                    if (!line.isEmpty()) {
+                        lines.add(line);
+                        bytes += 2L * line.length() + LINE_OVERHEAD_BYTES;
+                    }
+                    line = reader.readLine();
+                }
+                numSites += lines.size();
+                Site[] run = parse(lines);
+                lines = null;
+                if ((line == null) && (previous == null)) {
+                    // Everything fit in one run
+                    Arrays.parallelSort(run);
+                    writeSites(run, header, outputFile);
+                    myLogger.info("sort: sorted " + numSites + " sites in memory in " + ((System.nanoTime() - start) / 1000000) + " ms");
+                    return;
+                }
+                if (previous != null) {
+                    runs.add(previous.get());
+                }
+                previous = spiller.submit(() -> {
+                    Arrays.parallelSort(run);
+                    File temp = createTempFile();
+                    writeSites(run, null, temp.getPath());
+                    return temp;
+                });
+            }
+            if (previous != null) {
+                runs.add(previous.get());
+            }
+
+            myLogger.info("sort: " + numSites + " sites in " + runs.size() + " sorted runs in " + ((System.nanoTime() - start) / 1000000) + " ms");
+
+            while (runs.size() > MAX_RUNS_PER_MERGE) {
+                List<File> merged = new ArrayList<>();
+                for (int i = 0; i < runs.size(); i += MAX_RUNS_PER_MERGE) {
+                    List<File> group = runs.subList(i, Math.min(runs.size(), i + MAX_RUNS_PER_MERGE));
+                    File temp = createTempFile();
+                    merge(group, null, temp.getPath());
+                    for (File current : group) {
+                        delete(current);
+                    }
+                    merged.add(temp);
+                }
+                runs = merged;
+            }
+            merge(runs, header, outputFile);
+
+            myLogger.info("sort: merged " + numSites + " sites in " + ((System.nanoTime() - start) / 1000000) + " ms");
+
+        } catch (Exception e) {
+            myLogger.debug(e.getMessage(), e);
+            throw new IllegalStateException("GenotypeFileSorter: sort: problem sorting: " + inputFile + ": " + e.getMessage());
+        } finally {
+            spiller.shutdownNow();
+            for (File current : myTempFiles) {
+                delete(current);
+            }
+        }
+
+    }
+
+    /**
+     * Parses the sort key of each line in parallel.
+     */
+    private Site[] parse(List<String> lines) {
+        Site[] result = new Site[lines.size()];
+        IntStream.range(0, result.length).parallel().forEach(i -> result[i] = site(lines.get(i)));
+        return result;
+    }
+
+    private Site site(String line) {
+        int maxColumn = Math.max(myChrColumn, Math.max(myPosColumn, myIDColumn));
+        int[] columnStart = new int[maxColumn + 2];
+        int column = 0;
+        for (int i = 0; (i < line.length()) && (column <= maxColumn); i++) {
+            if (line.charAt(i) == '\t') {
+                column++;
+                columnStart[column] = i + 1;
+            }
+        }
+        if (column <= maxColumn) {
+            throw new IllegalStateException("GenotypeFileSorter: site: expected at least " + (maxColumn + 2) + " tab delimited columns: " + firstChars(line));
+        }
+
+        String chrName = line.substring(columnStart[myChrColumn], columnStart[myChrColumn + 1] - 1);
+        Chromosome chr = myChromosomes.computeIfAbsent(chrName, Chromosome::new);
+        int position;
+        try {
+            position = Integer.parseInt(line.substring(columnStart[myPosColumn], columnStart[myPosColumn + 1] - 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("GenotypeFileSorter: site: bad position: " + firstChars(line));
+        }
+        String id = line.substring(columnStart[myIDColumn], columnStart[myIDColumn + 1] - 1);
+        if (myIsVCF && id.equals(".")) {
+            // Name given by GeneralPosition when none is set
+            id = "S" + chr.getName() + "_" + position;
+        }
+        return new Site(chr, position, id, line);
+    }
+
+    private static String firstChars(String line) {
+        return (line.length() > 100) ? line.substring(0, 100) + "..." : line;
+    }
+
+    private static void writeSites(Site[] sites, List<String> header, String filename) throws IOException {
+        try (BufferedWriter writer = writer(filename)) {
+            if (header != null) {
+                for (String current : header) {
+                    writer.write(current);
+                    writer.write('\n');
+                }
+            }
+            for (Site current : sites) {
+                writer.write(current.myLine);
+                writer.write('\n');
+            }
+        }
+    }
+
+    /**
+     * K-way merge of sorted runs. Ties are taken from the earlier run, so
+     * the merge is stable.
+     */
+    private void merge(List<File> runs, List<String> header, String filename) throws IOException {
+
+        BufferedReader[] readers = new BufferedReader[runs.size()];
+        try (BufferedWriter writer = writer(filename)) {
+
+            if (header != null) {
+                for (String current : header) {
+                    writer.write(current);
+                    writer.write('\n');
+                }
+            }
+
+            PriorityQueue<RunHead> queue = new PriorityQueue<>(Math.max(1, runs.size()));
+            for (int r = 0; r < runs.size(); r++) {
+                readers[r] = new BufferedReader(new InputStreamReader(new FileInputStream(runs.get(r)), StandardCharsets.UTF_8), IO_BUFFER_SIZE);
+                String line = readers[r].readLine();
+                if (line != null) {
+                    queue.add(new RunHead(site(line), r));
+                }
+            }
+
+            while (!queue.isEmpty()) {
+                RunHead head = queue.poll();
+                writer.write(head.mySite.myLine);
+                writer.write('\n');
+                String line = readers[head.myRun].readLine();
+                if (line != null) {
+                    queue.add(new RunHead(site(line), head.myRun));
+                }
+            }
+
+        } finally {
+            for (BufferedReader current : readers) {
+                if (current != null) {
+                    current.close();
+                }
+            }
+        }
+
+    }
+
+    private static BufferedWriter writer(String filename) {
+        if (filename.endsWith(".gz")) {
+            return Utils.getBufferedWriter(filename);
+        }
+        try {
+            return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename), StandardCharsets.UTF_8), IO_BUFFER_SIZE);
+        } catch (IOException e) {
+            throw new IllegalStateException("GenotypeFileSorter: writer: can't write: " + filename + ": " + e.getMessage());
+        }
+    }
+
+    private File createTempFile() throws IOException {
+        File result = File.createTempFile("tasselSort", ".txt", myTempDir);
+        result.deleteOnExit();
+        synchronized (myTempFiles) {
+            myTempFiles.add(result);
+        }
+        return result;
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            myLogger.warn("delete: couldn't delete temporary file: " + file.getPath());
+        }
+    }
+
+    private static final class Site implements Comparable<Site> {
+
+        private final Chromosome myChromosome;
+        private final int myPosition;
+        private final String myID;
+        private final String myLine;
+
+        private Site(Chromosome chromosome, int position, String id, String line) {
+            myChromosome = chromosome;
+            myPosition = position;
+            myID = id;
+            myLine = line;
+        }
+
+        @Override
+        public int compareTo(Site o) {
+            int result = myChromosome.compareTo(o.myChromosome);
+            if (result != 0) {
+                return result;
+            }
+            result = Integer.compare(myPosition, o.myPosition);
+            if (result != 0) {
+                return result;
+            }
+            return myID.compareTo(o.myID);
+        }
+
+    }
+
+    private static final class RunHead implements Comparable<RunHead> {
+
+        private final Site mySite;
+        private final int myRun;
+
+        private RunHead(Site site, int run) {
+            mySite = site;
+            myRun = run;
+        }
+
+        @Override
+        public int compareTo(RunHead o) {
+            int result = mySite.compareTo(o.mySite);
+            return (result != 0) ? result : Integer.compare(myRun, o.myRun);
+        }
+
+    }
+
+}
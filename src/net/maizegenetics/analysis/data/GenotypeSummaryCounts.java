@@ -0,0 +1,355 @@
+/*
+ * GenotypeSummaryCounts
+ */
+package net.maizegenetics.analysis.data;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import net.maizegenetics.dna.snp.GenotypeTable;
+
+/**
+ * Counts used by GenotypeSummaryPlugin, taken in one parallel pass over
+ * blocks of sites. Each block is read one taxon at a time with
+ * genotypeRange(). Counts for the sites of a block are kept in scratch
+ * arrays, and counts for taxa and overall counts in primitive accumulators,
+ * one for each part the stream is split into, which are added together at
+ * the end. Nothing is allocated per genotype or per site.
+ * <p>
+ * Alleles of a site are those with a code less than maxNumAlleles(), sorted
+ * by number of gametes (ties in order of code) as by
+ * allelesSortedByFrequency(). A genotype is heterozygous if its two alleles
+ * differ, and a gamete is missing if its allele is unknown.
+ */
+final class GenotypeSummaryCounts {
+
+    private static final int SITES_PER_BLOCK = 1024;
+    private static final int UNKNOWN = GenotypeTable.UNKNOWN_ALLELE;
+
+    private final GenotypeTable myGenotypes;
+    private final int myNumSites;
+    private final int myNumTaxa;
+    private final int myMaxNumAlleles;
+
+    // Per site, if kept
+    private final byte[] mySiteNumAlleles;
+    private final byte[] mySiteAlleles;        // [site * maxNumAlleles + i]
+    private final int[] mySiteAlleleCounts;    // [site * maxNumAlleles + i]
+    private final int[] mySiteNotMissing;
+    private final int[] mySiteHeterozygous;
+
+    // Per taxon counts are in myTotals, if kept
+    private final boolean myKeepTaxa;
+
+    // Overall
+    private final double[] myBlockMinorAlleleFreqSums;
+    private Accumulator myTotals;
+
+    private GenotypeSummaryCounts(GenotypeTable genotypes, boolean keepSites, boolean keepTaxa) {
+        myGenotypes = genotypes;
+        myNumSites = genotypes.numberOfSites();
+        myNumTaxa = genotypes.numberOfTaxa();
+        myMaxNumAlleles = Math.min(16, genotypes.maxNumAlleles());
+        if (keepSites) {
+            mySiteNumAlleles = new byte[myNumSites];
+            mySiteAlleles = new byte[myNumSites * myMaxNumAlleles];
+            mySiteAlleleCounts = new int[myNumSites * myMaxNumAlleles];
+            mySiteNotMissing = new int[myNumSites];
+            mySiteHeterozygous = new int[myNumSites];
+        } else {
+            mySiteNumAlleles = null;
+            mySiteAlleles = null;
+            mySiteAlleleCounts = null;
+            mySiteNotMissing = null;
+            mySiteHeterozygous = null;
+        }
+        myKeepTaxa = keepTaxa;
+        myBlockMinorAlleleFreqSums = new double[(myNumSites + SITES_PER_BLOCK - 1) / SITES_PER_BLOCK];
+    }
+
+    /**
+     * Counts the genotypes of a table.
+     *
+     * @param genotypes genotype table
+     * @param keepSites whether to keep counts for each site
+     * @param keepTaxa whether to keep counts for each taxon
+     *
+     * @return counts
+     */
+    static GenotypeSummaryCounts count(GenotypeTable genotypes, boolean keepSites, boolean keepTaxa) {
+        GenotypeSummaryCounts result = new GenotypeSummaryCounts(genotypes, keepSites, keepTaxa);
+        int numBlocks = result.myBlockMinorAlleleFreqSums.length;
+        result.myTotals = IntStream.range(0, numBlocks).parallel()
+                .collect(result::newAccumulator, Accumulator::countBlock, Accumulator::add);
+        return result;
+    }
+
+    private Accumulator newAccumulator() {
+        return new Accumulator();
+    }
+
+    GenotypeTable genotypes() {
+        return myGenotypes;
+    }
+
+    int numSites() {
+        return myNumSites;
+    }
+
+    int numTaxa() {
+        return myNumTaxa;
+    }
+
+    int maxNumAlleles() {
+        return myMaxNumAlleles;
+    }
+
+    int numAlleles(int site) {
+        return mySiteNumAlleles[site];
+    }
+
+    /**
+     * Allele code of the given rank (0 is major) at site
+     */
+    byte allele(int site, int rank) {
+        return mySiteAlleles[site * myMaxNumAlleles + rank];
+    }
+
+    /**
+     * Number of gametes with the allele of the given rank at site
+     */
+    int alleleCount(int site, int rank) {
+        return mySiteAlleleCounts[site * myMaxNumAlleles + rank];
+    }
+
+    /**
+     * Number of gametes with one of the alleles of the site
+     */
+    int gametesWithAlleles(int site) {
+        int result = 0;
+        for (int a = 0, n = mySiteNumAlleles[site]; a < n; a++) {
+            result += mySiteAlleleCounts[site * myMaxNumAlleles + a];
+        }
+        return result;
+    }
+
+    /**
+     * Number of taxa at site whose genotype isn't unknown
+     */
+    int notMissing(int site) {
+        return mySiteNotMissing[site];
+    }
+
+    int heterozygous(int site) {
+        return mySiteHeterozygous[site];
+    }
+
+    int taxonGametesNotMissing(int taxon) {
+        return myTotals.myGametesByTaxon[taxon];
+    }
+
+    /**
+     * Number of sites where the taxon has at least one known allele
+     */
+    int taxonSitesNotMissing(int taxon) {
+        return myTotals.mySitesByTaxon[taxon];
+    }
+
+    int taxonHeterozygous(int taxon) {
+        return myTotals.myHetsByTaxon[taxon];
+    }
+
+    long gametesNotMissing() {
+        return myTotals.myGametesNotMissing;
+    }
+
+    long heterozygous() {
+        return myTotals.myHeterozygous;
+    }
+
+    double averageMinorAlleleFrequency() {
+        // Summed in site order, so the result doesn't depend on how
+        // the blocks were split among threads
+        double result = 0.0;
+        for (double current : myBlockMinorAlleleFreqSums) {
+            result += current;
+        }
+        return result / myNumSites;
+    }
+
+    /**
+     * Number of genotypes with the given diploid value
+     */
+    long diploidCount(byte value) {
+        return myTotals.myDiploidCounts[value & 0xFF];
+    }
+
+    /**
+     * A taxon and site with the given diploid value, or null if none
+     */
+    int[] diploidExample(byte value) {
+        int index = value & 0xFF;
+        if (myTotals.myDiploidTaxon[index] < 0) {
+            return null;
+        }
+        return new int[]{myTotals.myDiploidTaxon[index], myTotals.myDiploidSite[index]};
+    }
+
+    /**
+     * Number of sites with the given major and minor alleles. Sites with one
+     * allele are counted as major = minor.
+     */
+    long majorMinorCount(int major, int minor) {
+        return myTotals.myMajorMinorCounts[major * 16 + minor];
+    }
+
+    private final class Accumulator {
+
+        // Scratch for the sites of a block
+        private final int[] myBlockAlleleCounts = new int[SITES_PER_BLOCK * 16];
+        private final int[] myBlockNotMissing = new int[SITES_PER_BLOCK];
+        private final int[] myBlockHeterozygous = new int[SITES_PER_BLOCK];
+        private final int[] myRank = new int[16];
+
+        private final long[] myDiploidCounts = new long[256];
+        private final int[] myDiploidTaxon = new int[256];
+        private final int[] myDiploidSite = new int[256];
+        private final long[] myMajorMinorCounts = new long[256];
+        private final int[] myGametesByTaxon;
+        private final int[] mySitesByTaxon;
+        private final int[] myHetsByTaxon;
+        private long myGametesNotMissing = 0;
+        private long myHeterozygous = 0;
+
+        private Accumulator() {
+            Arrays.fill(myDiploidTaxon, -1);
+            if (myKeepTaxa) {
+                myGametesByTaxon = new int[myNumTaxa];
+                mySitesByTaxon = new int[myNumTaxa];
+                myHetsByTaxon = new int[myNumTaxa];
+            } else {
+                myGametesByTaxon = null;
+                mySitesByTaxon = null;
+                myHetsByTaxon = null;
+            }
+        }
+
+        private void countBlock(int block) {
+
+            int start = block * SITES_PER_BLOCK;
+            int end = Math.min(myNumSites, start + SITES_PER_BLOCK);
+            int numSites = end - start;
+
+            Arrays.fill(myBlockAlleleCounts, 0, numSites * 16, 0);
+            Arrays.fill(myBlockNotMissing, 0, numSites, 0);
+            Arrays.fill(myBlockHeterozygous, 0, numSites, 0);
+
+            for (int t = 0; t < myNumTaxa; t++) {
+                byte[] genotypes = myGenotypes.genotypeRange(t, start, end);
+                int gametes = 0;
+                int sites = 0;
+                int hets = 0;
+                for (int s = 0; s < numSites; s++) {
+                    int value = genotypes[s] & 0xFF;
+                    int first = value >>> 4;
+                    int second = value & 0xF;
+                    myBlockAlleleCounts[s * 16 + first]++;
+                    myBlockAlleleCounts[s * 16 + second]++;
+                    if (myDiploidCounts[value]++ == 0) {
+                        myDiploidTaxon[value] = t;
+                        myDiploidSite[value] = start + s;
+                    }
+                    if (value != (GenotypeTable.UNKNOWN_DIPLOID_ALLELE & 0xFF)) {
+                        myBlockNotMissing[s]++;
+                    }
+                    if (first != second) {
+                        myBlockHeterozygous[s]++;
+                        hets++;
+                    }
+                    if (first != UNKNOWN) {
+                        gametes++;
+                    }
+                    if (second != UNKNOWN) {
+                        gametes++;
+                    }
+                    if ((first != UNKNOWN) || (second != UNKNOWN)) {
+                        sites++;
+                    }
+                }
+                if (myGametesByTaxon != null) {
+                    myGametesByTaxon[t] += gametes;
+                    mySitesByTaxon[t] += sites;
+                    myHetsByTaxon[t] += hets;
+                }
+            }
+
+            double minorAlleleFreqSum = 0.0;
+            for (int s = 0; s < numSites; s++) {
+
+                int offset = s * 16;
+                myGametesNotMissing += 2L * myNumTaxa - myBlockAlleleCounts[offset + UNKNOWN];
+                myHeterozygous += myBlockHeterozygous[s];
+
+                // Alleles sorted by count, ties in order of code
+                int numAlleles = 0;
+                int total = 0;
+                for (int a = 0; a < myMaxNumAlleles; a++) {
+                    int count = myBlockAlleleCounts[offset + a];
+                    if (count == 0) {
+                        continue;
+                    }
+                    total += count;
+                    int i = numAlleles++;
+                    while ((i > 0) && (myBlockAlleleCounts[offset + myRank[i - 1]] < count)) {
+                        myRank[i] = myRank[i - 1];
+                        i--;
+                    }
+                    myRank[i] = a;
+                }
+
+                if (numAlleles >= 2) {
+                    minorAlleleFreqSum += (double) myBlockAlleleCounts[offset + myRank[1]] / (double) total;
+                    myMajorMinorCounts[myRank[0] * 16 + myRank[1]]++;
+                } else if (numAlleles == 1) {
+                    myMajorMinorCounts[myRank[0] * 16 + myRank[0]]++;
+                }
+
+                if (mySiteNumAlleles != null) {
+                    int site = start + s;
+                    mySiteNumAlleles[site] = (byte) numAlleles;
+                    for (int a = 0; a < numAlleles; a++) {
+                        mySiteAlleles[site * myMaxNumAlleles + a] = (byte) myRank[a];
+                        mySiteAlleleCounts[site * myMaxNumAlleles + a] = myBlockAlleleCounts[offset + myRank[a]];
+                    }
+                    mySiteNotMissing[site] = myBlockNotMissing[s];
+                    mySiteHeterozygous[site] = myBlockHeterozygous[s];
+                }
+
+            }
+            myBlockMinorAlleleFreqSums[block] = minorAlleleFreqSum;
+
+        }
+
+        private void add(Accumulator other) {
+            for (int i = 0; i < 256; i++) {
+                if ((myDiploidTaxon[i] < 0) && (other.myDiploidTaxon[i] >= 0)) {
+                    myDiploidTaxon[i] = other.myDiploidTaxon[i];
+                    myDiploidSite[i] = other.myDiploidSite[i];
+                }
+                myDiploidCounts[i] += other.myDiploidCounts[i];
+                myMajorMinorCounts[i] += other.myMajorMinorCounts[i];
+            }
+            if (myGametesByTaxon != null) {
+                for (int t = 0; t < myNumTaxa; t++) {
+                    myGametesByTaxon[t] += other.myGametesByTaxon[t];
+                    mySitesByTaxon[t] += other.mySitesByTaxon[t];
+                    myHetsByTaxon[t] += other.myHetsByTaxon[t];
+                }
+            }
+            myGametesNotMissing += other.myGametesNotMissing;
+            myHeterozygous += other.myHeterozygous;
+        }
+
+    }
+
+}
@@ -5,20 +5,24 @@ package net.maizegenetics.analysis.data;
 
 import java.awt.*;
 import java.net.URL;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import javax.swing.*;
 import net.maizegenetics.dna.map.Chromosome;
 import net.maizegenetics.dna.map.PositionList;
 import net.maizegenetics.dna.snp.GenotypeTable;
-import net.maizegenetics.dna.snp.GenotypeTableUtils;
-import net.maizegenetics.dna.snp.genotypecall.AlleleFreqCache;
 import net.maizegenetics.plugindef.AbstractPlugin;
 import net.maizegenetics.plugindef.DataSet;
 import net.maizegenetics.plugindef.Datum;
 import net.maizegenetics.plugindef.PluginEvent;
 import net.maizegenetics.plugindef.PluginParameter;
+import net.maizegenetics.util.ColumnarTableReport;
+import net.maizegenetics.util.ColumnarTableReport.ColumnType;
+import net.maizegenetics.util.ColumnarTableReportBuilder;
 import net.maizegenetics.util.SimpleTableReport;
 import net.maizegenetics.util.TableReport;
 import org.apache.log4j.Logger;
@@ -32,10 +36,7 @@ public class GenotypeSummaryPlugin extends AbstractPlugin {
     private static final Logger myLogger = Logger.getLogger(GenotypeSummaryPlugin.class);
     private static final String NA = "NA";
     private static final Double ZERO_DOUBLE = 0.0;
-    private static final int ZERO_INT = 0;
-    private long myNumGametesMissing = 0;
-    private long myNumHeterozygous = 0;
-    private double myAveMinorAlleleFreq = 0.0;
+    private static final Integer ZERO_INT = 0;
 
     private PluginParameter<Boolean> myOverview = new PluginParameter.Builder<>("overview", true, Boolean.class)
             .description("Get Overview Report").build();
@@ -74,30 +75,28 @@ public class GenotypeSummaryPlugin extends AbstractPlugin {
                 return null;
             }
 
-            myNumGametesMissing = 0;
-            myNumHeterozygous = 0;
-            myAveMinorAlleleFreq = 0.0;
-
             List<Datum> alignInList = input.getDataOfType(GenotypeTable.class);
             Datum current = alignInList.get(0);
             GenotypeTable alignment = (GenotypeTable) current.getData();
             String name = current.getName();
 
+            GenotypeSummaryCounts counts = GenotypeSummaryCounts.count(alignment, siteSummary(), taxaSummary());
+
             List<Datum> summaryTables = new ArrayList<>();
 
-            SimpleTableReport siteSummary = null;
+            TableReport siteSummary = null;
             if (siteSummary()) {
-                siteSummary = getSiteSummary(alignment);
+                siteSummary = getSiteSummary(counts);
             }
 
-            SimpleTableReport taxaSummary = null;
+            ColumnarTableReport taxaSummary = null;
             if (taxaSummary()) {
-                taxaSummary = getTaxaSummary(alignment);
+                taxaSummary = getTaxaSummary(counts);
             }
 
             SimpleTableReport[] overallSummaries = null;
             if (overview()) {
-                overallSummaries = getOverallSummary(alignment);
+                overallSummaries = getOverallSummary(counts);
                 summaryTables.add(new Datum(name + "_OverallSummary", overallSummaries[0], "Overall Summary of " + name));
                 summaryTables.add(new Datum(name + "_AlleleSummary", overallSummaries[1], "Allele Summary of " + name));
             }
@@ -124,36 +123,47 @@ public class GenotypeSummaryPlugin extends AbstractPlugin {
 
     }
 
-    private SimpleTableReport[] getOverallSummary(GenotypeTable alignment) {
+    private SimpleTableReport[] getOverallSummary(GenotypeSummaryCounts counts) {
 
         Object[] firstColumnNames = new String[]{"Stat Type", "Value"};
 
-        long numSites = alignment.numberOfSites();
-        long numTaxa = alignment.numberOfTaxa();
+        GenotypeTable alignment = counts.genotypes();
+        long numSites = counts.numSites();
+        long numTaxa = counts.numTaxa();
 
-        Object[][] diploidValueCounts = alignment.genoCounts();
-        int numAlleles = diploidValueCounts[0].length;
-
-        if (!siteSummary()) {
-            int totalGametes = (int) numTaxa * 2;
-            for (int i = 0; i < numSites; i++) {
-                int totalGametesNotMissing = alignment.totalGametesNonMissingForSite(i);
-                int totalGametesMissing = totalGametes - totalGametesNotMissing;
-                myNumGametesMissing = myNumGametesMissing + (long) totalGametesMissing;
-                int numHeterozygous = alignment.heterozygousCount(i);
-                myNumHeterozygous = myNumHeterozygous + (long) numHeterozygous;
-                myAveMinorAlleleFreq += alignment.minorAlleleFrequency(i);
+        long totalGametes = numSites * numTaxa * 2L;
+        long totalGametesNotMissing = counts.gametesNotMissing();
+        long numGametesMissing = totalGametes - totalGametesNotMissing;
+        long numHeterozygous = counts.heterozygous();
+        double aveMinorAlleleFreq = counts.averageMinorAlleleFrequency();
+
+        List<Map.Entry<String, Long>> diploidValues = new ArrayList<>();
+        if (alignment.alleleDefinitions().length == 1) {
+            // Diploid values with the same string (i.e. A:C and C:A) are counted together
+            Map<String, Long> diploidValueCounts = new HashMap<>();
+            for (int value = 0; value < 256; value++) {
+                int[] example = counts.diploidExample((byte) value);
+                if (example != null) {
+                    String current = alignment.genotypeAsString(example[0], example[1]);
+                    diploidValueCounts.merge(current, counts.diploidCount((byte) value), Long::sum);
+                }
+            }
+            diploidValues.addAll(diploidValueCounts.entrySet());
+            diploidValues.sort((first, second) -> Long.compare(second.getValue(), first.getValue()));
+        } else {
+            // The same byte can mean different alleles at different sites,
+            // so one example site can't label it
+            Object[][] diploidValueCounts = alignment.genoCounts();
+            for (int j = 0; j < diploidValueCounts[0].length; j++) {
+                diploidValues.add(new AbstractMap.SimpleImmutableEntry<>((String) diploidValueCounts[0][j], (Long) diploidValueCounts[1][j]));
             }
-            myAveMinorAlleleFreq /= numSites;
         }
-
-        long totalGametes = numSites * numTaxa * 2L;
-        long totalGametesNotMissing = totalGametes - myNumGametesMissing;
+        int numAlleles = diploidValues.size();
 
         long numDiploidsMissing = 0;
-        for (int j = 0; j < numAlleles; j++) {
-            if ((diploidValueCounts[0][j].equals(GenotypeTable.UNKNOWN_ALLELE_STR)) || (diploidValueCounts[0][j].equals(GenotypeTable.UNKNOWN_DIPLOID_ALLELE_STR))) {
-                numDiploidsMissing = (Long) diploidValueCounts[1][j];
+        for (Map.Entry<String, Long> current : diploidValues) {
+            if ((current.getKey().equals(GenotypeTable.UNKNOWN_ALLELE_STR)) || (current.getKey().equals(GenotypeTable.UNKNOWN_DIPLOID_ALLELE_STR))) {
+                numDiploidsMissing = current.getValue();
                 break;
             }
         }
@@ -195,40 +205,56 @@ public class GenotypeSummaryPlugin extends AbstractPlugin {
         data[count++][1] = (double) totalGametesNotMissing / (double) totalGametes;
 
         data[count][0] = "Gametes Missing";
-        data[count++][1] = (double) myNumGametesMissing;
+        data[count++][1] = (double) numGametesMissing;
 
         data[count][0] = "Proportion Gametes Missing";
-        data[count++][1] = (double) myNumGametesMissing / (double) totalGametes;
+        data[count++][1] = (double) numGametesMissing / (double) totalGametes;
 
         data[count][0] = "Number Heterozygous";
-        data[count++][1] = (double) myNumHeterozygous;
+        data[count++][1] = (double) numHeterozygous;
 
         data[count][0] = "Proportion Heterozygous";
-        data[count++][1] = (double) myNumHeterozygous / (double) totalDiploids;
+        data[count++][1] = (double) numHeterozygous / (double) totalDiploids;
 
         data[count][0] = "Average Minor Allele Frequency";
-        data[count++][1] = myAveMinorAlleleFreq;
-
-        Object[][] majorMinorDiploidValueCounts = alignment.majorMinorCounts();
-        int numMajorMinorAlleles = majorMinorDiploidValueCounts[0].length;
+        data[count++][1] = aveMinorAlleleFreq;
+
+        // Major:Minor allele pairs are only reported for tables with one allele encoding
+        List<String> majorMinorValues = new ArrayList<>();
+        List<Long> majorMinorCounts = new ArrayList<>();
+        if (alignment.alleleDefinitions().length == 1) {
+            for (int x = 0; x < 16; x++) {
+                for (int y = 0; y < 16; y++) {
+                    long current = counts.majorMinorCount(x, y);
+                    if (current != 0) {
+                        majorMinorValues.add(alignment.genotypeAsString(0, (byte) x) + ":" + alignment.genotypeAsString(0, (byte) y));
+                        majorMinorCounts.add(current);
+                    }
+                }
+            }
+        }
+        Integer[] majorMinorOrder = new Integer[majorMinorValues.size()];
+        for (int i = 0; i < majorMinorOrder.length; i++) {
+            majorMinorOrder[i] = i;
+        }
+        Arrays.sort(majorMinorOrder, (first, second) -> Long.compare(majorMinorCounts.get(second), majorMinorCounts.get(first)));
+        int numMajorMinorAlleles = majorMinorOrder.length;
 
         Object[] alleleColumnNames = new String[]{"Alleles", "Number", "Proportion", "Frequency"};
         Object[][] data2 = new Object[numAlleles + numMajorMinorAlleles][alleleColumnNames.length];
 
         count = 0;
-        for (int i = 0; i < numAlleles; i++) {
-            String value = (String) diploidValueCounts[0][i];
-            Long numValue = (Long) diploidValueCounts[1][i];
-            data2[count][0] = value;
+        for (Map.Entry<String, Long> current : diploidValues) {
+            Long numValue = current.getValue();
+            data2[count][0] = current.getKey();
             data2[count][1] = numValue;
             data2[count][2] = numValue.doubleValue() / (double) totalDiploids;
             data2[count++][3] = numValue.doubleValue() / (double) totalDiploidsNotMissing;
         }
 
-        for (int i = 0; i < numMajorMinorAlleles; i++) {
-            String value = (String) majorMinorDiploidValueCounts[0][i];
-            Long numValue = (Long) majorMinorDiploidValueCounts[1][i];
-            data2[count][0] = value;
+        for (Integer i : majorMinorOrder) {
+            Long numValue = majorMinorCounts.get(i);
+            data2[count][0] = majorMinorValues.get(i);
             data2[count][1] = numValue;
             data2[count++][2] = numValue.doubleValue() / (double) numSites;
         }
@@ -277,7 +303,7 @@ public class GenotypeSummaryPlugin extends AbstractPlugin {
 
     }
 
-    private SimpleTableReport getSiteSummary(GenotypeTable alignment) {
+    private TableReport getSiteSummary(GenotypeSummaryCounts counts) {
 
         String[] firstColumnNames = new String[]{"Site Number", "Site Name", "Chromosome", "Physical Position", "Number of Taxa", "Ref", "Alt", "Major Allele", "Major Allele Gametes", "Major Allele Proportion", "Major Allele Frequency",
             "Minor Allele", "Minor Allele Gametes", "Minor Allele Proportion", "Minor Allele Frequency"};
@@ -286,6 +312,7 @@ public class GenotypeSummaryPlugin extends AbstractPlugin {
 
         List<String> columnNames = new ArrayList<>(Arrays.asList(firstColumnNames));
 
+        GenotypeTable alignment = counts.genotypes();
         int maxAlleles = alignment.maxNumAlleles();
         if (alignment.retainsRareAlleles()) {
             maxAlleles++;
@@ -300,123 +327,165 @@ public class GenotypeSummaryPlugin extends AbstractPlugin {
 
         columnNames.addAll(Arrays.asList(lastColumnNames));
 
-        int numSites = alignment.numberOfSites();
-        int numTaxa = alignment.numberOfTaxa();
-        Object[][] data = new Object[numSites][columnNames.size()];
-        int totalGametes = numTaxa * 2;
-
-        for (int i = 0; i < numSites; i++) {
-
-            int count = 0;
-
-            data[i][count++] = i;
-            data[i][count++] = alignment.siteName(i);
-            data[i][count++] = alignment.chromosomeName(i);
-            data[i][count++] = alignment.chromosomalPosition(i);
-            data[i][count++] = numTaxa;
-            data[i][count++] = alignment.genotypeAsString(i, alignment.referenceAllele(i));
-            data[i][count++] = alignment.genotypeAsString(i, alignment.alternateAllele(i));
-
-            int[][] alleles = alignment.allelesSortedByFrequency(i);
-            int numAlleles = alleles[0].length;
-            int totalNotMissing = alignment.totalNonMissingForSite(i);
-            int totalGametesNotMissing = AlleleFreqCache.totalGametesNonMissingForSite(alleles);
-
-            for (int a = 0; a < numAlleles; a++) {
-                data[i][count++] = alignment.genotypeAsString(i, (byte) alleles[0][a]);
-                data[i][count++] = alleles[1][a];
-                data[i][count++] = (double) alleles[1][a] / (double) totalGametes;
-                double alleleFreq = (double) alleles[1][a] / (double) totalGametesNotMissing;
-                data[i][count++] = alleleFreq;
-                if (a == 1) {
-                    myAveMinorAlleleFreq += alleleFreq;
-                }
-            }
+        String[] columnNameStrings = new String[columnNames.size()];
+        columnNames.toArray(columnNameStrings);
+        return new SiteSummaryTableReport(columnNameStrings, counts, maxAlleles);
 
-            for (int b = 0; b < (maxAlleles - numAlleles); b++) {
-                data[i][count++] = NA;
-                data[i][count++] = ZERO_INT;
-                data[i][count++] = ZERO_DOUBLE;
-                data[i][count++] = ZERO_DOUBLE;
-            }
+    }
 
-            int totalGametesMissing = totalGametes - totalGametesNotMissing;
-            myNumGametesMissing = myNumGametesMissing + (long) totalGametesMissing;
-            data[i][count++] = totalGametesMissing;
-            data[i][count++] = (double) totalGametesMissing / (double) totalGametes;
+    private ColumnarTableReport getTaxaSummary(GenotypeSummaryCounts counts) {
 
-            int numHeterozygous = alignment.heterozygousCount(i);
-            myNumHeterozygous = myNumHeterozygous + (long) numHeterozygous;
-            data[i][count++] = numHeterozygous;
-            data[i][count++] = (double) numHeterozygous / (double) totalNotMissing;
+        Object[] columnNames = new String[]{"Taxa", "Taxa Name", "Number of Sites", "Gametes Missing", "Proportion Missing",
+            "Number Heterozygous", "Proportion Heterozygous", "Inbreeding Coefficient",
+            "Inbreeding Coefficient Scaled by Missing"};
+        ColumnType[] columnTypes = new ColumnType[]{ColumnType.INT, ColumnType.STRING, ColumnType.INT, ColumnType.INT, ColumnType.DOUBLE,
+            ColumnType.INT, ColumnType.DOUBLE, ColumnType.STRING, ColumnType.STRING};
+        GenotypeTable alignment = counts.genotypes();
+        int numSites = counts.numSites();
+        int numTaxa = counts.numTaxa();
+        int totalGametes = numSites * 2;
 
-            data[i][count++] = "TBD";
-            data[i][count++] = "TBD";
+        ColumnarTableReportBuilder builder = ColumnarTableReportBuilder.getInstance("Taxa Summary", columnNames, columnTypes);
+        for (int i = 0; i < numTaxa; i++) {
 
+            int totalGametesMissing = totalGametes - counts.taxonGametesNotMissing(i);
+            int heterozygous = counts.taxonHeterozygous(i);
+
+            builder.add(i)
+                    .add(alignment.taxaName(i))
+                    .add(numSites)
+                    .add(totalGametesMissing)
+                    .add((double) totalGametesMissing / (double) totalGametes)
+                    .add(heterozygous)
+                    .add((double) heterozygous / (double) counts.taxonSitesNotMissing(i))
+                    .add("Inbreeding Coefficient")
+                    .add("ICSBM");
         }
 
-        myAveMinorAlleleFreq /= numSites;
-
-        String[] columnNameStrings = new String[columnNames.size()];
-        columnNames.toArray(columnNameStrings);
-        return new SimpleTableReport("Site Summary", columnNameStrings, data);
+        return builder.build();
 
     }
 
-    private SimpleTableReport getTaxaSummary(GenotypeTable alignment) {
+    /**
+     * Site summary computed from the counts of each site when a value is
+     * requested, so no row objects are kept.
+     */
+    private static final class SiteSummaryTableReport implements TableReport {
+
+        private static final int NUM_FIRST_COLUMNS = 7;
+        private static final int NUM_ALLELE_COLUMNS = 4;
+
+        private final Object[] myColumnNames;
+        private final GenotypeSummaryCounts myCounts;
+        private final GenotypeTable myGenotypes;
+        private final int myMaxAlleles;
+        private final int myTotalGametes;
+
+        private SiteSummaryTableReport(Object[] columnNames, GenotypeSummaryCounts counts, int maxAlleles) {
+            myColumnNames = columnNames;
+            myCounts = counts;
+            myGenotypes = counts.genotypes();
+            myMaxAlleles = maxAlleles;
+            myTotalGametes = counts.numTaxa() * 2;
+        }
 
-        Object[] columnNames = new String[]{"Taxa", "Taxa Name", "Number of Sites", "Gametes Missing", "Proportion Missing",
-            "Number Heterozygous", "Proportion Heterozygous", "Inbreeding Coefficient",
-            "Inbreeding Coefficient Scaled by Missing"};
-        int numSites = alignment.numberOfSites();
-        int numTaxa = alignment.numberOfTaxa();
-        int totalGametes = numSites * 2;
+        @Override
+        public Object[] getTableColumnNames() {
+            return myColumnNames;
+        }
+
+        @Override
+        public String getTableTitle() {
+            return "Site Summary";
+        }
+
+        @Override
+        public int getColumnCount() {
+            return myColumnNames.length;
+        }
 
-        int[] gametesNotMissing = new int[numTaxa];
-        int[] sitesNotMissing = new int[numTaxa];
-        int[] heterozygous = new int[numTaxa];
-        for (int s = 0; s < numSites; s++) {
-            byte[] genotypes = alignment.genotypeAllTaxa(s);
-            for (int t = 0; t < numTaxa; t++) {
-                byte[] alleles = GenotypeTableUtils.getDiploidValues(genotypes[t]);
-                if (alleles[0] != GenotypeTable.UNKNOWN_ALLELE) {
-                    if (alleles[1] != GenotypeTable.UNKNOWN_ALLELE) {
-                        gametesNotMissing[t] += 2;
-                        sitesNotMissing[t]++;
-                    } else {
-                        gametesNotMissing[t]++;
-                        sitesNotMissing[t]++;
+        @Override
+        public long getRowCount() {
+            return myCounts.numSites();
+        }
+
+        @Override
+        public long getElementCount() {
+            return getRowCount() * getColumnCount();
+        }
+
+        @Override
+        public Object[] getRow(long row) {
+            Object[] result = new Object[myColumnNames.length];
+            for (int c = 0; c < result.length; c++) {
+                result[c] = getValueAt(row, c);
+            }
+            return result;
+        }
+
+        @Override
+        public Object getValueAt(long row, int col) {
+
+            int site = (int) row;
+            switch (col) {
+                case 0:
+                    return site;
+                case 1:
+                    return myGenotypes.siteName(site);
+                case 2:
+                    return myGenotypes.chromosomeName(site);
+                case 3:
+                    return myGenotypes.chromosomalPosition(site);
+                case 4:
+                    return myCounts.numTaxa();
+                case 5:
+                    return myGenotypes.genotypeAsString(site, myGenotypes.referenceAllele(site));
+                case 6:
+                    return myGenotypes.genotypeAsString(site, myGenotypes.alternateAllele(site));
+            }
+
+            int alleleColumn = col - NUM_FIRST_COLUMNS;
+            if (alleleColumn < myMaxAlleles * NUM_ALLELE_COLUMNS) {
+                int rank = alleleColumn / NUM_ALLELE_COLUMNS;
+                if (rank >= myCounts.numAlleles(site)) {
+                    switch (alleleColumn % NUM_ALLELE_COLUMNS) {
+                        case 0:
+                            return NA;
+                        case 1:
+                            return ZERO_INT;
+                        default:
+                            return ZERO_DOUBLE;
                     }
-                } else if (alleles[1] != GenotypeTable.UNKNOWN_ALLELE) {
-                    gametesNotMissing[t]++;
-                    sitesNotMissing[t]++;
                 }
-
-                if (alleles[0] != alleles[1]) {
-                    heterozygous[t]++;
+                int gametes = myCounts.alleleCount(site, rank);
+                switch (alleleColumn % NUM_ALLELE_COLUMNS) {
+                    case 0:
+                        return myGenotypes.genotypeAsString(site, myCounts.allele(site, rank));
+                    case 1:
+                        return gametes;
+                    case 2:
+                        return (double) gametes / (double) myTotalGametes;
+                    default:
+                        return (double) gametes / (double) myCounts.gametesWithAlleles(site);
                 }
             }
-        }
 
-        Object[][] data = new Object[numTaxa][columnNames.length];
-        for (int i = 0; i < numTaxa; i++) {
+            int gametesMissing = myTotalGametes - myCounts.gametesWithAlleles(site);
+            switch (alleleColumn - myMaxAlleles * NUM_ALLELE_COLUMNS) {
+                case 0:
+                    return gametesMissing;
+                case 1:
+                    return (double) gametesMissing / (double) myTotalGametes;
+                case 2:
+                    return myCounts.heterozygous(site);
+                case 3:
+                    return (double) myCounts.heterozygous(site) / (double) myCounts.notMissing(site);
+                default:
+                    return "TBD";
+            }
 
-            int totalGametesMissing = totalGametes - gametesNotMissing[i];
-
-            int count = 0;
-            data[i][count++] = i;
-            data[i][count++] = alignment.taxaName(i);
-            data[i][count++] = numSites;
-            data[i][count++] = totalGametesMissing;
-            data[i][count++] = (double) totalGametesMissing / (double) totalGametes;
-            data[i][count++] = heterozygous[i];
-            data[i][count++] = (double) heterozygous[i] / (double) sitesNotMissing[i];
-            data[i][count++] = "Inbreeding Coefficient";
-            data[i][count++] = "ICSBM";
         }
 
-        return new SimpleTableReport("Taxa Summary", columnNames, data);
-
     }
 
     // The following getters and setters were auto-generated.
@@ -13,16 +13,16 @@ import org.apache.log4j.Logger;
 import javax.swing.*;
 import java.awt.*;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.stream.IntStream;
 import net.maizegenetics.dna.map.Position;
 import net.maizegenetics.dna.map.PositionList;
 import net.maizegenetics.dna.map.PositionListBuilder;
 import net.maizegenetics.dna.snp.GenotypeTableBuilder;
-import net.maizegenetics.dna.snp.genotypecall.BasicGenotypeMergeRule;
+import net.maizegenetics.dna.snp.genotypecall.GenotypeCallTableBuilder;
 import net.maizegenetics.taxa.TaxaList;
 import net.maizegenetics.taxa.TaxaListBuilder;
 import net.maizegenetics.taxa.Taxon;
@@ -39,6 +39,9 @@ public class MergeGenotypeTablesPlugin extends AbstractPlugin {
 
     private static final Logger myLogger = Logger.getLogger(MergeGenotypeTablesPlugin.class);
 
+    //number of merged sites processed together
+    private static final int MERGE_BLOCK_SIZE = 4096;
+
     public MergeGenotypeTablesPlugin(Frame parentFrame, boolean isInteractive) {
         super(parentFrame, isInteractive);
     }
@@ -95,7 +98,13 @@ public class MergeGenotypeTablesPlugin extends AbstractPlugin {
     }
 
     /**
-     * Merge an array of GenotypeTables into a single GenotypeTable
+     * Merge an array of GenotypeTables into a single GenotypeTable. The merged
+     * sites are processed in blocks of MERGE_BLOCK_SIZE in parallel. Within a
+     * block, the sites of each input are found by a merge join of its sorted
+     * positions with the merged positions, and the genotypes of each input
+     * taxon are read as a range. Where several inputs have a call for the same
+     * taxon and site, the call from the last of those inputs is used. Missing
+     * calls never overwrite a call from an earlier input (see mergeBlock).
      */
     public static GenotypeTable mergeGenotypeTables(GenotypeTable[] alignments) {
         if ((alignments == null) || (alignments.length == 0)) {
@@ -106,51 +115,131 @@ public class MergeGenotypeTablesPlugin extends AbstractPlugin {
         TaxaList masterTaxa = generateMasterTaxaList(alignments);
         PositionList masterPos = generateMasterPositionList(alignments);
 
-        //Make helper hashmaps of taxa and positions for each input alignment
-        //Done to to avoid the O(n) search time to find the index of a Taxon or Position in them
+        //Index of each master taxon in each input alignment (-1 if absent), and
+        //the input sites in position order for any input that isn't sorted
         myLogger.info("Creating helper data structures (to speed merging)");
-        HashMap[] taxaHashes = makeTaxaHashes(alignments);
-        HashMap[] posHashes = makePositionHashes(alignments);
-
-        //Set up for merging
-        double errorRate = 0.01;
-        myLogger.info("Merging genotype calls with assumed error rate " + errorRate);
-        BasicGenotypeMergeRule mergeRule = new BasicGenotypeMergeRule(errorRate);
-        GenotypeTableBuilder genoBuilder = GenotypeTableBuilder.getTaxaIncremental(masterPos, mergeRule);
-
-        //Merge actual calls. Dut to setup of GenotypeBuilder, must get all calls for a taxon and then add as a unit
-        for (Taxon t : masterTaxa) {
-            //System.out.println("Processing taxon" + t.getName());
-            byte[] taxonCalls = new byte[masterPos.size()];
-            for (int i_pos = 0; i_pos < masterPos.size(); i_pos++) {
-                /*if(i_pos % 5000 == 0){    //For debugging
-                 System.out.println("\tProcessed" +  i_pos + "sites");
-                 }*/
-                Position p = masterPos.get(i_pos);
-
-                //Go through each individual GenotypeTable and assemble all the calls
-                ArrayList<Byte> callList = new ArrayList(alignments.length);
-                for (int i_align = 0; i_align < alignments.length; i_align++) {
-                    GenotypeTable a = alignments[i_align];
-                    //Check that this alignment actually has this site-taxon combination
-                    if (taxaHashes[i_align].containsKey(t) && posHashes[i_align].containsKey(p)) {
-                        int taxonnum = (Integer) taxaHashes[i_align].get(t);
-                        int sitenum = (Integer) posHashes[i_align].get(p);
-                        byte genotype = a.genotype(taxonnum, sitenum);
-                        if (genotype != GenotypeTable.UNKNOWN_DIPLOID_ALLELE) { // Skip missing genotypes
-                            callList.add(genotype);
-                        }
+        int[][] taxaIndices = new int[alignments.length][];
+        int[][] siteOrders = new int[alignments.length][];
+        for (int i_align = 0; i_align < alignments.length; i_align++) {
+            taxaIndices[i_align] = taxaIndices(masterTaxa, alignments[i_align].taxa());
+            siteOrders[i_align] = siteOrder(alignments[i_align].positions());
+        }
+
+        myLogger.info("Merging genotype calls");
+        int numSites = masterPos.numberOfSites();
+        GenotypeCallTableBuilder callBuilder = GenotypeCallTableBuilder.getInstance(masterTaxa.numberOfTaxa(), numSites);
+        int numBlocks = (numSites + MERGE_BLOCK_SIZE - 1) / MERGE_BLOCK_SIZE;
+        IntStream.range(0, numBlocks).parallel().forEach(block -> {
+            int startSite = block * MERGE_BLOCK_SIZE;
+            mergeBlock(alignments, taxaIndices, siteOrders, masterPos, startSite, Math.min(numSites, startSite + MERGE_BLOCK_SIZE), callBuilder);
+        });
+
+        myLogger.info("Finalizing genotype table with " + masterTaxa.size() + " taxa and " + masterPos.size() + "sites");
+        return GenotypeTableBuilder.getInstance(callBuilder.build(), masterPos, masterTaxa);
+    }
+
+    /**
+     * Merges the calls of master sites startSite (inclusive) to endSite
+     * (exclusive) into callBuilder, which must start with all calls missing.
+     */
+    private static void mergeBlock(GenotypeTable[] alignments, int[][] taxaIndices, int[][] siteOrders, PositionList masterPos,
+            int startSite, int endSite, GenotypeCallTableBuilder callBuilder) {
+
+        //For each alignment, the range of its (ordered) sites in this block, and
+        //the block offset of each of those sites found by a merge join
+        int[] firstSites = new int[alignments.length];
+        int[][] blockOffsets = new int[alignments.length][];
+        Position firstPos = masterPos.get(startSite);
+        Position lastPos = masterPos.get(endSite - 1);
+        for (int i_align = 0; i_align < alignments.length; i_align++) {
+            PositionList positions = alignments[i_align].positions();
+            int[] order = siteOrders[i_align];
+            int first = lowerBound(positions, order, firstPos, false);
+            int last = lowerBound(positions, order, lastPos, true);
+            firstSites[i_align] = first;
+            blockOffsets[i_align] = new int[last - first];
+            int masterSite = startSite;
+            for (int i = first; i < last; i++) {
+                Position p = positions.get(order == null ? i : order[i]);
+                while (masterPos.get(masterSite).compareTo(p) < 0) {
+                    masterSite++;
+                }
+                blockOffsets[i_align][i - first] = masterSite - startSite;
+            }
+        }
+
+        //Later alignments overwrite earlier ones, so the last non-missing call is kept
+        byte[] calls = new byte[endSite - startSite];
+        for (int t = 0; t < taxaIndices[0].length; t++) {
+            Arrays.fill(calls, GenotypeTable.UNKNOWN_DIPLOID_ALLELE);
+            boolean hasCalls = false;
+            for (int i_align = 0; i_align < alignments.length; i_align++) {
+                int taxon = taxaIndices[i_align][t];
+                int[] offsets = blockOffsets[i_align];
+                if ((taxon < 0) || (offsets.length == 0)) {
+                    continue;
+                }
+                int[] order = siteOrders[i_align];
+                int first = firstSites[i_align];
+                byte[] genotypes = (order == null) ? alignments[i_align].genotypeRange(taxon, first, first + offsets.length) : null;
+                for (int i = 0; i < offsets.length; i++) {
+                    byte genotype = (order == null) ? genotypes[i] : alignments[i_align].genotype(taxon, order[first + i]);
+                    if (genotype != GenotypeTable.UNKNOWN_DIPLOID_ALLELE) {
+                        calls[offsets[i]] = genotype;
+                        hasCalls = true;
                     }
                 }
-                Byte[] calls = callList.toArray(new Byte[0]);
-                taxonCalls[i_pos] = mergeCalls(calls); // Where to implement merging rules
             }
-            genoBuilder.addTaxon(t, taxonCalls);
+            if (hasCalls) {
+                callBuilder.setBaseRangeForTaxon(t, startSite, calls);
+            }
+        }
+    }
+
+    /**
+     * Index in site order of the first position not less than (or if after is
+     * true, greater than) pos. Order gives the sites in position order, or is
+     * null if the positions are sorted.
+     */
+    private static int lowerBound(PositionList positions, int[] order, Position pos, boolean after) {
+        int low = 0;
+        int high = positions.numberOfSites();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int compare = positions.get(order == null ? mid : order[mid]).compareTo(pos);
+            if ((compare < 0) || (after && (compare == 0))) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
         }
+        return low;
+    }
 
-        myLogger.info("Finalizing genotype table with " + masterTaxa.size() + " taxa and " + masterPos.size() + "sites");
-        GenotypeTable genos = genoBuilder.build();
-        return genos;
+    /**
+     * Index of each master taxon in taxa, or -1 if absent
+     */
+    private static int[] taxaIndices(TaxaList masterTaxa, TaxaList taxa) {
+        int[] result = new int[masterTaxa.numberOfTaxa()];
+        for (int t = 0; t < result.length; t++) {
+            result[t] = taxa.indexOf(masterTaxa.get(t));
+        }
+        return result;
+    }
+
+    /**
+     * Sites in position order, or null if the positions are already sorted
+     */
+    private static int[] siteOrder(PositionList positions) {
+        int numSites = positions.numberOfSites();
+        for (int s = 1; s < numSites; s++) {
+            if (positions.get(s - 1).compareTo(positions.get(s)) > 0) {
+                return IntStream.range(0, numSites).boxed()
+                        .sorted((s1, s2) -> positions.get(s1).compareTo(positions.get(s2)))
+                        .mapToInt(Integer::intValue).toArray();
+            }
+        }
+        return null;
     }
 
     /**
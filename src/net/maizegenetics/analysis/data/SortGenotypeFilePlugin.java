@@ -1,6 +1,7 @@
 package net.maizegenetics.analysis.data;
 
 import java.awt.*;
+import java.io.File;
 import java.net.URL;
 import javax.swing.*;
 import static net.maizegenetics.analysis.data.FileLoadPlugin.FILE_EXT_PLINK_MAP;
@@ -8,11 +9,10 @@ import static net.maizegenetics.analysis.data.FileLoadPlugin.FILE_EXT_PLINK_PED;
 import net.maizegenetics.dna.snp.ExportUtils;
 import net.maizegenetics.dna.snp.GenotypeTable;
 import net.maizegenetics.dna.snp.ImportUtils;
-import net.maizegenetics.dna.snp.io.BuilderFromHapMap;
-import net.maizegenetics.dna.snp.io.BuilderFromVCF;
 import net.maizegenetics.plugindef.AbstractPlugin;
 import net.maizegenetics.plugindef.DataSet;
 import net.maizegenetics.plugindef.PluginParameter;
+import com.google.common.collect.Range;
 import org.apache.log4j.Logger;
 
 /**
@@ -48,6 +48,22 @@ public class SortGenotypeFilePlugin extends AbstractPlugin {
             .guiName("File type")
             .description("Input/output file type (if not obvious from file name)")
             .build();
+    private PluginParameter<Integer> myBufferSize
+            = new PluginParameter.Builder<>("bufferSize", 512, Integer.class)
+            .required(false)
+            .guiName("Buffer size")
+            .units("MB")
+            .description("Memory used to hold sites while sorting Hapmap and VCF files. "
+                    + "Larger files are sorted in runs of this size, which are merged from temporary files.")
+            .range(Range.atLeast(1))
+            .build();
+    private PluginParameter<String> myTempDir
+            = new PluginParameter.Builder<>("tempDir", null, String.class)
+            .required(false)
+            .outDir()
+            .guiName("Temporary directory")
+            .description("Directory for temporary files when sorting Hapmap and VCF files (Default is directory of output file)")
+            .build();
 
     public SortGenotypeFilePlugin(Frame parentFrame, boolean isInteractive) {
         super(parentFrame, isInteractive);
@@ -58,12 +74,10 @@ public class SortGenotypeFilePlugin extends AbstractPlugin {
 
         switch (fileType()) {
             case Hapmap:
-                GenotypeTable myHapmap = BuilderFromHapMap.getBuilder(inputFile(), null).sortPositions().build();
-                ExportUtils.writeToHapmap(myHapmap, outputFile());
+                GenotypeFileSorter.sortHapmap(inputFile(), outputFile(), bufferSize() * 1024L * 1024L, tempDirectory());
                 break;
             case VCF:
-                GenotypeTable myVCF = BuilderFromVCF.getBuilder(inputFile()).keepDepth().buildAndSortInMemory();
-                ExportUtils.writeToVCF(myVCF, outputFile(), true);
+                GenotypeFileSorter.sortVCF(inputFile(), outputFile(), bufferSize() * 1024L * 1024L, tempDirectory());
                 break;
             case Plink:
                 if (inputFile().endsWith(FILE_EXT_PLINK_PED) || inputFile().endsWith(FILE_EXT_PLINK_PED + ".gz")) {
@@ -83,6 +97,13 @@ public class SortGenotypeFilePlugin extends AbstractPlugin {
         return null;
     }
 
+    private File tempDirectory() {
+        if (tempDir() != null) {
+            return new File(tempDir());
+        }
+        return new File(outputFile()).getAbsoluteFile().getParentFile();
+    }
+
     @Override
     public String pluginDescription() {
         return "This plugin takes a Hapmap, VCF, or Plink genotype file and sorts it according to TASSEL's conventions, "
@@ -185,4 +206,49 @@ public class SortGenotypeFilePlugin extends AbstractPlugin {
         fileType = new PluginParameter<>(fileType, value);
         return this;
     }
+
+    /**
+     * Memory used to hold sites while sorting Hapmap and VCF files. Larger
+     * files are sorted in runs of this size, which are merged from temporary
+     * files.
+     *
+     * @return Buffer size
+     */
+    public Integer bufferSize() {
+        return myBufferSize.value();
+    }
+
+    /**
+     * Set Buffer size. Memory used to hold sites while sorting Hapmap and
+     * VCF files.
+     *
+     * @param value Buffer size
+     * @return this plugin
+     */
+    public SortGenotypeFilePlugin bufferSize(Integer value) {
+        myBufferSize = new PluginParameter<>(myBufferSize, value);
+        return this;
+    }
+
+    /**
+     * Directory for temporary files when sorting Hapmap and VCF files
+     * (Default is directory of output file)
+     *
+     * @return Temporary directory
+     */
+    public String tempDir() {
+        return myTempDir.value();
+    }
+
+    /**
+     * Set Temporary directory. Directory for temporary files when sorting
+     * Hapmap and VCF files (Default is directory of output file)
+     *
+     * @param value Temporary directory
+     * @return this plugin
+     */
+    public SortGenotypeFilePlugin tempDir(String value) {
+        myTempDir = new PluginParameter<>(myTempDir, value);
+        return this;
+    }
 }
@@ -6,7 +6,6 @@ package net.maizegenetics.analysis.gbs;
 import com.google.common.base.Joiner;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
-import net.maizegenetics.dna.map.Position;
 import net.maizegenetics.dna.snp.GenotypeTable;
 import net.maizegenetics.dna.snp.GenotypeTableUtils;
 import net.maizegenetics.dna.snp.ImportUtils;
@@ -307,13 +306,50 @@ public class CompareGenosBetweenHapMapFilesPlugin extends AbstractPlugin {
     private void findCommonPositionsAndCompare(GenotypeTable a1, GenotypeTable a2) {
         nCompared = 0;
         nSamePosNotComparable = 0;
-        for (int s1=0; s1<a1.numberOfSites(); s1++) {
-            Position p1=a1.positions().get(s1);
-            int s2=a2.siteOfPhysicalPosition(p1.getPosition(), p1.getChromosome());
-            if (s2>=0) {
-                position = a1.chromosomalPosition(s1);
-                nCompared += getCompareTypeAndCompare(s1, a1, s2, a2);
-                }
+        int numPairs = 0;
+        for (List<Integer> synTaxaIndicesForTaxonIndex : taxaRedirect.values()) {
+            numPairs += synTaxaIndicesForTaxonIndex.size();
+        }
+        int[] taxa1 = new int[numPairs];
+        int[] taxa2 = new int[numPairs];
+        int pair = 0;
+        for (Integer taxon1Index : taxaRedirect.keySet()) {
+            for (Integer taxon2Index : taxaRedirect.get(taxon1Index)) {
+                taxa1[pair] = taxon1Index;
+                taxa2[pair] = taxon2Index;
+                pair++;
+            }
+        }
+
+        GenotypeConcordance concordance = new GenotypeConcordance(a1, a2, taxa1, taxa2);
+        for (GenotypeConcordance.Site site : concordance.compareCommonSites()) {
+            if (!site.isComparable()) {
+                nSamePosNotComparable++;
+                continue;
+            }
+            int site1 = site.site1();
+            int site2 = site.site2();
+            position = a1.chromosomalPosition(site1);
+            double[] summStats = new double[summStatsLength];
+            summStats[MINOR_ALLELE_FREQ1] = a1.minorAlleleFrequency(site1);
+            summStats[MINOR_ALLELE_FREQ2] = a2.minorAlleleFrequency(site2);
+            summStats[F_VALUE1] = site.f1();
+            summStats[F_VALUE2] = site.f2();
+            String alleleString1 = Joiner.on("/").join(GenotypeTableUtils.convertNucleotideGenotypesToStringList(a1.alleles(site1)));
+            String alleleString2 = Joiner.on("/").join(GenotypeTableUtils.convertNucleotideGenotypesToStringList(a2.alleles(site2)));
+            writeCompareStats(site.stats(), alleleString1, alleleString2, SiteCompareType.SAME_STRAND, summStats);
+            nCompared++;
+        }
+
+        int[][] taxaPairStats = concordance.taxaPairStats();
+        pair = 0;
+        int taxon1Count = 0;
+        for (List<Integer> synTaxaIndicesForTaxonIndex : taxaRedirect.values()) {
+            myCompareStatsTaxa[taxon1Count] = new int[synTaxaIndicesForTaxonIndex.size()][];
+            for (int taxon2Count = 0; taxon2Count < synTaxaIndicesForTaxonIndex.size(); taxon2Count++) {
+                myCompareStatsTaxa[taxon1Count][taxon2Count] = taxaPairStats[pair++];
+            }
+            taxon1Count++;
         }
         myLogger.info(nCompared + " sites compared on chromosome " + chr
                 + "\nAn additional " + nSamePosNotComparable + " sites on chromosome " + chr + " had the same position but incomparable alleles\n");
@@ -349,130 +385,6 @@ public class CompareGenosBetweenHapMapFilesPlugin extends AbstractPlugin {
 
     }
 
-    private int getCompareTypeAndCompare(int site1, GenotypeTable a1, int site2, GenotypeTable a2) {
-        byte[] alleles1 = a1.alleles(site1);
-        byte[] alleles2 = a2.alleles(site2);
-        SiteCompareType compareType=(a1.positions().get(site1).getStrand()==a2.positions().get(site2).getStrand())?
-                SiteCompareType.SAME_STRAND:SiteCompareType.DIFFERENT;
-        if (compareType == SiteCompareType.DIFFERENT) {
-            nSamePosNotComparable++;
-            return 0;
-        }
-
-        double[] summStats = new double[summStatsLength];
-        summStats[MINOR_ALLELE_FREQ1] = a1.minorAlleleFrequency(site1);
-        summStats[MINOR_ALLELE_FREQ2] = a2.minorAlleleFrequency(site2);
-        summStats[F_VALUE1] = calculateF(a1, site1);
-        summStats[F_VALUE2] = calculateF(a2, site2);
-        String alleleString1 = Joiner.on("/").join(GenotypeTableUtils.convertNucleotideGenotypesToStringList(alleles1));
-        String alleleString2 = Joiner.on("/").join(GenotypeTableUtils.convertNucleotideGenotypesToStringList(alleles2));
-
-        int[][][] compareTaxaStatsSame = new int[taxaRedirect.size()][][];
-
-
-        int[] compareStatsSame = null;
-        int taxon1Count = 0;
-        for (Integer taxon1Index : taxaRedirect.keySet()) {
-            List<Integer> synTaxaIndicesForTaxonIndex = taxaRedirect.get(taxon1Index);
-            if (myCompareStatsTaxa[taxon1Count] == null) {
-                myCompareStatsTaxa[taxon1Count] = new int[synTaxaIndicesForTaxonIndex.size()][COMPARE_TAXA_STATS_LENGTH];
-            }
-
-            compareTaxaStatsSame[taxon1Count] = new int[synTaxaIndicesForTaxonIndex.size()][COMPARE_TAXA_STATS_LENGTH];
-
-            int taxon2Count = 0;
-            for (Integer taxon2Index : synTaxaIndicesForTaxonIndex) {
-                if ((compareType == SiteCompareType.SAME_STRAND) || (compareType == SiteCompareType.EITHER_STRAND)) {
-                    int[] tempStats = compareGenotypes(taxon1Index, site1, a1, taxon2Index, site2, a2, true);
-                    if (compareStatsSame == null) {
-                        compareStatsSame = new int[COMPARE_STATS_LENGTH];
-                    }
-                    for (int i = 0; i < COMPARE_STATS_LENGTH; i++) {
-                        compareStatsSame[i] += tempStats[i];
-                    }
-                    compareTaxaStatsSame[taxon1Count][taxon2Count][NUM_SITES_COMPARED] = 1;
-                    compareTaxaStatsSame[taxon1Count][taxon2Count][NUM_SITES_DIFF] = tempStats[NUM_TAXA_DIFFERENT];
-                    compareTaxaStatsSame[taxon1Count][taxon2Count][NUM_SITES_HOMOZYGOUS_COMPARED] = tempStats[NUM_TAXA_HOMOZYGOUS_COMPARED];
-                    compareTaxaStatsSame[taxon1Count][taxon2Count][NUM_SITES_HOMOZYGOUS_DIFF] = tempStats[NUM_TAXA_HOMOZYGOUS_DIFF];
-                }
-                taxon2Count++;
-            }
-            taxon1Count++;
-        }
-
-        int[] compareResults= compareStatsSame;
-        addTaxaStats(myCompareStatsTaxa, compareTaxaStatsSame);
-        writeCompareStats(compareResults, alleleString1, alleleString2, compareType, summStats);
-
-        return 1;
-    }
-
-    private void addTaxaStats(int[][][] totals, int[][][] additions) {
-        for (int i = 0; i < totals.length; i++) {
-            for (int j = 0; j < totals[0].length; j++) {
-                for (int k = 0; k < totals[0][0].length; k++) {
-                    totals[i][j][k] += additions[i][j][k];
-                }
-            }
-        }
-    }
-
-    private double calculateF(GenotypeTable a, int site) {
-        byte majAllele = a.majorAllele(site);
-        byte minAllele = a.minorAllele(site);
-        int majGenoCnt = 0, minGenoCnt = 0, hetGenoCnt = 0;
-        int nTaxa = a.numberOfTaxa();
-        // TERRY - Does this make sense?  What if it's het but not major/minor?
-        for (int taxon = 0; taxon < nTaxa; taxon++) {
-            byte[] bases = a.genotypeArray(taxon, site);
-            if ((bases[0] == majAllele) && bases[1] == majAllele) {
-                majGenoCnt++;
-            } else if ((bases[0] == minAllele) && bases[1] == minAllele) {
-                minGenoCnt++;
-            } else if (GenotypeTableUtils.isEqual(bases, new byte[]{majAllele, minAllele})) {
-                hetGenoCnt++;
-            }
-        }
-        int nGenos = hetGenoCnt + majGenoCnt + minGenoCnt;
-        if (nGenos > 0) {
-            double propHets = (double) hetGenoCnt / nGenos;
-            double maf = (double) (2 * majGenoCnt + hetGenoCnt) / (2 * nGenos);
-            double expHets = 2.0 * maf * (1.0 - maf);
-            return 1.0 - (propHets / expHets);
-        } else {
-            return Double.NaN;
-        }
-    }
-
-    private int[] compareGenotypes(int taxon1Index, int site1, GenotypeTable a1, int taxon2Index, int site2, GenotypeTable a2, boolean sameStrand) {
-        int[] compareStats = new int[COMPARE_STATS_LENGTH];
-        byte base1 = a1.genotype(taxon1Index, site1);
-        byte base2;
-        if (sameStrand) {
-            base2 = a2.genotype(taxon2Index, site2);
-        } else {
-            base2 = NucleotideAlignmentConstants.getNucleotideDiploidComplement(a2.genotype(taxon2Index, site2));
-        }
-        if (base1 != GenotypeTable.UNKNOWN_DIPLOID_ALLELE && base2 != GenotypeTable.UNKNOWN_DIPLOID_ALLELE) {
-            if (!(GenotypeTableUtils.isHeterozygous(base1) || GenotypeTableUtils.isHeterozygous(base2))) {
-                if (base1 != base2) {
-                    ++compareStats[NUM_TAXA_DIFFERENT];
-                    ++compareStats[NUM_TAXA_HOMOZYGOUS_DIFF];
-                }
-                ++compareStats[NUM_TAXA_HOMOZYGOUS_COMPARED];
-            } else {
-                if (!GenotypeTableUtils.isEqual(base1, base2)) {
-                    ++compareStats[NUM_TAXA_DIFFERENT];
-                }
-            }
-            ++compareStats[NUM_TAXA_COMPARED];
-        } else {
-            ++compareStats[NUM_TAXA_MISSING];
-        }
-        ++compareStats[NUM_TAXA_POSSIBLE_COMPARISONS];
-        return compareStats;
-    }
-
     private void writeCompareStats(int[] compareStats, String alleles1, String alleles2, SiteCompareType sct, double[] summStats) {
         double errRate = compareStats[NUM_TAXA_COMPARED] > 0 ? (double) compareStats[NUM_TAXA_DIFFERENT] / compareStats[NUM_TAXA_COMPARED] : Double.NaN;
         double errRateHom = compareStats[NUM_TAXA_HOMOZYGOUS_COMPARED] > 0 ? (double) compareStats[NUM_TAXA_HOMOZYGOUS_DIFF] / compareStats[NUM_TAXA_HOMOZYGOUS_COMPARED] : Double.NaN;
@@ -0,0 +1,233 @@
+/*
+ * GenotypeConcordance
+ */
+package net.maizegenetics.analysis.gbs;
+
+import net.maizegenetics.dna.map.Chromosome;
+import net.maizegenetics.dna.map.Position;
+import net.maizegenetics.dna.map.PositionList;
+import net.maizegenetics.dna.snp.GenotypeTable;
+import net.maizegenetics.dna.snp.GenotypeTableUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static net.maizegenetics.analysis.gbs.CompareGenosBetweenHapMapFilesPlugin.*;
+
+/**
+ * Compares the genotypes of pairs of synonymous taxa at the sites two genotype tables have in common. Sites are joined
+ * by a binary search of the second table's PositionList, the taxa pairs are mapped once to index arrays, and each pair
+ * of genotype calls is classified with a precomputed table of all 256 x 256 genotype combinations, so no Strings or
+ * arrays are created per genotype. Chromosomes are compared in parallel.
+ */
+final class GenotypeConcordance {
+
+    //outcome of comparing two genotype calls
+    private static final byte MISSING = 0, HET_SAME = 1, HET_DIFF = 2, HOM_SAME = 3, HOM_DIFF = 4;
+    private static final byte[] OUTCOME = new byte[256 * 256];
+
+    static {
+        for (int g1 = 0; g1 < 256; g1++) {
+            for (int g2 = 0; g2 < 256; g2++) {
+                byte base1 = (byte) g1;
+                byte base2 = (byte) g2;
+                byte outcome;
+                if (base1 == GenotypeTable.UNKNOWN_DIPLOID_ALLELE || base2 == GenotypeTable.UNKNOWN_DIPLOID_ALLELE) {
+                    outcome = MISSING;
+                } else if (!(GenotypeTableUtils.isHeterozygous(base1) || GenotypeTableUtils.isHeterozygous(base2))) {
+                    outcome = (base1 != base2) ? HOM_DIFF : HOM_SAME;
+                } else {
+                    outcome = GenotypeTableUtils.isEqual(base1, base2) ? HET_SAME : HET_DIFF;
+                }
+                OUTCOME[(g1 << 8) | g2] = outcome;
+            }
+        }
+    }
+
+    private final GenotypeTable myGenotypes1;
+    private final GenotypeTable myGenotypes2;
+    private final int[] myTaxa1;
+    private final int[] myTaxa2;
+    private final int[][] myTaxaPairStats;
+
+    /**
+     * @param genotypes1 first genotype table
+     * @param genotypes2 second genotype table
+     * @param taxa1 taxon index in genotypes1 of each taxa pair
+     * @param taxa2 taxon index in genotypes2 of each taxa pair
+     */
+    GenotypeConcordance(GenotypeTable genotypes1, GenotypeTable genotypes2, int[] taxa1, int[] taxa2) {
+        if (taxa1.length != taxa2.length) {
+            throw new IllegalArgumentException("GenotypeConcordance: init: number of taxa1: " + taxa1.length + " doesn't equal number of taxa2: " + taxa2.length);
+        }
+        myGenotypes1 = genotypes1;
+        myGenotypes2 = genotypes2;
+        myTaxa1 = taxa1;
+        myTaxa2 = taxa2;
+        myTaxaPairStats = new int[taxa1.length][COMPARE_TAXA_STATS_LENGTH];
+    }
+
+    /**
+     * Compares every site of the first table that has the same chromosome and position in the second table.
+     *
+     * @return common sites in the order of the first table
+     */
+    List<Site> compareCommonSites() {
+        Chromosome[] chromosomes = myGenotypes1.chromosomes();
+        List<List<Site>> byChromosome = IntStream.range(0, chromosomes.length).parallel()
+                .mapToObj(c -> compareChromosome(chromosomes[c]))
+                .collect(Collectors.toList());
+        List<Site> result = new ArrayList<>();
+        byChromosome.forEach(result::addAll);
+        return result;
+    }
+
+    /**
+     * Totals for each taxa pair over the comparable sites, indexed by NUM_SITES_COMPARED, NUM_SITES_DIFF,
+     * NUM_SITES_HOMOZYGOUS_COMPARED and NUM_SITES_HOMOZYGOUS_DIFF. Valid after compareCommonSites().
+     */
+    int[][] taxaPairStats() {
+        return myTaxaPairStats;
+    }
+
+    private List<Site> compareChromosome(Chromosome chromosome) {
+        int[] firstLast = myGenotypes1.firstLastSiteOfChromosome(chromosome);
+        PositionList positions1 = myGenotypes1.positions();
+        PositionList positions2 = myGenotypes2.positions();
+        int numPairs = myTaxa1.length;
+        int[][] pairStats = new int[numPairs][COMPARE_TAXA_STATS_LENGTH];
+        List<Site> result = new ArrayList<>();
+        for (int site1 = firstLast[0]; site1 <= firstLast[1]; site1++) {
+            Position p1 = positions1.get(site1);
+            int site2 = positions2.siteOfPhysicalPosition(p1.getPosition(), p1.getChromosome());
+            if (site2 < 0) {
+                continue;
+            }
+            if (p1.getStrand() != positions2.get(site2).getStrand()) {
+                result.add(new Site(site1, site2, null, Double.NaN, Double.NaN));
+                continue;
+            }
+            byte[] genotypes1 = myGenotypes1.genotypeAllTaxa(site1);
+            byte[] genotypes2 = myGenotypes2.genotypeAllTaxa(site2);
+            int[] stats = new int[COMPARE_STATS_LENGTH];
+            for (int pair = 0; pair < numPairs; pair++) {
+                int[] taxaStats = pairStats[pair];
+                taxaStats[NUM_SITES_COMPARED]++;
+                switch (OUTCOME[((genotypes1[myTaxa1[pair]] & 0xFF) << 8) | (genotypes2[myTaxa2[pair]] & 0xFF)]) {
+                    case MISSING:
+                        stats[NUM_TAXA_MISSING]++;
+                        break;
+                    case HET_DIFF:
+                        stats[NUM_TAXA_DIFFERENT]++;
+                        taxaStats[NUM_SITES_DIFF]++;
+                        // fall through
+                    case HET_SAME:
+                        stats[NUM_TAXA_COMPARED]++;
+                        break;
+                    case HOM_DIFF:
+                        stats[NUM_TAXA_DIFFERENT]++;
+                        stats[NUM_TAXA_HOMOZYGOUS_DIFF]++;
+                        taxaStats[NUM_SITES_DIFF]++;
+                        taxaStats[NUM_SITES_HOMOZYGOUS_DIFF]++;
+                        // fall through
+                    case HOM_SAME:
+                        stats[NUM_TAXA_COMPARED]++;
+                        stats[NUM_TAXA_HOMOZYGOUS_COMPARED]++;
+                        taxaStats[NUM_SITES_HOMOZYGOUS_COMPARED]++;
+                        break;
+                }
+            }
+            stats[NUM_TAXA_POSSIBLE_COMPARISONS] = numPairs;
+            result.add(new Site(site1, site2, stats, calculateF(genotypes1, myGenotypes1.majorAllele(site1), myGenotypes1.minorAllele(site1)),
+                    calculateF(genotypes2, myGenotypes2.majorAllele(site2), myGenotypes2.minorAllele(site2))));
+        }
+        synchronized (myTaxaPairStats) {
+            for (int pair = 0; pair < numPairs; pair++) {
+                for (int i = 0; i < COMPARE_TAXA_STATS_LENGTH; i++) {
+                    myTaxaPairStats[pair][i] += pairStats[pair][i];
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Inbreeding coefficient from the genotype counts of all taxa at a site
+     */
+    private static double calculateF(byte[] genotypes, byte majAllele, byte minAllele) {
+        int majGenoCnt = 0, minGenoCnt = 0, hetGenoCnt = 0;
+        // TERRY - Does this make sense?  What if it's het but not major/minor?
+        for (byte genotype : genotypes) {
+            int allele0 = (genotype >>> 4) & 0xf;
+            int allele1 = genotype & 0xf;
+            if ((allele0 == majAllele) && allele1 == majAllele) {
+                majGenoCnt++;
+            } else if ((allele0 == minAllele) && allele1 == minAllele) {
+                minGenoCnt++;
+            } else if (((allele0 == majAllele) && (allele1 == minAllele)) || ((allele0 == minAllele) && (allele1 == majAllele))) {
+                hetGenoCnt++;
+            }
+        }
+        int nGenos = hetGenoCnt + majGenoCnt + minGenoCnt;
+        if (nGenos > 0) {
+            double propHets = (double) hetGenoCnt / nGenos;
+            double maf = (double) (2 * majGenoCnt + hetGenoCnt) / (2 * nGenos);
+            double expHets = 2.0 * maf * (1.0 - maf);
+            return 1.0 - (propHets / expHets);
+        } else {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * A site found in both genotype tables
+     */
+    static final class Site {
+
+        private final int mySite1;
+        private final int mySite2;
+        private final int[] myStats;
+        private final double myF1;
+        private final double myF2;
+
+        private Site(int site1, int site2, int[] stats, double f1, double f2) {
+            mySite1 = site1;
+            mySite2 = site2;
+            myStats = stats;
+            myF1 = f1;
+            myF2 = f2;
+        }
+
+        int site1() {
+            return mySite1;
+        }
+
+        int site2() {
+            return mySite2;
+        }
+
+        /**
+         * False if the alleles of the two tables can't be compared (i.e. different strands)
+         */
+        boolean isComparable() {
+            return myStats != null;
+        }
+
+        /**
+         * Totals over all taxa pairs, indexed by NUM_TAXA_POSSIBLE_COMPARISONS, NUM_TAXA_MISSING, etc.
+         */
+        int[] stats() {
+            return myStats;
+        }
+
+        double f1() {
+            return myF1;
+        }
+
+        double f2() {
+            return myF2;
+        }
+    }
+}
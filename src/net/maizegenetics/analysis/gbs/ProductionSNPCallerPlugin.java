@@ -170,6 +170,9 @@ public class ProductionSNPCallerPlugin extends AbstractPlugin {
             myLogger.info("  " + myRawSeqFileNames[fileNum] + "\n");
             previous = System.nanoTime();
             readRawSequencesAndRecordDepth(fileNum, counters);  // TODO: read the machine name from the fastq/qseq file
+            incrementCounter("reads", counters[0]);
+            incrementCounter("goodBarcodedReads", counters[1]);
+            incrementCounter("goodMatchedReads", counters[2]);
             current = System.nanoTime();
             System.out.println("ProductionSNPCallerPlugin: performFunction: readRawSequencesAndRecordDepth: " + myRawSeqFileNames[fileNum] + ": " + ((double) (current - previous) / 1_000_000_000.0) + " sec");
             previous = System.nanoTime();
@@ -0,0 +1,312 @@
+/**
+ *
+ */
+package net.maizegenetics.analysis.gbs.repgen;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.stream.IntStream;
+
+import net.maizegenetics.dna.map.Chromosome;
+import net.maizegenetics.dna.map.GenomeSequence;
+import net.maizegenetics.dna.snp.NucleotideAlignmentConstants;
+import net.maizegenetics.dna.tag.Tag;
+import net.maizegenetics.util.OpenBitSet;
+
+/**
+ * Index of kmer seeds created from DB tags.  Each seed is packed 2 bits per
+ * base (A=0, C=1, G=2, T=3) into a long, so seeds can be at most 32 bases.
+ * Seeds are kept in an open addressing hash table of longs, and each seed
+ * points to the indices of the tags that contain it (see tagIndices()), so
+ * the index can also be used to find candidate tags for a reference
+ * region before SmithWaterman alignment.
+ *
+ * Reference chromosomes are scanned with a rolling 2-bit update, one base at
+ * a time, without creating a kmer byte[] or String per position.
+ */
+final class KmerSeedIndex {
+
+    private static final int EMPTY = -1;
+    private static final int CHUNK_SIZE = 1 << 22; // must be multiple of 64
+
+    private final int mySeedLen;
+    private final long myMask;
+    private final Tag[] myTags;
+    private final long[] myKeys;
+    // index into myTagIndices of first tag for each key, EMPTY if slot unused
+    private final int[] myFirst;
+    private final int[] myTagIndices;
+    private final int[] myNext;
+    private final int myNumSeeds;
+    private final int myNumEntries;
+
+    private KmerSeedIndex(int seedLen, Tag[] tags, long[] keys, int[] first, int[] tagIndices, int[] next, int numSeeds, int numEntries) {
+        mySeedLen = seedLen;
+        myMask = seedLen == 32 ? -1L : (1L << (2 * seedLen)) - 1;
+        myTags = tags;
+        myKeys = keys;
+        myFirst = first;
+        myTagIndices = tagIndices;
+        myNext = next;
+        myNumSeeds = numSeeds;
+        myNumEntries = numEntries;
+    }
+
+    /**
+     * Creates kmer seeds from the DB tags.  A seed of seedLen is taken every
+     * window bases of each tag, along with its reverse complement.  Seeds with
+     * non ACGT values are skipped, and the next seed starts window bases
+     * later.  This is the seeding of RepGenAlignerPlugin.
+     *
+     * @param tags tags
+     * @param seedLen seed length (at most 32)
+     * @param window distance between seed starts
+     *
+     * @return index
+     */
+    static KmerSeedIndex fromTags(Collection<Tag> tags, int seedLen, int window) {
+        return fromTags(tags, seedLen, window, false);
+    }
+
+    /**
+     * Creates kmer seeds from the DB tags.  A seed of seedLen is taken every
+     * window bases of each tag, along with its reverse complement.  Seeds with
+     * non ACGT values are skipped.
+     *
+     * With resyncAfterN, as in RepGenPhase2AlignerPlugin, the next seed after
+     * a skipped one starts just past its first non ACGT value instead of
+     * window bases later, and seeds are taken up to seedLen from the end of
+     * the tag when window is not larger than seedLen.  Otherwise seeds stop
+     * window bases from the end, as in RepGenAlignerPlugin.
+     *
+     * @param tags tags
+     * @param seedLen seed length (at most 32)
+     * @param window distance between seed starts
+     * @param resyncAfterN whether to use the RepGenPhase2AlignerPlugin seeding
+     *
+     * @return index
+     */
+    static KmerSeedIndex fromTags(Collection<Tag> tags, int seedLen, int window, boolean resyncAfterN) {
+
+        if (seedLen < 1 || seedLen > 32) {
+            throw new IllegalArgumentException("KmerSeedIndex: fromTags: seed length must be between 1 and 32: " + seedLen);
+        }
+        if (window < 1) {
+            throw new IllegalArgumentException("KmerSeedIndex: fromTags: window must be positive: " + window);
+        }
+
+        Tag[] tagArray = tags.toArray(new Tag[tags.size()]);
+        long[] seeds = new long[16];
+        int[] seedTags = new int[16];
+        int numEntries = 0;
+        for (int t = 0; t < tagArray.length; t++) {
+            String tagSequence = tagArray[t].sequence();
+            int maxIdx = (resyncAfterN && window <= seedLen) ? tagSequence.length() - seedLen : tagSequence.length() - window;
+            for (int seqIdx = 0; seqIdx < maxIdx;) {
+                if (seqIdx + seedLen > tagSequence.length()) {
+                    break;
+                }
+                long kmer = 0;
+                long rcKmer = 0;
+                int badValue = -1;
+                for (int i = 0; i < seedLen; i++) {
+                    int base = baseValue(tagSequence.charAt(seqIdx + i));
+                    if (base < 0) {
+                        badValue = i;
+                        break;
+                    }
+                    kmer = (kmer << 2) | base;
+                    rcKmer |= (long) (3 - base) << (2 * i);
+                }
+                if (badValue >= 0) {
+                    seqIdx += resyncAfterN ? badValue + 1 : window;
+                    continue;
+                }
+                if (numEntries + 2 > seeds.length) {
+                    seeds = Arrays.copyOf(seeds, seeds.length * 2);
+                    seedTags = Arrays.copyOf(seedTags, seedTags.length * 2);
+                }
+                seeds[numEntries] = kmer;
+                seedTags[numEntries++] = t;
+                if (rcKmer != kmer) {
+                    seeds[numEntries] = rcKmer;
+                    seedTags[numEntries++] = t;
+                }
+                seqIdx += window;
+            }
+        }
+
+        int capacity = Integer.highestOneBit(Math.max(16, numEntries * 2 - 1)) << 1;
+        long[] keys = new long[capacity];
+        int[] first = new int[capacity];
+        Arrays.fill(first, EMPTY);
+        int[] tagIndices = new int[numEntries];
+        int[] next = new int[numEntries];
+        int numSeeds = 0;
+        int numUnique = 0;
+        for (int e = 0; e < numEntries; e++) {
+            int slot = slot(keys, first, seeds[e]);
+            if (first[slot] == EMPTY) {
+                keys[slot] = seeds[e];
+                numSeeds++;
+            } else if (containsTag(tagIndices, next, first[slot], seedTags[e])) {
+                // same seed twice in same tag
+                continue;
+            }
+            tagIndices[numUnique] = seedTags[e];
+            next[numUnique] = first[slot];
+            first[slot] = numUnique++;
+        }
+
+        return new KmerSeedIndex(seedLen, tagArray, keys, first, tagIndices, next, numSeeds, numUnique);
+
+    }
+
+    private static boolean containsTag(int[] tagIndices, int[] next, int entry, int tag) {
+        for (int e = entry; e != EMPTY; e = next[e]) {
+            if (tagIndices[e] == tag) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns slot for key, either where it is or the empty slot where it
+     * belongs.
+     */
+    private static int slot(long[] keys, int[] first, long key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (first[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int baseValue(char base) {
+        switch (base) {
+            case 'A':
+                return 0;
+            case 'C':
+                return 1;
+            case 'G':
+                return 2;
+            case 'T':
+                return 3;
+            default:
+                return -1;
+        }
+    }
+
+    int seedLength() {
+        return mySeedLen;
+    }
+
+    /**
+     * Number of distinct seeds
+     */
+    int numSeeds() {
+        return myNumSeeds;
+    }
+
+    /**
+     * Number of seed / tag pairs
+     */
+    int numEntries() {
+        return myNumEntries;
+    }
+
+    Tag tag(int index) {
+        return myTags[index];
+    }
+
+    boolean contains(long kmer) {
+        return myFirst[slot(myKeys, myFirst, kmer)] != EMPTY;
+    }
+
+    /**
+     * Returns indices (see tag()) of tags containing given packed seed.
+     *
+     * @param kmer packed seed
+     *
+     * @return tag indices (empty if none)
+     */
+    int[] tagIndices(long kmer) {
+        int entry = myFirst[slot(myKeys, myFirst, kmer)];
+        int count = 0;
+        for (int e = entry; e != EMPTY; e = myNext[e]) {
+            count++;
+        }
+        int[] result = new int[count];
+        count = 0;
+        for (int e = entry; e != EMPTY; e = myNext[e]) {
+            result[count++] = myTagIndices[e];
+        }
+        return result;
+    }
+
+    /**
+     * Sets in hits the offset (relative to start) of every kmer in sequence
+     * that matches a seed.  Sequence is allele bytes (see
+     * NucleotideAlignmentConstants) where values over 3 are not ACGT.
+     *
+     * @param sequence reference sequence
+     * @param length number of bases from sequence to scan
+     * @param start offset added to each hit position
+     * @param hits bits set for matching kmer starts
+     *
+     * @return number of hits
+     */
+    int scan(byte[] sequence, int length, long start, OpenBitSet hits) {
+        int result = 0;
+        long kmer = 0;
+        int numValid = 0;
+        for (int i = 0; i < length; i++) {
+            byte base = sequence[i];
+            if (base < 0 || base > NucleotideAlignmentConstants.T_ALLELE) {
+                numValid = 0;
+                continue;
+            }
+            kmer = ((kmer << 2) | base) & myMask;
+            if (++numValid >= mySeedLen && contains(kmer)) {
+                hits.fastSet(start + i - mySeedLen + 1);
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds start positions (0-based) in chromosome of every kmer that
+     * matches a seed.  The chromosome is split into chunks scanned in
+     * parallel.
+     *
+     * @param reference reference genome
+     * @param chrom chromosome
+     *
+     * @return bits set at matching kmer starts
+     */
+    OpenBitSet scanChromosome(GenomeSequence reference, Chromosome chrom) {
+        int chromLength = reference.chromosomeSize(chrom);
+        OpenBitSet result = new OpenBitSet(chromLength);
+        int numChunks = (chromLength + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        // chunks are multiples of 64, so no two chunks set bits in the same word
+        IntStream.range(0, numChunks).parallel().forEach(chunk -> {
+            int start = chunk * CHUNK_SIZE;
+            int last = (int) Math.min((long) chromLength, (long) start + CHUNK_SIZE + mySeedLen - 1);
+            // chromosomeSequence:  start and end are inclusive and 1-based
+            byte[] sequence = reference.chromosomeSequence(chrom, start + 1, last);
+            if (sequence != null) {
+                scan(sequence, Math.min(sequence.length, last - start), start, result);
+            }
+        });
+        return result;
+    }
+
+}
@@ -180,16 +180,13 @@ public class RepGenAlignerPlugin extends AbstractPlugin {
 //                ioe.printStackTrace();
 //            }
                     
-            Multimap<String,Tag> kmerTagMap = HashMultimap.create();
-                          
-            System.out.println("Calling createKmerSeedsFromDBTags with window size: " + seedWindow());
-           // Create map of kmer seeds from db tags
-            createKmerSeedsFromDBTags(tagsWithDepth.keySet(), kmerTagMap,  seedWindow());
-            System.out.println("Num distinct kmerSeeds created: " + kmerTagMap.keySet().size() + 
-                    ", kmerTagMap size is:" + kmerTagMap.size() + ",TotalTime for createKmerSeedsFromDBTags was " + (System.nanoTime() - time) / 1e9 + " seconds");
+            System.out.println("Calling KmerSeedIndex.fromTags with window size: " + seedWindow());
+           // Create index of kmer seeds from db tags
+            KmerSeedIndex kmerSeedIndex = KmerSeedIndex.fromTags(tagsWithDepth.keySet(), seedLen(), seedWindow());
+            System.out.println("Num distinct kmerSeeds created: " + kmerSeedIndex.numSeeds() + 
+                    ", kmer seed tag entries:" + kmerSeedIndex.numEntries() + ",TotalTime for KmerSeedIndex.fromTags was " + (System.nanoTime() - time) / 1e9 + " seconds");
  
             System.out.println("Size of tagsWithDepth: " + tagsWithDepth.size());
-            System.out.println("Size of kmerTagMap keyset: " + kmerTagMap.keySet().size());
             
             time = System.nanoTime();
             // myRefSequence populated in postProcessParameters 
@@ -200,46 +197,22 @@ public class RepGenAlignerPlugin extends AbstractPlugin {
             
             System.out.println("Start making array of chrom bitmaps ");
             // For each chrom in refSequence, walk the refSequence looking for kmers
-            // matching those in the kmerTagMap.  Store hit positions in per-chromosome
+            // matching those in the kmer seed index.  Store hit positions in per-chromosome
             // bitmaps to be used for creating ref tags for aligning.
             
             chromsInRef.parallelStream().forEach(chrom -> { 
                   // Turn this on/off for debug purposes
                   //if (chrom.getChromosomeNumber() != 9) return; // just for initial testing !!! - remove
                                     
-                  int kmersForChrom = 0;
                   int chromLength = myRefSequence.chromosomeSize(chrom);
                   System.out.println("\nChecking reference chrom " + chrom.getName() + ", size: " + chromLength + " for tag kmer matches.");
                   
-                  // create bitmap for this chrom
-                  OpenBitSet chromBits = new OpenBitSet(chromLength);
-                  
-                  for (int chromIdx = 0; chromIdx < chromLength;) {                                       
-                      // chromosomeSequence:  start and end are inclusive and 1-based, adjust for this in call below
-                      int end = Math.min(chromLength, chromIdx+seedLen());
-                      byte[] chromSeedBytes = myRefSequence.chromosomeSequence(chrom,chromIdx+1, end);
-                      // we're not processing from fastq, we're processing from tag table in db
-                      int badValue = checkForN(chromSeedBytes);
-                      if (badValue >=0) {
-                          // found a non-ACGT character,  re-set index and
-                          // grab new kmer from the chromosome
-                          chromIdx += badValue+1; // returned value was at bad base - move beyond it
-                          continue;
-                      }
-                                         
-                      // Convert back to allele string
-                      String chromKmerString = NucleotideAlignmentConstants.nucleotideBytetoString(chromSeedBytes);
-                      // chromKmerBytes were good - check if this kmer exists among our seeds
-                      if (kmerTagMap.containsKey(chromKmerString)){
-                          kmersForChrom++;                         
-                          chromBits.fastSet(chromIdx);  // set position in the bitmap
-                      }                                                 
-                      chromIdx++; // after processing, slide up by 1  
-                  }
+                  // bitmap for this chrom with position of each kmer seed match set
+                  OpenBitSet chromBits = kmerSeedIndex.scanChromosome(myRefSequence, chrom);
 
                   chromBitMaps.put(chrom.getName(), chromBits); 
                   System.out.println("Total tag seeds matching to kmers in chrom " + chrom.getName() + ": " 
-                      + kmersForChrom + ", total fastBits set via cardinality: " + chromBits.cardinality());             
+                      + chromBits.cardinality());             
               });
                          
             // The bitmaps of positions matching a kmer seed start have been calculated for each chrom.
@@ -413,40 +386,6 @@ public class RepGenAlignerPlugin extends AbstractPlugin {
         //writePeakPositions(chrom,peaknum,positionsInPeak);
     }
     
-    private void createKmerSeedsFromDBTags(Set<Tag> tagWithDepth,
-            Multimap<String,Tag> kmerTagMap, int window) {
-        for (Tag tag : tagWithDepth) {
-            String tagSequence = tag.sequence();
-            int maxIdx = tagSequence.length() - window;
-            for (int seqIdx = 0; seqIdx < maxIdx;) {
-                String kmer = tagSequence.substring(seqIdx, seqIdx + seedLen());  
-                byte[] kmerBytesAsNum = NucleotideAlignmentConstants.convertHaplotypeStringToAlleleByteArray(kmer);
-                
-                int badValues = checkForN(kmerBytesAsNum);
-                if (badValues >=0) {
-                    // found a non-ACGT character,  re-set index and
-                    // grab new kmer
-                    //seqIdx += badValues+1;
-                    // just increase by window size, don't care where the bad value is
-                    seqIdx += window;
-                    continue;
-                }
-                // good values - add unique kmer to map
-                kmerTagMap.put(kmer, tag);
-                // add reverse complement of kmer
-                // THis isn't right ... this tag does not have this KMER.
-                // And we need to know it is a reverse complement.  Ed's code
-                // creates rc from the ref genome, and stores the position as negative
-                // We are creating seeds from tags, not the ref genomes.  how to include RC of kmer?
-                byte[] kmerRC = NucleotideAlignmentConstants.reverseComplementAlleleByteArray(kmer.getBytes());
-                String kmerRCString = new String(kmerRC);
-                kmerTagMap.put(kmerRCString, tag); 
-                // loop end - increment seqIdx for next kmer
-                seqIdx += window;
-            }               
-        }
-    }
-
     private void createRefTagsForAlignment(OpenBitSet chromHits, String chrom,
             Multimap<String,Integer> chromMaximaMap, Multimap<Tag,Position> refTagPositionMap) {
         // This doesn't give same value as myRefSequence.chromosomeSize(chrom)
@@ -744,22 +683,6 @@ public class RepGenAlignerPlugin extends AbstractPlugin {
         }); 
         System.out.println("Number of refTags: " + refTags.size() + ", TotalTime for calculateREfRefAlignment was " + (System.nanoTime() - totalTime) / 1e9 + " seconds");
     }
-    // Checks for non ACGT character in kmer.  If found, returns the deviate
-    // position in the array.  If not found, -1 is returned. -1 is good return
-    private int checkForN(byte[] kmer) {
-        boolean flag = false;
-        int idx;
-       // byte[] kmerInBytes = NucleotideAlignmentConstants.convertHaplotypeStringToAlleleByteArray(kmer);
-        for (idx = 0; idx < kmer.length; idx++) {
-            if (kmer[idx] >3) { // non ACGT value
-                flag = true;
-                break;
-            }
-        }
-        if (flag) return idx; // toss sequences with non ACGT value
-        else return -1;
-    }
-
     
     // write to a file for debug
     public static void writeToFile(String chrom, Multimap<String,Integer> chromMaximaMap, int minCount) {
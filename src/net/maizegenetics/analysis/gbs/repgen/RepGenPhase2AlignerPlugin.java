@@ -212,16 +212,14 @@ public class RepGenPhase2AlignerPlugin extends AbstractPlugin {
 //                ioe.printStackTrace();
 //            }
                     
-            Multimap<String,Tag> kmerTagMap = HashMultimap.create();
-                          
-            System.out.println("Calling createKmerSeedsFromDBTags with window size: " + seedWindow());
-           // Create map of kmer seeds from db tags
-            createKmerSeedsFromDBTags(tagsWithDepth.keySet(), kmerTagMap,  seedWindow());
-            System.out.println("Num distinct kmerSeeds created: " + kmerTagMap.keySet().size() + 
-                    ", kmerTagMap size is:" + kmerTagMap.size() + ",TotalTime for createKmerSeedsFromDBTags was " + (System.nanoTime() - time) / 1e9 + " seconds");
+            System.out.println("Calling KmerSeedIndex.fromTags with window size: " + seedWindow());
+           // Create index of kmer seeds from db tags
+            // Phase2 restarts seeding just past an N, and seeds up to seedLen from the tag end
+            KmerSeedIndex kmerSeedIndex = KmerSeedIndex.fromTags(tagsWithDepth.keySet(), seedLen(), seedWindow(), true);
+            System.out.println("Num distinct kmerSeeds created: " + kmerSeedIndex.numSeeds() + 
+                    ", kmer seed tag entries:" + kmerSeedIndex.numEntries() + ",TotalTime for KmerSeedIndex.fromTags was " + (System.nanoTime() - time) / 1e9 + " seconds");
  
             System.out.println("Size of tagsWithDepth: " + tagsWithDepth.size());
-            System.out.println("Size of kmerTagMap keyset: " + kmerTagMap.keySet().size());
             
             time = System.nanoTime();
             // myRefSequence populated in post process parameters           
@@ -248,62 +246,51 @@ public class RepGenPhase2AlignerPlugin extends AbstractPlugin {
                   
                   int refTagsCreated = 0;
                   int noRefTagCreated = 0;
+                  // positions where a reference kmer matches one of the kmer seeds
+                  OpenBitSet seedHits = kmerSeedIndex.scanChromosome(myRefSequence, chrom);
                   for (int chromIdx = 0; chromIdx < chromLength;) {                                       
-                      // chromosomeSequence:  start and end are inclusive and 1-based, adjust for this in call below
-                      // grab seq from ref the length of the kmer seed - check if refSeq matches one of the kmer seeds
-                      int end = Math.min(chromLength, chromIdx+seedLen());
-                      byte[] chromSeedBytes = myRefSequence.chromosomeSequence(chrom,chromIdx+1, end);
-                      int badValue = checkForN(chromSeedBytes);
-                      if (badValue >=0) {
-                          // found a non-ACGT character,  re-set index and
-                          // grab new kmer from the chromosome
-                          chromIdx += badValue+1; // returned value was at bad base - move beyond it
-                          continue;
+                      // move to the next kmer seed match at or after chromIdx
+                      chromIdx = seedHits.nextSetBit(chromIdx);
+                      if (chromIdx < 0) {
+                          break;
+                      }
+                      kmersForChrom++;
+                      // Should chromIdx or chromIdx+1 be passed? 
+                      // grab ref bytes to use when looking for primers
+                      // This is a longer string than above - it is 300 above and 300 below
+                      // where we found a kmer seed match (300 assuming the refAlignLen was 600)
+                      //
+                      // Update from Dan:  expect there to be 200 or less bps' between the
+                      // primer ends.  Here we tested with 300 up and 300 below.  That should
+                      // have covered it.  Let's try 1000 to see if we got better
+                      // then the 600 we originally hard coded
+                      int refHalfLen = refAlignLen/2;
+                      int first= (chromIdx < (refHalfLen)) ? 0 : chromIdx;
+                      int last = Math.min(chromLength, chromIdx + refHalfLen);
+                      byte[] refBytes = myRefSequence.chromosomeSequence(chrom,first+1, last);
+                      String refString = NucleotideAlignmentConstants.nucleotideBytetoString(refBytes);
+                      if (refString == null) {
+                          // bad ref - 
+                          System.out.println("repGenPhase2ALigner:procesData - NULL returned for refString - continue");
+                          chromIdx++;
+                          continue; 
+                      }
+                      int nextChromIdx = createRefTagsForAlignment(chrom, refString, first+1, primerList, refTagPositionMap);
+                      // if we found and created a tag, nextChromIdx tells us at what position within
+                      // the reference string the "end" primer ends.  Add this value to the current
+                      // chromIdx to begin the next kmer seed search.
+                      // If we could not create a ref tag from this position, slide by 1 and restart
+                      // the process of looking for seed kmer matches.  If we didn't find start/end primers
+                      // in the 600bp window surrounding this match, will we find them by moving up just 1?
+                      // Should the default when refTag can't be created be to increment by something greater than 1?
+                      if (nextChromIdx > 0) {
+                          chromIdx += nextChromIdx;
+                          refTagsCreated++;
+                      }
+                      else {
+                          chromIdx++;
+                          noRefTagCreated++;
                       }
-                                         
-                      // Convert back to allele string
-                      String chromKmerString = NucleotideAlignmentConstants.nucleotideBytetoString(chromSeedBytes);
-                      // chromKmerBytes were good - check if this kmer exists among our seeds
-                      if (kmerTagMap.containsKey(chromKmerString)){
-                          kmersForChrom++;
-                          // Should chromIdx or chromIdx+1 be passed? 
-                          // grab ref bytes to use when looking for primers
-                          // This is a longer string than above - it is 300 above and 300 below
-                          // where we found a kmer seed match (300 assuming the refAlignLen was 600)
-                          //
-                          // Update from Dan:  expect there to be 200 or less bps' between the
-                          // primer ends.  Here we tested with 300 up and 300 below.  That should
-                          // have covered it.  Let's try 1000 to see if we got better
-                          // then the 600 we originally hard coded
-                          int refHalfLen = refAlignLen/2;
-                          int first= (chromIdx < (refHalfLen)) ? 0 : chromIdx;
-                          int last = Math.min(chromLength, chromIdx + refHalfLen);
-                          byte[] refBytes = myRefSequence.chromosomeSequence(chrom,first+1, last);
-                          String refString = NucleotideAlignmentConstants.nucleotideBytetoString(refBytes);
-                          if (refString == null) {
-                              // bad ref - 
-                              System.out.println("repGenPhase2ALigner:procesData - NULL returned for refString - continue");
-                              continue; 
-                          }
-                          int nextChromIdx = createRefTagsForAlignment(chrom, refString, first+1, primerList, refTagPositionMap);
-                          // if we found and created a tag, nextChromIdx tells us at what position within
-                          // the reference string the "end" primer ends.  Add this value to the current
-                          // chromIdx to begin the next kmer seed search.
-                          // If we could not create a ref tag from this position, slide by 1 and restart
-                          // the process of looking for seed kmer matches.  If we didn't find start/end primers
-                          // in the 600bp window surrounding this match, will we find them by moving up just 1?
-                          // Should the default when refTag can't be created be to increment by something greater than 1?
-                          if (nextChromIdx > 0) {
-                              chromIdx += nextChromIdx;
-                              refTagsCreated++;
-                          }
-                          else {
-                              chromIdx++;
-                              noRefTagCreated++;
-                          }
-                      } else {
-                          chromIdx++; // look for hit in next position
-                      }                       
                   }
                   
                   System.out.println("Total tag seeds matching to kmers in chrom " + chrom.getName() + ": " 
@@ -412,37 +399,6 @@ public class RepGenPhase2AlignerPlugin extends AbstractPlugin {
         return pmap;
     }
     
-    private void createKmerSeedsFromDBTags(Set<Tag> tagWithDepth,
-            Multimap<String,Tag> kmerTagMap, int window) {
-        for (Tag tag : tagWithDepth) {
-            String tagSequence = tag.sequence();
-            // maxIdx ensures we don't substring beyond the end of the tag.
-            int maxIdx = window > seedLen() ? tagSequence.length() - window : tagSequence.length() - seedLen();
-            for (int seqIdx = 0; seqIdx < maxIdx;) {
-                String kmer = tagSequence.substring(seqIdx, seqIdx + seedLen());  
-                byte[] kmerBytesAsNum = NucleotideAlignmentConstants.convertHaplotypeStringToAlleleByteArray(kmer);
-                
-                int badValues = checkForN(kmerBytesAsNum);
-                if (badValues >=0) {
-                    // found a non-ACGT character,  re-set index and
-                    // grab new kmer
-                    seqIdx += badValues+1; // skip past the bad value
-                    // just increase by window size, don't care where the bad value is
-                    //seqIdx += window;
-                    continue;
-                }
-                // good values - add unique kmer to map
-                kmerTagMap.put(kmer, tag);
-                // add reverse complement of kmer
-                byte[] kmerRC = NucleotideAlignmentConstants.reverseComplementAlleleByteArray(kmer.getBytes());
-                String kmerRCString = new String(kmerRC);
-                kmerTagMap.put(kmerRCString, tag); 
-                // loop end - increment seqIdx for next kmer
-                seqIdx += window;
-            }               
-        }
-    }
-
     private int createRefTagsForAlignment( Chromosome chrom, String refString, int refOffset, List<Tuple<String,String>> primers,
              Multimap<Tag,Position> refTagPositionMap) {
         
@@ -802,22 +758,6 @@ public class RepGenPhase2AlignerPlugin extends AbstractPlugin {
         }); 
         System.out.println("Number of refTags: " + refTags.size() + ", TotalTime for calculateREfRefAlignment was " + (System.nanoTime() - totalTime) / 1e9 + " seconds");
     }
-    // Checks for non ACGT character in kmer.  If found, returns the deviate
-    // position in the array.  If not found, -1 is returned. -1 is good return
-    private int checkForN(byte[] kmer) {
-        boolean flag = false;
-        int idx;
-       // byte[] kmerInBytes = NucleotideAlignmentConstants.convertHaplotypeStringToAlleleByteArray(kmer);
-        for (idx = 0; idx < kmer.length; idx++) {
-            if (kmer[idx] >3) { // non ACGT value
-                flag = true;
-                break;
-            }
-        }
-        if (flag) return idx; // toss sequences with non ACGT value
-        else return -1;
-    }
-
     // This method computes the SW score of a primer or primer-rc sequence
     // against a 600 bp ref tag window.  It returns a Tuple<Integer,Integer>
     // were Tuple.x is the alignment score, and tuple.y is the starting position
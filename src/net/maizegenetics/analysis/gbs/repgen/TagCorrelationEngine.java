@@ -0,0 +1,351 @@
+/**
+ *
+ */
+package net.maizegenetics.analysis.gbs.repgen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import net.maizegenetics.analysis.popgen.LinkageDisequilibrium;
+
+/**
+ * Computes all tag-tag correlations for the tags of a rAmpSeq database.
+ *
+ * Each tag depth vector is converted once to a standardized float row
+ * (mean 0, sum of squares 1), so the Pearson correlation of two tags is the
+ * dot product of their rows.  Spearman's correlation is the same on
+ * standardized average ranks (ties averaged, as commons-math NaturalRanking).
+ * Presence/absence is kept as bits, and both the presence/absence Pearson
+ * (phi) and r-squared come from the 2x2 counts of a popcount.
+ *
+ * Dot products are computed in 64 x 64 tag tiles, blocked over taxa, with
+ * one task per row of tiles.  Pairs that pass the threshold are handed to
+ * the caller in batches on the calling thread, so database writes overlap
+ * with computation.
+ *
+ * Memory is two floats per tag per taxon.
+ */
+final class TagCorrelationEngine {
+
+    private static final int TILE_SIZE = 64;
+    private static final int TAXA_BLOCK_SIZE = 1024;
+    private static final int BATCH_SIZE = 100_000;
+
+    private final int myNumTags;
+    private final int myNumTaxa;
+    private final int myMinTaxa;
+    // standardized depths, null when tag depth is constant across taxa
+    private final float[][] myDepthScores;
+    // standardized ranks, null when tag depth is constant across taxa
+    private final float[][] myRankScores;
+    private final long[][] myPresence;
+    private final int[] myPresenceCounts;
+
+    /**
+     * @param depths depths per taxon for each tag.  All the same length.
+     * @param minTaxa minimum number of taxa for r-squared
+     */
+    TagCorrelationEngine(List<int[]> depths, int minTaxa) {
+        myNumTags = depths.size();
+        myNumTaxa = myNumTags == 0 ? 0 : depths.get(0).length;
+        myMinTaxa = minTaxa;
+        myDepthScores = new float[myNumTags][];
+        myRankScores = new float[myNumTags][];
+        myPresence = new long[myNumTags][];
+        myPresenceCounts = new int[myNumTags];
+        int numWords = (myNumTaxa + 63) >>> 6;
+        for (int t = 0; t < myNumTags; t++) {
+            int[] current = depths.get(t);
+            if (current.length != myNumTaxa) {
+                throw new IllegalArgumentException("TagCorrelationEngine: tag: " + t + " has depths for: " + current.length + " taxa.  Expected: " + myNumTaxa);
+            }
+            double[] values = new double[myNumTaxa];
+            long[] presence = new long[numWords];
+            int count = 0;
+            for (int i = 0; i < myNumTaxa; i++) {
+                values[i] = current[i];
+                if (current[i] > 0) {
+                    presence[i >>> 6] |= 1L << (i & 63);
+                    count++;
+                }
+            }
+            myPresence[t] = presence;
+            myPresenceCounts[t] = count;
+            myDepthScores[t] = standardize(values);
+            myRankScores[t] = standardize(ranks(current));
+        }
+    }
+
+    int numTags() {
+        return myNumTags;
+    }
+
+    /**
+     * Calculates correlations for all pairs of tags (tag1 index less than tag2
+     * index).  Pairs where the absolute value of at least one of the three
+     * correlations is at least minCorrelation are passed to the writer.  If
+     * minCorrelation is zero or less, all pairs are passed.
+     *
+     * @param minCorrelation minimum absolute correlation
+     * @param numThreads number of threads
+     * @param writer called on this thread with each batch
+     */
+    void run(float minCorrelation, int numThreads, Consumer<Batch> writer) throws InterruptedException, ExecutionException {
+
+        int numTiles = (myNumTags + TILE_SIZE - 1) / TILE_SIZE;
+        BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(numThreads * 2);
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<?>> futures = new ArrayList<>(numTiles);
+            for (int rowTile = 0; rowTile < numTiles; rowTile++) {
+                final int tile = rowTile;
+                futures.add(pool.submit(() -> {
+                    processRowTile(tile, minCorrelation, queue);
+                    return null;
+                }));
+            }
+            pool.shutdown();
+
+            while (!pool.isTerminated() || !queue.isEmpty()) {
+                Batch batch = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (batch != null) {
+                    writer.accept(batch);
+                }
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+    }
+
+    private void processRowTile(int rowTile, float minCorrelation, BlockingQueue<Batch> queue) throws InterruptedException {
+
+        int rowStart = rowTile * TILE_SIZE;
+        int rowEnd = Math.min(myNumTags, rowStart + TILE_SIZE);
+        float[] pearsons = new float[TILE_SIZE * TILE_SIZE];
+        float[] spearmans = new float[TILE_SIZE * TILE_SIZE];
+        Batch batch = new Batch();
+
+        for (int colStart = rowStart; colStart < myNumTags; colStart += TILE_SIZE) {
+            int colEnd = Math.min(myNumTags, colStart + TILE_SIZE);
+            dotTile(myDepthScores, rowStart, rowEnd, colStart, colEnd, pearsons);
+            dotTile(myRankScores, rowStart, rowEnd, colStart, colEnd, spearmans);
+
+            for (int i = rowStart; i < rowEnd; i++) {
+                for (int j = Math.max(i + 1, colStart); j < colEnd; j++) {
+                    int index = (i - rowStart) * TILE_SIZE + (j - colStart);
+                    float pearson = myDepthScores[i] == null || myDepthScores[j] == null ? Float.NaN : clamp(pearsons[index]);
+                    float spearman = myRankScores[i] == null || myRankScores[j] == null ? Float.NaN : clamp(spearmans[index]);
+
+                    int n1 = myPresenceCounts[i];
+                    int n2 = myPresenceCounts[j];
+                    int both = bothPresent(myPresence[i], myPresence[j]);
+                    int neither = myNumTaxa - n1 - n2 + both;
+                    int t1Nott2 = n1 - both;
+                    int t2Nott1 = n2 - both;
+                    float presAbs = (float) phi(n1, n2, both);
+
+                    if (minCorrelation > 0.0f
+                            && !(Math.abs(pearson) >= minCorrelation)
+                            && !(Math.abs(spearman) >= minCorrelation)
+                            && !(Math.abs(presAbs) >= minCorrelation)) {
+                        continue;
+                    }
+
+                    // Calculate r-squared based on presence/absence of tags at each taxa.
+                    float r2 = (float) LinkageDisequilibrium.calculateRSqr(neither, t1Nott2, t2Nott1, both, myMinTaxa);
+                    batch.add(i, j, pearson, spearman, presAbs, r2);
+                    if (batch.size() == BATCH_SIZE) {
+                        queue.put(batch);
+                        batch = new Batch();
+                    }
+                }
+            }
+        }
+
+        if (batch.size() != 0) {
+            queue.put(batch);
+        }
+
+    }
+
+    /**
+     * Dot products of rows [rowStart, rowEnd) with rows [colStart, colEnd),
+     * blocked over taxa so both tiles stay in cache.
+     */
+    private void dotTile(float[][] scores, int rowStart, int rowEnd, int colStart, int colEnd, float[] result) {
+        Arrays.fill(result, 0.0f);
+        for (int kStart = 0; kStart < myNumTaxa; kStart += TAXA_BLOCK_SIZE) {
+            int kEnd = Math.min(myNumTaxa, kStart + TAXA_BLOCK_SIZE);
+            for (int i = rowStart; i < rowEnd; i++) {
+                float[] a = scores[i];
+                if (a == null) {
+                    continue;
+                }
+                int offset = (i - rowStart) * TILE_SIZE - colStart;
+                for (int j = colStart; j < colEnd; j++) {
+                    float[] b = scores[j];
+                    if (b == null) {
+                        continue;
+                    }
+                    float sum = 0.0f;
+                    for (int k = kStart; k < kEnd; k++) {
+                        sum += a[k] * b[k];
+                    }
+                    result[offset + j] += sum;
+                }
+            }
+        }
+    }
+
+    private static int bothPresent(long[] a, long[] b) {
+        int result = 0;
+        for (int i = 0; i < a.length; i++) {
+            result += Long.bitCount(a[i] & b[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Pearson correlation of two presence / absence vectors from counts.
+     */
+    private double phi(int n1, int n2, int both) {
+        double n = myNumTaxa;
+        double denominator = (double) n1 * (n - n1) * (double) n2 * (n - n2);
+        if (denominator == 0.0) {
+            return Double.NaN;
+        }
+        return (n * both - (double) n1 * n2) / Math.sqrt(denominator);
+    }
+
+    private static float clamp(float value) {
+        return Math.max(-1.0f, Math.min(1.0f, value));
+    }
+
+    /**
+     * Centers values and scales to sum of squares of one.
+     *
+     * @return standardized values or null if values are constant
+     */
+    private static float[] standardize(double[] values) {
+        int n = values.length;
+        if (n == 0) {
+            return null;
+        }
+        double mean = 0.0;
+        for (double value : values) {
+            mean += value;
+        }
+        mean /= n;
+        double sumSq = 0.0;
+        for (double value : values) {
+            double diff = value - mean;
+            sumSq += diff * diff;
+        }
+        if (sumSq == 0.0) {
+            return null;
+        }
+        double scale = 1.0 / Math.sqrt(sumSq);
+        float[] result = new float[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = (float) ((values[i] - mean) * scale);
+        }
+        return result;
+    }
+
+    /**
+     * Ranks starting at 1 with ties given the average rank.
+     */
+    private static double[] ranks(int[] values) {
+        int[] sorted = Arrays.copyOf(values, values.length);
+        Arrays.sort(sorted);
+        double[] result = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            int first = lowerBound(sorted, values[i]);
+            int last = lowerBound(sorted, values[i] + 1) - 1;
+            result[i] = (first + last) / 2.0 + 1.0;
+        }
+        return result;
+    }
+
+    private static int lowerBound(int[] sorted, int value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Correlations for a batch of tag pairs.  Tags are indices into the list
+     * given to the engine.
+     */
+    static final class Batch {
+
+        private final int[] myTag1 = new int[BATCH_SIZE];
+        private final int[] myTag2 = new int[BATCH_SIZE];
+        private final float[] myPearson = new float[BATCH_SIZE];
+        private final float[] mySpearman = new float[BATCH_SIZE];
+        private final float[] myPresAbsPearson = new float[BATCH_SIZE];
+        private final float[] myR2 = new float[BATCH_SIZE];
+        private int mySize = 0;
+
+        private void add(int tag1, int tag2, float pearson, float spearman, float presAbsPearson, float r2) {
+            myTag1[mySize] = tag1;
+            myTag2[mySize] = tag2;
+            myPearson[mySize] = pearson;
+            mySpearman[mySize] = spearman;
+            myPresAbsPearson[mySize] = presAbsPearson;
+            myR2[mySize++] = r2;
+        }
+
+        int size() {
+            return mySize;
+        }
+
+        int[] tag1() {
+            return myTag1;
+        }
+
+        int[] tag2() {
+            return myTag2;
+        }
+
+        float[] pearson() {
+            return myPearson;
+        }
+
+        float[] spearman() {
+            return mySpearman;
+        }
+
+        float[] presAbsPearson() {
+            return myPresAbsPearson;
+        }
+
+        float[] r2() {
+            return myR2;
+        }
+
+    }
+
+}
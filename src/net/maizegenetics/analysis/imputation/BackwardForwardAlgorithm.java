@@ -6,8 +6,6 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -31,6 +29,8 @@ import net.maizegenetics.analysis.imputation.TransitionProbability;
  *       .calculateBeta()
  *       
  * The either use gamma() to retrieve a List<double[]> of values or use writeGamma(String outputFile) to save the values to an output file.
+ * The transition and emission probabilities are looked up once per position into primitive tables, and alpha and beta are kept in
+ * flat arrays that are reused when calculateAlpha() and calculateBeta() are called again for another taxon.
  */
 public class BackwardForwardAlgorithm {
 	private static final Logger myLogger = Logger.getLogger(BackwardForwardAlgorithm.class);
@@ -40,8 +40,11 @@ public class BackwardForwardAlgorithm {
 	private TransitionProbability myTransitions;
 	private EmissionProbability myEmissions;
 	private double[] initialStateProbability;
-	private List<double[]> alpha;
-	private List<double[]> beta;
+	private int numberOfStates;
+	private int numberOfObs;
+	//alpha and beta for all positions, [t * numberOfStates + state]. The arrays are reused if they are large enough.
+	private double[] alpha = new double[0];
+	private double[] beta = new double[0];
 	
 	/**
 	 * The BackwardForward algorithm is used to calculate the probability of each state at each position.
@@ -54,69 +57,79 @@ public class BackwardForwardAlgorithm {
 	public BackwardForwardAlgorithm calculateAlpha() {
 		int nStates = myTransitions.getNumberOfStates();
 		int nObs = myObservations.length;
-		alpha = new LinkedList<>();
+		alpha = ensureCapacity(alpha, nStates, nObs);
+		TransitionTable transitionTable = new TransitionTable(myTransitions, myTransitions.positions, false);
+		EmissionTable emissionTable = new EmissionTable(myEmissions, nStates, false);
 		
 		//1. initialize: alpha[1](i) = p[i]b[i](O[1]), i = state i
-		double[] aPrior = new double[nStates];
+		double[] emission = emissionTable.probabilities(myObservations[0], 0);
 		for (int s = 0; s < nStates; s++) 
-			aPrior[s] = initialStateProbability[s] * myEmissions.getProbObsGivenState(s, myObservations[0], 0);
-		alpha.add(aPrior);
+			alpha[s] = initialStateProbability[s] * emission[s];
 
 		//2. induction: alpha[t+1](j) = {sum[i=1 to N] alpha[t](i)a[ij]} b[j](O[t+1])
 		for (int t = 1; t < nObs; t++) { //this t is the t+1 in the formula, aPrior = alpha[t]
-			double[] aT = new double[nStates]; //this is alpha[t+1]
-			myTransitions.setNode(t);
+			int prior = (t - 1) * nStates; //this is alpha[t]
+			int current = t * nStates; //this is alpha[t+1]
+			double[][] transition = transitionTable.setNode(t);
+			emission = emissionTable.probabilities(myObservations[t], t);
 			for (int j = 0; j < nStates; j++) {
 				double sumTrans = 0;
-				for (int i = 0; i < nStates; i++) sumTrans += aPrior[i] * myTransitions.getTransitionProbability(i, j);
-				aT[j] = sumTrans * myEmissions.getProbObsGivenState(j, myObservations[t], t);
+				for (int i = 0; i < nStates; i++) sumTrans += alpha[prior + i] * transition[i][j];
+				alpha[current + j] = sumTrans * emission[j];
 			}
 			
-			aT = multiplyArrayByConstantIfSmall(aT);
-			alpha.add(aT);
-			aPrior = aT;
+			multiplyArrayByConstantIfSmall(alpha, current, nStates);
 		}
 		
 		return this;
 	}
 	
-	private double[] multiplyArrayByConstantIfSmall(double[] dblArray) {
-		double minval = Arrays.stream(dblArray).min().getAsDouble();
-		if (minval < 1e-50) {
-			double maxval = Arrays.stream(dblArray).max().getAsDouble();
-			if (maxval < 1e-25) return Arrays.stream(dblArray).map(d -> d*1e25).toArray();
+	private double[] ensureCapacity(double[] values, int nStates, int nObs) {
+		numberOfStates = nStates;
+		numberOfObs = nObs;
+		if (values.length < nStates * nObs) return new double[nStates * nObs];
+		return values;
+	}
+	
+	private static void multiplyArrayByConstantIfSmall(double[] dblArray, int start, int length) {
+		//Math.min and Math.max, so that a NaN is treated the same as by DoubleStream.min() and max()
+		double minval = dblArray[start];
+		double maxval = dblArray[start];
+		for (int i = start + 1; i < start + length; i++) {
+			minval = Math.min(minval, dblArray[i]);
+			maxval = Math.max(maxval, dblArray[i]);
+		}
+		if (minval < 1e-50 && maxval < 1e-25) {
+			for (int i = start; i < start + length; i++) dblArray[i] *= 1e25;
 		}
-		
-		return dblArray;
 	}
 	
 	public BackwardForwardAlgorithm calculateBeta() {
-		LinkedList<double[]> betaTemp = new LinkedList<>();
 		int nStates = myTransitions.getNumberOfStates();
 		int nObs = myObservations.length;
+		beta = ensureCapacity(beta, nStates, nObs);
+		TransitionTable transitionTable = new TransitionTable(myTransitions, myTransitions.positions, false);
+		EmissionTable emissionTable = new EmissionTable(myEmissions, nStates, false);
 		
 		//initialization: beta[T](i) = 1
-		double[] bNext = new double[nStates];
-		Arrays.fill(bNext, 1.0);
-		betaTemp.add(bNext);
+		Arrays.fill(beta, (nObs - 1) * nStates, nObs * nStates, 1.0);
 		
 		//induction: beta[t](i) = sum(j=1 to N): a[i][j]*b[j](O[t+1])*beta[t+1](j)
 		for (int t = nObs - 2; t >= 0; t--) {
-			double[] bT = new double[nStates];
-			myTransitions.setNode(t+1);
+			int current = t * nStates;
+			int next = (t + 1) * nStates;
+			double[][] transition = transitionTable.setNode(t+1);
+			double[] emission = emissionTable.probabilities(myObservations[t + 1], t + 1);
 			for (int i = 0; i < nStates; i++) {
 				double sumStates = 0;
 				for (int j = 0; j < nStates; j++) {
-					sumStates += myTransitions.getTransitionProbability(i, j) * myEmissions.getProbObsGivenState(j, myObservations[t + 1], t + 1) * bNext[j];
+					sumStates += transition[i][j] * emission[j] * beta[next + j];
 				}
 					
-				bT[i] = sumStates;
+				beta[current + i] = sumStates;
 			}
-			bT = multiplyArrayByConstantIfSmall(bT);
-			betaTemp.addFirst(bT);
-			bNext = bT;
+			multiplyArrayByConstantIfSmall(beta, current, nStates);
 		}
-		beta = betaTemp;
 		
 		return this;
 	}
@@ -129,49 +142,36 @@ public class BackwardForwardAlgorithm {
 	
 	public List<double[]> gamma() {
 		List<double[]> gamma = new ArrayList<>();
-		Iterator<double[]> itAlpha = alpha.iterator();
-		Iterator<double[]> itBeta = beta.iterator();
 		
 		//gamma[t](i) = P(q[t] = S[i] | O,model)
 		//gamma[t](i) = alpha[t](i)*beta[t](i) / {sum(j=1 to N): alpha[t](j)*beta[t](j)}
-		while(itAlpha.hasNext()) {
-			double[] alphaArray = itAlpha.next();
-			double[] betaArray = itBeta.next();
-			int n = alphaArray.length;
-			double[] gammaArray = new double[n];
-			for (int i = 0; i < n; i++) gammaArray[i] = alphaArray[i] * betaArray[i];
-			
-			double divisor = Arrays.stream(gammaArray).sum();
-			for (int i = 0; i < n; i++) gammaArray[i] /= divisor;
-			gamma.add(gammaArray);
+		for (int t = 0; t < numberOfObs; t++) {
+			gamma.add(gamma(t, new double[numberOfStates]));
 		}
 		
 		return gamma;
 	}
 	
-	public void writeGamma(String outputFile, String formatString) {
+	private double[] gamma(int t, double[] gammaArray) {
+		int offset = t * numberOfStates;
+		for (int i = 0; i < numberOfStates; i++) gammaArray[i] = alpha[offset + i] * beta[offset + i];
 		
-		Iterator<double[]> itAlpha = alpha.iterator();
-		Iterator<double[]> itBeta = beta.iterator();
-		int counter = 0;
+		double divisor = Arrays.stream(gammaArray).sum();
+		for (int i = 0; i < numberOfStates; i++) gammaArray[i] /= divisor;
+		return gammaArray;
+	}
+	
+	public void writeGamma(String outputFile, String formatString) {
+		double[] gammaArray = new double[numberOfStates];
 		
 		try(BufferedWriter bw = Files.newBufferedWriter(Paths.get(outputFile))) {
-			while(itAlpha.hasNext()) {
-				double[] alphaArray = itAlpha.next();
-				double[] betaArray = itBeta.next();
-				int n = alphaArray.length;
-				double[] gammaArray = new double[n];
-				for (int i = 0; i < n; i++) gammaArray[i] = alphaArray[i] * betaArray[i];
+			for (int t = 0; t < numberOfObs; t++) {
+				gamma(t, gammaArray);
 				
-				double divisor = Arrays.stream(gammaArray).sum();
-				double[] normalizedGamma = Arrays.stream(gammaArray).map(g -> g/divisor).toArray();
-				
-				bw.write(myPositions[counter] + "\t");
-				bw.write(Arrays.stream(normalizedGamma)
+				bw.write(myPositions[t] + "\t");
+				bw.write(Arrays.stream(gammaArray)
 						.mapToObj(dbl -> String.format(formatString, dbl))
 						.collect(Collectors.joining("\t", "", "\n")));
-				
-				counter++;
 			}
 
 		} catch(IOException ioe) {
@@ -208,7 +208,15 @@ public class BackwardForwardAlgorithm {
 		return this;
 	}
 	
-	public List<double[]> alpha() {return alpha;}
+	public List<double[]> alpha() {return byPosition(alpha);}
 	
-	public List<double[]> beta() {return beta;}
+	public List<double[]> beta() {return byPosition(beta);}
+	
+	private List<double[]> byPosition(double[] values) {
+		List<double[]> result = new ArrayList<>(numberOfObs);
+		for (int t = 0; t < numberOfObs; t++) {
+			result.add(Arrays.copyOfRange(values, t * numberOfStates, (t + 1) * numberOfStates));
+		}
+		return result;
+	}
 }
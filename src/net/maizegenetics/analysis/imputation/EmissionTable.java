@@ -0,0 +1,48 @@
+package net.maizegenetics.analysis.imputation;
+
+/**
+ * The probability of an observation given each state, as a primitive array per node. For EmissionProbability itself the
+ * probabilities do not depend on the node, so a row for every observation is calculated once. Subclasses, which may use
+ * the node, are called once per state and node.
+ */
+final class EmissionTable {
+	private final EmissionProbability myEmission;
+	private final boolean isLnScale;
+	private final int numberOfStates;
+	private final double[][] probByObs; //observation in rows, state in columns, null for subclasses
+	private final double[] nodeProb;
+
+	/**
+	 * @param emission	the emission probabilities
+	 * @param numberOfStates	the number of states
+	 * @param lnScale	if true, the table holds the natural log of the probabilities
+	 */
+	EmissionTable(EmissionProbability emission, int numberOfStates, boolean lnScale) {
+		myEmission = emission;
+		isLnScale = lnScale;
+		this.numberOfStates = numberOfStates;
+		nodeProb = new double[numberOfStates];
+		if (emission.getClass() == EmissionProbability.class) {
+			int numberOfObs = emission.probObsGivenState[0].length;
+			probByObs = new double[numberOfObs][numberOfStates];
+			for (int obs = 0; obs < numberOfObs; obs++) {
+				for (int state = 0; state < numberOfStates; state++) {
+					probByObs[obs][state] = lnScale ? emission.getLnProbObsGivenState(state, obs, 0) : emission.getProbObsGivenState(state, obs, 0);
+				}
+			}
+		} else {
+			probByObs = null;
+		}
+	}
+
+	/**
+	 * @return	the probability of obs given each state at this node. The array is reused by later calls and must not be modified.
+	 */
+	double[] probabilities(int obs, int node) {
+		if (probByObs != null) return probByObs[obs];
+		for (int state = 0; state < numberOfStates; state++) {
+			nodeProb[state] = isLnScale ? myEmission.getLnProbObsGivenState(state, obs, node) : myEmission.getProbObsGivenState(state, obs, node);
+		}
+		return nodeProb;
+	}
+}
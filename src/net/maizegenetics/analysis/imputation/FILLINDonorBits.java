@@ -0,0 +1,136 @@
+package net.maizegenetics.analysis.imputation;
+
+import net.maizegenetics.dna.snp.GenotypeTable;
+
+import java.nio.LongBuffer;
+import java.util.stream.IntStream;
+
+import static net.maizegenetics.dna.WHICH_ALLELE.Major;
+import static net.maizegenetics.dna.WHICH_ALLELE.Minor;
+
+/**
+ * Major and minor allele presence bits of all donors in a donor genotypeTable, copied once into a single array.
+ * Each donor is a contiguous row of 64 site blocks, and the major and minor words of a block are next to each
+ * other, so comparing a target to a donor over a range of blocks reads one sequential run of memory.  Nothing
+ * is allocated when donors are compared.  The bits can also be a read only view of a {@link FILLINDonorLibrary}
+ * mapping, so runs using the same library share one copy in the page cache.  Bits computed here are kept in a
+ * long[], which the comparisons index directly.
+ */
+final class FILLINDonorBits {
+
+    private final int numDonors;
+    private final int numWords;
+    //[(donor * numWords + block) * 2] is major, next is minor.  Only one of these is set
+    private final long[] bits;
+    private final LongBuffer mapped;
+
+    FILLINDonorBits(GenotypeTable donorAlign) {
+        numDonors=donorAlign.numberOfTaxa();
+        numWords=donorAlign.allelePresenceForAllSites(0, Major).getNumWords();
+        long[] result=new long[numDonors*numWords*2];
+        IntStream.range(0, numDonors).parallel().forEach(donor -> {
+            long[] mj=donorAlign.allelePresenceForAllSites(donor, Major).getBits();
+            long[] mn=donorAlign.allelePresenceForAllSites(donor, Minor).getBits();
+            int offset=donor*numWords*2;
+            for (int i = 0; i < numWords; i++) {
+                result[offset+2*i]=mj[i];
+                result[offset+2*i+1]=mn[i];
+            }
+        });
+        bits=result;
+        mapped=null;
+    }
+
+    /**
+     * @param numDonors number of donors
+     * @param numWords number of 64 site blocks
+     * @param bits bits in the layout of this class, for example memory mapped.  The words are not copied.
+     */
+    FILLINDonorBits(int numDonors, int numWords, LongBuffer bits) {
+        if(bits.limit()!=numDonors*numWords*2) {
+            throw new IllegalArgumentException("FILLINDonorBits: expected: "+numDonors*numWords*2+" words, but found: "+bits.limit());
+        }
+        this.numDonors=numDonors;
+        this.numWords=numWords;
+        this.bits=null;
+        this.mapped=bits.duplicate();
+        this.mapped.rewind();
+    }
+
+    int numberOfDonors() {
+        return numDonors;
+    }
+
+    int numberOfBlocks() {
+        return numWords;
+    }
+
+    /**
+     * Read only view of all the bits
+     */
+    LongBuffer bits() {
+        return bits!=null ? LongBuffer.wrap(bits).asReadOnlyBuffer() : mapped.asReadOnlyBuffer();
+    }
+
+    /**
+     * Number of sites where both the target and the donor have a known allele.  This is an upper bound on the sites
+     * tested by {@link #mendelErrors} for any pair including this donor.
+     * @param mjT major allele bits of target, starting at firstBlock
+     * @param mnT minor allele bits of target, starting at firstBlock
+     * @param firstBlock index of first 64 site block
+     * @param donor donor index
+     */
+    int sitesInCommon(long[] mjT, long[] mnT, int firstBlock, int donor) {
+        int offset=(donor*numWords+firstBlock)*2;
+        int sites=0;
+        if(bits!=null) {
+            for (int i = 0; i < mjT.length; i++) {
+                sites+=Long.bitCount((mjT[i]|mnT[i])&(bits[offset+2*i]|bits[offset+2*i+1]));
+            }
+        } else {
+            for (int i = 0; i < mjT.length; i++) {
+                sites+=Long.bitCount((mjT[i]|mnT[i])&(mapped.get(offset+2*i)|mapped.get(offset+2*i+1)));
+            }
+        }
+        return sites;
+    }
+
+    /**
+     * Same counts as {@link FILLINImputationUtils#mendelErrorComparison}, but stops once maxErrors is reached.
+     * @param mjT major allele bits of target, starting at firstBlock
+     * @param mnT minor allele bits of target, starting at firstBlock
+     * @param firstBlock index of first 64 site block
+     * @param d1 donor 1
+     * @param d2 donor 2
+     * @param maxErrors stop counting at this number of mendelian errors
+     * @return mendelian errors in the upper 32 bits and sites tested in the lower 32 bits, or -1 if maxErrors reached
+     */
+    long mendelErrors(long[] mjT, long[] mnT, int firstBlock, int d1, int d2, int maxErrors) {
+        int offset1=(d1*numWords+firstBlock)*2;
+        int offset2=(d2*numWords+firstBlock)*2;
+        int errors=0;
+        int testSites=0;
+        if(bits!=null) {
+            for (int i = 0; i < mjT.length; i++) {
+                long mj1=bits[offset1+2*i], mn1=bits[offset1+2*i+1];
+                long mj2=bits[offset2+2*i], mn2=bits[offset2+2*i+1];
+                long siteMask=(mjT[i]|mnT[i])&(mj1|mn1)&(mj2|mn2);
+                errors+=Long.bitCount(siteMask&mjT[i]&(mjT[i]^mj1)&(mjT[i]^mj2));
+                errors+=Long.bitCount(siteMask&mnT[i]&(mnT[i]^mn1)&(mnT[i]^mn2));
+                if(errors>=maxErrors) return -1;
+                testSites+=Long.bitCount(siteMask);
+            }
+        } else {
+            for (int i = 0; i < mjT.length; i++) {
+                long mj1=mapped.get(offset1+2*i), mn1=mapped.get(offset1+2*i+1);
+                long mj2=mapped.get(offset2+2*i), mn2=mapped.get(offset2+2*i+1);
+                long siteMask=(mjT[i]|mnT[i])&(mj1|mn1)&(mj2|mn2);
+                errors+=Long.bitCount(siteMask&mjT[i]&(mjT[i]^mj1)&(mjT[i]^mj2));
+                errors+=Long.bitCount(siteMask&mnT[i]&(mnT[i]^mn1)&(mnT[i]^mn2));
+                if(errors>=maxErrors) return -1;
+                testSites+=Long.bitCount(siteMask);
+            }
+        }
+        return ((long)errors<<32)|testSites;
+    }
+}
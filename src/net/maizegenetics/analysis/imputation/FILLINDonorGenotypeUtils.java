@@ -33,7 +33,7 @@ public class FILLINDonorGenotypeUtils {
         try {
             File d= new File(donorFile);
             boolean containsDonors= false;
-            if (d.isDirectory()) for (File file:new File(donorFile).listFiles()) {if (file.getName().contains(".gc")) containsDonors= true;}
+            if (d.isDirectory()) for (File file:new File(donorFile).listFiles()) {if (isDonorHapmap(file)) containsDonors= true;}
             if (containsDonors) {
                 return loadDonors(donorFile, unimpAlign, minTestSites, verboseOutput);}
             else { return loadDonorAndChunk(donorFile, unimpAlign, appoxSitesPerDonorGenotypeTable, verboseOutput);}
@@ -51,7 +51,7 @@ public class FILLINDonorGenotypeUtils {
 //        String prefilterOld=theDF.getName().split("s\\+")[0]+"s"; //grabs the left side of the file
         ArrayList<File> d=new ArrayList<File>();
         for (File file : theDF.listFiles()) {
-            if(file.getName().contains(".gc")) {d.add(file);}
+            if(isDonorHapmap(file)) {d.add(file);}
 //            if(file.getName().startsWith(prefilter)) {d.add(file);}
 //            if(file.getName().startsWith(prefilterOld)) {d.add(file);}
         }
@@ -60,31 +60,52 @@ public class FILLINDonorGenotypeUtils {
         for (int i = 0; i < d.size(); i++) {
             if(verboseOutput) System.out.println("Starting Read");
             GenotypeTable donorAlign=ImportUtils.readFromHapmap(d.get(i).getPath());
-            ArrayList<Integer> subSites= new ArrayList<>();
-            PositionList donorPositions= donorAlign.positions();
-            for (int j = 0; j < donorAlign.numberOfSites(); j++) {if (targetPositions.siteOfPhysicalPosition(donorPositions.physicalPositions()[j],
-                    donorPositions.chromosome(j)) > -1) subSites.add(j);} //if unimputed contains donorAlign position keep in donor align
-            if (subSites.size()==donorAlign.numberOfSites()) {
-                donorList.add(donorAlign);
-                if (verboseOutput)
-                    System.out.printf("Donor file shares all sites with target:%s taxa:%d sites:%d %n", d.get(i).getPath(), donorAlign.numberOfTaxa(), donorAlign.numberOfSites());
-                continue;
-            }
-            if (subSites.size()<2) {
-                if(verboseOutput) System.out.printf("Donor file contains <2 matching sites and will not be used:%s",d.get(i).getPath());
-                continue;
-            } else {
-                donorAlign= GenotypeTableBuilder.getGenotypeCopyInstance(FilterGenotypeTable.getInstance(donorAlign,Ints.toArray(subSites)));
-                donorList.add(donorAlign);
-                if(verboseOutput) System.out.printf("Donor file sites filtered to match target:%s taxa:%d sites:%d %n",
-                        d.get(i).getPath(), donorAlign.numberOfTaxa(),donorAlign.numberOfSites());
-                if (subSites.size() < minTestSites*2 && verboseOutput) System.out.println("This donor alignment contains " +
-                        "marginally sufficient matching snp positions. Region unlikely to impute well.");
-            }
+            donorAlign=matchTargetSites(donorAlign, d.get(i).getPath(), targetPositions, minTestSites, verboseOutput);
+            if (donorAlign!=null) donorList.add(donorAlign);
         }
         return donorList.toArray(new GenotypeTable[0]);
     }
 
+    /**
+     * True for the donor haplotype files output from FILLINFindHaplotypesPlugin
+     */
+    static boolean isDonorHapmap(File file) {
+        return file.getName().contains(".gc") && !file.getName().endsWith(FILLINDonorLibrary.FILE_SUFFIX);
+    }
+
+    /**
+     * Filters the donor sites to those in the target.
+     * @param donorAlign donor genotypes
+     * @param donorName donor file name for reporting
+     * @param targetPositions positions of the target genotypes
+     * @param minTestSites minimum number of comparable sites, only used for reporting
+     * @param verboseOutput report to system out
+     * @return donorAlign itself if it shares all sites with the target, a filtered copy if it shares some, or null
+     * if it shares fewer than 2 sites
+     */
+    static GenotypeTable matchTargetSites(GenotypeTable donorAlign, String donorName, PositionList targetPositions,
+                                          int minTestSites, boolean verboseOutput) {
+        ArrayList<Integer> subSites= new ArrayList<>();
+        PositionList donorPositions= donorAlign.positions();
+        for (int j = 0; j < donorAlign.numberOfSites(); j++) {if (targetPositions.siteOfPhysicalPosition(donorPositions.physicalPositions()[j],
+                donorPositions.chromosome(j)) > -1) subSites.add(j);} //if unimputed contains donorAlign position keep in donor align
+        if (subSites.size()==donorAlign.numberOfSites()) {
+            if (verboseOutput)
+                System.out.printf("Donor file shares all sites with target:%s taxa:%d sites:%d %n", donorName, donorAlign.numberOfTaxa(), donorAlign.numberOfSites());
+            return donorAlign;
+        }
+        if (subSites.size()<2) {
+            if(verboseOutput) System.out.printf("Donor file contains <2 matching sites and will not be used:%s",donorName);
+            return null;
+        }
+        donorAlign= GenotypeTableBuilder.getGenotypeCopyInstance(FilterGenotypeTable.getInstance(donorAlign,Ints.toArray(subSites)));
+        if(verboseOutput) System.out.printf("Donor file sites filtered to match target:%s taxa:%d sites:%d %n",
+                donorName, donorAlign.numberOfTaxa(),donorAlign.numberOfSites());
+        if (subSites.size() < minTestSites*2 && verboseOutput) System.out.println("This donor alignment contains " +
+                "marginally sufficient matching snp positions. Region unlikely to impute well.");
+        return donorAlign;
+    }
+
     public static GenotypeTable[] loadDonorAndChunk(String donorFile, GenotypeTable unimpAlign, int appoxSitesPerHaplotype, boolean verboseOutput){
         GenotypeTable donorMasterGT=ImportUtils.read(donorFile);
         donorMasterGT=GenotypeTableBuilder.getHomozygousInstance(donorMasterGT);
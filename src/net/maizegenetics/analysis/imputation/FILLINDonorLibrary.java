@@ -0,0 +1,350 @@
+package net.maizegenetics.analysis.imputation;
+
+import net.maizegenetics.dna.WHICH_ALLELE;
+import net.maizegenetics.dna.map.Chromosome;
+import net.maizegenetics.dna.map.GeneralPosition;
+import net.maizegenetics.dna.map.Position;
+import net.maizegenetics.dna.map.PositionList;
+import net.maizegenetics.dna.map.PositionListBuilder;
+import net.maizegenetics.dna.snp.GenotypeTable;
+import net.maizegenetics.dna.snp.GenotypeTableBuilder;
+import net.maizegenetics.dna.snp.ImportUtils;
+import net.maizegenetics.dna.snp.genotypecall.GenotypeCallTableBuilder;
+import net.maizegenetics.taxa.TaxaListBuilder;
+import net.maizegenetics.taxa.Taxon;
+import org.apache.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled library of the donor haplotype files output from FILLINFindHaplotypesPlugin.  The library is written once
+ * into the donor directory, and FILLINImputationPlugin uses it instead of parsing every donor hapmap file again.
+ * Each donor genotypeTable is stored with its taxa, positions, genotypes, and the packed major/minor bits in the
+ * layout of {@link FILLINDonorBits}.  The file is memory mapped read only, and the genotypes and the bits of donors
+ * that share all sites with the target are views of the mapping, so concurrent runs using the same library share one
+ * copy in the page cache.  Donors filtered to the target sites have their bits recomputed.
+ *
+ * The library records the name, size and modification time of each donor file.  When a donor directory is given,
+ * the library is only used if those still match the donor files in the directory.
+ */
+final class FILLINDonorLibrary {
+
+    private static final Logger myLogger = Logger.getLogger(FILLINDonorLibrary.class);
+
+    static final String FILE_SUFFIX = ".fillin.donors";
+    private static final long MAGIC = 0x46494C4C494E444CL; // FILLINDL
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    private FILLINDonorLibrary() {
+        // utility
+    }
+
+    /**
+     * Library filename for a donor directory
+     */
+    static String libraryFile(String donorDir) {
+        return donorDir + File.separator + new File(donorDir).getName() + FILE_SUFFIX;
+    }
+
+    /**
+     * Compiles all donor files in the directory into the library.  The library is written to a temporary file and
+     * moved into place, so runs reading an earlier library are not affected.
+     * @param donorDir directory of donor haplotype files
+     * @return library filename
+     */
+    static String write(String donorDir) {
+        List<File> donorFiles = donorFiles(donorDir);
+        String filename = libraryFile(donorDir);
+        Path temp = Paths.get(filename + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            byte[] sources = sources(donorFiles);
+            buffer.putLong(MAGIC).putInt(VERSION).putInt(sources.length);
+            put(channel, buffer, sources);
+            List<Long> offsets = new ArrayList<>();
+            for (File file : donorFiles) {
+                GenotypeTable donorAlign = ImportUtils.readFromHapmap(file.getPath());
+                if (donorAlign.numberOfTaxa() == 0) continue;
+                FILLINDonorBits bits = new FILLINDonorBits(donorAlign);
+                pad(channel, buffer);
+                offsets.add(position(channel, buffer));
+                byte[] metadata = metadata(file.getName(), donorAlign, bits.numberOfBlocks());
+                if (buffer.remaining() < Integer.BYTES) flush(channel, buffer);
+                buffer.putInt(metadata.length);
+                put(channel, buffer, metadata);
+                pad(channel, buffer);
+                for (int t = 0; t < donorAlign.numberOfTaxa(); t++) {
+                    put(channel, buffer, donorAlign.genotypeAllSites(t));
+                }
+                pad(channel, buffer);
+                LongBuffer words = bits.bits();
+                while (words.hasRemaining()) {
+                    if (buffer.remaining() < Long.BYTES) flush(channel, buffer);
+                    buffer.putLong(words.get());
+                }
+                myLogger.info("FILLINDonorLibrary: write: added: " + file.getName() + " taxa: " + donorAlign.numberOfTaxa() + " sites: " + donorAlign.numberOfSites());
+            }
+            pad(channel, buffer);
+            long footer = position(channel, buffer);
+            if (buffer.remaining() < Integer.BYTES) flush(channel, buffer);
+            buffer.putInt(offsets.size());
+            for (long offset : offsets) {
+                if (buffer.remaining() < Long.BYTES) flush(channel, buffer);
+                buffer.putLong(offset);
+            }
+            if (buffer.remaining() < Long.BYTES) flush(channel, buffer);
+            buffer.putLong(footer);
+            flush(channel, buffer);
+        } catch (IOException e) {
+            throw new IllegalStateException("FILLINDonorLibrary: write: problem writing: " + filename + ". " + e.getMessage());
+        }
+        try {
+            Files.move(temp, Paths.get(filename), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException("FILLINDonorLibrary: write: problem moving: " + temp + " to: " + filename + ". " + e.getMessage());
+        }
+        myLogger.info("FILLINDonorLibrary: write: wrote: " + filename + " from: " + donorFiles.size() + " donor files");
+        return filename;
+    }
+
+    /**
+     * Loads the donors from a library, and filters them to the sites of the target as
+     * {@link FILLINDonorGenotypeUtils#loadDonors(String, GenotypeTable, int, boolean)} does.
+     * @param donorFile library file, or donor directory containing a library
+     * @param unimpAlign target genotypes
+     * @param minTestSites minimum number of comparable sites, only used for reporting
+     * @param verboseOutput report to system out
+     * @return donors, or null if there is no library for donorFile or it is out of date with the donor files
+     */
+    static Donors loadDonors(String donorFile, GenotypeTable unimpAlign, int minTestSites, boolean verboseOutput) {
+        String filename;
+        List<File> donorFiles = null;
+        if (donorFile.endsWith(FILE_SUFFIX)) {
+            filename = donorFile;
+        } else if (new File(donorFile).isDirectory() && new File(libraryFile(donorFile)).exists()) {
+            filename = libraryFile(donorFile);
+            donorFiles = donorFiles(donorFile);
+        } else {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = (size < HEADER_SIZE + Long.BYTES) ? null : map(channel, 0, HEADER_SIZE);
+            if (header == null || header.getLong() != MAGIC || header.getInt() != VERSION) {
+                throw new IllegalStateException("FILLINDonorLibrary: loadDonors: not a donor library file: " + filename);
+            }
+            int sourcesLength = header.getInt();
+            if (donorFiles != null) {
+                byte[] sources = new byte[sourcesLength];
+                map(channel, HEADER_SIZE, sourcesLength).get(sources);
+                if (!Arrays.equals(sources, sources(donorFiles))) {
+                    myLogger.warn("FILLINDonorLibrary: loadDonors: library: " + filename + " does not match the donor files.  Reading donor files.");
+                    return null;
+                }
+            }
+            long footer = map(channel, size - Long.BYTES, Long.BYTES).getLong();
+            ByteBuffer offsets = map(channel, footer, size - Long.BYTES - footer);
+            int numTables = offsets.getInt();
+            PositionList targetPositions = unimpAlign.positions();
+            List<GenotypeTable> genotypes = new ArrayList<>();
+            List<FILLINDonorBits> bits = new ArrayList<>();
+            for (int i = 0; i < numTables; i++) {
+                long offset = offsets.getLong();
+                int metadataLength = map(channel, offset, Integer.BYTES).getInt();
+                byte[] metadata = new byte[metadataLength];
+                map(channel, offset + Integer.BYTES, metadataLength).get(metadata);
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(metadata));
+                String name = in.readUTF();
+                int numTaxa = in.readInt();
+                int numSites = in.readInt();
+                int numWords = in.readInt();
+                TaxaListBuilder taxa = new TaxaListBuilder();
+                for (int t = 0; t < numTaxa; t++) {
+                    taxa.add(new Taxon(in.readUTF()));
+                }
+                Chromosome[] chromosomes = new Chromosome[in.readInt()];
+                for (int c = 0; c < chromosomes.length; c++) {
+                    chromosomes[c] = new Chromosome(in.readUTF());
+                }
+                PositionListBuilder positions = new PositionListBuilder();
+                for (int s = 0; s < numSites; s++) {
+                    GeneralPosition.Builder position = new GeneralPosition.Builder(chromosomes[in.readInt()], in.readInt())
+                            .snpName(in.readUTF());
+                    String variants = in.readUTF();
+                    if (!variants.isEmpty()) position.knownVariants(variants);
+                    position.allele(WHICH_ALLELE.GlobalMajor, in.readByte());
+                    position.allele(WHICH_ALLELE.GlobalMinor, in.readByte());
+                    positions.add(position.build());
+                }
+
+                long genotypeOffset = align(offset + Integer.BYTES + metadataLength);
+                ByteBuffer genotypeBuffer = map(channel, genotypeOffset, (long) numTaxa * numSites);
+                GenotypeCallTableBuilder calls = GenotypeCallTableBuilder.getInstance(genotypeBuffer, numTaxa, numSites);
+                GenotypeTable donorAlign = GenotypeTableBuilder.getInstance(calls.build(), positions.build(), taxa.build());
+
+                long bitsOffset = align(genotypeOffset + (long) numTaxa * numSites);
+                GenotypeTable matched = FILLINDonorGenotypeUtils.matchTargetSites(donorAlign, name, targetPositions, minTestSites, verboseOutput);
+                if (matched == null) continue;
+                genotypes.add(matched);
+                if (matched == donorAlign) {
+                    LongBuffer words = map(channel, bitsOffset, (long) numTaxa * numWords * 2 * Long.BYTES).asLongBuffer();
+                    bits.add(new FILLINDonorBits(numTaxa, numWords, words));
+                } else {
+                    //filtered donors have different blocks
+                    bits.add(null);
+                }
+            }
+            myLogger.info("FILLINDonorLibrary: loadDonors: mapped: " + filename + " donor genotypes used: " + genotypes.size() + " of: " + numTables);
+            return new Donors(genotypes.toArray(new GenotypeTable[0]), bits.toArray(new FILLINDonorBits[0]));
+        } catch (IOException e) {
+            throw new IllegalStateException("FILLINDonorLibrary: loadDonors: problem reading: " + filename + ". " + e.getMessage());
+        }
+    }
+
+    /**
+     * Donor genotypes from a library, with the precomputed bits of those not filtered to the target sites
+     */
+    static final class Donors {
+
+        private final GenotypeTable[] genotypes;
+        private final FILLINDonorBits[] bits;
+
+        private Donors(GenotypeTable[] genotypes, FILLINDonorBits[] bits) {
+            this.genotypes = genotypes;
+            this.bits = bits;
+        }
+
+        GenotypeTable[] genotypes() {
+            return genotypes;
+        }
+
+        /**
+         * @return bits from the library, or null if the donors were filtered to the target sites
+         */
+        FILLINDonorBits bits(int index) {
+            return bits[index];
+        }
+
+    }
+
+    private static List<File> donorFiles(String donorDir) {
+        List<File> result = new ArrayList<>();
+        File[] files = new File(donorDir).listFiles();
+        if (files == null) {
+            throw new IllegalArgumentException("FILLINDonorLibrary: donorFiles: not a directory: " + donorDir);
+        }
+        for (File file : files) {
+            if (FILLINDonorGenotypeUtils.isDonorHapmap(file)) result.add(file);
+        }
+        result.sort((f1, f2) -> f1.getName().compareTo(f2.getName()));
+        return result;
+    }
+
+    /**
+     * Name, size and modification time of the donor files
+     */
+    private static byte[] sources(List<File> donorFiles) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(donorFiles.size());
+        for (File file : donorFiles) {
+            out.writeUTF(file.getName());
+            out.writeLong(file.length());
+            out.writeLong(file.lastModified());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] metadata(String name, GenotypeTable donorAlign, int numWords) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(name);
+        out.writeInt(donorAlign.numberOfTaxa());
+        out.writeInt(donorAlign.numberOfSites());
+        out.writeInt(numWords);
+        for (int t = 0; t < donorAlign.numberOfTaxa(); t++) {
+            out.writeUTF(donorAlign.taxaName(t));
+        }
+        Map<Chromosome, Integer> chromosomeIndices = new HashMap<>();
+        Chromosome[] chromosomes = donorAlign.chromosomes();
+        out.writeInt(chromosomes.length);
+        for (int c = 0; c < chromosomes.length; c++) {
+            out.writeUTF(chromosomes[c].getName());
+            chromosomeIndices.put(chromosomes[c], c);
+        }
+        PositionList positions = donorAlign.positions();
+        for (int s = 0; s < donorAlign.numberOfSites(); s++) {
+            Position position = positions.get(s);
+            out.writeInt(chromosomeIndices.get(position.getChromosome()));
+            out.writeInt(position.getPosition());
+            out.writeUTF(position.getSNPID());
+            String[] variants = position.getKnownVariants();
+            out.writeUTF(variants == null ? "" : String.join("/", variants));
+            out.writeByte(position.getAllele(WHICH_ALLELE.GlobalMajor));
+            out.writeByte(position.getAllele(WHICH_ALLELE.GlobalMinor));
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long align(long position) {
+        return (position + Long.BYTES - 1) & -Long.BYTES;
+    }
+
+    private static long position(FileChannel channel, ByteBuffer buffer) throws IOException {
+        return channel.position() + buffer.position();
+    }
+
+    /**
+     * Pads with zeros so the next value starts at a multiple of 8 bytes
+     */
+    private static void pad(FileChannel channel, ByteBuffer buffer) throws IOException {
+        long position = position(channel, buffer);
+        int padding = (int) (align(position) - position);
+        if (buffer.remaining() < padding) flush(channel, buffer);
+        for (int i = 0; i < padding; i++) buffer.put((byte) 0);
+    }
+
+    private static void put(FileChannel channel, ByteBuffer buffer, byte[] values) throws IOException {
+        int offset = 0;
+        while (offset < values.length) {
+            if (!buffer.hasRemaining()) flush(channel, buffer);
+            int length = Math.min(buffer.remaining(), values.length - offset);
+            buffer.put(values, offset, length);
+            offset += length;
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+}
@@ -81,6 +81,9 @@ public class FILLINFindHaplotypesPlugin extends net.maizegenetics.plugindef.Abst
             .description("Supress system out").build();
     private PluginParameter<Boolean> extendedOutput= new PluginParameter.Builder<>("extOut",false,Boolean.class).guiName("Detailed system out on haplotypes")
             .description("Details of taxa included in each haplotype written to file").build();
+    private PluginParameter<Boolean> donorLibrary= new PluginParameter.Builder<>("donorLib",false,Boolean.class).guiName("Compile donor library")
+            .description("Compile all donor files in the output directory into a memory mapped library ('"+FILLINDonorLibrary.FILE_SUFFIX+"'), "
+                    + "which FILLINImputationPlugin uses instead of reading the donor files").build();
     
     //other parameters
     private boolean verboseOutput= true;
@@ -174,6 +177,7 @@ public class FILLINFindHaplotypesPlugin extends net.maizegenetics.plugindef.Abst
             mna=null;
             System.gc();
         }
+        if (donorLibrary.value()) FILLINDonorLibrary.write(outFileBase.value());
         return null;
      }
     
@@ -843,4 +847,28 @@ public class FILLINFindHaplotypesPlugin extends net.maizegenetics.plugindef.Abst
         extendedOutput = new PluginParameter<>(extendedOutput, value);
         return this;
     }
+
+    /**
+     * Compile all donor files in the output directory into
+     * a memory mapped library used by FILLINImputationPlugin
+     *
+     * @return Compile donor library
+     */
+    public Boolean compileDonorLibrary() {
+        return donorLibrary.value();
+    }
+
+    /**
+     * Set Compile donor library. Compile all donor files in
+     * the output directory into a memory mapped library used
+     * by FILLINImputationPlugin
+     *
+     * @param value Compile donor library
+     *
+     * @return this plugin
+     */
+    public FILLINFindHaplotypesPlugin compileDonorLibrary(Boolean value) {
+        donorLibrary = new PluginParameter<>(donorLibrary, value);
+        return this;
+    }
 }
@@ -20,6 +20,7 @@ import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static net.maizegenetics.dna.snp.GenotypeTable.UNKNOWN_DIPLOID_ALLELE;
 import static net.maizegenetics.dna.WHICH_ALLELE.Major;
@@ -77,7 +78,8 @@ public class FILLINImputationPlugin extends AbstractPlugin {
                     "just those segregating in your material. (ie: don't filter the input)").build();
     private PluginParameter<String> donorFile= new PluginParameter.Builder<>("d",null,String.class).guiName("Donor").required(true)
             .description("Directory containing donor haplotype files from output of FILLINFindHaplotypesPlugin. All files with '.gc' in the filename will be read in, "
-                    + "only those with matching sites are used. Alternately, a single file to use as a donor, will be cut into sub genos in size specified (eg, high density"
+                    + "only those with matching sites are used. If the directory contains an up to date donor library from FILLINFindHaplotypesPlugin, "
+                    + "or the donor library file ('"+FILLINDonorLibrary.FILE_SUFFIX+"') is given, it is used instead. Alternately, a single file to use as a donor, will be cut into sub genos in size specified (eg, high density"
                     + "SNP file for projection").build();
     private PluginParameter<String> outFileBase= new PluginParameter.Builder<>("o",null,String.class).guiName("Output filename").outFile().required(true)
             .description("Output file; hmp.txt.gz and .hmp.h5 accepted.").build();
@@ -166,6 +168,18 @@ public class FILLINImputationPlugin extends AbstractPlugin {
     };
     FILLINImputationAccuracy acc= null; //holds the accuracy information if accuracy flagged
 
+    //prior probabilities of the five Viterbi states
+    private static final double probHeterozygous=0.5;
+    private static final double[] pTrue=new double[]{(1 - probHeterozygous) / 2, .25*probHeterozygous,
+            .5 * probHeterozygous, .25*probHeterozygous, (1 - probHeterozygous) / 2};
+    //Viterbi buffers are reused by each imputation thread
+    private final ThreadLocal<FILLINViterbi> viterbi=ThreadLocal.withInitial(() -> new FILLINViterbi(transition, emission, pTrue));
+
+    //throughput reporting
+    private static final int taxaPerProgressReport=100;
+    private final AtomicInteger taxaImputed=new AtomicInteger();
+    private long imputationStartTime;
+
 
     private static final Logger myLogger = Logger.getLogger(FILLINImputationPlugin.class);
 
@@ -214,8 +228,9 @@ public class FILLINImputationPlugin extends AbstractPlugin {
             unimpAlign= FILLINDonorGenotypeUtils.RemoveSitesThatDoNotMatchMinMaj(donorFile.value(), unimpAlign,verboseOutput);
             donor= donor.subSequence(0, donor.lastIndexOf("."))+".matchMinMaj.hmp.txt.gz";
         }
-        GenotypeTable[] donorAlign=FILLINDonorGenotypeUtils.loadDonors(donor, unimpAlign, minTestSites.value(),
-                verboseOutput,appoxSitesPerDonorGenotypeTable.value());
+        FILLINDonorLibrary.Donors libraryDonors=FILLINDonorLibrary.loadDonors(donor, unimpAlign, minTestSites.value(), verboseOutput);
+        GenotypeTable[] donorAlign=(libraryDonors!=null)?libraryDonors.genotypes():
+                FILLINDonorGenotypeUtils.loadDonors(donor, unimpAlign, minTestSites.value(), verboseOutput,appoxSitesPerDonorGenotypeTable.value());
         if (accuracy.value()) {
             time= System.currentTimeMillis()-time; //holds the time so far
             if (maskKey.value()!=null) maskKeyAlign= ImportUtils.readGuessFormat(maskKey.value());
@@ -226,6 +241,12 @@ public class FILLINImputationPlugin extends AbstractPlugin {
         }
         OpenBitSet[][] conflictMasks=FILLINDonorGenotypeUtils.createMaskForAlignmentConflicts(unimpAlign, donorAlign,
                 verboseOutput);
+        //donor bits are mapped from the donor library or copied once per donor file, and shared by all taxa
+        FILLINDonorBits[] donorBits=new FILLINDonorBits[donorAlign.length];
+        for (int da = 0; da < donorAlign.length; da++) {
+            if(libraryDonors!=null) donorBits[da]=libraryDonors.bits(da);
+            if(donorBits[da]==null) donorBits[da]=new FILLINDonorBits(donorAlign[da]);
+        }
 
         System.out.printf("Unimputed taxa:%d sites:%d %n",unimpAlign.numberOfTaxa(),unimpAlign.numberOfSites());
         System.out.println("Creating Export GenotypeTable:"+outFileBase.value());
@@ -242,12 +263,14 @@ public class FILLINImputationPlugin extends AbstractPlugin {
         int numThreads = Runtime.getRuntime().availableProcessors();
         System.out.println("Time to read in files and generate masks: "+((System.currentTimeMillis()-time)/1000)+" sec");
         ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        taxaImputed.set(0);
+        imputationStartTime=System.currentTimeMillis();
         
         for (int taxon = 0; taxon < unimpAlign.numberOfTaxa(); taxon+=1) {
             int[] trackBlockNN= new int[5];//global variable to track number of focus blocks solved in NN search for system out; index 0 is inbred, 1 is viterbi, 2 is smash, 3 is not solved, 4 is total for all modes
             ImputeOneTaxon theTaxon= (((double)unimpAlign.heterozygousCountForTaxon(taxon)/(double)unimpAlign.totalNonMissingForTaxon(taxon))<hetThresh.value())?
-                new ImputeOneTaxon(taxon, donorAlign, minTestSites.value(), conflictMasks,imputeDonorFile.value(), mna, trackBlockNN, maxInbredErrFocusHomo, maxHybridErrFocusHomo, maxSmashErrFocusHomo, true):
-                    new ImputeOneTaxon(taxon, donorAlign, minTestSites.value(), conflictMasks,imputeDonorFile.value(), mna, trackBlockNN, maxInbredErrFocusHet, 0, maxSmashErrFocusHet, false);
+                new ImputeOneTaxon(taxon, donorAlign, donorBits, minTestSites.value(), conflictMasks,imputeDonorFile.value(), mna, trackBlockNN, maxInbredErrFocusHomo, maxHybridErrFocusHomo, maxSmashErrFocusHomo, true):
+                    new ImputeOneTaxon(taxon, donorAlign, donorBits, minTestSites.value(), conflictMasks,imputeDonorFile.value(), mna, trackBlockNN, maxInbredErrFocusHet, 0, maxSmashErrFocusHet, false);
             //        theTaxon.run(); //retained to provide a quick way to debug.  uncomment to help in debugging.
             pool.execute(theTaxon);
         }
@@ -267,6 +290,7 @@ public class FILLINImputationPlugin extends AbstractPlugin {
         double runtime= (double)(System.currentTimeMillis()-time)/(double)1000;
         System.out.printf("%d %g %d %n",minMinorCnt.value(), maximumInbredError.value(), maxDonorHypotheses.value());
         System.out.println("Runtime: "+runtime+" seconds");
+        System.out.printf("Imputed %d taxa at %.1f taxa/min %n", taxaImputed.get(), taxaPerMinute(taxaImputed.get()));
         GenotypeTable out= null;
         if(isOutputProjection.value()) {
             out= ((ProjectionBuilder) mna).build();
@@ -287,9 +311,25 @@ public class FILLINImputationPlugin extends AbstractPlugin {
         return new DataSet(new Datum("outFile",out,null),null);
     }
 
+    /**
+     * Imputation throughput since the thread pool started
+     */
+    private double taxaPerMinute(int taxa) {
+        double minutes=(double)(System.currentTimeMillis()-imputationStartTime)/60000.0;
+        return (minutes>0)?(double)taxa/minutes:0;
+    }
+
+    private void reportProgress() {
+        int done=taxaImputed.incrementAndGet();
+        if(done%taxaPerProgressReport==0 || done==unimpAlign.numberOfTaxa()) {
+            myLogger.info(String.format("Imputed %d of %d taxa: %.1f taxa/min", done, unimpAlign.numberOfTaxa(), taxaPerMinute(done)));
+        }
+    }
+
     private class ImputeOneTaxon implements Runnable{
         int taxon;
         GenotypeTable[] donorAlign;
+        FILLINDonorBits[] donorBits;
         int minSitesPresent;
         OpenBitSet[][] conflictMasks;
         boolean imputeDonorFile;
@@ -302,10 +342,11 @@ public class FILLINImputationPlugin extends AbstractPlugin {
         double focusSmashErr; //threshold for haplotype combination in focus block mode
         boolean hetsMiss; //for inbred lines in two haplotype combination, set hets to missing because likely error. for heterozygous, impute estimated hets in focus block mode
         
-        public ImputeOneTaxon(int taxon, GenotypeTable[] donorAlign, int minSitesPresent, OpenBitSet[][] conflictMasks,
+        public ImputeOneTaxon(int taxon, GenotypeTable[] donorAlign, FILLINDonorBits[] donorBits, int minSitesPresent, OpenBitSet[][] conflictMasks,
             boolean imputeDonorFile, Object mna, int[] trackBlockNN, double focusInbErr, double focusHybridErr, double focusSmashErr, boolean hetsToMissing) {
             this.taxon=taxon;
             this.donorAlign=donorAlign;
+            this.donorBits=donorBits;
             this.minSitesPresent=minSitesPresent;
             this.conflictMasks=conflictMasks;
             this.imputeDonorFile=imputeDonorFile;
@@ -364,11 +405,11 @@ public class FILLINImputationPlugin extends AbstractPlugin {
                 impTaxon.setSegmentSolved(false);
 
                 //tries to solve the entire donorAlign region by Virterbi or Inbred
-                impTaxon=solveEntireDonorRegion(taxon, donorAlign[da], donorOffset, regionHypthInbred, impTaxon, maskedTargetBits, maxHybridErrorRate.value(), targetToDonorDistances);
+                impTaxon=solveEntireDonorRegion(taxon, donorAlign[da], donorBits[da], donorOffset, regionHypthInbred, impTaxon, maskedTargetBits, maxHybridErrorRate.value(), targetToDonorDistances);
                 if(impTaxon.isSegmentSolved()) {countFullLength++; continue;}
 
                 //resorts to solving block by block, first by inbred, then by viterbi, and then by hybrid
-                impTaxon=solveByBlockNearestNeighbor(impTaxon, taxon, donorAlign[da], donorOffset, regionHypthInbred, hybridNN.value(), maskedTargetBits, minMinorCnt.value(), focusInbredErr, focusHybridErr, focusSmashErr, donorIndices, trackBlockNN, hetsMiss);
+                impTaxon=solveByBlockNearestNeighbor(impTaxon, taxon, donorAlign[da], donorBits[da], donorOffset, regionHypthInbred, hybridNN.value(), maskedTargetBits, minMinorCnt.value(), focusInbredErr, focusHybridErr, focusSmashErr, donorIndices, trackBlockNN, hetsMiss);
                 if(impTaxon.isSegmentSolved()) {countByFocus++;}
             }
             double totalFocus= (double)trackBlockNN[3]+(double)trackBlockNN[4];
@@ -385,6 +426,7 @@ public class FILLINImputationPlugin extends AbstractPlugin {
                 projBuilder.addTaxon(unimpAlign.taxa().get(taxon),impTaxon.getBreakPoints());
             }
             if(verboseOutput) System.out.println(sb.toString());
+            reportProgress();
         }
     }
 
@@ -398,6 +440,7 @@ public class FILLINImputationPlugin extends AbstractPlugin {
      *
      * @param taxon
      * @param donorAlign
+     * @param donorBits
      * @param donorOffset
      * @param regionHypoth
      * @param impT
@@ -405,7 +448,7 @@ public class FILLINImputationPlugin extends AbstractPlugin {
      * @param maxHybridErrorRate
      * @return
      */
-    private ImputedTaxon solveEntireDonorRegion(int taxon, GenotypeTable donorAlign, int donorOffset,
+    private ImputedTaxon solveEntireDonorRegion(int taxon, GenotypeTable donorAlign, FILLINDonorBits donorBits, int donorOffset,
                 DonorHypoth[][] regionHypoth, ImputedTaxon impT, BitSet[] maskedTargetBits, double maxHybridErrorRate, byte[][][] targetToDonorDistances) {
 
         int blocks=maskedTargetBits[0].getNumWords();
@@ -419,12 +462,12 @@ public class FILLINImputationPlugin extends AbstractPlugin {
         int[] testList=FILLINImputationUtils.fillInc(0,donorAlign.numberOfTaxa()-1);
         int[] bestDonorList=Arrays.copyOfRange(d,0,Math.min(d.length,5));
         DonorHypoth[] bestDBasedOnBest=FILLINImputationUtils.findHeterozygousDonorHypoth(taxon, maskedTargetBits[0].getBits(),
-                maskedTargetBits[1].getBits(), 0, blocks-1, blocks/2, donorAlign, bestDonorList, testList, maxDonorHypotheses.value(), minTestSites.value());
+                maskedTargetBits[1].getBits(), 0, blocks-1, blocks/2, donorBits, bestDonorList, testList, maxDonorHypotheses.value(), minTestSites.value());
 
         //make all combinations of best donor and find the the pairs that minimize errors
         //with the true switch also will make inbreds
         DonorHypoth[] best2Dsearchdonors=FILLINImputationUtils.findHeterozygousDonorHypoth(taxon, maskedTargetBits[0].getBits(),
-                maskedTargetBits[1].getBits(), 0, blocks-1, blocks/2, donorAlign, d, d, maxDonorHypotheses.value(), minTestSites.value());
+                maskedTargetBits[1].getBits(), 0, blocks-1, blocks/2, donorBits, d, d, maxDonorHypotheses.value(), minTestSites.value());
         DonorHypoth[] best2donors=FILLINImputationUtils.combineDonorHypothArrays(maxDonorHypotheses.value(),bestDBasedOnBest,best2Dsearchdonors);
         if(testing==1) System.out.println(Arrays.toString(best2donors));
         ArrayList<DonorHypoth> goodDH=new ArrayList<DonorHypoth>();
@@ -433,7 +476,7 @@ public class FILLINImputationPlugin extends AbstractPlugin {
             if(dh.isInbred() && (dh.getErrorRate()<maximumInbredError.value())) {
                 goodDH.add(dh);
             } else if(dh.getErrorRate()<maxHybridErrorRate) {
-                dh=getStateBasedOnViterbi(dh, donorOffset, donorAlign, twoWayViterbi, transition);
+                dh=getStateBasedOnViterbi(dh, donorOffset, donorAlign, twoWayViterbi);
                 if(dh!=null) goodDH.add(dh);
             }
         }
@@ -458,7 +501,7 @@ public class FILLINImputationPlugin extends AbstractPlugin {
      * @param targetTaxon
      * @param regionHypth
      */
-    private ImputedTaxon solveByBlockNearestNeighbor(ImputedTaxon impT, int targetTaxon, GenotypeTable donorAlign,
+    private ImputedTaxon solveByBlockNearestNeighbor(ImputedTaxon impT, int targetTaxon, GenotypeTable donorAlign, FILLINDonorBits donorBits,
                int donorOffset, DonorHypoth[][] regionHypth, boolean hybridMode, BitSet[] maskedTargetBits, int minMinorCnt, double focusInbredErr, double focusHybridErr, double focusSmashErr, int[] donorIndices, int[] blockNN, boolean hetsToMiss) {
         int[] currBlocksSolved= new int[5];//track number of focus blocks solved in NN search for system out; index 0 is inbred, 1 is viterbi, 2 is smash, 3 is not solved, 4 is total for all modes
         int blocks=maskedTargetBits[0].getNumWords();
@@ -472,7 +515,7 @@ public class FILLINImputationPlugin extends AbstractPlugin {
 //            DonorHypoth[] best2donors=getBestHybridDonors(targetTaxon, maskedTargetBits[0].getBits(resultRange[0], resultRange[2]),
 //                        maskedTargetBits[1].getBits(resultRange[0], resultRange[2]), resultRange[0], resultRange[2], focusBlock, donorAlign, d, d, true);
             DonorHypoth[] best2donors=FILLINImputationUtils.findHeterozygousDonorHypoth(targetTaxon, maskedTargetBits[0].getBits(resultRange[0], resultRange[2]),
-                    maskedTargetBits[1].getBits(resultRange[0], resultRange[2]), resultRange[0], resultRange[2], focusBlock, donorAlign, d, d, (int)maxDonorHypotheses.value(), (int)minTestSites.value());
+                    maskedTargetBits[1].getBits(resultRange[0], resultRange[2]), resultRange[0], resultRange[2], focusBlock, donorBits, d, d, (int)maxDonorHypotheses.value(), (int)minTestSites.value());
 
 
             if(best2donors[0]==null) {currBlocksSolved[3]++; continue; } //no good hybrid donors for the focus block
@@ -486,7 +529,7 @@ public class FILLINImputationPlugin extends AbstractPlugin {
                     if(dh.isInbred() && (dh.getErrorRate()<focusInbredErr)) {
                         goodDH.add(dh);
                     } else if(dh.getErrorRate()<focusHybridErr) {
-                        dh=getStateBasedOnViterbi(dh, donorOffset, donorAlign, twoWayViterbi, transition);
+                        dh=getStateBasedOnViterbi(dh, donorOffset, donorAlign, twoWayViterbi);
                         if(dh!=null) goodDH.add(dh);
                         if (top) vit= true;
                     }
@@ -530,8 +573,7 @@ public class FILLINImputationPlugin extends AbstractPlugin {
         return impT;
     }
 
-    private DonorHypoth getStateBasedOnViterbi(DonorHypoth dh, int donorOffset, GenotypeTable donorAlign, boolean forwardReverse,
-                                               double[][] trans) {
+    private DonorHypoth getStateBasedOnViterbi(DonorHypoth dh, int donorOffset, GenotypeTable donorAlign, boolean forwardReverse) {
         //Get the coordinates
         int endSite=(dh.endSite>=donorAlign.numberOfSites())?donorAlign.numberOfSites()-1: dh.endSite;
         int sites=endSite-dh.startSite+1;
@@ -544,11 +586,11 @@ public class FILLINImputationPlugin extends AbstractPlugin {
         if(informative==null) return null;
         //Find the most likely states by Virterbi
         int chrlength = donorAlign.chromosomalPosition(endSite) - donorAlign.chromosomalPosition(dh.startSite);
-        byte[] callsF=callsFromViterbi(trans, chrlength/sites, informative);
+        byte[] callsF=callsFromViterbi(chrlength/sites, informative);
         DonorHypoth dh2=new DonorHypoth(dh.targetTaxon,dh.donor1Taxon, dh.donor2Taxon, dh.startBlock, dh.focusBlock, dh.endBlock);
         dh2.phasedResults= callsF;
         if (forwardReverse) {
-            byte[] callsR=callsFromViterbi(trans, chrlength/sites, StatePositionChain.reverseInstance(informative));
+            byte[] callsR=callsFromViterbi(chrlength/sites, StatePositionChain.reverseInstance(informative));
             ArrayUtils.reverse(callsR);  //These are now in same direction as callsF
             byte[] callsC=new byte[callsF.length];
             System.arraycopy(callsR,0,callsC,0,callsC.length/2);
@@ -558,26 +600,17 @@ public class FILLINImputationPlugin extends AbstractPlugin {
         return dh2;
     }
 
-    private byte[] callsFromViterbi(double[][] trans, int avgChrLength, StatePositionChain informative) {
+    private byte[] callsFromViterbi(int avgChrLength, StatePositionChain informative) {
         //There is no EM optimization of Viterbi, clearly something that could be changed
-        TransitionProbability tpF = new TransitionProbability();
-        EmissionProbability ep = new EmissionProbability();
-        tpF.setTransitionProbability(trans);
-        ep.setEmissionProbability(emission);
-        final double probHeterozygous=0.5;
-        final double phom = (1 - probHeterozygous) / 2;
-        final double[] pTrue = new double[]{phom, .25*probHeterozygous ,.5 * probHeterozygous, .25*probHeterozygous, phom};
-        tpF.setAverageSegmentLength(avgChrLength);
-        tpF.setPositions(informative.informSites);
-        ViterbiAlgorithm vaF = new ViterbiAlgorithm(informative.informStates, tpF, ep, pTrue);
-        vaF.calculate();
-        byte[] resultStatesF=vaF.getMostProbableStateSequence();
+        //the states are in a buffer reused by this thread
+        byte[] resultStatesF=viterbi.get().mostProbableStates(informative.informStates, informative.informSites, avgChrLength);
+        int lastState=informative.informStates.length-1;
         int currPos=0;
         //converts the informative states back to all states
         byte[] callsF=new byte[informative.totalSiteCnt];
         for(int cs=0; cs<informative.totalSiteCnt; cs++) {
             callsF[cs]=(resultStatesF[currPos]==1)?(byte)1:(byte)(resultStatesF[currPos]/2); //converts the scale back to 0,1,2 from 0..4
-            if((informative.informSites[currPos]<cs+informative.startSite)&&(currPos<resultStatesF.length-1)) currPos++;
+            if((informative.informSites[currPos]<cs+informative.startSite)&&(currPos<lastState)) currPos++;
         }
         return callsF;
     }
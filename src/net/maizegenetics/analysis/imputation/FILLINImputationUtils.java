@@ -252,6 +252,96 @@ public class FILLINImputationUtils {
         return result;
     }
 
+    /**
+     *
+     * Two dimensional test of donors using the precomputed donor bits.  Tests the same donor pairs as
+     * {@link #findHeterozygousDonorHypoth(int, long[], long[], int, int, int, GenotypeTable, int[], int[], int, int)}
+     * and returns hypotheses with the same error rates, but pairs that cannot make the list are skipped.  The sites
+     * a pair can test are at most the sites the target shares with either donor (by popcount), so once the list is
+     * full, a pair is dropped when even zero errors over those sites would be worse than the last hypothesis, and
+     * the Mendelian error count stops as soon as it is too high.  Pairs with equal error rates may be kept in a
+     * different order.
+     * @param targetTaxon index of target taxon only used to annotated DonorHypoth
+     * @param mjT masked bitset for the major allele from firstBlock to lastBlock
+     * @param mnT  masked bitset for the minor allele from firstBlock to lastBlock
+     * @param firstBlock index of first 64 site block
+     * @param lastBlock  inclusive index of last 64 site block
+     * @param focusBlock index of the focus block (only used for annotation of DonorHypoth)
+     * @param donorBits precomputed bits of potential donor genotypes
+     * @param donor1Indices first potential donors
+     * @param donor2Indices second potential donors
+     * @param maxDonorHypotheses maximum number of donor hypotheses to retain
+     * @param minTestSites minimum number of comparable sites to be included the analysis
+     * @return  array of DonorHypoth sorted by error rate
+     */
+    static DonorHypoth[] findHeterozygousDonorHypoth(int targetTaxon, long[] mjT, long[] mnT,
+                 int firstBlock, int lastBlock, int focusBlock, FILLINDonorBits donorBits, int[] donor1Indices, int[] donor2Indices,
+                                                            int maxDonorHypotheses, int minTestSites) {
+        MinMaxPriorityQueue<DonorHypoth> bestDonors=MinMaxPriorityQueue.orderedBy(DonorHypoth.byErrorRateOrdering)
+                .maximumSize(maxDonorHypotheses).create();
+        int[] d1s=Arrays.stream(donor1Indices).sorted().distinct().toArray();
+        int[] d2s=Arrays.stream(donor2Indices).sorted().distinct().toArray();
+        int[] sites1=new int[d1s.length];
+        int[] sites2=new int[d2s.length];
+        for (int i = 0; i < d1s.length; i++) {sites1[i]=donorBits.sitesInCommon(mjT, mnT, firstBlock, d1s[i]);}
+        for (int j = 0; j < d2s.length; j++) {sites2[j]=donorBits.sitesInCommon(mjT, mnT, firstBlock, d2s[j]);}
+        for (int i = 0; i < d1s.length; i++) {
+            int d1=d1s[i];
+            if(sites1[i]<minTestSites) continue;
+            if(isWorseThanAll(bestDonors, maxDonorHypotheses, 0, sites1[i])) continue;
+            for (int j = 0; j < d2s.length; j++) {
+                int d2=d2s[j];
+                //pair (d2,d1) is tested when d2 is also a first donor and d1 also a second donor
+                if(d2<d1 && Arrays.binarySearch(d1s,d2)>=0 && Arrays.binarySearch(d2s,d1)>=0) continue;
+                int maxSites=Math.min(sites1[i],sites2[j]);
+                if(maxSites<minTestSites) continue;
+                int maxErrors=Integer.MAX_VALUE;
+                if(bestDonors.size()>=maxDonorHypotheses) {
+                    if(isWorseThanAll(bestDonors, maxDonorHypotheses, 0, maxSites)) continue;
+                    maxErrors=minErrorsWorseThanAll(bestDonors.peekLast().getErrorRate(), maxSites);
+                }
+                long mendErr=donorBits.mendelErrors(mjT, mnT, firstBlock, d1, d2, maxErrors);
+                if(mendErr<0) continue;
+                int errors=(int)(mendErr>>>32);
+                int testSites=(int)mendErr;
+                if(testSites<minTestSites) continue;
+                if(isWorseThanAll(bestDonors, maxDonorHypotheses, errors, testSites)) continue;
+                //donor1 is always the lower index, as in the HashMultimap of pairs
+                bestDonors.add(new DonorHypoth(targetTaxon, Math.min(d1,d2), Math.max(d1,d2), firstBlock, focusBlock, lastBlock, testSites, errors));
+            }
+        }
+        DonorHypoth[] result=bestDonors.toArray(new DonorHypoth[0]);
+        Arrays.sort(result,DonorHypoth.byErrorRateOrdering);  //Ques keep the top values, but not ordered
+        return result;
+    }
+
+    /**
+     * Error rate as calculated by DonorHypoth
+     */
+    private static double errorRate(long mendelianErrors, int totalSites) {
+        return ((double)mendelianErrors+0.5) / (double) totalSites;
+    }
+
+    /**
+     * True if the queue is full, and a hypothesis with these errors and sites would be dropped from it
+     */
+    private static boolean isWorseThanAll(MinMaxPriorityQueue<DonorHypoth> bestDonors, int maxDonorHypotheses,
+                                          int mendelianErrors, int totalSites) {
+        if(bestDonors.size()<maxDonorHypotheses) return false;
+        return errorRate(mendelianErrors, totalSites)>bestDonors.peekLast().getErrorRate();
+    }
+
+    /**
+     * Smallest number of errors that is worse than worstErrorRate for every test of at most maxSites
+     */
+    private static int minErrorsWorseThanAll(double worstErrorRate, int maxSites) {
+        if(Double.isNaN(worstErrorRate) || Double.isInfinite(worstErrorRate)) return Integer.MAX_VALUE;
+        long errors=Math.max(0L, (long)Math.floor(worstErrorRate*maxSites-0.5));
+        while(errors>0 && errorRate(errors-1, maxSites)>worstErrorRate) errors--;
+        while(!(errorRate(errors, maxSites)>worstErrorRate)) errors++;
+        return (int)Math.min(Integer.MAX_VALUE, errors);
+    }
+
     /**
      * Combines arrays of donorHypoth, sorts them, and returns the best limited by maxDonorHypotheses
      * @param maxDonorHypotheses maximum number of donor hypotheses to retain
@@ -0,0 +1,134 @@
+package net.maizegenetics.analysis.imputation;
+
+/**
+ * Viterbi decoding of the two donor states used by FILLIN.  Gives the same state sequence as
+ * {@link ViterbiAlgorithm} with {@link TransitionProbability} and {@link EmissionProbability}, but the log
+ * probabilities are calculated once, the transition matrix is only recalculated when the distance between
+ * informative sites changes, and all buffers are kept between calls.  An instance is not thread safe, so
+ * each thread should have its own.
+ */
+final class FILLINViterbi {
+
+    private final int numberOfStates;
+    //-ln(1 - 2p) of the off diagonal transition probabilities
+    private final double[][] transitionRate;
+    private final double[][] lnEmission;
+    private final double[] lnProbTrueStates;
+    private final double[][] lnTransition;
+    private final double[][] adjustedProbability;
+    private double[] distance;
+    private double[] nextDistance;
+    private byte[][] history;
+    private byte[] states=new byte[0];
+
+    FILLINViterbi(double[][] transition, double[][] emission, double[] pTrue) {
+        numberOfStates=transition.length;
+        transitionRate=new double[numberOfStates][numberOfStates];
+        for (int row = 0; row < numberOfStates; row++) {
+            for (int col = 0; col < numberOfStates; col++) {
+                if (col != row) transitionRate[row][col]=-Math.log(1 - 2 * transition[row][col]);
+            }
+        }
+        lnEmission=new double[emission.length][];
+        for (int state = 0; state < emission.length; state++) {
+            lnEmission[state]=new double[emission[state].length];
+            for (int obs = 0; obs < emission[state].length; obs++) {
+                lnEmission[state][obs]=Math.log(emission[state][obs]);
+            }
+        }
+        lnProbTrueStates=new double[pTrue.length];
+        for (int i = 0; i < pTrue.length; i++) {
+            lnProbTrueStates[i]=Math.log(pTrue[i]);
+        }
+        lnTransition=new double[numberOfStates][numberOfStates];
+        adjustedProbability=new double[numberOfStates][numberOfStates];
+        distance=new double[numberOfStates];
+        nextDistance=new double[numberOfStates];
+        history=new byte[numberOfStates][0];
+    }
+
+    /**
+     * Finds the most probable state at each observation.
+     * @param obs observed states
+     * @param positions site of each observation
+     * @param avgSegmentLength average segment length used to scale the transition probabilities
+     * @return most probable states.  Only the first obs.length are set, and the array is reused by the next call.
+     */
+    byte[] mostProbableStates(byte[] obs, int[] positions, double avgSegmentLength) {
+        int numberOfObs=obs.length;
+        if(history[0].length<numberOfObs) {
+            int capacity=Math.max(numberOfObs, 2*history[0].length);
+            history=new byte[numberOfStates][capacity];
+            states=new byte[capacity];
+        }
+        for (int i = 0; i < numberOfStates; i++) {
+            distance[i]=lnEmission[i][obs[0]] + lnProbTrueStates[i];
+        }
+        int lastSegmentLength=-1;
+        for (int node = 1; node < numberOfObs; node++) {
+            int segmentLength=Math.abs(positions[node] - positions[node - 1]);
+            if(segmentLength!=lastSegmentLength) {
+                setLnTransition(segmentLength, avgSegmentLength);
+                lastSegmentLength=segmentLength;
+            }
+            for (int j = 0; j < numberOfStates; j++) {
+                double lnEmissionOfObs=lnEmission[j][obs[node]];
+                int max=0;
+                double maxDistance=distance[0] + lnTransition[0][j] + lnEmissionOfObs;
+                for (int i = 1; i < numberOfStates; i++) {
+                    double candidate=distance[i] + lnTransition[i][j] + lnEmissionOfObs;
+                    if(candidate>maxDistance) {max=i; maxDistance=candidate;}
+                }
+                nextDistance[j]=maxDistance;
+                history[j][node]=(byte)max;
+            }
+            double[] swap=distance;
+            distance=nextDistance;
+            nextDistance=swap;
+
+            //if the min distance is less than -1e100, subtract the max distance;
+            double maxd=distance[0];
+            double mind=0;
+            for (int i = 0; i < numberOfStates; i++) {
+                if (distance[i] > maxd) maxd=distance[i];
+                if (distance[i] != Double.NEGATIVE_INFINITY && distance[i] < mind) mind=distance[i];
+            }
+            if (mind < -1e100) {
+                for (int i = 0; i < numberOfStates; i++) {
+                    distance[i] -= maxd;
+                }
+            }
+        }
+
+        byte finalState=0;
+        for (int i = 1; i < numberOfStates; i++) {
+            if (distance[i] > distance[finalState]) finalState=(byte)i;
+        }
+        states[numberOfObs - 1]=finalState;
+        for (int i = numberOfObs - 2; i >= 0; i--) {
+            states[i]=history[states[i + 1]][i + 1];
+        }
+        return states;
+    }
+
+    /**
+     * Same adjustment of the transition probabilities for distance as {@link TransitionProbability#setNode(int)}
+     */
+    private void setLnTransition(int segmentLength, double avgSegmentLength) {
+        for (int row = 0; row < numberOfStates; row++) {
+            double offdiagsum=0;
+            double[] adjusted=adjustedProbability[row];
+            for (int col = 0; col < numberOfStates; col++) {
+                if (col != row) {
+                    double m=transitionRate[row][col] * segmentLength / avgSegmentLength / 2;
+                    adjusted[col]=(1 - Math.exp(-2*m)) / 2;
+                    offdiagsum += adjusted[col];
+                }
+            }
+            adjusted[row]=1 - offdiagsum;
+            for (int col = 0; col < numberOfStates; col++) {
+                lnTransition[row][col]=Math.log(adjusted[col]);
+            }
+        }
+    }
+}
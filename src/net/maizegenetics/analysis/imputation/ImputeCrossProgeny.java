@@ -76,15 +76,20 @@ public class ImputeCrossProgeny {
 		Map<String, String[]> parentMap = new HashMap<>();
 		
 		//impute all progeny in that are in Genotype
-		for (String[] plot : plotList) {
-			int ndx = myGenotype.taxa().indexOf(plot[0]);
-			if (ndx == -1) continue;
+		//progeny are independent of each other, so they are imputed in parallel
+		List<String[]> imputedPlots = plotList.stream().filter(plot -> {
+			if (myGenotype.taxa().indexOf(plot[0]) == -1) return false;
 			byte[][] hap0 = haplotypeMap.get(plot[1]);
 			byte[][] hap1 = haplotypeMap.get(plot[2]);
-			if (hap0 != null && hap1 !=null && notMissingHap(hap0) && notMissingHap(hap1)) {
-				phasedProgeny.put(plot[0], imputeCrossFromParents(plot[0], hap0, hap1));
-				parentMap.put(plot[0], new String[]{plot[1], plot[2]});
-			}
+			return hap0 != null && hap1 !=null && notMissingHap(hap0) && notMissingHap(hap1);
+		}).collect(Collectors.toList());
+		List<byte[]> imputedStates = imputedPlots.parallelStream()
+				.map(plot -> imputeCrossFromParents(plot[0], haplotypeMap.get(plot[1]), haplotypeMap.get(plot[2])))
+				.collect(Collectors.toList());
+		for (int i = 0; i < imputedPlots.size(); i++) {
+			String[] plot = imputedPlots.get(i);
+			phasedProgeny.put(plot[0], imputedStates.get(i));
+			parentMap.put(plot[0], new String[]{plot[1], plot[2]});
 		}
 
 		//fill gaps
@@ -330,7 +335,7 @@ public class ImputeCrossProgeny {
 		//reimpute the progeny
 		start = System.currentTimeMillis();
 		myLogger.info("Rephasing progeny.");
-		List<Tuple<String,byte[]>> resultList = plotList.stream()
+		List<Tuple<String,byte[]>> resultList = plotList.parallelStream()
 				.filter(p -> haplotypeProbabilities.get(p[1]) != null && haplotypeProbabilities.get(p[2]) != null)
 				.map(p -> {
 			double[][] hapProb0 = haplotypeProbabilities.get(p[1]);
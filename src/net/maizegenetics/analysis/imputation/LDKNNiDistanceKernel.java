@@ -0,0 +1,268 @@
+package net.maizegenetics.analysis.imputation;
+
+import net.maizegenetics.dna.snp.GenotypeTable;
+import net.maizegenetics.dna.snp.GenotypeTableUtils;
+
+import java.util.Arrays;
+
+import static net.maizegenetics.dna.snp.GenotypeTable.UNKNOWN_DIPLOID_ALLELE;
+
+/**
+ * Distances between taxa over the high LD sites used by LDKNNi imputation, calculated with bit sets.  This gives the
+ * same distance as {@link LDKNNiImputationHetV3Plugin#dist(byte[], byte[], int)} (AA <> Aa = 1, AA <> aa = 2, scaled
+ * by twice the number of sites where both taxa are called).  For each taxon, the sites are split into bit planes of
+ * called, heterozygous (major/minor), homozygous major, and homozygous minor.  Sites with any other genotype (i.e. a
+ * third allele) are kept as bytes and compared as dist() does.
+ *
+ * The nearest neighbors of a taxon are found a row at a time with a bounded max heap, so the full taxa by taxa
+ * distance matrix is never created.  Row and heap buffers are reused per worker thread.
+ */
+final class LDKNNiDistanceKernel {
+
+    private final int numTaxa;
+    private final int numWords;
+    private final long[][] called;
+    private final long[][] het;
+    private final long[][] homMajor;
+    private final long[][] homMinor;
+    //unphased sorted genotypes of the sites not represented in the bit planes
+    private final byte[][] otherGenotypes;
+    private final double[] coverage;
+
+    private final ThreadLocal<Neighbors> buffers;
+
+    /**
+     * @param genotypes genotypes of the high LD sites
+     * @param maxNeighbors maximum number of neighbors returned by nearestNeighbors()
+     */
+    LDKNNiDistanceKernel(GenotypeTable genotypes, int maxNeighbors) {
+        numTaxa = genotypes.numberOfTaxa();
+        int numSites = genotypes.numberOfSites();
+        byte[][] sortedGenotypes = new byte[numSites][];
+        boolean[] isBiallelic = new boolean[numSites];
+        byte[] homMajorGenotype = new byte[numSites];
+        byte[] hetGenotype = new byte[numSites];
+        byte[] homMinorGenotype = new byte[numSites];
+        int numBitSites = 0;
+        for (int s = 0; s < numSites; s++) {
+            byte major = genotypes.majorAllele(s);
+            byte minor = genotypes.minorAllele(s);
+            homMajorGenotype[s] = GenotypeTableUtils.getDiploidValue(major, major);
+            hetGenotype[s] = GenotypeTableUtils.getUnphasedSortedDiploidValue(GenotypeTableUtils.getDiploidValue(major, minor));
+            homMinorGenotype[s] = GenotypeTableUtils.getDiploidValue(minor, minor);
+            byte[] current = genotypes.genotypeAllTaxa(s);
+            isBiallelic[s] = true;
+            for (int t = 0; t < numTaxa; t++) {
+                byte g = GenotypeTableUtils.getUnphasedSortedDiploidValue(current[t]);
+                current[t] = g;
+                if (g != UNKNOWN_DIPLOID_ALLELE && g != homMajorGenotype[s] && g != hetGenotype[s] && g != homMinorGenotype[s]) {
+                    isBiallelic[s] = false;
+                }
+            }
+            sortedGenotypes[s] = current;
+            if (isBiallelic[s]) numBitSites++;
+        }
+
+        numWords = (numBitSites + 63) >>> 6;
+        called = new long[numTaxa][numWords];
+        het = new long[numTaxa][numWords];
+        homMajor = new long[numTaxa][numWords];
+        homMinor = new long[numTaxa][numWords];
+        otherGenotypes = new byte[numTaxa][numSites - numBitSites];
+        coverage = new double[numTaxa];
+        int bit = 0;
+        int other = 0;
+        for (int s = 0; s < numSites; s++) {
+            byte[] current = sortedGenotypes[s];
+            if (!isBiallelic[s]) {
+                for (int t = 0; t < numTaxa; t++) {
+                    otherGenotypes[t][other] = current[t];
+                }
+                other++;
+                continue;
+            }
+            int word = bit >>> 6;
+            long mask = 1L << (bit & 63);
+            for (int t = 0; t < numTaxa; t++) {
+                byte g = current[t];
+                if (g == UNKNOWN_DIPLOID_ALLELE) continue;
+                called[t][word] |= mask;
+                if (g == homMajorGenotype[s]) {
+                    homMajor[t][word] |= mask;
+                } else if (g == homMinorGenotype[s]) {
+                    homMinor[t][word] |= mask;
+                } else {
+                    het[t][word] |= mask;
+                }
+            }
+            bit++;
+        }
+        for (int t = 0; t < numTaxa; t++) {
+            coverage[t] = (double) genotypes.totalNonMissingForTaxon(t) / (double) numSites;
+        }
+        buffers = ThreadLocal.withInitial(() -> new Neighbors(numTaxa, maxNeighbors));
+    }
+
+    int numberOfTaxa() {
+        return numTaxa;
+    }
+
+    /**
+     * Proportion of the high LD sites called for the taxon
+     */
+    double coverage(int taxon) {
+        return coverage[taxon];
+    }
+
+    /**
+     * Distance between two taxa, NaN if fewer than min sites are called in both
+     */
+    double distance(int taxon1, int taxon2, int min) {
+        long[] called1 = called[taxon1], called2 = called[taxon2];
+        long[] het1 = het[taxon1], het2 = het[taxon2];
+        long[] major1 = homMajor[taxon1], major2 = homMajor[taxon2];
+        long[] minor1 = homMinor[taxon1], minor2 = homMinor[taxon2];
+        int count = 0;
+        int distance = 0;
+        for (int w = 0; w < numWords; w++) {
+            long both = called1[w] & called2[w];
+            count += Long.bitCount(both);
+            distance += Long.bitCount((het1[w] ^ het2[w]) & both);
+            distance += 2 * Long.bitCount((major1[w] & minor2[w]) | (minor1[w] & major2[w]));
+        }
+        byte[] other1 = otherGenotypes[taxon1], other2 = otherGenotypes[taxon2];
+        for (int i = 0; i < other1.length; i++) {
+            byte p1 = other1[i];
+            byte p2 = other2[i];
+            if (p1 == UNKNOWN_DIPLOID_ALLELE || p2 == UNKNOWN_DIPLOID_ALLELE) continue;
+            count++;
+            if (p1 != p2) {
+                distance += (GenotypeTableUtils.isHeterozygous(p1) || GenotypeTableUtils.isHeterozygous(p2)) ? 1 : 2;
+            }
+        }
+        if (count < min) return Double.NaN;
+        return (double) distance / (double) (2 * count);
+    }
+
+    /**
+     * Finds the closest donors to a taxon.  Donors must not be the taxon itself, must have coverage greater than
+     * minDonorCoverage, share at least min called sites with the taxon, and be within maxDistance.  Ties in distance
+     * are broken by taxon index.
+     *
+     * @return neighbors ordered by increasing distance.  Reused by the next call on this thread.
+     */
+    Neighbors nearestNeighbors(int taxon, int min, double minDonorCoverage, double maxDistance) {
+        Neighbors result = buffers.get();
+        result.clear();
+        for (int donor = 0; donor < numTaxa; donor++) {
+            if (donor == taxon || !(coverage[donor] > minDonorCoverage)) continue;
+            double distance = distance(taxon, donor, min);
+            if (Double.isNaN(distance) || distance > maxDistance) continue;
+            result.offer(distance, donor);
+        }
+        result.sort();
+        return result;
+    }
+
+    /**
+     * Bounded max heap of the closest taxa.  After sort(), neighbors are in order of increasing distance.
+     */
+    static final class Neighbors {
+
+        private final int maxSize;
+        private final double[] distances;
+        private final int[] taxa;
+        private int size = 0;
+
+        private Neighbors(int numTaxa, int maxSize) {
+            this.maxSize = Math.min(numTaxa, maxSize);
+            distances = new double[this.maxSize];
+            taxa = new int[this.maxSize];
+        }
+
+        private void clear() {
+            size = 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        double distance(int index) {
+            return distances[index];
+        }
+
+        int taxon(int index) {
+            return taxa[index];
+        }
+
+        /**
+         * Copy of the neighbor taxa, that is not reused
+         */
+        int[] taxaCopy() {
+            return Arrays.copyOf(taxa, size);
+        }
+
+        /**
+         * Copy of the neighbor distances, that is not reused
+         */
+        double[] distancesCopy() {
+            return Arrays.copyOf(distances, size);
+        }
+
+        private static boolean greater(double distance1, int taxon1, double distance2, int taxon2) {
+            return distance1 > distance2 || (distance1 == distance2 && taxon1 > taxon2);
+        }
+
+        private void offer(double distance, int taxon) {
+            if (maxSize == 0) return;
+            if (size < maxSize) {
+                int i = size++;
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (!greater(distance, taxon, distances[parent], taxa[parent])) break;
+                    distances[i] = distances[parent];
+                    taxa[i] = taxa[parent];
+                    i = parent;
+                }
+                distances[i] = distance;
+                taxa[i] = taxon;
+            } else if (greater(distances[0], taxa[0], distance, taxon)) {
+                siftDown(0, size, distance, taxon);
+            }
+        }
+
+        private void siftDown(int i, int end, double distance, int taxon) {
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= end) break;
+                if (child + 1 < end && greater(distances[child + 1], taxa[child + 1], distances[child], taxa[child])) child++;
+                if (!greater(distances[child], taxa[child], distance, taxon)) break;
+                distances[i] = distances[child];
+                taxa[i] = taxa[child];
+                i = child;
+            }
+            distances[i] = distance;
+            taxa[i] = taxon;
+        }
+
+        /**
+         * Heap sort in place, so neighbors are in increasing order
+         */
+        private void sort() {
+            for (int end = size - 1; end > 0; end--) {
+                double distance = distances[end];
+                int taxon = taxa[end];
+                distances[end] = distances[0];
+                taxa[end] = taxa[0];
+                siftDown(0, end, distance, taxon);
+            }
+        }
+
+    }
+
+}
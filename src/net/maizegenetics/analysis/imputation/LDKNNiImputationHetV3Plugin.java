@@ -21,9 +21,10 @@ import javax.swing.*;
 import java.awt.*;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.LongAdder;
-import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static net.maizegenetics.dna.snp.GenotypeTable.RARE_DIPLOID_ALLELE;
@@ -146,9 +147,10 @@ public class LDKNNiImputationHetV3Plugin extends AbstractPlugin {
         long time=System.nanoTime();
         LongAdder sitesDone=new LongAdder();
 
-        IntStream.range(0,maxCores()).parallel().forEach(core -> {
-            IntStream.range(0, chrDivisions.length).
-                filter(chrDivisionIndex -> chrDivisionIndex % maxCores() == core)
+        //chromosome divisions and the taxa within them are tasks in a work stealing pool
+        ForkJoinPool pool=new ForkJoinPool(maxCores());
+        try {
+            pool.submit(() -> IntStream.range(0, chrDivisions.length).parallel()
                 .forEach(chrDivisionIndex ->
                 {   Map<Position,Integer> highLDSiteCnt=new TreeMap<>();
                     IntStream.range(chrDivisions[chrDivisionIndex][0],chrDivisions[chrDivisionIndex][1]).forEach(posIndex -> {
@@ -157,20 +159,14 @@ public class LDKNNiImputationHetV3Plugin extends AbstractPlugin {
                     });
                     PositionList positionList=highLDSiteCnt.entrySet().stream().filter(entry -> entry.getValue()>100).map(entry -> entry.getKey()).collect(PositionList.collectReorder());
                     GenotypeTable ldGenoTable = GenotypeTableBuilder.getGenotypeCopyInstance(FilterGenotypeTable.getInstance(genotypeTable, positionList));
-                    double[][] ldDM= new double[ldGenoTable.numberOfTaxa()][ldGenoTable.numberOfTaxa()];
-                    for (int i = 0; i < ldGenoTable.numberOfTaxa(); i++) {
-                        for (int j = 0; j < i; j++) {
-                            ldDM[i][j]=ldDM[j][i]=dist(ldGenoTable.genotypeAllSites(i), ldGenoTable.genotypeAllSites(j),10)[0];
-                        }
-                        ldDM[i][i]=(double) ldGenoTable.totalNonMissingForTaxon(i) / (double) ldGenoTable.numberOfSites();  //set the diagonal to coverage
-
-                    }
-                    List<Multimap<Double, Integer>> closeTaxa = IntStream.range(0, ldGenoTable.numberOfTaxa())
-                            .mapToObj(taxonIndex -> getClosestNonMissingTaxa(taxonIndex, ldDM, knnTaxa()))
-                            .collect(Collectors.toList());
-                    for (int taxon = 0; taxon < ldGenoTable.numberOfTaxa(); taxon++) {
-                        Multimap<Double, Integer> closeGenotypes1 = getClosestNonMissingTaxa(taxon, ldDM, knnTaxa());
-                    }
+                    LDKNNiDistanceKernel ldDistance=new LDKNNiDistanceKernel(ldGenoTable, knnTaxa());
+                    int[][] closeTaxa=new int[ldGenoTable.numberOfTaxa()][];
+                    double[][] closeTaxaDistances=new double[ldGenoTable.numberOfTaxa()][];
+                    IntStream.range(0, ldGenoTable.numberOfTaxa()).parallel().forEach(taxonIndex -> {
+                        LDKNNiDistanceKernel.Neighbors neighbors=getClosestNonMissingTaxa(taxonIndex, ldDistance);
+                        closeTaxa[taxonIndex]=neighbors.taxaCopy();
+                        closeTaxaDistances[taxonIndex]=neighbors.distancesCopy();
+                    });
                     IntStream.range(chrDivisions[chrDivisionIndex][0],chrDivisions[chrDivisionIndex][1])
                             .forEach(posIndex -> {
                                 sitesDone.increment();
@@ -189,9 +185,8 @@ public class LDKNNiImputationHetV3Plugin extends AbstractPlugin {
                                 byte[] impGenos = new byte[currGenos.length];
 
                                 for (int taxon = 0; taxon < currGenos.length; taxon++) {
-                                    Multimap<Double, Byte> closeGenotypes = getClosestNonMissingCalls(currGenos,
-                                            closeTaxa.get(taxon));
-                                    impGenos[taxon] = (closeGenotypes.isEmpty()) ? UNKNOWN_DIPLOID_ALLELE : impute(closeGenotypes, highLDSSites());
+                                    impGenos[taxon] = (closeTaxa[taxon].length == 0) ? UNKNOWN_DIPLOID_ALLELE
+                                            : impute(currGenos, closeTaxa[taxon], closeTaxaDistances[taxon], highLDSSites());
                                     if (impGenos[taxon] == UNKNOWN_DIPLOID_ALLELE && maf < automaticMajorMAF()) {
                                         impGenos[taxon] = getDiploidValue(majorAllele, majorAllele);  //set to major genotype for rare allele
                                     }
@@ -216,8 +211,13 @@ public class LDKNNiImputationHetV3Plugin extends AbstractPlugin {
                                     System.out.println(reportingParameters() + statsOnSites.homozygousAcc(2) + "\t" + statsOnSites.recallPowerOfHomozgyous(2));
                                 }
                             });
-                });
-        });
+                })).get();
+        } catch (InterruptedException | ExecutionException e) {
+            myLogger.debug(e.getMessage(), e);
+            throw new IllegalStateException("LDKNNiImputationHetV3Plugin: processData: problem imputing: " + e.getMessage());
+        } finally {
+            pool.shutdown();
+        }
         System.out.println("Final:"+sitesDone.longValue() + ": ms/site" + ((double)(System.nanoTime() - time) / 1_000_000D) / (double)sitesDone.longValue());
         statsOnSites.printToStdOut();
         System.out.println("Stats\thighLDSSites\tknnTaxa\tmaxDistance\tmaxDistanceFromNN\tduplicateHetsThreshold\tHomozygousAcc\tHomozygousPower");
@@ -287,46 +287,15 @@ public class LDKNNiImputationHetV3Plugin extends AbstractPlugin {
 //    }
 
     /**
-     * Create a multimap of distances between the target taxon with the closest observed genotypes.  Distance is calculated
-     * between the target taxon and all other taxa for the ldGenoTable (subset of high LD sites).
+     * Finds the closest taxa to the target taxon.  Distance is calculated between the target taxon and all other taxa
+     * for the ldGenoTable (subset of high LD sites).  Donors must have coverage greater than minCoverageForDonors, at
+     * least 10 sites in common with the target, and be within maxDistanceFromNN.
      * @param inputTaxonIdx Taxon being imputed
-     * @param numberOfTaxa number of genotypes to retain
-     * @return Map of distance to genotype call for the target position
-     */
-    private Multimap<Double, Integer> getClosestNonMissingTaxa(int inputTaxonIdx, double[][] distCoverageMatrix, int numberOfTaxa) {
-        System.exit(0);
-//        MinMaxPriorityQueue<Tuple<Double, Integer>> topTaxa = IntStream.range(0, distCoverageMatrix.length)
-//                .filter(closeTaxonIdx -> closeTaxonIdx != inputTaxonIdx)  //do not test itself
-//                .filter(closeTaxonIdx -> distCoverageMatrix[closeTaxonIdx][closeTaxonIdx] > minCoverageForDonors())
-//                .mapToObj(closeTaxonIdx -> new Tuple<>(distCoverageMatrix[inputTaxonIdx][closeTaxonIdx], closeTaxonIdx))  //lookup the distance
-//                .filter(distanceTaxon -> !Double.isNaN(distanceTaxon.x))  //skip is too few sites (<10 results in NaN)
-//                .filter(distanceTaxon -> distanceTaxon.x <= maxDistanceFromNN())  //skip greater than max distance
-//                .collect(Collectors.toCollection(() -> MinMaxPriorityQueue.maximumSize(numberOfTaxa).create()));
-//        double[] distances=new double[topTaxa.size()];
-//        int[] taxaIndices=new int[topTaxa.size()];
-//        AtomicInteger ai=new AtomicInteger();
-//        topTaxa.stream().forEach(distGeno -> {
-//            distances[ai.get()]=distGeno.x;
-//            taxaIndices[ai.get()]= distGeno.y;
-//        }
-//
-//        Tuple<double[],int[]> distGenoArray=new Tuple<>(distances,taxaIndices);  //todo
-//        final Multimap<Double, Integer> distGenoMap = ArrayListMultimap.create();
-//        topTaxa.stream().forEach(distGeno -> distGenoMap.put(distGeno.x, distGeno.y));
-//        return distGenoMap;
-        return null;
-    }
-
-    /**
-     * Create a multimap of distances between the target taxon with the closest observed genotypes.  Distance is calculated
-     * between the target taxon and all other taxa for the ldGenoTable (subset of high LD sites).
-     * @return Map of distance to genotype call for the target position
+     * @param ldDistance distances over the high LD sites
+     * @return closest taxa with their distances, which are reused by the next call on this thread
      */
-    private Multimap<Double, Byte> getClosestNonMissingCalls(byte[] genosForSite, Multimap<Double, Integer> closestTaxa) {
-        final Multimap<Double, Byte> distGenoMap = ArrayListMultimap.create(closestTaxa.size(),10);
-        closestTaxa.entries().stream()
-                .forEach(entry -> distGenoMap.put(entry.getKey(), genosForSite[entry.getValue()]));
-        return distGenoMap;
+    private LDKNNiDistanceKernel.Neighbors getClosestNonMissingTaxa(int inputTaxonIdx, LDKNNiDistanceKernel ldDistance) {
+        return ldDistance.nearestNeighbors(inputTaxonIdx, 10, minCoverageForDonors(), maxDistanceFromNN());
     }
 
     /**
@@ -363,11 +332,13 @@ public class LDKNNiImputationHetV3Plugin extends AbstractPlugin {
 
     /**
      * Imputes to the most common genotype weighted by distance
-     * @param distGeno Multimap of the closest genotypes and their distance
+     * @param genosForSite genotypes of all taxa for the site
+     * @param closeTaxa the closest taxa
+     * @param distances distance to each of the closest taxa
      * @param useLDSites Number of high LD sites used.
      * @return The imputed genotype
      */
-    private byte impute(Multimap<Double, Byte> distGeno, int useLDSites) {
+    private byte impute(byte[] genosForSite, int[] closeTaxa, double[] distances, int useLDSites) {
         // useLDSites  is used to scale distance so is similar to DMs original implementation.
         // Seems to have at most a small effect on accuracy.  Could be removed?
 
@@ -375,10 +346,11 @@ public class LDKNNiImputationHetV3Plugin extends AbstractPlugin {
         double[] weightedCount = new double[256];
 
         // For each distance to genotype / genotype pair update the weighted counts
-        distGeno.entries().forEach(entry -> {
+        for (int i = 0; i < closeTaxa.length; i++) {
+            byte geno = genosForSite[closeTaxa[i]];
             // +128 is because bytes have values from -128..127 but we want 0..255 for array indexes
-            if(entry.getValue()!=UNKNOWN_DIPLOID_ALLELE) weightedCount[entry.getValue() + 128] += 1.0 / (1.0 + useLDSites * entry.getKey());
-        });
+            if(geno!=UNKNOWN_DIPLOID_ALLELE) weightedCount[geno + 128] += 1.0 / (1.0 + useLDSites * distances[i]);
+        }
 
         // Find the best genotype - the one with the maximum rate
         int bestGeno = 0;
@@ -29,6 +29,8 @@ import org.apache.commons.math3.stat.inference.TestUtils;
 import org.apache.log4j.Logger;
 
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class NucleotideImputationUtils {
 	private static final Logger myLogger = Logger.getLogger(NucleotideImputationUtils.class);
@@ -1418,13 +1420,14 @@ public class NucleotideImputationUtils {
 				//apply Viterbi
 				myLogger.info("Iteration " + iter++ + " for " + familyName);
 				bestStates.clear();
-				for (int t = 0; t < ntaxa; t++) {
-					tp.setPositions(snpPositions.get(t));
+				//the taxa are independent given the current model, so they are run in parallel
+				//each ViterbiAlgorithm keeps its own positions, so tp is not modified
+				bestStates.addAll(IntStream.range(0, ntaxa).parallel().mapToObj(t -> {
 					int nobs = notMissingCount[t];
 					if (nobs >= 20) {
-						ViterbiAlgorithm va = new ViterbiAlgorithm(nonMissingObs.get(t), tp, ep, pTrue);
+						ViterbiAlgorithm va = new ViterbiAlgorithm(nonMissingObs.get(t), snpPositions.get(t), tp, ep, pTrue);
 						va.calculate();
-						bestStates.add(va.getMostProbableStateSequence());
+						return va.getMostProbableStateSequence();
 					} else { //do not impute if obs < 20
 						myLogger.info("Fewer then 20 observations for " + a.taxa().taxaName(t));
 						byte[] states = new byte[nobs];
@@ -1434,9 +1437,9 @@ public class NucleotideImputationUtils {
 							else if (obs[i] == CC) states[i] = 4;
 							else states[i] = 2;
 						}
-						bestStates.add(states);
+						return states;
 					}
-				}
+				}).collect(Collectors.toList()));
 
 				//re-estimate transition probabilities
 				int[][] transitionCounts = new int[5][5];
@@ -0,0 +1,88 @@
+package net.maizegenetics.analysis.imputation;
+
+/**
+ * The transition probabilities of a {@link TransitionProbability} at each node of an HMM, as a primitive table that is
+ * reused from node to node. For TransitionProbability itself, the adjustment for the distance between nodes is
+ * calculated here with the same arithmetic as {@link TransitionProbability#setNode(int)}, so no objects are created
+ * and the shared TransitionProbability is not modified, which lets several taxa be run at once. Subclasses,
+ * which may adjust the probabilities differently, are called through setNode() while holding a lock on the
+ * TransitionProbability.
+ */
+final class TransitionTable {
+	private final TransitionProbability myTransition;
+	private final int[] myPositions;
+	private final boolean isLnScale;
+	private final int numberOfStates;
+	private final double avgSegmentLength;
+	private final double[][] transitionRate; //-ln(1 - 2p) of the off diagonal transition probabilities, null for subclasses
+	private final double[][] table;
+	private int lastSegmentLength = -1;
+
+	/**
+	 * @param transition	the transition probabilities
+	 * @param positions	the position of each node
+	 * @param lnScale	if true, the table holds the natural log of the probabilities
+	 */
+	TransitionTable(TransitionProbability transition, int[] positions, boolean lnScale) {
+		myTransition = transition;
+		myPositions = positions;
+		isLnScale = lnScale;
+		numberOfStates = transition.getNumberOfStates();
+		avgSegmentLength = transition.avgSegmentLength;
+		table = new double[numberOfStates][numberOfStates];
+		if (transition.getClass() == TransitionProbability.class) {
+			transitionRate = new double[numberOfStates][numberOfStates];
+			for (int row = 0; row < numberOfStates; row++) {
+				for (int col = 0; col < numberOfStates; col++) {
+					if (col != row) transitionRate[row][col] = -Math.log(1 - 2 * transition.probabilityOfATransition[row][col]);
+				}
+			}
+		} else {
+			transitionRate = null;
+		}
+	}
+
+	int numberOfStates() {
+		return numberOfStates;
+	}
+
+	/**
+	 * @param node	a node greater than 0
+	 * @return	the probability of a transition from row state at node - 1 to column state at node. The array is reused by the next call.
+	 */
+	double[][] setNode(int node) {
+		if (transitionRate == null) {
+			synchronized (myTransition) {
+				myTransition.setPositions(myPositions);
+				myTransition.setNode(node);
+				for (int row = 0; row < numberOfStates; row++) {
+					for (int col = 0; col < numberOfStates; col++) {
+						table[row][col] = isLnScale ? myTransition.getLnTransitionProbability(row, col) : myTransition.getTransitionProbability(row, col);
+					}
+				}
+			}
+			return table;
+		}
+
+		//the probabilities only depend on the distance between nodes, so there is nothing to do if it has not changed
+		int segmentLength = Math.abs(myPositions[node] - myPositions[node - 1]);
+		if (segmentLength == lastSegmentLength) return table;
+		lastSegmentLength = segmentLength;
+		for (int row = 0; row < numberOfStates; row++) {
+			double offdiagsum = 0;
+			double[] adjusted = table[row];
+			for (int col = 0; col < numberOfStates; col++) {
+				if (col != row) {
+					double m = transitionRate[row][col] * segmentLength / avgSegmentLength / 2;
+					adjusted[col] = (1 - Math.exp(-2*m)) / 2;
+					offdiagsum += adjusted[col];
+				}
+			}
+			adjusted[row] = 1 - offdiagsum;
+			if (isLnScale) {
+				for (int col = 0; col < numberOfStates; col++) adjusted[col] = Math.log(adjusted[col]);
+			}
+		}
+		return table;
+	}
+}
@@ -18,9 +18,13 @@ public class ViterbiAlgorithm {
 	
 	TransitionProbability myTransitionMatrix;
 	EmissionProbability probObservationGivenState;
+	TransitionTable lnTransition;
+	EmissionTable lnEmission;
 	byte[] obs;
+	int[] positions;
 	byte[][] history;
 	double[] distance;
+	double[] nextDistance;
 	int numberOfStates; //number of true states;
 	double[] probTrueStates; //ln of probabilities
 	int numberOfObs;
@@ -28,7 +32,21 @@ public class ViterbiAlgorithm {
 	
 	
 	public ViterbiAlgorithm(byte[] observations, TransitionProbability transitionMatrix, EmissionProbability obsGivenTrue, double[] pTrue) {
+		this(observations, null, transitionMatrix, obsGivenTrue, pTrue);
+	}
+	
+	/**
+	 * Use this constructor to run several taxa at once with the same TransitionProbability, because the positions of
+	 * each taxon are kept here rather than set on the TransitionProbability.
+	 * @param observations	the observation at each node
+	 * @param positions	the position of each node. If null, the positions of transitionMatrix are used.
+	 * @param transitionMatrix	the transition probabilities
+	 * @param obsGivenTrue	the emission probabilities
+	 * @param pTrue	the initial state probabilities
+	 */
+	public ViterbiAlgorithm(byte[] observations, int[] positions, TransitionProbability transitionMatrix, EmissionProbability obsGivenTrue, double[] pTrue) {
 		obs = observations;
+		this.positions = positions;
 		numberOfObs = obs.length;
 		numberOfStates = transitionMatrix.getNumberOfStates();
 		
@@ -41,6 +59,7 @@ public class ViterbiAlgorithm {
 		
 		history = new byte[numberOfStates][numberOfObs];
 		distance = new double[numberOfStates];
+		nextDistance = new double[numberOfStates];
 	}
 	
 	public void calculate() {
@@ -51,6 +70,8 @@ public class ViterbiAlgorithm {
 	}
 	
 	public void initialize() {
+		lnTransition = new TransitionTable(myTransitionMatrix, positions == null ? myTransitionMatrix.positions : positions, true);
+		lnEmission = new EmissionTable(probObservationGivenState, numberOfStates, true);
 		for (int i = 0; i < numberOfStates; i++) {
 			try{
 				distance[i] = probObservationGivenState.getLnProbObsGivenState(i, obs[0], 0) + probTrueStates[i];
@@ -61,27 +82,26 @@ public class ViterbiAlgorithm {
 	}
 	
 	public void updateDistanceAndHistory(int node) {
-		double[][] candidateDistance = new double[numberOfStates][numberOfStates];
-		myTransitionMatrix.setNode(node);
-		for (int i = 0; i < numberOfStates; i++) {
-			for (int j = 0; j < numberOfStates; j++) {
-				candidateDistance[i][j] = distance[i] + myTransitionMatrix.getLnTransitionProbability(i, j) + probObservationGivenState.getLnProbObsGivenState(j, obs[node], node);
-			}
-		}
+		double[][] lnTransitionProb = lnTransition.setNode(node);
+		double[] lnEmissionProb = lnEmission.probabilities(obs[node], node);
 
-		//find the maxima
-		int[] max = new int[numberOfStates];
-		for (int i = 0; i < numberOfStates; i++) {
-			for (int j = 0; j < numberOfStates; j++) {
-				if (candidateDistance[i][j] > candidateDistance[max[j]][j]) max[j] = i;
-			}
-		}
-
-		//update distance and history
+		//find the maxima and update distance and history
 		for (int j = 0; j < numberOfStates; j++) {
-			distance[j] = candidateDistance[max[j]][j];
-			history[j][node] = (byte) max[j];
+			int max = 0;
+			double maxDistance = distance[0] + lnTransitionProb[0][j] + lnEmissionProb[j];
+			for (int i = 1; i < numberOfStates; i++) {
+				double candidateDistance = distance[i] + lnTransitionProb[i][j] + lnEmissionProb[j];
+				if (candidateDistance > maxDistance) {
+					max = i;
+					maxDistance = candidateDistance;
+				}
+			}
+			nextDistance[j] = maxDistance;
+			history[j][node] = (byte) max;
 		}
+		double[] swap = distance;
+		distance = nextDistance;
+		nextDistance = swap;
 		
 		//if the min distance is less than -1e100, subtract the max distance;
 		double maxd = distance[0];
@@ -85,11 +85,58 @@ public abstract class AbstractForwardRegression implements ForwardRegression {
     }
 
     /**
-     * @param serialFilename    the base name of the serialization files that end in _taxa.bin and _sites.bin
+     * @param serialFilename    an additive site file written by AdditiveSiteStorePlugin, which is memory mapped,
+     * or the base name of the serialization files that end in _taxa.bin and _sites.bin
      * @param pheno     the Phenotype object to be used in the analysis
      */
     public AbstractForwardRegression(String serialFilename, Phenotype pheno) {
-        List<AdditiveSite> mySites = new ArrayList<>();
+        List<AdditiveSite> mySites;
+        TaxaList siteTaxaList;
+        if (AdditiveSiteStore.isAdditiveSiteFile(serialFilename)) {
+            AdditiveSiteStore store = AdditiveSiteStore.open(serialFilename);
+            mySites = store.sites(CRITERION.pval);
+            siteTaxaList = store.taxa();
+        } else {
+            mySites = new ArrayList<>();
+            siteTaxaList = deserializeSites(serialFilename, mySites);
+        }
+
+        myGenotypePhenotype = null;
+        myGenotype = null;
+        siteList = mySites;
+        numberOfSites = siteList.size();
+        TaxaList jointTaxaList = TaxaListUtils.getCommonTaxa(siteTaxaList, pheno.taxa());
+        myLogger.debug(String.format("The joint taxa list has %d taxa.", jointTaxaList.size()));
+
+        //delete any phenotypes not in the site list
+        myPhenotype =
+                new PhenotypeBuilder().fromPhenotype(pheno).keepTaxa(jointTaxaList).build().get(0);
+        numberOfObservations = myPhenotype.numberOfObservations();
+        myBaseModel = getBaseModel();
+
+        //create an index from siteList into phenotype
+        TaxaAttribute myTaxa = myPhenotype.taxaAttribute();
+        int[] taxaIndex =
+                myTaxa.allTaxaAsList().stream().mapToInt(t -> siteTaxaList.indexOf(t)).toArray();
+        TreeSet<Integer> taxaSet = new TreeSet<>();
+        for (int t : taxaIndex)
+            taxaSet.add(t);
+        List<Integer> uniqueTaxa = new ArrayList<>(taxaSet);
+
+        long countOfNegativeIndices = uniqueTaxa.stream().filter(I -> I < 0).count();
+        myLogger.debug(String.format("siteIndices has %d negative values.", countOfNegativeIndices));
+
+        for (AdditiveSite as : mySites)
+            as.reindexTaxa(taxaIndex, uniqueTaxa);
+        myLogger.debug("sites reindexed.");
+    }
+
+    /**
+     * @param serialFilename    the base name of the serialization files that end in _taxa.bin and _sites.bin
+     * @param mySites   the deserialized sites are added to this list
+     * @return  the taxa of the sites
+     */
+    private static TaxaList deserializeSites(String serialFilename, List<AdditiveSite> mySites) {
         TaxaListBuilder taxaBuilder = new TaxaListBuilder();
         int ntaxa = 0, nsites = 0;
         
@@ -123,36 +170,7 @@ public abstract class AbstractForwardRegression implements ForwardRegression {
         } catch (ClassNotFoundException e) {
             throw new RuntimeException("error deserializing sites: ", e);
         }
-
-        myGenotypePhenotype = null;
-        myGenotype = null;
-        siteList = mySites;
-        numberOfSites = siteList.size();
-        TaxaList siteTaxaList = taxaBuilder.build();
-        TaxaList jointTaxaList = TaxaListUtils.getCommonTaxa(siteTaxaList, pheno.taxa());
-        myLogger.debug(String.format("The joint taxa list has %d taxa.", jointTaxaList.size()));
-
-        //delete any phenotypes not in the site list
-        myPhenotype =
-                new PhenotypeBuilder().fromPhenotype(pheno).keepTaxa(jointTaxaList).build().get(0);
-        numberOfObservations = myPhenotype.numberOfObservations();
-        myBaseModel = getBaseModel();
-
-        //create an index from siteList into phenotype
-        TaxaAttribute myTaxa = myPhenotype.taxaAttribute();
-        int[] taxaIndex =
-                myTaxa.allTaxaAsList().stream().mapToInt(t -> siteTaxaList.indexOf(t)).toArray();
-        TreeSet<Integer> taxaSet = new TreeSet<>();
-        for (int t : taxaIndex)
-            taxaSet.add(t);
-        List<Integer> uniqueTaxa = new ArrayList<>(taxaSet);
-
-        long countOfNegativeIndices = uniqueTaxa.stream().filter(I -> I < 0).count();
-        myLogger.debug(String.format("siteIndices has %d negative values.", countOfNegativeIndices));
-
-        for (AdditiveSite as : mySites)
-            as.reindexTaxa(taxaIndex, uniqueTaxa);
-        myLogger.debug("sites reindexed.");
+        return taxaBuilder.build();
     }
 
     @Override
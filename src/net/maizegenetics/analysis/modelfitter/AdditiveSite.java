@@ -23,6 +23,16 @@ public interface AdditiveSite extends Comparable<AdditiveSite>, Serializable {
      */
     double[] getCovariate(int[] subset);
 
+    /**
+     * Writes the covariate for this site into an array, for example a block of several sites
+     * @param destination   the array receiving the covariate
+     * @param offset        the index in destination of the first value
+     */
+    default void getCovariate(double[] destination, int offset) {
+        double[] cov = getCovariate();
+        System.arraycopy(cov, 0, destination, offset, cov.length);
+    }
+
     /**
      * @return	the site index corresponding to the site number in the source GenotypeTable
      */
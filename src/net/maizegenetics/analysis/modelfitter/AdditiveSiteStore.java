@@ -0,0 +1,247 @@
+package net.maizegenetics.analysis.modelfitter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.apache.log4j.Logger;
+
+import net.maizegenetics.analysis.modelfitter.AdditiveSite.CRITERION;
+import net.maizegenetics.dna.snp.GenotypeTable;
+import net.maizegenetics.taxa.TaxaList;
+import net.maizegenetics.taxa.TaxaListBuilder;
+import net.maizegenetics.taxa.Taxon;
+
+/**
+ * A binary file of genotypes coded as additive sites, which is memory mapped when read. The file holds a header
+ * (taxa names, chromosome names, and arrays of site number, chromosome, position, major allele frequency and site name)
+ * followed by the 2-bit genotype codes of GenotypeAdditiveSite for each site, at a fixed number of ints per site.
+ * The sites returned by sites() read their genotype codes directly from the mapped file, so the file can be shared
+ * by all the threads fitting models and is paged in by the operating system as needed.
+ *
+ */
+final class AdditiveSiteStore {
+    private static final Logger myLogger = Logger.getLogger(AdditiveSiteStore.class);
+    private static final int MAGIC = 0x41445354;    //ADST
+    private static final int VERSION = 1;
+    private static final int SITES_PER_WRITE = 1024;
+    private static final long MAX_BYTES_PER_MAP = 1L << 30;
+
+    private final TaxaList myTaxa;
+    private final int ntaxa;
+    private final int nsites;
+    private final int intsPerSite;
+    private final String[] chromosomeNames;
+    private final int[] siteNumber;
+    private final int[] chromosome;
+    private final int[] position;
+    private final double[] majorAlleleFrequency;
+    private final String[] siteName;
+    private final int sitesPerMap;
+    private final IntBuffer[] genotypeMaps;
+
+    private AdditiveSiteStore(String filename) {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+            if (input.readInt() != MAGIC) {
+                throw new IllegalArgumentException("AdditiveSiteStore: init: " + filename + " is not an additive site file.");
+            }
+            int version = input.readInt();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("AdditiveSiteStore: init: unsupported version " + version + " of " + filename);
+            }
+            long genotypeOffset = input.readLong();
+            ntaxa = input.readInt();
+            nsites = input.readInt();
+            intsPerSite = GenotypeAdditiveSite.numberOfInts(ntaxa);
+
+            TaxaListBuilder taxaBuilder = new TaxaListBuilder();
+            for (int t = 0; t < ntaxa; t++) {
+                taxaBuilder.add(new Taxon(input.readUTF()));
+            }
+            myTaxa = taxaBuilder.build();
+
+            chromosomeNames = new String[input.readInt()];
+            for (int c = 0; c < chromosomeNames.length; c++) {
+                chromosomeNames[c] = input.readUTF();
+            }
+            siteNumber = new int[nsites];
+            chromosome = new int[nsites];
+            position = new int[nsites];
+            majorAlleleFrequency = new double[nsites];
+            siteName = new String[nsites];
+            for (int s = 0; s < nsites; s++) siteNumber[s] = input.readInt();
+            for (int s = 0; s < nsites; s++) chromosome[s] = input.readInt();
+            for (int s = 0; s < nsites; s++) position[s] = input.readInt();
+            for (int s = 0; s < nsites; s++) majorAlleleFrequency[s] = input.readDouble();
+            for (int s = 0; s < nsites; s++) siteName[s] = input.readUTF();
+
+            //map the genotype codes in pieces, since a single map is limited to 2 GB
+            long bytesPerSite = 4L * intsPerSite;
+            sitesPerMap = (int) Math.max(1, Math.min(nsites, MAX_BYTES_PER_MAP / Math.max(1, bytesPerSite)));
+            int numberOfMaps = nsites == 0 ? 0 : (nsites + sitesPerMap - 1) / sitesPerMap;
+            genotypeMaps = new IntBuffer[numberOfMaps];
+            try (RandomAccessFile raf = new RandomAccessFile(filename, "r"); FileChannel channel = raf.getChannel()) {
+                long expected = genotypeOffset + bytesPerSite * nsites;
+                if (channel.size() != expected) {
+                    throw new IllegalArgumentException("AdditiveSiteStore: init: " + filename + " should have " + expected + " bytes but has " + channel.size());
+                }
+                for (int m = 0; m < numberOfMaps; m++) {
+                    int firstSite = m * sitesPerMap;
+                    int mapSites = Math.min(sitesPerMap, nsites - firstSite);
+                    genotypeMaps[m] = channel.map(FileChannel.MapMode.READ_ONLY, genotypeOffset + bytesPerSite * firstSite, bytesPerSite * mapSites).asIntBuffer();
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("AdditiveSiteStore: init: error reading " + filename, e);
+        }
+    }
+
+    /**
+     * @param filename  an additive site file written by write()
+     * @return          the store with its genotype codes memory mapped
+     */
+    static AdditiveSiteStore open(String filename) {
+        long start = System.nanoTime();
+        AdditiveSiteStore store = new AdditiveSiteStore(filename);
+        myLogger.debug(String.format("Additive site file %s with %d taxa and %d sites opened in %d ms.", filename, store.ntaxa, store.nsites, (System.nanoTime() - start) / 1000000));
+        return store;
+    }
+
+    /**
+     * @param filename  a file name
+     * @return          true, if filename is an additive site file written by write()
+     */
+    static boolean isAdditiveSiteFile(String filename) {
+        try (DataInputStream input = new DataInputStream(new FileInputStream(filename))) {
+            return input.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the sites of a GenotypeTable to an additive site file. The genotype codes are calculated in parallel.
+     * @param geno      a GenotypeTable
+     * @param filename  the name of the output file
+     */
+    static void write(GenotypeTable geno, String filename) {
+        long start = System.nanoTime();
+        int ntaxa = geno.numberOfTaxa();
+        int nsites = geno.numberOfSites();
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        try (DataOutputStream header = new DataOutputStream(headerBytes)) {
+            header.writeInt(ntaxa);
+            header.writeInt(nsites);
+            for (Taxon taxon : geno.taxa()) {
+                header.writeUTF(taxon.getName());
+            }
+
+            List<String> chromosomeNames = new ArrayList<>();
+            Map<String, Integer> chromosomeIndex = new HashMap<>();
+            int[] chromosome = new int[nsites];
+            for (int s = 0; s < nsites; s++) {
+                String name = geno.chromosomeName(s);
+                Integer index = chromosomeIndex.get(name);
+                if (index == null) {
+                    index = chromosomeNames.size();
+                    chromosomeIndex.put(name, index);
+                    chromosomeNames.add(name);
+                }
+                chromosome[s] = index;
+            }
+            header.writeInt(chromosomeNames.size());
+            for (String name : chromosomeNames) {
+                header.writeUTF(name);
+            }
+            for (int s = 0; s < nsites; s++) header.writeInt(s);
+            for (int s = 0; s < nsites; s++) header.writeInt(chromosome[s]);
+            for (int s = 0; s < nsites; s++) header.writeInt(geno.chromosomalPosition(s));
+            for (int s = 0; s < nsites; s++) header.writeDouble(geno.majorAlleleFrequency(s));
+            for (int s = 0; s < nsites; s++) header.writeUTF(geno.siteName(s));
+        } catch (IOException e) {
+            throw new IllegalStateException("AdditiveSiteStore: write: error creating header", e);
+        }
+
+        //magic, version and genotype offset precede the header, and the genotype codes start on an 8 byte boundary
+        long headerEnd = 16L + headerBytes.size();
+        int padding = (int) ((8 - headerEnd % 8) % 8);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(headerEnd + padding);
+            headerBytes.writeTo(out);
+            out.write(new byte[padding]);
+
+            int numberOfWrites = (nsites + SITES_PER_WRITE - 1) / SITES_PER_WRITE;
+            IntStream.range(0, numberOfWrites).parallel()
+                    .mapToObj(w -> {
+                        int first = w * SITES_PER_WRITE;
+                        int last = Math.min(nsites, first + SITES_PER_WRITE);
+                        int[][] codes = new int[last - first][];
+                        for (int s = first; s < last; s++) {
+                            codes[s - first] = GenotypeAdditiveSite.encode(geno.genotypeAllTaxa(s), geno.majorAllele(s));
+                        }
+                        return codes;
+                    })
+                    .forEachOrdered(codes -> {
+                        try {
+                            for (int[] siteCodes : codes) {
+                                for (int word : siteCodes) out.writeInt(word);
+                            }
+                        } catch (IOException e) {
+                            throw new IllegalStateException("AdditiveSiteStore: write: error writing to " + filename, e);
+                        }
+                    });
+        } catch (IOException e) {
+            throw new IllegalStateException("AdditiveSiteStore: write: error writing to " + filename, e);
+        }
+        myLogger.debug(String.format("%d sites written to %s in %d ms.", nsites, filename, (System.nanoTime() - start) / 1000000));
+    }
+
+    /**
+     * @return  the taxa in the order of the genotype codes
+     */
+    TaxaList taxa() {
+        return myTaxa;
+    }
+
+    int numberOfSites() {
+        return nsites;
+    }
+
+    /**
+     * @param criterion     the selection criterion of the sites
+     * @return              a new list of sites backed by this store
+     */
+    List<AdditiveSite> sites(CRITERION criterion) {
+        List<AdditiveSite> siteList = new ArrayList<>(nsites);
+        for (int s = 0; s < nsites; s++) {
+            siteList.add(new MappedGenotypeAdditiveSite(this, s, siteNumber[s], chromosomeNames[chromosome[s]], position[s], siteName[s], criterion, ntaxa, majorAlleleFrequency[s]));
+        }
+        return siteList;
+    }
+
+    /**
+     * @param site  a site in this store
+     * @param i     the index of an int in the site's genotype codes
+     * @return      the ith int of the site's genotype codes
+     */
+    int genotypeWord(int site, int i) {
+        return genotypeMaps[site / sitesPerMap].get((site % sitesPerMap) * intsPerSite + i);
+    }
+
+}
@@ -47,7 +47,7 @@ public class AdditiveSiteStorePlugin extends AbstractPlugin {
     @Override
     protected void preProcessParameters(DataSet input) {
         List<Datum> datumList = input.getDataOfType(GenotypeTable.class);
-        if (datumList.size() != 0)
+        if (datumList.size() != 1)
             throw new IllegalArgumentException("Exactly one genotype dataset will is required as input.");
     }
 
@@ -57,21 +57,20 @@ public class AdditiveSiteStorePlugin extends AbstractPlugin {
                 (GenotypeTable) input.getDataOfType(GenotypeTable.class).get(0).getData();
         int numberOfSites = myGenotype.numberOfSites();
 
-        List<AdditiveSite> siteList = new ArrayList<>(numberOfSites);
-        long start = System.nanoTime();
+        //genotypes are written as a binary additive site file, which is memory mapped when read
         if (isGenotype.value()) {
-            for (int s = 0; s < numberOfSites; s++) {
-                siteList.add(new GenotypeAdditiveSite(s, myGenotype.chromosomeName(s), myGenotype.chromosomalPosition(s), myGenotype.siteName(s), CRITERION.pval, myGenotype.genotypeAllTaxa(s), myGenotype.majorAllele(s), myGenotype.majorAlleleFrequency(s)));
-            }
-        } else {
-            int ntaxa = myGenotype.numberOfTaxa();
-            for (int s = 0; s < numberOfSites; s++) {
-                float[] refprobs = new float[ntaxa];
-                for (int t = 0; t < ntaxa; t++)
-                    refprobs[t] = myGenotype.referenceProbability(t, s);
-                siteList.add(new RefProbAdditiveSite(s, myGenotype.chromosomeName(s), myGenotype.chromosomalPosition(s), myGenotype.siteName(s), CRITERION.pval, refprobs));
-            }
+            AdditiveSiteStore.write(myGenotype, outFilename.value());
+            return null;
+        }
 
+        List<AdditiveSite> siteList = new ArrayList<>(numberOfSites);
+        long start = System.nanoTime();
+        int ntaxa = myGenotype.numberOfTaxa();
+        for (int s = 0; s < numberOfSites; s++) {
+            float[] refprobs = new float[ntaxa];
+            for (int t = 0; t < ntaxa; t++)
+                refprobs[t] = myGenotype.referenceProbability(t, s);
+            siteList.add(new RefProbAdditiveSite(s, myGenotype.chromosomeName(s), myGenotype.chromosomalPosition(s), myGenotype.siteName(s), CRITERION.pval, refprobs));
         }
 
         myLogger.debug(String.format("site list created with %d sites in %d ms.", siteList.size(), (System.nanoTime() - start) / 1000000));
@@ -107,7 +106,8 @@ public class AdditiveSiteStorePlugin extends AbstractPlugin {
 
     @Override
     public String pluginDescription() {
-        return "This plugin serializes a genotype as a list of additive sites. The objects stored are an Integer equal to the number of sites, "
+        return "This plugin stores a genotype as a list of additive sites. Nucleotide genotypes are written as a binary additive site file, "
+                + "which is memory mapped when read. For reference probabilities, the objects serialized are an Integer equal to the number of sites, "
                 + "the Genotype TaxaList, then all of the additive sites";
     }
 
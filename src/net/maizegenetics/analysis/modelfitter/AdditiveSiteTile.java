@@ -0,0 +1,202 @@
+package net.maizegenetics.analysis.modelfitter;
+
+import java.util.List;
+
+import net.maizegenetics.matrixalgebra.Matrix.DoubleMatrix;
+import net.maizegenetics.stats.linearmodels.CovariateModelEffect;
+import net.maizegenetics.stats.linearmodels.FactorModelEffect;
+import net.maizegenetics.stats.linearmodels.ModelEffect;
+
+/**
+ * Scores blocks of up to TILE_SIZE additive sites against a base model. The covariates of a block of sites are decoded
+ * into a dense tile, one row per site, which is reused for every block. For each site x, the tile gives x'M1x, where
+ * M1 = I - X1G1X1' for the base model X1 with generalized inverse G1, and the products x'r of x with residual
+ * vectors r = M1y. The sum of squares for adding x to the base model is then (x'r)^2 / x'M1x as in
+ * PartitionedLinearModel.testNewModelEffect(double[]). X1'x is calculated one model effect at a time, so a factor
+ * costs one pass over the observations regardless of its number of levels.
+ * <p>
+ * A tile is not thread safe. Each spliterator uses its own.
+ */
+final class AdditiveSiteTile {
+    static final int TILE_SIZE = 64;
+
+    private final int nobs;
+    private final List<ModelEffect> baseModel;
+    private final int[] effectStart;    //the first column of each base model effect in X1
+    private final double[][] denseX;    //the columns of effects that are neither factors nor covariates, by effect
+    private final int ncol;
+    private final double[] G1;          //ncol x ncol, row major
+    private final double[] tile;        //[site * nobs + obs]
+    private final double[] x1tx;        //[site * ncol + column]
+    private final double[] G1x1tx;
+    private int numberOfSites = 0;
+
+    /**
+     * @param baseModel         the base model effects
+     * @param inverseOfXtX      the generalized inverse of X1'X1 for the base model
+     * @param nobs              the number of observations
+     */
+    AdditiveSiteTile(List<ModelEffect> baseModel, DoubleMatrix inverseOfXtX, int nobs) {
+        this.nobs = nobs;
+        this.baseModel = baseModel;
+        int neffects = baseModel.size();
+        effectStart = new int[neffects];
+        denseX = new double[neffects][];
+        int col = 0;
+        for (int e = 0; e < neffects; e++) {
+            ModelEffect me = baseModel.get(e);
+            effectStart[e] = col;
+            if (!(me instanceof FactorModelEffect) && !(me instanceof CovariateModelEffect)) {
+                denseX[e] = columnMajor(me.getX());
+            }
+            col += me.getEffectSize();
+        }
+        ncol = col;
+        if (inverseOfXtX.numberOfRows() != ncol || inverseOfXtX.numberOfColumns() != ncol) {
+            throw new IllegalArgumentException("AdditiveSiteTile: init: inverse of XtX should be " + ncol + " x " + ncol);
+        }
+        G1 = new double[ncol * ncol];
+        for (int r = 0; r < ncol; r++) {
+            for (int c = 0; c < ncol; c++) {
+                G1[r * ncol + c] = inverseOfXtX.get(r, c);
+            }
+        }
+        tile = new double[TILE_SIZE * nobs];
+        x1tx = new double[TILE_SIZE * ncol];
+        G1x1tx = new double[ncol];
+    }
+
+    /**
+     * Decodes the covariates of up to TILE_SIZE sites into the tile
+     * @param sites     a list of sites
+     * @param start     the index of the first site to load
+     * @param end       the index after the last site that may be loaded
+     * @return          the number of sites loaded
+     */
+    int load(List<AdditiveSite> sites, int start, int end) {
+        numberOfSites = Math.min(TILE_SIZE, end - start);
+        for (int s = 0; s < numberOfSites; s++) {
+            sites.get(start + s).getCovariate(tile, s * nobs);
+        }
+        return numberOfSites;
+    }
+
+    /**
+     * @param sumsOfSquares     on return, x'M1x for each site in the tile
+     */
+    void residualSumsOfSquares(double[] sumsOfSquares) {
+        //X1'x for each site, one effect at a time
+        int neffects = baseModel.size();
+        for (int s = 0; s < numberOfSites; s++) {
+            int x = s * nobs;
+            int v = s * ncol;
+            for (int c = 0; c < ncol; c++) x1tx[v + c] = 0;
+            for (int e = 0; e < neffects; e++) {
+                ModelEffect me = baseModel.get(e);
+                int first = v + effectStart[e];
+                if (me instanceof FactorModelEffect) {
+                    int[] levels = ((FactorModelEffect) me).getLevels();
+                    int nlevels = me.getEffectSize();
+                    for (int i = 0; i < nobs; i++) {
+                        if (levels[i] < nlevels) x1tx[first + levels[i]] += tile[x + i];
+                    }
+                } else if (me instanceof CovariateModelEffect) {
+                    x1tx[first] = dot(((CovariateModelEffect) me).getCovariate(), 0, tile, x);
+                } else {
+                    double[] X = denseX[e];
+                    int size = me.getEffectSize();
+                    for (int c = 0; c < size; c++) {
+                        x1tx[first + c] = dot(X, c * nobs, tile, x);
+                    }
+                }
+            }
+        }
+
+        //x'M1x = x'x - x'X1 G1 X1'x
+        for (int s = 0; s < numberOfSites; s++) {
+            int v = s * ncol;
+            for (int r = 0; r < ncol; r++) {
+                double sum = 0;
+                for (int c = 0; c < ncol; c++) sum += G1[r * ncol + c] * x1tx[v + c];
+                G1x1tx[r] = sum;
+            }
+            double ax1tx2 = 0;
+            for (int c = 0; c < ncol; c++) ax1tx2 += x1tx[v + c] * G1x1tx[c];
+            sumsOfSquares[s] = dot(tile, s * nobs, tile, s * nobs) - ax1tx2;
+        }
+    }
+
+    /**
+     * @param residuals     residuals from the base model
+     * @param products      on return, x'r for each site in the tile
+     */
+    void residualProducts(double[] residuals, double[] products) {
+        for (int s = 0; s < numberOfSites; s++) {
+            products[s] = dot(residuals, 0, tile, s * nobs);
+        }
+    }
+
+    /**
+     * @param residuals     residuals from the base model, one array for each response
+     * @param products      on return, products[s][k] = x'r for site s and residuals k
+     */
+    void residualProducts(List<double[]> residuals, double[][] products) {
+        int nres = residuals.size();
+        for (int s = 0; s < numberOfSites; s++) {
+            for (int k = 0; k < nres; k++) {
+                products[s][k] = dot(residuals.get(k), 0, tile, s * nobs);
+            }
+        }
+    }
+
+    /**
+     * @param y     a response vector
+     * @return      the residuals from fitting y to the base model
+     */
+    double[] residuals(double[] y) {
+        double[] x1ty = new double[ncol];
+        for (int e = 0; e < baseModel.size(); e++) {
+            DoubleMatrix xty = baseModel.get(e).getXty(y);
+            int size = baseModel.get(e).getEffectSize();
+            for (int c = 0; c < size; c++) x1ty[effectStart[e] + c] = xty.get(c, 0);
+        }
+        double[] beta = new double[ncol];
+        for (int r = 0; r < ncol; r++) {
+            double sum = 0;
+            for (int c = 0; c < ncol; c++) sum += G1[r * ncol + c] * x1ty[c];
+            beta[r] = sum;
+        }
+        double[] res = y.clone();
+        for (int e = 0; e < baseModel.size(); e++) {
+            int size = baseModel.get(e).getEffectSize();
+            double[] effectBeta = new double[size];
+            System.arraycopy(beta, effectStart[e], effectBeta, 0, size);
+            DoubleMatrix yhat = baseModel.get(e).getyhat(effectBeta);
+            for (int i = 0; i < nobs; i++) res[i] -= yhat.get(i, 0);
+        }
+        return res;
+    }
+
+    /**
+     * @return      the product of nobs values of a starting at aStart and b starting at bStart
+     */
+    private double dot(double[] a, int aStart, double[] b, int bStart) {
+        double sum = 0;
+        for (int i = 0; i < nobs; i++) {
+            sum += a[aStart + i] * b[bStart + i];
+        }
+        return sum;
+    }
+
+    private static double[] columnMajor(DoubleMatrix X) {
+        int nrows = X.numberOfRows();
+        int ncols = X.numberOfColumns();
+        double[] result = new double[nrows * ncols];
+        for (int c = 0; c < ncols; c++) {
+            for (int r = 0; r < nrows; r++) {
+                result[c * nrows + r] = X.get(r, c);
+            }
+        }
+        return result;
+    }
+}
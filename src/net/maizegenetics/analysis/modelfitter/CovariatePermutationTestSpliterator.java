@@ -1,6 +1,5 @@
 package net.maizegenetics.analysis.modelfitter;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Spliterator;
@@ -10,67 +9,90 @@ import java.util.stream.Collectors;
 import org.apache.commons.math3.distribution.FDistribution;
 
 import net.maizegenetics.matrixalgebra.Matrix.DoubleMatrix;
-import net.maizegenetics.matrixalgebra.Matrix.DoubleMatrixFactory;
-import net.maizegenetics.stats.linearmodels.CovariateModelEffect;
 import net.maizegenetics.stats.linearmodels.ModelEffect;
 import net.maizegenetics.stats.linearmodels.SweepFastLinearModel;
 
+/**
+ * Tests each site against permuted data. For each permutation, the residuals from the base model are calculated once,
+ * then the sites are scored a tile at a time: the sum of squares for adding a site x is (x'r)^2 / x'M1x,
+ * where r are the residuals and M1 projects onto the residual space of the base model.
+ */
 public class CovariatePermutationTestSpliterator implements Spliterator<double[]> {
-    private List<double[]> myPermutedData;
     private List<AdditiveSite> mySites;
     private List<ModelEffect> myBaseModel;
     private int origin;
     private final int end;
+    private final DoubleMatrix baseInverse;
+    private final List<double[]> myResiduals;   //base model residuals of each permutation, shared by all splits
+    private final double[] residualSS;
+    private final double dfError;
+    private final FDistribution fdist;
+    private AdditiveSiteTile tile = null;
+    private double[] tileSS;
+    private double[][] tileProducts;
+    private int tileStart = 0;
+    private int tileEnd = 0;
 
     public CovariatePermutationTestSpliterator(List<double[]> permutedData,
             List<AdditiveSite> siteList, List<ModelEffect> baseModel) {
-        myPermutedData = permutedData;
         mySites = siteList;
         myBaseModel = baseModel;
         origin = 0;
         end = siteList.size();
-        int numberOfEffects = baseModel.size();
-        DoubleMatrix[][] components = new DoubleMatrix[1][numberOfEffects];
-        for (int i = 0; i < numberOfEffects; i++) {
-            components[0][i] = myBaseModel.get(i).getX();
-        }
+        SweepFastLinearModel sflm = new SweepFastLinearModel(baseModel, permutedData.get(0));
+        baseInverse = sflm.getInverseOfXtX();
+        dfError = sflm.getResidualSSdf()[1] - 1;
+        fdist = new FDistribution(1, dfError);
+        tile = new AdditiveSiteTile(baseModel, baseInverse, permutedData.get(0).length);
+        myResiduals = permutedData.stream().map(tile::residuals).collect(Collectors.toList());
+        residualSS = myResiduals.stream().mapToDouble(r -> Arrays.stream(r).map(d -> d * d).sum()).toArray();
+    }
 
+    private CovariatePermutationTestSpliterator(CovariatePermutationTestSpliterator parent, List<AdditiveSite> siteList) {
+        mySites = siteList;
+        myBaseModel = parent.myBaseModel;
+        origin = 0;
+        end = siteList.size();
+        baseInverse = parent.baseInverse;
+        myResiduals = parent.myResiduals;
+        residualSS = parent.residualSS;
+        dfError = parent.dfError;
+        fdist = parent.fdist;
     }
 
     @Override
     public boolean tryAdvance(Consumer<? super double[]> action) {
         if (origin == end)
             return false;
-        AdditiveSite as = mySites.get(origin);
-        List<ModelEffect> myModel = new ArrayList<ModelEffect>(myBaseModel);
-        ModelEffect me;
-        CovariateModelEffect cme = new CovariateModelEffect(as.getCovariate());
-        myModel.add(cme);
+        if (origin < tileStart || origin >= tileEnd) {
+            if (tile == null) {
+                tile = new AdditiveSiteTile(myBaseModel, baseInverse, myResiduals.get(0).length);
+            }
+            if (tileSS == null) {
+                tileSS = new double[AdditiveSiteTile.TILE_SIZE];
+                tileProducts = new double[AdditiveSiteTile.TILE_SIZE][myResiduals.size()];
+            }
+            tileStart = origin;
+            tileEnd = origin + tile.load(mySites, origin, end);
+            tile.residualSumsOfSquares(tileSS);
+            tile.residualProducts(myResiduals, tileProducts);
+        }
 
-        SweepFastLinearModel sflm = new SweepFastLinearModel(myModel, myPermutedData.get(0));
-        double dfError = sflm.getResidualSSdf()[1];
-        DoubleMatrix G = sflm.getInverseOfXtX();
-        FDistribution fdist = new FDistribution(1, dfError);
-        double[] pvals =
-                myPermutedData.stream().map(d -> DoubleMatrixFactory.DEFAULT.make(d.length, 1, d))
-                        .mapToDouble(y -> {
-                            double[] yarray = y.to1DArray();
-                            int nbase = myBaseModel.size();
-                            DoubleMatrix[][] xtyMatrices = new DoubleMatrix[nbase + 1][1];
-                            for (int i = 0; i < nbase; i++) xtyMatrices[i][0] = myBaseModel.get(i).getXty(yarray);
-                            xtyMatrices[nbase][0] = cme.getXty(yarray);
-                            DoubleMatrix Xty = DoubleMatrixFactory.DEFAULT.compose(xtyMatrices);
-                            DoubleMatrix beta = G.mult(Xty);
-                            double ssTotal = y.crossproduct().get(0, 0);
-                            double ssModel = Xty.crossproduct(beta).get(0, 0);
-                            double ssError = ssTotal - ssModel;
-                            double kb =
-                                    beta.get(beta.numberOfRows() - 1, beta.numberOfColumns() - 1);
-                            double kgk = G.get(G.numberOfRows() - 1, G.numberOfColumns() - 1);
-                            double F = kb * kb / kgk / ssError * dfError;
-                            double p = 1 - fdist.cumulativeProbability(F);
-                            return p;
-                        }).toArray();
+        //F test of the site added to the base model, for each permutation
+        int s = origin - tileStart;
+        int nperm = myResiduals.size();
+        double[] pvals = new double[nperm];
+        if (tileSS[s] < 1e-12) {
+            //the site is confounded with the base model
+            Arrays.fill(pvals, Double.NaN);
+        } else {
+            for (int k = 0; k < nperm; k++) {
+                double ssModel = tileProducts[s][k] * tileProducts[s][k] / tileSS[s];
+                double ssError = residualSS[k] - ssModel;
+                double F = ssModel / ssError * dfError;
+                pvals[k] = 1 - fdist.cumulativeProbability(F);
+            }
+        }
 
         action.accept(pvals);
         origin++;
@@ -85,10 +107,7 @@ public class CovariatePermutationTestSpliterator implements Spliterator<double[]
         int mid = origin + numberRemaining / 2;
         List<AdditiveSite> splitSublist = mySites.subList(origin, mid);
         origin = mid;
-        List<double[]> permutedDataCopy =
-                myPermutedData.stream().map(d -> Arrays.copyOf(d, d.length)).collect(Collectors.toList());
-
-        return new CovariatePermutationTestSpliterator(permutedDataCopy, splitSublist, myBaseModel);
+        return new CovariatePermutationTestSpliterator(this, splitSublist);
     }
 
     @Override
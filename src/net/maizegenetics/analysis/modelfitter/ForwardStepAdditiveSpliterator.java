@@ -20,10 +20,18 @@ public class ForwardStepAdditiveSpliterator implements Spliterator<AdditiveSite>
     protected final double baseModeldf;
     protected final int nobs;
     protected int nsites;
+    private final SweepFastLinearModel sflm;
+    //sites are scored a tile at a time against the residuals of the base model
+    private AdditiveSiteTile tile = null;
+    private double[] residuals;
+    private double[] tileSS;
+    private double[] tileProducts;
+    private int tileStart = 0;
+    private int tileEnd = 0;
 
     public ForwardStepAdditiveSpliterator(List<AdditiveSite> siteList, List<ModelEffect> baseModel,
             double[] y) {
-        SweepFastLinearModel sflm = new SweepFastLinearModel(baseModel, y);
+        sflm = new SweepFastLinearModel(baseModel, y);
         baseModeldf = sflm.getFullModelSSdf()[1];
         nobs = y.length;
         plm = new PartitionedLinearModel(baseModel, sflm);
@@ -49,7 +57,7 @@ public class ForwardStepAdditiveSpliterator implements Spliterator<AdditiveSite>
 
         switch (as.selectionCriterion()) {
         case pval:
-            as.criterionValue(plm.testNewModelEffect(as.getCovariate()));
+            as.criterionValue(tileModelSS());
             break;
         case aic:
             plm.testNewModelEffect(as.getCovariate());
@@ -79,6 +87,30 @@ public class ForwardStepAdditiveSpliterator implements Spliterator<AdditiveSite>
         return true;
     }
 
+    /**
+     * @return  the model sum of squares for adding the site at origin to the base model, which equals
+     * plm.testNewModelEffect(covariate). The sites are scored a tile at a time.
+     */
+    private double tileModelSS() {
+        if (origin < tileStart || origin >= tileEnd) {
+            if (tile == null) {
+                tile = new AdditiveSiteTile(baseModel, sflm.getInverseOfXtX(), nobs);
+                residuals = sflm.getResiduals().to1DArray();
+                tileSS = new double[AdditiveSiteTile.TILE_SIZE];
+                tileProducts = new double[AdditiveSiteTile.TILE_SIZE];
+            }
+            tileStart = origin;
+            tileEnd = origin + tile.load(mySites, origin, end);
+            tile.residualSumsOfSquares(tileSS);
+            tile.residualProducts(residuals, tileProducts);
+        }
+        int s = origin - tileStart;
+        if (tileSS[s] < 1e-12) {
+            return 0;
+        }
+        return tileProducts[s] * tileProducts[s] / tileSS[s];
+    }
+
     @Override
     public Spliterator<AdditiveSite> trySplit() {
         int numberRemaining = end - origin;
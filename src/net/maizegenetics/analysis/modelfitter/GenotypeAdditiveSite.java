@@ -28,18 +28,62 @@ public class GenotypeAdditiveSite extends AbstractAdditiveSite {
     public GenotypeAdditiveSite(int site, String chr, int pos, String id,
             CRITERION selectionCriterion, byte[] genotype,
             byte majorAllele, double majorAlleleFrequency) {
+        this(site, chr, pos, id, selectionCriterion, genotype.length, majorAlleleFrequency);
+        bitStore = encode(genotype, majorAllele);
+    }
+
+    /**
+     * Constructor for subclasses that supply the genotype codes by overriding bitStoreWord()
+     * @param ntaxa                     the number of taxa
+     * @param majorAlleleFrequency      major allele frequency
+     */
+    protected GenotypeAdditiveSite(int site, String chr, int pos, String id,
+            CRITERION selectionCriterion, int ntaxa, double majorAlleleFrequency) {
         super(site, chr, pos, id, selectionCriterion);
-        byte unknown = GenotypeTable.UNKNOWN_DIPLOID_ALLELE;
-        ntaxa = genotype.length;
+        this.ntaxa = ntaxa;
         double mean = 2 * majorAlleleFrequency;
         byteConversion = new double[] { -mean, 1 - mean, 2 - mean, 0 };
+    }
+
+    /**
+     * Copies a site, reading its genotype codes into an array. Used to serialize sites whose codes are not stored
+     * in this class.
+     * @param site      the site to copy
+     */
+    GenotypeAdditiveSite(GenotypeAdditiveSite site) {
+        super(site.siteIndex, site.chrName, site.position, site.name, site.selectionCriterion);
+        criterionValue = site.criterionValue;
+        ntaxa = site.ntaxa;
+        byteConversion = site.byteConversion;
+        taxaIndex = site.taxaIndex;
+        bitStore = new int[numberOfInts(ntaxa)];
+        for (int i = 0; i < bitStore.length; i++) {
+            bitStore[i] = site.bitStoreWord(i);
+        }
+    }
 
+    /**
+     * @param ntaxa     the number of taxa
+     * @return          the number of ints used to store the genotype codes of ntaxa taxa
+     */
+    static int numberOfInts(int ntaxa) {
         int numberOfInts = ntaxa / 16;
         int remainder = ntaxa % 16;
         if (remainder > 0)
             numberOfInts++;
+        return numberOfInts;
+    }
 
-        bitStore = new int[numberOfInts];
+    /**
+     * Codes each genotype as the number of major alleles (0, 1, 2) or 3 for missing, packed 16 taxa to an int
+     * @param genotype      genotypeAllTaxa for a site
+     * @param majorAllele   major allele
+     * @return              the packed genotype codes
+     */
+    static int[] encode(byte[] genotype, byte majorAllele) {
+        byte unknown = GenotypeTable.UNKNOWN_DIPLOID_ALLELE;
+        int ntaxa = genotype.length;
+        int[] bitStore = new int[numberOfInts(ntaxa)];
         int intCount = 0;
         int genoCount = 0;
 
@@ -67,6 +111,15 @@ public class GenotypeAdditiveSite extends AbstractAdditiveSite {
 
             bitStore[intCount++] = intStore;
         }
+        return bitStore;
+    }
+
+    /**
+     * @param i     the index of an int in the packed genotype codes
+     * @return      the ith int of the packed genotype codes
+     */
+    protected int bitStoreWord(int i) {
+        return bitStore[i];
     }
 
     @Override
@@ -89,7 +142,7 @@ public class GenotypeAdditiveSite extends AbstractAdditiveSite {
         n = n * 2;
         int i = n / 32;
         int j = n % 32;
-        int intStore = bitStore[i];
+        int intStore = bitStoreWord(i);
         return (intStore >> j) & 3;
     }
 
@@ -109,12 +162,33 @@ public class GenotypeAdditiveSite extends AbstractAdditiveSite {
             return getCovariateWithReindex(subset);
     }
 
+    @Override
+    public void getCovariate(double[] destination, int offset) {
+        if (taxaIndex == null) {
+            int intCount = 0;
+            int genoCount = 0;
+            while (genoCount < ntaxa) {
+                int intStore = bitStoreWord(intCount++);
+                for (int i = 0; i < 32; i += 2) {
+                    destination[offset + genoCount++] = byteConversion[(intStore >> i) & 3];
+                    if (genoCount == ntaxa)
+                        break;
+                }
+            }
+        } else {
+            int nval = taxaIndex.length;
+            for (int i = 0; i < nval; i++) {
+                destination[offset + i] = byteConversion[genotypeIndex(taxaIndex[i])];
+            }
+        }
+    }
+
     public double[] getCovariateNoReindex() {
         double[] cov = new double[ntaxa];
         int intCount = 0;
         int genoCount = 0;
         while (genoCount < ntaxa) {
-            int intStore = bitStore[intCount++];
+            int intStore = bitStoreWord(intCount++);
             for (int i = 0; i < 32; i += 2) {
                 int genoIndex = (intStore >> i) & 3;
                 cov[genoCount++] = byteConversion[genoIndex];
@@ -0,0 +1,38 @@
+package net.maizegenetics.analysis.modelfitter;
+
+/**
+ * A GenotypeAdditiveSite whose genotype codes are read from a memory mapped AdditiveSiteStore
+ */
+class MappedGenotypeAdditiveSite extends GenotypeAdditiveSite {
+
+    private static final long serialVersionUID = 4633471924718502196L;
+    private final transient AdditiveSiteStore myStore;
+    private final int storeSite;
+
+    /**
+     * @param store                     the store holding the genotype codes
+     * @param storeSite                 the index of this site in the store
+     * @param site                      the site index from the originating GenotypeTable
+     * @param ntaxa                     the number of taxa in the store
+     * @param majorAlleleFrequency      major allele frequency
+     */
+    MappedGenotypeAdditiveSite(AdditiveSiteStore store, int storeSite, int site, String chr, int pos, String id,
+            CRITERION selectionCriterion, int ntaxa, double majorAlleleFrequency) {
+        super(site, chr, pos, id, selectionCriterion, ntaxa, majorAlleleFrequency);
+        myStore = store;
+        this.storeSite = storeSite;
+    }
+
+    @Override
+    protected int bitStoreWord(int i) {
+        return myStore.genotypeWord(storeSite, i);
+    }
+
+    /**
+     * The store is not serialized, so a GenotypeAdditiveSite holding a copy of the genotype codes is written instead
+     */
+    private Object writeReplace() {
+        return new GenotypeAdditiveSite(this);
+    }
+
+}
@@ -1,8 +1,5 @@
 package net.maizegenetics.analysis.rna;
 
-import com.google.common.collect.*;
-import com.google.common.primitives.Ints;
-import net.maizegenetics.dna.BaseEncoder;
 import net.maizegenetics.dna.tag.Tag;
 import net.maizegenetics.util.Tuple;
 import org.biojava.nbio.alignment.Alignments;
@@ -19,6 +16,9 @@ import java.util.stream.IntStream;
 
 /**
  * Find Match by Words using a simple hashmap of fixed length word (kmers) to determine most similar sequence.
+ * Kmers are packed into longs in a KmerIndex, and queries are matched by rolling the kmer one base at a time.  Query
+ * kmers containing N or another base that is not A, C, G or T are skipped, as they can't match a tag.  The
+ * index can be saved to a file and memory mapped by later runs with the same tags (see Builder.indexFile()).
  *
  * @author Ed Buckler
  * @author Karl Kremling
@@ -27,56 +27,52 @@ import java.util.stream.IntStream;
 public class FindMatchByWordHash {
     public enum MatchType{COMPLETE_SEQ, FIRST_KMER, MODAL_KMER};
     private final List<Tag> tags;
-    private final Map<String,int[]> kmerMap;
+    private final KmerIndex kmerIndex;
     private final Map<String,Integer> completeSeqMap;
     private final int wordLength;
     private final int maxWordCopies;
     private final MatchType matchType;
-    private final int[] emptyInts=new int[0];
     private final boolean searchBiDirectional;
+    //per thread counts of hits indexed by hit + number of tags, used to find the modal hit
+    private final ThreadLocal<int[]> hitCounts;
+    private final ThreadLocal<int[][]> touchedHits=ThreadLocal.withInitial(() -> new int[][]{new int[256]});
 
     /**
      * Create kmer
      * @param tagSet unique set sequences to be indexed with kmers
      * @param wordLength length of all the kmers
      * @param maxWordCopies retain only those kmers appearing less then this value
+     * @param indexFile if not null, kmer index file to memory map, or to create if missing or out of date
      */
     private FindMatchByWordHash(Set<Tag> tagSet, MatchType matchType, int wordLength, int maxWordCopies,
-                                boolean searchBiDirectional) { //find a contig which is the consensus source of the kmers from a read
+                                boolean searchBiDirectional, String indexFile) { //find a contig which is the consensus source of the kmers from a read
         this.wordLength=wordLength; // length of kmers for matching
         this.maxWordCopies=maxWordCopies; // kmer appearance frequency cutoff. Kmers are later discarded if they appear in the contigs more than maxKmerCopies times
         this.matchType=matchType;
         this.searchBiDirectional=searchBiDirectional;
         tags=new ArrayList<>(tagSet); //holds all the sequences or contigs in an array
+        //sorted so the tag indices, and therefore a saved index, do not depend on the iteration order of the set
+        tags.sort(Comparator.comparing(Tag::sequence));
         long bpLength=0;
-        Multimap<String,Integer> completeKmerMap = HashMultimap.create(4_000_000,2); //? hashmap pointing from each kmer to its Contig of origin
-        for (int ti = 0; ti < tags.size(); ti++) { //iterates through the ArrayList of tags
-            String seq=tags.get(ti).sequence(); //pulls the sequence of contig/tag ti
-            bpLength+=seq.length(); //increase the bpLength counter by ti's length
-            for (int i = 0; i <= seq.length() - wordLength; i++) { //slides through the contig to pull out each kmer
-                String sub = seq.substring(i, i + wordLength);
-                completeKmerMap.put(sub, (ti+1)); //appends a key value pair to the KmerMap in which the k=kmer and the v=contig of origin
-                //reverse complement reads are given negative values
-                if(searchBiDirectional==true) completeKmerMap.put(BaseEncoder.getReverseComplement(sub), -(ti+1));
-            }
-        }
-        System.out.printf("Total bp %,d Kmer Map Size: %d %n", bpLength,completeKmerMap.size());
-        //purge high copy kmers from the multimap
-        //consider making it immutable
-        kmerMap=new HashMap<>(completeKmerMap.size()*3/2); //? why make it 1.5x larger than the complete kmer multimap if we know we will have kmers <= CompleteKmerMap.size?
-        for (String kmer : completeKmerMap.keySet()) {
-            Collection<Integer> tagIndices=completeKmerMap.get(kmer);
-            if(tagIndices.size()<= this.maxWordCopies) { //only record key-value pairs for kmers appearing <= maxKmerCopies times
-                kmerMap.put(kmer, Ints.toArray(tagIndices));
+        for (Tag tag : tags) bpLength+=tag.sequence().length();
+        if(matchType==MatchType.COMPLETE_SEQ) {
+            kmerIndex=null;
+        } else {
+            KmerIndex index=(indexFile==null) ? null : KmerIndex.load(indexFile, tags, wordLength, maxWordCopies, searchBiDirectional);
+            if(index==null) {
+                //kmers appearing more than maxKmerCopies times are dropped, reverse complement hits are given negative values
+                index=KmerIndex.build(tags, wordLength, maxWordCopies, searchBiDirectional);
+                if(indexFile!=null) index.save(indexFile);
             }
+            kmerIndex=index;
+            System.out.printf("Total bp %,d Kmer Index Size: %,d %n", bpLength, kmerIndex.numKmers());
         }
+        hitCounts=ThreadLocal.withInitial(() -> new int[2*tags.size()+1]);
         //Allow direct searching for the complete sequence
         completeSeqMap = new HashMap<>(tags.size()*3/2);
         for (int ti = 0; ti < tags.size(); ti++) {
             completeSeqMap.put(tags.get(ti).sequence(),(ti+1));
-            if(searchBiDirectional==true) completeKmerMap.put(BaseEncoder.getReverseComplement(tags.get(ti).sequence()), -(ti+1));
         }
-        System.out.println(kmerMap.size());
 
     }
 
@@ -115,12 +111,18 @@ public class FindMatchByWordHash {
      * @return matching sequence
      */
     private Match getFirstUniqueMatchIndex(String seq) {
-        OptionalInt index= IntStream.range(0,seq.length() - wordLength)
-                .mapToObj(i -> kmerMap.getOrDefault(seq.substring(i, i + wordLength), emptyInts)) //search the kmer map
-                .filter(hits -> hits.length == 1)  //only return kmer hits with a single match
-                .mapToInt(hits -> hits[0])
-                .findFirst();
-        if(index.isPresent()) return new Match(index.getAsInt(),Double.NaN);
+        long kmer=0;
+        int numValid=0;
+        //kmers start from 0 to before seq.length() - wordLength
+        for (int i = 0; i < seq.length() - 1; i++) {
+            kmer=kmerIndex.roll(kmer, seq.charAt(i));
+            if(kmer<0) {numValid=0; kmer=0; continue;}
+            if(++numValid<wordLength) continue;
+            int slot=kmerIndex.find(kmer); //search the kmer index
+            if(slot>=0 && kmerIndex.hitEnd(slot)-kmerIndex.hitStart(slot)==1) { //only return kmer hits with a single match
+                return new Match(kmerIndex.hit(kmerIndex.hitStart(slot)),Double.NaN);
+            }
+        }
         return new Match();
     }
 
@@ -130,12 +132,38 @@ public class FindMatchByWordHash {
      * @return matching sequence
      */
     private Match getMostCommonMatchIndex(String seq) {
-        int[] allHits=IntStream.range(0, seq.length() - wordLength).filter(i -> i%3==0) //stream formatting of a loop to only consider kmers starting at evey 3rd position
-                .flatMap(i -> IntStream.of(kmerMap.getOrDefault(seq.substring(i, i + wordLength), emptyInts))) // load kmer from pos i through wordLength
-                .toArray();
-        if(allHits.length==0) return new Match(); //if there are no hits for any of the kmers in a read, return an emtpy hit entry
+        int[] counts=hitCounts.get();
+        int[][] touched=touchedHits.get();
+        int numTouched=0;
+        int maxCnt=0, mode=0;
+        long kmer=0;
+        int numValid=0;
+        //only consider kmers starting at every 3rd position, from 0 to before seq.length() - wordLength
+        for (int i = 0; i < seq.length() - 1; i++) {
+            kmer=kmerIndex.roll(kmer, seq.charAt(i));
+            if(kmer<0) {numValid=0; kmer=0; continue;}
+            if(++numValid<wordLength || (i-wordLength+1)%3!=0) continue;
+            int slot=kmerIndex.find(kmer);
+            if(slot<0) continue;
+            int end=kmerIndex.hitEnd(slot);
+            for (int h = kmerIndex.hitStart(slot); h < end; h++) {
+                int hit=kmerIndex.hit(h);
+                int count=++counts[hit+tags.size()];
+                if(count==1) {
+                    if(numTouched==touched[0].length) touched[0]=Arrays.copyOf(touched[0], numTouched*2);
+                    touched[0][numTouched++]=hit;
+                }
+                //first hit to reach the highest count is the mode
+                if(count>maxCnt) {
+                    maxCnt=count;
+                    mode=hit;
+                }
+            }
+        }
+        for (int t = 0; t < numTouched; t++) counts[touched[0][t]+tags.size()]=0;
+        if(maxCnt==0) return new Match(); //if there are no hits for any of the kmers in a read, return an emtpy hit entry
 
-        return new Match(mode(allHits),Double.NaN);
+        return new Match(mode,Double.NaN);
     }
 
     private Match lookForCompleteMatch(String seq) {
@@ -250,19 +278,6 @@ public class FindMatchByWordHash {
     }
 
 
-    private static int mode(int[] array) {
-        HashMap<Integer, Integer> cntMap = new HashMap<>();
-        int maxCnt = 1, mode = array[0];
-        for (int i = 0; i < array.length; i++) {
-            int count = cntMap.compute(array[i], (k, cnt) -> cnt == null ? 1 : cnt + 1);
-            if (count > maxCnt) {
-                maxCnt = count;
-                mode = array[i];
-            }
-        }
-        return mode;
-    }
-
     public static Builder getBuilder(Set<Tag> tagSet) {
         return new Builder(tagSet);
     }
@@ -273,6 +288,7 @@ public class FindMatchByWordHash {
         private int wordLength = 16;
         private int maxWordCopies = 10;
         private boolean searchBiDirectional = true;
+        private String indexFile = null;
 
         public Builder(Set<Tag> tagSet) {
             this.tagSet = tagSet;
@@ -298,8 +314,17 @@ public class FindMatchByWordHash {
             return this;
         }
 
+        /**
+         * Kmer index file.  If it exists and was created from the same tags and settings, it is memory mapped.
+         * Otherwise, the index is built and saved to this file.
+         */
+        public Builder indexFile(String indexFile) {
+            this.indexFile = indexFile;
+            return this;
+        }
+
         public FindMatchByWordHash build() {
-            return new FindMatchByWordHash(tagSet, matchType, wordLength, maxWordCopies, searchBiDirectional);
+            return new FindMatchByWordHash(tagSet, matchType, wordLength, maxWordCopies, searchBiDirectional, indexFile);
         }
     }
 
@@ -0,0 +1,345 @@
+package net.maizegenetics.analysis.rna;
+
+import net.maizegenetics.dna.tag.Tag;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Index of fixed length words (kmers) of a list of reference sequences (contigs).  Each kmer is packed 2 bits per
+ * base (A=0, C=1, G=2, T=3) into a long, so words can be at most 31 bases.  Kmers are kept in an open addressing
+ * table of longs, and the hits for the kmer in each slot are stored compressed sparse row.  Hits are the tag index
+ * plus one, negative for hits to the reverse complement.  Kmers found in more than maxWordCopies hits are dropped.
+ * Kmers containing a base other than A, C, G or T (for example N) are not indexed or queried.  Tags are stored 2 bits
+ * per base, so their sequences never contain such bases, and a query kmer containing one could never match a tag
+ * kmer when the index was keyed by substrings either.
+ *
+ * The index can be saved to a file, and later memory mapped without rebuilding, as long as the tags are the same.
+ */
+final class KmerIndex {
+    private static final Logger myLogger = Logger.getLogger(KmerIndex.class);
+
+    private static final long MAGIC = 0x544B4D4552494458L; // TKMERIDX
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final long EMPTY = -1L;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    private final int wordLength;
+    private final int maxWordCopies;
+    private final boolean searchBiDirectional;
+    private final int numTags;
+    private final long tagChecksum;
+    private final long mask;
+    private final int numKmers;
+    private final LongBuffer keys;
+    //offsets into hits for each slot, length is capacity+1
+    private final IntBuffer offsets;
+    private final IntBuffer hits;
+
+    private KmerIndex(int wordLength, int maxWordCopies, boolean searchBiDirectional, int numTags, long tagChecksum,
+                      int numKmers, LongBuffer keys, IntBuffer offsets, IntBuffer hits) {
+        this.wordLength=wordLength;
+        this.maxWordCopies=maxWordCopies;
+        this.searchBiDirectional=searchBiDirectional;
+        this.numTags=numTags;
+        this.tagChecksum=tagChecksum;
+        this.mask=(1L << (2 * wordLength)) - 1;
+        this.numKmers=numKmers;
+        this.keys=keys;
+        this.offsets=offsets;
+        this.hits=hits;
+    }
+
+    /**
+     * Builds the index.  Kmers of each tag are extracted in parallel.
+     * @param tags reference sequences, the position in this list is the tag index
+     * @param wordLength length of all the kmers (at most 31)
+     * @param maxWordCopies retain only those kmers with no more than this number of hits
+     * @param searchBiDirectional whether to also index the reverse complement of the tags
+     */
+    static KmerIndex build(List<Tag> tags, int wordLength, int maxWordCopies, boolean searchBiDirectional) {
+        if (wordLength < 1 || wordLength > 31) {
+            throw new IllegalArgumentException("KmerIndex: build: word length must be between 1 and 31: " + wordLength);
+        }
+        long mask=(1L << (2 * wordLength)) - 1;
+        //forward kmers, followed by the reverse complement kmers, distinct within each direction
+        long[][] tagKmers=new long[tags.size()][];
+        int[] numForward=new int[tags.size()];
+        IntStream.range(0, tags.size()).parallel().forEach(ti -> {
+            String seq=tags.get(ti).sequence();
+            long[] forward=kmers(seq, wordLength, mask, false);
+            numForward[ti]=forward.length;
+            if (searchBiDirectional) {
+                long[] reverse=kmers(seq, wordLength, mask, true);
+                long[] both=Arrays.copyOf(forward, forward.length + reverse.length);
+                System.arraycopy(reverse, 0, both, forward.length, reverse.length);
+                tagKmers[ti]=both;
+            } else {
+                tagKmers[ti]=forward;
+            }
+        });
+
+        //count hits per kmer
+        long numEntries=0;
+        for (long[] current : tagKmers) numEntries+=current.length;
+        if (numEntries > Integer.MAX_VALUE / 2) {
+            throw new IllegalStateException("KmerIndex: build: too many kmers: " + numEntries);
+        }
+        long[] countKeys=newKeys(capacity((int) numEntries));
+        int[] counts=new int[countKeys.length];
+        for (long[] current : tagKmers) {
+            for (long kmer : current) {
+                int slot=slot(countKeys, kmer);
+                countKeys[slot]=kmer;
+                counts[slot]++;
+            }
+        }
+        int numKmers=0;
+        int numHits=0;
+        for (int s = 0; s < counts.length; s++) {
+            if (countKeys[s] != EMPTY && counts[s] <= maxWordCopies) {
+                numKmers++;
+                numHits+=counts[s];
+            }
+        }
+
+        //table of the retained kmers
+        long[] keys=newKeys(capacity(numKmers));
+        int[] offsets=new int[keys.length + 1];
+        for (int s = 0; s < counts.length; s++) {
+            if (countKeys[s] != EMPTY && counts[s] <= maxWordCopies) {
+                int slot=slot(keys, countKeys[s]);
+                keys[slot]=countKeys[s];
+                offsets[slot + 1]=counts[s];
+            }
+        }
+        countKeys=null;
+        counts=null;
+        for (int s = 0; s < keys.length; s++) offsets[s + 1]+=offsets[s];
+
+        int[] hits=new int[numHits];
+        int[] next=Arrays.copyOf(offsets, keys.length);
+        for (int ti = 0; ti < tagKmers.length; ti++) {
+            long[] current=tagKmers[ti];
+            for (int i = 0; i < current.length; i++) {
+                int slot=slot(keys, current[i]);
+                if (keys[slot] == EMPTY) continue;
+                hits[next[slot]++]=i < numForward[ti] ? ti + 1 : -(ti + 1);
+            }
+        }
+        IntStream.range(0, keys.length).parallel().forEach(s -> Arrays.sort(hits, offsets[s], offsets[s + 1]));
+
+        myLogger.info(String.format("KmerIndex: build: kmer hits: %,d retained kmers: %,d retained hits: %,d", numEntries, numKmers, numHits));
+        return new KmerIndex(wordLength, maxWordCopies, searchBiDirectional, tags.size(), checksum(tags), numKmers,
+                LongBuffer.wrap(keys), IntBuffer.wrap(offsets), IntBuffer.wrap(hits));
+    }
+
+    /**
+     * Memory maps an index saved with save()
+     * @param filename index file
+     * @return index, or null if the file does not exist or was created with different tags or settings
+     */
+    static KmerIndex load(String filename, List<Tag> tags, int wordLength, int maxWordCopies, boolean searchBiDirectional) {
+        Path path=Paths.get(filename);
+        if (!Files.exists(path)) return null;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header=channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getLong() != MAGIC || header.getInt() != VERSION) {
+                throw new IllegalStateException("KmerIndex: load: not a kmer index file: " + filename);
+            }
+            int fileWordLength=header.getInt();
+            int fileMaxWordCopies=header.getInt();
+            boolean fileBiDirectional=header.getInt() != 0;
+            int fileNumTags=header.getInt();
+            long fileChecksum=header.getLong();
+            int capacity=header.getInt();
+            int numKmers=header.getInt();
+            int numHits=header.getInt();
+            if (fileWordLength != wordLength || fileMaxWordCopies != maxWordCopies || fileBiDirectional != searchBiDirectional
+                    || fileNumTags != tags.size() || fileChecksum != checksum(tags)) {
+                myLogger.warn("KmerIndex: load: index file: " + filename + " does not match the current tags or settings");
+                return null;
+            }
+            long position=HEADER_SIZE;
+            LongBuffer keys=channel.map(FileChannel.MapMode.READ_ONLY, position, (long) capacity * Long.BYTES).asLongBuffer();
+            position+=(long) capacity * Long.BYTES;
+            IntBuffer offsets=channel.map(FileChannel.MapMode.READ_ONLY, position, (long) (capacity + 1) * Integer.BYTES).asIntBuffer();
+            position+=(long) (capacity + 1) * Integer.BYTES;
+            IntBuffer hits=channel.map(FileChannel.MapMode.READ_ONLY, position, (long) numHits * Integer.BYTES).asIntBuffer();
+            myLogger.info(String.format("KmerIndex: load: mapped: %s kmers: %,d", filename, numKmers));
+            return new KmerIndex(wordLength, maxWordCopies, searchBiDirectional, fileNumTags, fileChecksum, numKmers, keys, offsets, hits);
+        } catch (IOException e) {
+            throw new IllegalStateException("KmerIndex: load: problem reading: " + filename + ". " + e.getMessage());
+        }
+    }
+
+    /**
+     * Saves the index, so it can later be memory mapped with load()
+     * @param filename index file
+     */
+    void save(String filename) {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer=ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+            buffer.putLong(MAGIC).putInt(VERSION).putInt(wordLength).putInt(maxWordCopies).putInt(searchBiDirectional ? 1 : 0)
+                    .putInt(numTags).putLong(tagChecksum).putInt(keys.limit()).putInt(numKmers).putInt(hits.limit());
+            buffer.position(HEADER_SIZE);
+            for (int i = 0; i < keys.limit(); i++) {
+                if (buffer.remaining() < Long.BYTES) flush(channel, buffer);
+                buffer.putLong(keys.get(i));
+            }
+            for (int i = 0; i < offsets.limit(); i++) {
+                if (buffer.remaining() < Integer.BYTES) flush(channel, buffer);
+                buffer.putInt(offsets.get(i));
+            }
+            for (int i = 0; i < hits.limit(); i++) {
+                if (buffer.remaining() < Integer.BYTES) flush(channel, buffer);
+                buffer.putInt(hits.get(i));
+            }
+            flush(channel, buffer);
+        } catch (IOException e) {
+            throw new IllegalStateException("KmerIndex: save: problem writing: " + filename + ". " + e.getMessage());
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    int wordLength() {
+        return wordLength;
+    }
+
+    /**
+     * Number of distinct kmers retained
+     */
+    int numKmers() {
+        return numKmers;
+    }
+
+    /**
+     * Returns the slot of the packed kmer, or -1 if it is not in the index.  Hits of the slot are from
+     * hitStart() (inclusive) to hitEnd() (exclusive).
+     */
+    int find(long kmer) {
+        int slotMask=keys.limit() - 1;
+        int slot=mix(kmer) & slotMask;
+        long current;
+        while ((current=keys.get(slot)) != EMPTY) {
+            if (current == kmer) return slot;
+            slot=(slot + 1) & slotMask;
+        }
+        return -1;
+    }
+
+    int hitStart(int slot) {
+        return offsets.get(slot);
+    }
+
+    int hitEnd(int slot) {
+        return offsets.get(slot + 1);
+    }
+
+    /**
+     * Tag index plus one, negative when the hit is to the reverse complement
+     */
+    int hit(int index) {
+        return hits.get(index);
+    }
+
+    /**
+     * Adds the next base to a packed kmer.  Callers skip the kmers that include a base that is not A, C, G, or T,
+     * since no tag kmer has one.
+     * @return updated kmer, or -1 if base is not A, C, G, or T
+     */
+    long roll(long kmer, char base) {
+        int value=baseValue(base);
+        if (value < 0) return -1;
+        return ((kmer << 2) | value) & mask;
+    }
+
+    private static long[] kmers(String seq, int wordLength, long mask, boolean reverseComplement) {
+        int numKmers=Math.max(0, seq.length() - wordLength + 1);
+        long[] result=new long[numKmers];
+        int count=0;
+        long kmer=0;
+        int numValid=0;
+        for (int i = 0; i < seq.length(); i++) {
+            int value=baseValue(seq.charAt(reverseComplement ? seq.length() - 1 - i : i));
+            if (value < 0) {
+                numValid=0;
+                continue;
+            }
+            if (reverseComplement) value=3 - value;
+            kmer=((kmer << 2) | value) & mask;
+            if (++numValid >= wordLength) result[count++]=kmer;
+        }
+        result=Arrays.copyOf(result, count);
+        Arrays.sort(result);
+        int distinct=0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || result[distinct - 1] != result[i]) result[distinct++]=result[i];
+        }
+        return Arrays.copyOf(result, distinct);
+    }
+
+    private static long checksum(List<Tag> tags) {
+        long result=1125899906842597L;
+        for (Tag tag : tags) {
+            String seq=tag.sequence();
+            for (int i = 0; i < seq.length(); i++) result=31 * result + seq.charAt(i);
+            result=31 * result + ',';
+        }
+        return result;
+    }
+
+    private static int capacity(int numKeys) {
+        return Integer.highestOneBit(Math.max(16, numKeys * 2 - 1)) << 1;
+    }
+
+    private static long[] newKeys(int capacity) {
+        long[] result=new long[capacity];
+        Arrays.fill(result, EMPTY);
+        return result;
+    }
+
+    /**
+     * Returns slot for key, either where it is or the empty slot where it belongs.
+     */
+    private static int slot(long[] keys, long key) {
+        int slotMask=keys.length - 1;
+        int slot=mix(key) & slotMask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot=(slot + 1) & slotMask;
+        }
+        return slot;
+    }
+
+    private static int mix(long key) {
+        long h=key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int baseValue(char base) {
+        switch (base) {
+            case 'A': return 0;
+            case 'C': return 1;
+            case 'G': return 2;
+            case 'T': return 3;
+            default: return -1;
+        }
+    }
+}
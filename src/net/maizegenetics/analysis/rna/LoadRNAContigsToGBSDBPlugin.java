@@ -43,6 +43,14 @@ public class LoadRNAContigsToGBSDBPlugin extends AbstractPlugin {
             .description("Output Database File").build();
     private PluginParameter<Boolean> myDeleteOldData = new PluginParameter.Builder<>("deleteOldData",false,Boolean.class).guiName("Delete Old Data")
             .description("Delete existing SNP quality data from db tables").build();
+    private PluginParameter<String> myKmerIndexFile = new PluginParameter.Builder<>("kmerIndex", null, String.class).guiName("Kmer Index File").required(false).outFile()
+            .description("If specified, kmer index of the contigs saved for use by RNADeMultiplexProductionPlugin").build();
+    private PluginParameter<Integer> myWordSizeMatching = new PluginParameter.Builder<>("word", 16, Integer.class).guiName("Word size used by match")
+            .description("Word size of the kmer index").build();
+    private PluginParameter<Integer> myMaxWordRepeats = new PluginParameter.Builder<>("wordRep", 10, Integer.class).guiName("Maximum repeats of word")
+            .description("Maximum repetitiveness of the word in the kmer index").build();
+    private PluginParameter<Boolean> mySearchReverseComplement = new PluginParameter.Builder<>("searchRevComp",true,Boolean.class).guiName("Search reverse complement")
+            .description("Include the reverse complements of the contigs in the kmer index").build();
 
     public LoadRNAContigsToGBSDBPlugin() {
         super(null, false);
@@ -109,6 +117,14 @@ public class LoadRNAContigsToGBSDBPlugin extends AbstractPlugin {
                 
             }
             tdw.putAllNamesTag(contigNameMap);  //add map to databse
+            if (kmerIndexFile() != null) {
+                FindMatchByWordHash.getBuilder(tdw.getTags())
+                        .wordLength(wordSizeMatching())
+                        .maxWordCopies(maxWordRepeats())
+                        .searchBiDirectional(searchReverseComplement())
+                        .indexFile(kmerIndexFile())
+                        .build();
+            }
             ((TagDataSQLite)tdw).close();
 
         } catch(Exception ioe) {
@@ -203,6 +219,96 @@ public class LoadRNAContigsToGBSDBPlugin extends AbstractPlugin {
         return this;
     }
 
+    /**
+     * If specified, kmer index of the contigs saved for use
+     * by RNADeMultiplexProductionPlugin
+     *
+     * @return Kmer Index File
+     */
+    public String kmerIndexFile() {
+        return myKmerIndexFile.value();
+    }
+
+    /**
+     * Set Kmer Index File. If specified, kmer index of the
+     * contigs saved for use by RNADeMultiplexProductionPlugin
+     *
+     * @param value Kmer Index File
+     *
+     * @return this plugin
+     */
+    public LoadRNAContigsToGBSDBPlugin kmerIndexFile(String value) {
+        myKmerIndexFile = new PluginParameter<>(myKmerIndexFile, value);
+        return this;
+    }
+
+    /**
+     * Word size of the kmer index
+     *
+     * @return Word size used by match
+     */
+    public Integer wordSizeMatching() {
+        return myWordSizeMatching.value();
+    }
+
+    /**
+     * Set Word size used by match. Word size of the kmer
+     * index
+     *
+     * @param value Word size used by match
+     *
+     * @return this plugin
+     */
+    public LoadRNAContigsToGBSDBPlugin wordSizeMatching(Integer value) {
+        myWordSizeMatching = new PluginParameter<>(myWordSizeMatching, value);
+        return this;
+    }
+
+    /**
+     * Maximum repetitiveness of the word in the kmer index
+     *
+     * @return Maximum repeats of word
+     */
+    public Integer maxWordRepeats() {
+        return myMaxWordRepeats.value();
+    }
+
+    /**
+     * Set Maximum repeats of word. Maximum repetitiveness
+     * of the word in the kmer index
+     *
+     * @param value Maximum repeats of word
+     *
+     * @return this plugin
+     */
+    public LoadRNAContigsToGBSDBPlugin maxWordRepeats(Integer value) {
+        myMaxWordRepeats = new PluginParameter<>(myMaxWordRepeats, value);
+        return this;
+    }
+
+    /**
+     * Include the reverse complements of the contigs in the
+     * kmer index
+     *
+     * @return Search reverse complement
+     */
+    public Boolean searchReverseComplement() {
+        return mySearchReverseComplement.value();
+    }
+
+    /**
+     * Set Search reverse complement. Include the reverse
+     * complements of the contigs in the kmer index
+     *
+     * @param value Search reverse complement
+     *
+     * @return this plugin
+     */
+    public LoadRNAContigsToGBSDBPlugin searchReverseComplement(Boolean value) {
+        mySearchReverseComplement = new PluginParameter<>(mySearchReverseComplement, value);
+        return this;
+    }
+
 
     @Override
     public ImageIcon getIcon() {
@@ -48,6 +48,8 @@ public class RNADeMultiplexProductionPlugin extends AbstractPlugin {
             .description("Number of flow cells being processed simultaneously").build();
     private PluginParameter<Integer> myMinQualScore = new PluginParameter.Builder<>("mnQS", 0, Integer.class).guiName("Minimum quality score").required(false)
             .description("Minimum quality score within the barcode and read length to be accepted").build();
+    private PluginParameter<String> myKmerIndexFile = new PluginParameter.Builder<>("kmerIndex", null, String.class).guiName("Kmer Index File").required(false)
+            .description("Kmer index file of the contigs.  Memory mapped if it matches the contigs and word settings, otherwise created.").build();
 
 
 
@@ -113,6 +115,7 @@ public class RNADeMultiplexProductionPlugin extends AbstractPlugin {
                 .wordLength(wordSizeMatching())
                 .maxWordCopies(maxWordRepeats())
                 .searchBiDirectional(searchReverseComplement())
+                .indexFile(kmerIndexFile())
                 .build();
         taxatissueCntMap=new ConcurrentHashMap<>(maxTissue*maxTaxa*2);
 
@@ -453,4 +456,28 @@ public class RNADeMultiplexProductionPlugin extends AbstractPlugin {
         return this;
     }
 
+    /**
+     * Kmer index file of the contigs.  Memory mapped if it
+     * matches the contigs and word settings, otherwise created.
+     *
+     * @return Kmer Index File
+     */
+    public String kmerIndexFile() {
+        return myKmerIndexFile.value();
+    }
+
+    /**
+     * Set Kmer Index File. Kmer index file of the contigs.
+     * Memory mapped if it matches the contigs and word settings,
+     * otherwise created.
+     *
+     * @param value Kmer Index File
+     *
+     * @return this plugin
+     */
+    public RNADeMultiplexProductionPlugin kmerIndexFile(String value) {
+        myKmerIndexFile = new PluginParameter<>(myKmerIndexFile, value);
+        return this;
+    }
+
 }
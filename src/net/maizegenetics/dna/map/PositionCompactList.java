@@ -0,0 +1,995 @@
+/*
+ *  PositionCompactList
+ */
+package net.maizegenetics.dna.map;
+
+import cern.colt.GenericSorting;
+import cern.colt.Swapper;
+import cern.colt.function.IntComparator;
+import com.google.common.collect.ComparisonChain;
+import net.maizegenetics.dna.WHICH_ALLELE;
+import net.maizegenetics.util.GeneralAnnotation;
+import net.maizegenetics.util.GeneralAnnotationStorage;
+
+import java.io.ByteArrayOutputStream;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In memory immutable instance of {@link PositionList} that stores sites in
+ * primitive columns instead of a list of {@link Position} objects. Physical
+ * positions are an int[] with a chromosome offset table, alleles are packed
+ * 4 bits per allele type in a long per site, and optional attributes (strand,
+ * cM, MAF, coverage, SNP IDs, annotations) are only stored when any site has
+ * a non-default value. Annotations are dictionary coded. The VARIANT
+ * annotation has a code per site, and other annotation entries are runs of
+ * codes indexed by site. Positions returned by {@link #get(int)} are light
+ * weight views into these columns. Use the {@link PositionListBuilder} to
+ * create the list. This list is sorted by position.
+ */
+final class PositionCompactList extends AbstractList<Position> implements PositionList {
+
+    private static final WHICH_ALLELE[] ALLELE_TYPES = WHICH_ALLELE.values();
+    private static final String VARIANT = "VARIANT";
+
+    private final int myNumPositions;
+    private final String myGenomeVersion;
+
+    private final int[] myPositions;
+    private final long[] myAlleles;
+
+    private final Chromosome[] myChromosomes;
+    // first site of each chromosome plus number of sites at end
+    private final int[] myChromosomeOffsets;
+    private final Map<Chromosome, Integer> myChromosomeIndices = new HashMap<>();
+    private final Map<String, Chromosome> myChromosomeNames = new HashMap<>();
+
+    // optional columns (null when all sites have default values)
+    private final byte[] myStrands;
+    private final float[] myCMs;
+    private final float[] myMAFs;
+    private final float[] mySiteCoverages;
+    private final BitSet myNotNucleotide;
+    private final BitSet myIndels;
+    private final byte[] mySNPIDs;
+    // SNP ID of site i is bytes mySNPIDOffsets[i] to mySNPIDOffsets[i + 1]
+    private final int[] mySNPIDOffsets;
+    private final BitSet myHasSNPID;
+    // code into myVariantDictionary, or -1 if the site has no single VARIANT
+    private final int[] myVariants;
+    private final String[] myVariantDictionary;
+    // other annotations of site i are codes myAnnotationOffsets[i] to
+    // myAnnotationOffsets[i + 1] of myAnnotationCodes
+    private final int[] myAnnotationOffsets;
+    private final int[] myAnnotationCodes;
+    private final Map.Entry<String, String>[] myAnnotationDictionary;
+
+    /**
+     * Creates list from the sites of the builder, which must be sorted. The
+     * builder can still be changed after this.
+     */
+    private PositionCompactList(Builder builder, String genomeVersion) {
+
+        myGenomeVersion = genomeVersion;
+        myNumPositions = builder.mySize;
+        myPositions = Arrays.copyOf(builder.myPositions, myNumPositions);
+        myAlleles = Arrays.copyOf(builder.myAlleles, myNumPositions);
+
+        List<Chromosome> chromosomes = new ArrayList<>();
+        List<Integer> offsets = new ArrayList<>();
+        int currentCode = -1;
+        for (int i = 0; i < myNumPositions; i++) {
+            if (builder.myChromosomeCodes[i] != currentCode) {
+                currentCode = builder.myChromosomeCodes[i];
+                chromosomes.add(builder.myChromosomeDictionary.get(currentCode));
+                offsets.add(i);
+            }
+        }
+
+        myChromosomes = chromosomes.toArray(new Chromosome[chromosomes.size()]);
+        myChromosomeOffsets = new int[myChromosomes.length + 1];
+        for (int c = 0; c < myChromosomes.length; c++) {
+            myChromosomeOffsets[c] = offsets.get(c);
+            if (myChromosomeIndices.put(myChromosomes[c], c) != null) {
+                throw new IllegalArgumentException("PositionCompactList: init: positions not sorted by chromosome: " + myChromosomes[c].getName());
+            }
+            myChromosomeNames.put(myChromosomes[c].getName(), myChromosomes[c]);
+        }
+        myChromosomeOffsets[myChromosomes.length] = myNumPositions;
+
+        myStrands = (builder.myStrands == null) ? null : Arrays.copyOf(builder.myStrands, myNumPositions);
+        myCMs = (builder.myCMs == null) ? null : Arrays.copyOf(builder.myCMs, myNumPositions);
+        myMAFs = (builder.myMAFs == null) ? null : Arrays.copyOf(builder.myMAFs, myNumPositions);
+        mySiteCoverages = (builder.mySiteCoverages == null) ? null : Arrays.copyOf(builder.mySiteCoverages, myNumPositions);
+        myNotNucleotide = bits(builder.myNotNucleotide, myNumPositions);
+        myIndels = bits(builder.myIndels, myNumPositions);
+
+        if (builder.mySNPIDs == null) {
+            mySNPIDs = null;
+            mySNPIDOffsets = null;
+            myHasSNPID = null;
+        } else {
+            ByteArrayOutputStream snpIDs = new ByteArrayOutputStream();
+            mySNPIDOffsets = new int[myNumPositions + 1];
+            myHasSNPID = new BitSet();
+            for (int i = 0; i < myNumPositions; i++) {
+                mySNPIDOffsets[i] = snpIDs.size();
+                String snpID = builder.mySNPIDs[i];
+                if (snpID != null) {
+                    myHasSNPID.set(i);
+                    byte[] bytes = snpID.getBytes();
+                    snpIDs.write(bytes, 0, bytes.length);
+                }
+            }
+            mySNPIDOffsets[myNumPositions] = snpIDs.size();
+            mySNPIDs = snpIDs.toByteArray();
+        }
+
+        if (builder.myVariants == null) {
+            myVariants = null;
+            myVariantDictionary = null;
+        } else {
+            myVariants = Arrays.copyOf(builder.myVariants, myNumPositions);
+            myVariantDictionary = builder.myVariantDictionary.toArray(new String[builder.myVariantDictionary.size()]);
+        }
+
+        if (builder.myAnnotationStarts == null) {
+            myAnnotationOffsets = null;
+            myAnnotationCodes = null;
+            myAnnotationDictionary = null;
+        } else {
+            // Runs are copied in site order, which drops runs replaced by set()
+            myAnnotationOffsets = new int[myNumPositions + 1];
+            for (int i = 0; i < myNumPositions; i++) {
+                myAnnotationOffsets[i + 1] = myAnnotationOffsets[i] + builder.myAnnotationCounts[i];
+            }
+            myAnnotationCodes = new int[myAnnotationOffsets[myNumPositions]];
+            for (int i = 0; i < myNumPositions; i++) {
+                System.arraycopy(builder.myAnnotationPool, builder.myAnnotationStarts[i], myAnnotationCodes, myAnnotationOffsets[i], builder.myAnnotationCounts[i]);
+            }
+            myAnnotationDictionary = builder.annotationDictionary();
+        }
+
+    }
+
+    private static BitSet bits(BitSet values, int numSites) {
+        if ((values == null) || (values.nextSetBit(0) < 0) || (values.nextSetBit(0) >= numSites)) {
+            return null;
+        }
+        return values.get(0, numSites);
+    }
+
+    private String[] knownVariants(int site) {
+        if ((myVariants != null) && (myVariants[site] >= 0)) {
+            return myVariantDictionary[myVariants[site]].replace("[", "").replace("]", "").split("/");
+        }
+        if (myAnnotationOffsets == null) {
+            return new String[0];
+        }
+        String[] variants = annotation(site).getTextAnnotation(VARIANT);
+        if (variants.length == 0) {
+            return new String[0];
+        }
+        return variants[0].replace("[", "").replace("]", "").split("/");
+    }
+
+    private GeneralAnnotation annotation(int site) {
+        boolean hasVariant = (myVariants != null) && (myVariants[site] >= 0);
+        int start = (myAnnotationOffsets == null) ? 0 : myAnnotationOffsets[site];
+        int end = (myAnnotationOffsets == null) ? 0 : myAnnotationOffsets[site + 1];
+        if (!hasVariant && (start == end)) {
+            return GeneralAnnotationStorage.EMPTY_ANNOTATION_STORAGE;
+        }
+        GeneralAnnotationStorage.Builder result = GeneralAnnotationStorage.getBuilder();
+        if (hasVariant) {
+            result.addAnnotation(VARIANT, myVariantDictionary[myVariants[site]]);
+        }
+        for (int i = start; i < end; i++) {
+            Map.Entry<String, String> entry = myAnnotationDictionary[myAnnotationCodes[i]];
+            result.addAnnotation(entry.getKey(), entry.getValue());
+        }
+        return result.build();
+    }
+
+    private int chromosomeIndex(int site) {
+        if ((site < 0) || (site >= myNumPositions)) {
+            throw new IndexOutOfBoundsException("PositionCompactList: site: " + site + " number of sites: " + myNumPositions);
+        }
+        int index = Arrays.binarySearch(myChromosomeOffsets, 0, myChromosomes.length, site);
+        return (index < 0) ? -(index + 2) : index;
+    }
+
+    private Chromosome defaultChromosome(Chromosome chromosome) {
+        // null chromosome calls revert to the first chromosome
+        if ((chromosome == null) && (myChromosomes.length != 0)) {
+            return myChromosomes[0];
+        }
+        return chromosome;
+    }
+
+    private String actualSNPID(int site) {
+        if ((myHasSNPID == null) || !myHasSNPID.get(site)) {
+            return null;
+        }
+        int start = mySNPIDOffsets[site];
+        return new String(mySNPIDs, start, mySNPIDOffsets[site + 1] - start);
+    }
+
+    @Override
+    public byte allele(WHICH_ALLELE alleleType, int site) {
+        return (byte) ((myAlleles[site] >> (alleleType.index() * 4)) & 0xF);
+    }
+
+    @Override
+    public byte[] alleles(WHICH_ALLELE alleleType, int startSite, int endSite) {
+        byte[] result = new byte[endSite - startSite];
+        for (int s = startSite; s < endSite; s++) {
+            result[s - startSite] = allele(alleleType, s);
+        }
+        return result;
+    }
+
+    @Override
+    public byte[] alleleForAllSites(WHICH_ALLELE alleleType) {
+        return alleles(alleleType, 0, myNumPositions);
+    }
+
+    @Override
+    public boolean hasReference() {
+        return myGenomeVersion != null;
+    }
+
+    @Override
+    public String siteName(int site) {
+        String result = actualSNPID(site);
+        if (result == null) {
+            return new StringBuilder("S").append(chromosomeName(site)).append("_").append(myPositions[site]).toString();
+        }
+        return result;
+    }
+
+    @Override
+    public int numberOfSites() {
+        return myNumPositions;
+    }
+
+    @Override
+    public int chromosomeSiteCount(Chromosome chromosome) {
+        int c = myChromosomeIndices.get(chromosome);
+        return myChromosomeOffsets[c + 1] - myChromosomeOffsets[c];
+    }
+
+    @Override
+    public int[] startAndEndOfChromosome(Chromosome chromosome) {
+        Integer c = myChromosomeIndices.get(defaultChromosome(chromosome));
+        if (c == null) {
+            return null;
+        }
+        return new int[]{myChromosomeOffsets[c], myChromosomeOffsets[c + 1] - 1};
+    }
+
+    @Override
+    public int chromosomalPosition(int site) {
+        return myPositions[site];
+    }
+
+    @Override
+    public int siteOfPhysicalPosition(int physicalPosition, Chromosome chromosome) {
+        Integer c = myChromosomeIndices.get(defaultChromosome(chromosome));
+        if (c == null) {
+            return Integer.MIN_VALUE;
+        }
+        int start = myChromosomeOffsets[c];
+        int end = myChromosomeOffsets[c + 1];
+        int i = Arrays.binarySearch(myPositions, start, end, physicalPosition);
+        if (i < 0) {
+            return i;
+        }
+        while ((i > start) && (physicalPosition == myPositions[i - 1])) {
+            i--;
+        }
+        return i;
+    }
+
+    @Override
+    public int siteOfPhysicalPosition(int physicalPosition, Chromosome chromosome, String snpName) {
+        int result = siteOfPhysicalPosition(physicalPosition, chromosome);
+        if (result < 0) {
+            return result;
+        }
+        int index = result;
+        while ((index < myNumPositions) && (myPositions[index] == physicalPosition)) {
+            if (snpName.equals(siteName(index))) {
+                return index;
+            }
+            index++;
+        }
+        return -index - 1;
+    }
+
+    @Override
+    public int[] physicalPositions() {
+        return Arrays.copyOf(myPositions, myNumPositions);
+    }
+
+    @Override
+    public String chromosomeName(int site) {
+        return chromosome(site).getName();
+    }
+
+    @Override
+    public Chromosome chromosome(int site) {
+        return myChromosomes[chromosomeIndex(site)];
+    }
+
+    @Override
+    public Chromosome chromosome(String name) {
+        return myChromosomeNames.get(name);
+    }
+
+    @Override
+    public Chromosome[] chromosomes() {
+        return Arrays.copyOf(myChromosomes, myChromosomes.length);
+    }
+
+    @Override
+    public int numChromosomes() {
+        return myChromosomes.length;
+    }
+
+    @Override
+    public int[] chromosomesOffsets() {
+        return Arrays.copyOf(myChromosomeOffsets, myChromosomes.length);
+    }
+
+    @Override
+    public int indelSize(int site) {
+        return knownVariants(site)[1].length();
+    }
+
+    @Override
+    public boolean isIndel(int site) {
+        return (myIndels != null) && myIndels.get(site);
+    }
+
+    @Override
+    public String genomeVersion() {
+        return myGenomeVersion;
+    }
+
+    @Override
+    public boolean isPositiveStrand(int site) {
+        return (myStrands == null) || (myStrands[site] == Position.STRAND_PLUS);
+    }
+
+    // List methods
+    @Override
+    public int size() {
+        return myNumPositions;
+    }
+
+    @Override
+    public Position get(int index) {
+        if ((index < 0) || (index >= myNumPositions)) {
+            throw new IndexOutOfBoundsException("PositionCompactList: get: index: " + index + " number of sites: " + myNumPositions);
+        }
+        return new CompactPosition(index);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof Position)) {
+            return -1;
+        }
+        Position p = (Position) o;
+        int site = siteOfPhysicalPosition(p.getPosition(), p.getChromosome());
+        if (site < 0) {
+            return -1;
+        }
+        while ((site < myNumPositions) && (myPositions[site] == p.getPosition()) && (chromosome(site).equals(p.getChromosome()))) {
+            if (get(site).equals(p)) {
+                return site;
+            }
+            site++;
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        int result = indexOf(o);
+        if (result < 0) {
+            return result;
+        }
+        Position p = (Position) o;
+        while ((result + 1 < myNumPositions) && get(result + 1).equals(p)) {
+            result++;
+        }
+        return result;
+    }
+
+    /**
+     * View of one site in this list. Equality, ordering, and hash code are the
+     * same as {@link GeneralPosition}.
+     */
+    private final class CompactPosition implements Position {
+
+        private final int mySite;
+
+        private CompactPosition(int site) {
+            mySite = site;
+        }
+
+        @Override
+        public Chromosome getChromosome() {
+            return chromosome(mySite);
+        }
+
+        @Override
+        public int getPosition() {
+            return myPositions[mySite];
+        }
+
+        @Override
+        public byte getStrand() {
+            return (myStrands == null) ? Position.STRAND_PLUS : myStrands[mySite];
+        }
+
+        @Override
+        public String getStrandStr() {
+            return Position.getStrand(getStrand());
+        }
+
+        @Override
+        public float getCM() {
+            return (myCMs == null) ? Float.NaN : myCMs[mySite];
+        }
+
+        @Override
+        public String getSNPID() {
+            return siteName(mySite);
+        }
+
+        @Override
+        public String getActualSNPID() {
+            return actualSNPID(mySite);
+        }
+
+        @Override
+        public boolean isNucleotide() {
+            return (myNotNucleotide == null) || !myNotNucleotide.get(mySite);
+        }
+
+        @Override
+        public boolean isIndel() {
+            return PositionCompactList.this.isIndel(mySite);
+        }
+
+        @Override
+        public String[] getKnownVariants() {
+            return knownVariants(mySite);
+        }
+
+        @Override
+        public float getGlobalMAF() {
+            return (myMAFs == null) ? Float.NaN : myMAFs[mySite];
+        }
+
+        @Override
+        public float getGlobalSiteCoverage() {
+            return (mySiteCoverages == null) ? Float.NaN : mySiteCoverages[mySite];
+        }
+
+        @Override
+        public byte getAllele(WHICH_ALLELE alleleType) {
+            return allele(alleleType, mySite);
+        }
+
+        @Override
+        public GeneralAnnotation getAnnotation() {
+            return annotation(mySite);
+        }
+
+        @Override
+        public int compareTo(Position o) {
+            int result = ComparisonChain.start()
+                    .compare(getChromosome(), o.getChromosome())
+                    .compare(getPosition(), o.getPosition())
+                    .compare(getCM(), o.getCM())
+                    .compare(getStrand(), o.getStrand())
+                    .result();
+            if (result != 0) {
+                return result;
+            }
+            return getSNPID().compareTo(o.getSNPID());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof Position)) {
+                return false;
+            }
+            Position o = (Position) obj;
+            int result = ComparisonChain.start()
+                    .compare(getPosition(), o.getPosition())
+                    .compare(getChromosome(), o.getChromosome())
+                    .compare(getCM(), o.getCM())
+                    .compare(getStrand(), o.getStrand())
+                    .result();
+            if (result != 0) {
+                return false;
+            }
+            return getSNPID().equals(o.getSNPID());
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 7;
+            hash = 37 * hash + getChromosome().hashCode();
+            hash = 37 * hash + getPosition();
+            hash = 37 * hash + getStrand();
+            hash = 37 * hash + Float.floatToIntBits(getCM());
+            String snpID = getActualSNPID();
+            if (snpID != null) {
+                hash = 37 * hash + Arrays.hashCode(snpID.getBytes());
+            }
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return new GeneralPosition.Builder(this).build().toString();
+        }
+
+    }
+
+    /**
+     * Growable columns of sites used by {@link PositionListBuilder}. Sites are
+     * stored the same way as the list, so no Position or annotation objects
+     * are kept per site. Annotation entries other than a single VARIANT are
+     * appended to a pool of codes, and each site points to its run in the
+     * pool. Replacing or reordering sites only moves these pointers.
+     */
+    static final class Builder {
+
+        private static final int INITIAL_CAPACITY = 16;
+
+        private int mySize = 0;
+        private int myCapacity = INITIAL_CAPACITY;
+
+        private int[] myChromosomeCodes = new int[INITIAL_CAPACITY];
+        private final List<Chromosome> myChromosomeDictionary = new ArrayList<>();
+        private final Map<Chromosome, Integer> myChromosomeLookup = new HashMap<>();
+        private int[] myPositions = new int[INITIAL_CAPACITY];
+        private long[] myAlleles = new long[INITIAL_CAPACITY];
+
+        // created when first site with a non-default value is stored
+        private byte[] myStrands = null;
+        private float[] myCMs = null;
+        private float[] myMAFs = null;
+        private float[] mySiteCoverages = null;
+        private String[] mySNPIDs = null;
+        private final BitSet myNotNucleotide = new BitSet();
+        private final BitSet myIndels = new BitSet();
+
+        private int[] myVariants = null;
+        private final List<String> myVariantDictionary = new ArrayList<>();
+        private final Map<String, Integer> myVariantLookup = new HashMap<>();
+
+        private int[] myAnnotationStarts = null;
+        private int[] myAnnotationCounts = null;
+        private int[] myAnnotationPool = null;
+        private int myAnnotationPoolSize = 0;
+        private final List<Map.Entry<String, String>> myAnnotationEntries = new ArrayList<>();
+        private final Map<Map.Entry<String, String>, Integer> myAnnotationLookup = new HashMap<>();
+
+        Builder() {
+        }
+
+        int size() {
+            return mySize;
+        }
+
+        void add(Position position) {
+            ensureCapacity(mySize + 1);
+            mySize++;
+            set(mySize - 1, position);
+        }
+
+        void addAll(Builder other) {
+            int numSites = other.mySize;
+            ensureCapacity(mySize + numSites);
+            for (int i = 0; i < numSites; i++) {
+                add(other.get(i));
+            }
+        }
+
+        void set(int site, Position position) {
+
+            if ((site < 0) || (site >= mySize)) {
+                throw new IndexOutOfBoundsException("PositionCompactList: Builder: set: site: " + site + " number of sites: " + mySize);
+            }
+
+            Chromosome chromosome = position.getChromosome();
+            Integer chromosomeCode = myChromosomeLookup.get(chromosome);
+            if (chromosomeCode == null) {
+                chromosomeCode = myChromosomeDictionary.size();
+                myChromosomeDictionary.add(chromosome);
+                myChromosomeLookup.put(chromosome, chromosomeCode);
+            }
+            myChromosomeCodes[site] = chromosomeCode;
+
+            myPositions[site] = position.getPosition();
+
+            long alleles = 0;
+            for (int a = WHICH_ALLELE.COUNT - 1; a >= 0; a--) {
+                alleles = (alleles << 4) | (position.getAllele(ALLELE_TYPES[a]) & 0xF);
+            }
+            myAlleles[site] = alleles;
+
+            if ((myStrands == null) && (position.getStrand() != Position.STRAND_PLUS)) {
+                myStrands = new byte[myCapacity];
+                Arrays.fill(myStrands, Position.STRAND_PLUS);
+            }
+            if (myStrands != null) {
+                myStrands[site] = position.getStrand();
+            }
+
+            myCMs = setFloat(myCMs, site, position.getCM());
+            myMAFs = setFloat(myMAFs, site, position.getGlobalMAF());
+            mySiteCoverages = setFloat(mySiteCoverages, site, position.getGlobalSiteCoverage());
+            myNotNucleotide.set(site, !position.isNucleotide());
+            myIndels.set(site, position.isIndel());
+
+            String snpID = position.getActualSNPID();
+            if ((mySNPIDs == null) && (snpID != null)) {
+                mySNPIDs = new String[myCapacity];
+            }
+            if (mySNPIDs != null) {
+                mySNPIDs[site] = snpID;
+            }
+
+            setAnnotation(site, position.getAnnotation());
+
+        }
+
+        private void setAnnotation(int site, GeneralAnnotation annotation) {
+
+            Map.Entry<String, String>[] entries = (annotation == null) ? null : annotation.getAllAnnotationEntries();
+            int numEntries = (entries == null) ? 0 : entries.length;
+
+            // A single VARIANT entry is stored in its own column
+            int variantIndex = -1;
+            for (int i = 0; i < numEntries; i++) {
+                if (VARIANT.equals(entries[i].getKey())) {
+                    variantIndex = (variantIndex == -1) ? i : -2;
+                }
+            }
+
+            if ((myVariants == null) && (variantIndex >= 0)) {
+                myVariants = new int[myCapacity];
+                Arrays.fill(myVariants, -1);
+            }
+            if (myVariants != null) {
+                myVariants[site] = (variantIndex >= 0) ? variantCode(entries[variantIndex].getValue()) : -1;
+            }
+
+            int numOther = (variantIndex >= 0) ? numEntries - 1 : numEntries;
+            if ((myAnnotationStarts == null) && (numOther != 0)) {
+                myAnnotationStarts = new int[myCapacity];
+                myAnnotationCounts = new int[myCapacity];
+                myAnnotationPool = new int[Math.max(INITIAL_CAPACITY, numOther)];
+            }
+            if (myAnnotationStarts != null) {
+                if (myAnnotationPoolSize + numOther > myAnnotationPool.length) {
+                    myAnnotationPool = Arrays.copyOf(myAnnotationPool, newCapacity(myAnnotationPool.length, myAnnotationPoolSize + numOther));
+                }
+                myAnnotationStarts[site] = myAnnotationPoolSize;
+                myAnnotationCounts[site] = numOther;
+                for (int i = 0; i < numEntries; i++) {
+                    if (i != variantIndex) {
+                        myAnnotationPool[myAnnotationPoolSize++] = annotationCode(entries[i]);
+                    }
+                }
+            }
+
+        }
+
+        private int variantCode(String variant) {
+            Integer result = myVariantLookup.get(variant);
+            if (result == null) {
+                result = myVariantDictionary.size();
+                myVariantDictionary.add(variant);
+                myVariantLookup.put(variant, result);
+            }
+            return result;
+        }
+
+        private int annotationCode(Map.Entry<String, String> entry) {
+            Integer result = myAnnotationLookup.get(entry);
+            if (result == null) {
+                result = myAnnotationEntries.size();
+                myAnnotationEntries.add(entry);
+                myAnnotationLookup.put(entry, result);
+            }
+            return result;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Map.Entry<String, String>[] annotationDictionary() {
+            return myAnnotationEntries.toArray((Map.Entry<String, String>[]) new Map.Entry<?, ?>[myAnnotationEntries.size()]);
+        }
+
+        /**
+         * Stores value in given array, which is only created once a value
+         * other than Float.NaN is found.
+         */
+        private float[] setFloat(float[] values, int site, float value) {
+            if (values == null) {
+                if (Float.isNaN(value)) {
+                    return null;
+                }
+                values = new float[myCapacity];
+                Arrays.fill(values, Float.NaN);
+            }
+            values[site] = value;
+            return values;
+        }
+
+        private static int newCapacity(int current, int minimum) {
+            long result = Math.max((long) current * 2, minimum);
+            if (result > Integer.MAX_VALUE - 8) {
+                if (minimum > Integer.MAX_VALUE - 8) {
+                    throw new OutOfMemoryError("PositionCompactList: Builder: too many sites: " + minimum);
+                }
+                result = Integer.MAX_VALUE - 8;
+            }
+            return (int) result;
+        }
+
+        void ensureCapacity(int minimum) {
+            if (minimum <= myCapacity) {
+                return;
+            }
+            myCapacity = newCapacity(myCapacity, minimum);
+            myChromosomeCodes = Arrays.copyOf(myChromosomeCodes, myCapacity);
+            myPositions = Arrays.copyOf(myPositions, myCapacity);
+            myAlleles = Arrays.copyOf(myAlleles, myCapacity);
+            if (myStrands != null) {
+                myStrands = Arrays.copyOf(myStrands, myCapacity);
+                Arrays.fill(myStrands, mySize, myCapacity, Position.STRAND_PLUS);
+            }
+            myCMs = growFloat(myCMs);
+            myMAFs = growFloat(myMAFs);
+            mySiteCoverages = growFloat(mySiteCoverages);
+            if (mySNPIDs != null) {
+                mySNPIDs = Arrays.copyOf(mySNPIDs, myCapacity);
+            }
+            if (myVariants != null) {
+                myVariants = Arrays.copyOf(myVariants, myCapacity);
+                Arrays.fill(myVariants, mySize, myCapacity, -1);
+            }
+            if (myAnnotationStarts != null) {
+                myAnnotationStarts = Arrays.copyOf(myAnnotationStarts, myCapacity);
+                myAnnotationCounts = Arrays.copyOf(myAnnotationCounts, myCapacity);
+            }
+        }
+
+        private float[] growFloat(float[] values) {
+            if (values == null) {
+                return null;
+            }
+            float[] result = Arrays.copyOf(values, myCapacity);
+            Arrays.fill(result, mySize, myCapacity, Float.NaN);
+            return result;
+        }
+
+        private float cM(int site) {
+            return (myCMs == null) ? Float.NaN : myCMs[site];
+        }
+
+        private byte strand(int site) {
+            return (myStrands == null) ? Position.STRAND_PLUS : myStrands[site];
+        }
+
+        private String snpID(int site) {
+            String result = (mySNPIDs == null) ? null : mySNPIDs[site];
+            if (result == null) {
+                return new StringBuilder("S").append(myChromosomeDictionary.get(myChromosomeCodes[site]).getName()).append("_").append(myPositions[site]).toString();
+            }
+            return result;
+        }
+
+        /**
+         * Compares two sites the same as {@link GeneralPosition#compareTo}.
+         */
+        int compare(int site1, int site2) {
+            int code1 = myChromosomeCodes[site1];
+            int code2 = myChromosomeCodes[site2];
+            int result = (code1 == code2) ? 0 : myChromosomeDictionary.get(code1).compareTo(myChromosomeDictionary.get(code2));
+            if (result != 0) {
+                return result;
+            }
+            result = Integer.compare(myPositions[site1], myPositions[site2]);
+            if (result != 0) {
+                return result;
+            }
+            result = Float.compare(cM(site1), cM(site2));
+            if (result != 0) {
+                return result;
+            }
+            result = Byte.compare(strand(site1), strand(site2));
+            if (result != 0) {
+                return result;
+            }
+            return snpID(site1).compareTo(snpID(site2));
+        }
+
+        /**
+         * Sorts sites and returns original index of each site in the new
+         * order.
+         *
+         * @param stable whether equal sites keep their order
+         *
+         * @return original indices
+         */
+        int[] sort(boolean stable) {
+
+            final int[] order = new int[mySize];
+            for (int i = 0; i < mySize; i++) {
+                order[i] = i;
+            }
+
+            Swapper swapper = (int a, int b) -> {
+                int temp = order[a];
+                order[a] = order[b];
+                order[b] = temp;
+            };
+            IntComparator comparator = (int a, int b) -> compare(order[a], order[b]);
+
+            if (stable) {
+                GenericSorting.mergeSort(0, mySize, comparator, swapper);
+            } else {
+                GenericSorting.quickSort(0, mySize, comparator, swapper);
+            }
+
+            permute(order);
+            return order;
+
+        }
+
+        private void permute(int[] order) {
+
+            int[] chromosomeCodes = new int[myCapacity];
+            int[] positions = new int[myCapacity];
+            long[] alleles = new long[myCapacity];
+            for (int i = 0; i < mySize; i++) {
+                chromosomeCodes[i] = myChromosomeCodes[order[i]];
+                positions[i] = myPositions[order[i]];
+                alleles[i] = myAlleles[order[i]];
+            }
+            myChromosomeCodes = chromosomeCodes;
+            myPositions = positions;
+            myAlleles = alleles;
+
+            if (myStrands != null) {
+                byte[] strands = new byte[myCapacity];
+                Arrays.fill(strands, Position.STRAND_PLUS);
+                for (int i = 0; i < mySize; i++) {
+                    strands[i] = myStrands[order[i]];
+                }
+                myStrands = strands;
+            }
+
+            myCMs = permuteFloat(myCMs, order);
+            myMAFs = permuteFloat(myMAFs, order);
+            mySiteCoverages = permuteFloat(mySiteCoverages, order);
+
+            BitSet notNucleotide = (BitSet) myNotNucleotide.clone();
+            BitSet indels = (BitSet) myIndels.clone();
+            myNotNucleotide.clear();
+            myIndels.clear();
+            for (int i = 0; i < mySize; i++) {
+                myNotNucleotide.set(i, notNucleotide.get(order[i]));
+                myIndels.set(i, indels.get(order[i]));
+            }
+
+            if (mySNPIDs != null) {
+                String[] snpIDs = new String[myCapacity];
+                for (int i = 0; i < mySize; i++) {
+                    snpIDs[i] = mySNPIDs[order[i]];
+                }
+                mySNPIDs = snpIDs;
+            }
+
+            if (myVariants != null) {
+                int[] variants = new int[myCapacity];
+                Arrays.fill(variants, -1);
+                for (int i = 0; i < mySize; i++) {
+                    variants[i] = myVariants[order[i]];
+                }
+                myVariants = variants;
+            }
+
+            if (myAnnotationStarts != null) {
+                int[] starts = new int[myCapacity];
+                int[] counts = new int[myCapacity];
+                for (int i = 0; i < mySize; i++) {
+                    starts[i] = myAnnotationStarts[order[i]];
+                    counts[i] = myAnnotationCounts[order[i]];
+                }
+                myAnnotationStarts = starts;
+                myAnnotationCounts = counts;
+            }
+
+        }
+
+        private float[] permuteFloat(float[] values, int[] order) {
+            if (values == null) {
+                return null;
+            }
+            float[] result = new float[myCapacity];
+            Arrays.fill(result, Float.NaN);
+            for (int i = 0; i < mySize; i++) {
+                result[i] = values[order[i]];
+            }
+            return result;
+        }
+
+        /**
+         * Returns new position with values of the given site.
+         */
+        Position get(int site) {
+            if ((site < 0) || (site >= mySize)) {
+                throw new IndexOutOfBoundsException("PositionCompactList: Builder: get: site: " + site + " number of sites: " + mySize);
+            }
+            GeneralAnnotationStorage.Builder annotations = GeneralAnnotationStorage.getBuilder();
+            if ((myVariants != null) && (myVariants[site] >= 0)) {
+                annotations.addAnnotation(VARIANT, myVariantDictionary.get(myVariants[site]));
+            }
+            if (myAnnotationStarts != null) {
+                int start = myAnnotationStarts[site];
+                for (int i = start, n = start + myAnnotationCounts[site]; i < n; i++) {
+                    Map.Entry<String, String> entry = myAnnotationEntries.get(myAnnotationPool[i]);
+                    annotations.addAnnotation(entry.getKey(), entry.getValue());
+                }
+            }
+            GeneralPosition.Builder result = new GeneralPosition.Builder(myChromosomeDictionary.get(myChromosomeCodes[site]), myPositions[site], annotations)
+                    .strand(strand(site))
+                    .cM(cM(site))
+                    .nucleotide(!myNotNucleotide.get(site))
+                    .indel(myIndels.get(site))
+                    .maf((myMAFs == null) ? Float.NaN : myMAFs[site])
+                    .siteCoverage((mySiteCoverages == null) ? Float.NaN : mySiteCoverages[site]);
+            if (mySNPIDs != null) {
+                result.snpName(mySNPIDs[site]);
+            }
+            for (WHICH_ALLELE alleleType : ALLELE_TYPES) {
+                result.allele(alleleType, (byte) ((myAlleles[site] >> (alleleType.index() * 4)) & 0xF));
+            }
+            return result.build();
+        }
+
+        /**
+         * Creates list from the current sites, which must be sorted.
+         */
+        PositionCompactList build(String genomeVersion) {
+            return new PositionCompactList(this, genomeVersion);
+        }
+
+    }
+
+}
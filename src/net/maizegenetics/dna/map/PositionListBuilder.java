@@ -1,8 +1,5 @@
 package net.maizegenetics.dna.map;
 
-import cern.colt.GenericSorting;
-import cern.colt.Swapper;
-import cern.colt.function.IntComparator;
 import ch.systemsx.cisd.hdf5.HDF5Factory;
 import ch.systemsx.cisd.hdf5.IHDF5Reader;
 import ch.systemsx.cisd.hdf5.IHDF5Writer;
@@ -49,7 +46,7 @@ public class PositionListBuilder {
 
     private static final Logger myLogger = Logger.getLogger(PositionListBuilder.class);
 
-    private ArrayList<Position> myPositions = new ArrayList<>();
+    private final PositionCompactList.Builder myPositions = new PositionCompactList.Builder();
     private boolean isHDF5 = false;
     private String genomeVersion = null;
     private IHDF5Reader reader;
@@ -68,6 +65,7 @@ public class PositionListBuilder {
      * multithreaded builders.
      */
     public PositionListBuilder(int numberOfPositions) {
+        myPositions.ensureCapacity(numberOfPositions);
         for (int i = 0; i < numberOfPositions; i++) {
             myPositions.add(new GeneralPosition.Builder(Chromosome.UNKNOWN, i).build());
         }
@@ -113,11 +111,7 @@ public class PositionListBuilder {
         if (isHDF5) {
             throw new UnsupportedOperationException("Positions cannot be added to existing HDF5 alignments");
         }
-        myPositions.ensureCapacity(myPositions.size() + builder.size());
-        for (Position elem : builder.myPositions) {
-            Preconditions.checkNotNull(elem, "elements contains a null");
-            myPositions.add(elem);
-        }
+        myPositions.addAll(builder.myPositions);
         return this;
     }
 
@@ -134,6 +128,7 @@ public class PositionListBuilder {
         if (isHDF5) {
             throw new UnsupportedOperationException("Positions cannot be edited to existing HDF5 alignments");
         }
+        Preconditions.checkNotNull(element, "element cannot be null");
         myPositions.set(index, element);
         return this;
     }
@@ -145,18 +140,16 @@ public class PositionListBuilder {
 
     /**
      * Returns whether List is already ordered. Important to check this if
-     * genotype and sites are separately built, as the PositionArrayList must be
+     * genotype and sites are separately built, as the PositionList must be
      * sorted, and will be with build.
      */
     public boolean validateOrdering() {
         boolean result = true;
-        Position startAP = myPositions.get(0);
-        for (Position ap : myPositions) {
-            if (ap.compareTo(startAP) < 0) {
-                myLogger.error("validateOrdering: " + ap.toString() + " and " + startAP.toString() + " out of order.");
+        for (int i = 1, n = myPositions.size(); i < n; i++) {
+            if (myPositions.compare(i, i - 1) < 0) {
+                myLogger.error("validateOrdering: " + myPositions.get(i).toString() + " and " + myPositions.get(i - 1).toString() + " out of order.");
                 return false;
             }
-            startAP = ap;
         }
         return result;
     }
@@ -271,20 +264,20 @@ public class PositionListBuilder {
         if (isHDF5) {
             return new PositionHDF5List(reader);
         } else {
-            Collections.sort(myPositions);
-            return new PositionArrayList(myPositions, genomeVersion);
+            myPositions.sort(true);
+            return myPositions.build(genomeVersion);
         }
     }
 
     public Tuple<PositionList, int[]> buildWithSiteRedirect() {
         int[] siteRedirect = sort();
-        PositionList positions = new PositionArrayList(myPositions, genomeVersion);
+        PositionList positions = myPositions.build(genomeVersion);
         return new Tuple<>(positions, siteRedirect);
     }
 
     public PositionList build(GenotypeCallTableBuilder genotypes) {
         sortPositions(genotypes);
-        return new PositionArrayList(myPositions, genomeVersion);
+        return myPositions.build(genomeVersion);
     }
 
     public PositionListBuilder sortPositions(GenotypeCallTableBuilder genotypes) {
@@ -302,40 +295,6 @@ public class PositionListBuilder {
     }
 
     public int[] sort() {
-
-        int numPositions = myPositions.size();
-
-        final int indicesOfSortByPosition[] = new int[numPositions];
-        for (int i = 0; i < indicesOfSortByPosition.length; i++) {
-            indicesOfSortByPosition[i] = i;
-        }
-
-        Swapper swapPosition = new Swapper() {
-            @Override
-            public void swap(int a, int b) {
-                int temp = indicesOfSortByPosition[a];
-                indicesOfSortByPosition[a] = indicesOfSortByPosition[b];
-                indicesOfSortByPosition[b] = temp;
-            }
-        };
-
-        IntComparator compPosition = new IntComparator() {
-            @Override
-            public int compare(int a, int b) {
-                return myPositions.get(indicesOfSortByPosition[a]).compareTo(myPositions.get(indicesOfSortByPosition[b]));
-            }
-        };
-
-        GenericSorting.quickSort(0, indicesOfSortByPosition.length, compPosition, swapPosition);
-
-        ArrayList<Position> temp = new ArrayList<>(numPositions);
-        for (int t = 0; t < numPositions; t++) {
-            temp.add(myPositions.get(indicesOfSortByPosition[t]));
-        }
-
-        myPositions = temp;
-
-        return indicesOfSortByPosition;
-
+        return myPositions.sort(false);
     }
 }
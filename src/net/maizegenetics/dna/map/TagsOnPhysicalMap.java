@@ -2,13 +2,14 @@ package net.maizegenetics.dna.map;
 
 import cern.colt.GenericSorting;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedReader;
-import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.InputStreamReader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -48,6 +49,7 @@ public class TagsOnPhysicalMap extends AbstractTagsOnPhysicalMap {
         BWA, BOWTIE2
     };  // Supported SAM formats (each program defines some custom features)
     private SAMFormat mySAMFormat = SAMFormat.BWA;  // BWA by default
+    private static final long MAX_MAPPED_BYTES = 1L << 30;  // largest window of a binary file mapped at once
 
     public TagsOnPhysicalMap() {
     }
@@ -59,6 +61,7 @@ public class TagsOnPhysicalMap extends AbstractTagsOnPhysicalMap {
             readTextFile(new File(inFile));
         }
         initPhysicalSort();
+        buildTagLookup();
     }
 
     public TagsOnPhysicalMap(int rows) {
@@ -169,6 +172,7 @@ public class TagsOnPhysicalMap extends AbstractTagsOnPhysicalMap {
      * @param merge
      */
     public void copyTagMapRow(TagsOnPhysicalMap sourceTOPM, int sourceRow, int destRow, boolean merge) {
+        clearTagLookup();
         boolean overwrite = true;
         long[] ctag = sourceTOPM.getTag(sourceRow);
         if (Arrays.equals(ctag, this.getTag(destRow)) && merge) {
@@ -220,36 +224,49 @@ public class TagsOnPhysicalMap extends AbstractTagsOnPhysicalMap {
         long totalTime = System.currentTimeMillis() - time;
         System.out.println("Done in " + totalTime + "ms");
         initPhysicalSort();
+        buildTagLookup();
         return totalTime;
     }
 
+    /**
+     * Reads a binary TOPM file through memory mapped windows of the file.
+     * Rows are a fixed size, so a window is mapped again from the next row
+     * whenever fewer bytes than a row remain in it.
+     */
     protected void readBinaryFile(File currentFile) {
         int tagsInput = 0;
-        try {
-            DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(currentFile), 65536));
+        try (FileChannel channel = FileChannel.open(currentFile.toPath(), StandardOpenOption.READ)) {
             System.out.println("File = " + currentFile);
-            myNumTags = dis.readInt();
+            long fileSize = channel.size();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(fileSize, MAX_MAPPED_BYTES));
+            myNumTags = buffer.getInt();
 //            myNumTags=100000;
-            tagLengthInLong = dis.readInt();
-            myMaxVariants = dis.readInt();
+            tagLengthInLong = buffer.getInt();
+            myMaxVariants = buffer.getInt();
+            int rowSize = 8 * tagLengthInLong + 16 + 2 * myMaxVariants + 2;  // bytes per row, as written by writeBinaryFile()
+            long windowStart = 0;
             initMatrices(myNumTags);
             for (int row = 0; row < myNumTags; row++) {
+                if (buffer.remaining() < rowSize) {
+                    windowStart += buffer.position();
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(fileSize - windowStart, MAX_MAPPED_BYTES));
+                }
                 for (int j = 0; j < tagLengthInLong; j++) {
-                    tags[j][row] = dis.readLong();
+                    tags[j][row] = buffer.getLong();
                 }
-                tagLength[row] = dis.readByte();
-                multimaps[row] = dis.readByte();
-                bestChr[row] = dis.readInt();
-                bestStrand[row] = dis.readByte();
-                bestStartPos[row] = dis.readInt();
-                endPosition[row] = dis.readInt();
-                divergence[row] = dis.readByte();
+                tagLength[row] = buffer.get();
+                multimaps[row] = buffer.get();
+                bestChr[row] = buffer.getInt();
+                bestStrand[row] = buffer.get();
+                bestStartPos[row] = buffer.getInt();
+                endPosition[row] = buffer.getInt();
+                divergence[row] = buffer.get();
                 byte[] currVD=new byte[myMaxVariants];
                 byte[] currVO=new byte[myMaxVariants];
                 int numWithData=0;
                 for (int j = 0; j < myMaxVariants; j++) {
-                    currVO[j] = dis.readByte();
-                    currVD[j] = dis.readByte();
+                    currVO[j] = buffer.get();
+                    currVD[j] = buffer.get();
                     if((currVD[j]>0xf)&&(GenotypeTableUtils.isHeterozygous(currVD[j]))) {//ascii bytes need to be converted to TASSEL 4
  //                       System.out.printf("row:%d vd:%d %n", row, variantDefs[row][j]);
                         currVD[j]=NucleotideAlignmentConstants.getNucleotideAlleleByte(String.valueOf((char)currVD[j]));
@@ -260,14 +277,13 @@ public class TagsOnPhysicalMap extends AbstractTagsOnPhysicalMap {
                     variantDefs[row]=Arrays.copyOf(currVD, numWithData);
                     variantOffsets[row]=Arrays.copyOf(currVO, numWithData);
                 }
-                dcoP[row] = dis.readByte();
-                mapP[row] = dis.readByte();
+                dcoP[row] = buffer.get();
+                mapP[row] = buffer.get();
                 tagsInput++;
                 if (row % 1000000 == 0) {
                     System.out.println("TagMapFile Row Read:" + row);
                 }
             }
-            dis.close();
         } catch (Exception e) {
             System.out.println("Error tagsInput=" + tagsInput + " e=" + e);
         }
@@ -698,6 +714,7 @@ public class TagsOnPhysicalMap extends AbstractTagsOnPhysicalMap {
             tagS = tagS.substring(0, (tagLengthInLong * 32));
         }
         long[] tagSequence = BaseEncoder.getLongArrayFromSeq(tagS);
+        clearTagLookup();
         for (int chunk = 0; chunk < tagLengthInLong; chunk++) {
             tags[chunk][tagIndex] = tagSequence[chunk];
         }
@@ -741,6 +758,7 @@ public class TagsOnPhysicalMap extends AbstractTagsOnPhysicalMap {
 
     @Override
     public void swap(int index1, int index2) {
+        clearTagLookup();
         long tl;
         for (int i = 0; i < tagLengthInLong; i++) {
             tl = tags[i][index1];
@@ -212,8 +212,10 @@ public class CombineGenotypeTable implements GenotypeTable {
             } else {
                 secondSite = endSite - mySiteOffsets[secondAlign];
             }
-            for (int s = firstSite; s < secondSite; s++) {
-                result[count++] = myGenotypeTables[i].genotype(taxon, s);
+            if (secondSite > firstSite) {
+                byte[] range = myGenotypeTables[i].genotypeRange(taxon, firstSite, secondSite);
+                System.arraycopy(range, 0, result, count, range.length);
+                count += range.length;
             }
         }
         return result;
@@ -235,12 +237,21 @@ public class CombineGenotypeTable implements GenotypeTable {
      */
     public int translateSite(int site) {
 
-        for (int i = 1; i < mySiteOffsets.length; i++) {
-            if (mySiteOffsets[i] > site) {
-                return i - 1;
+        // binary search for the first offset greater than site
+        int low = 1;
+        int high = mySiteOffsets.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mySiteOffsets[mid] > site) {
+                high = mid;
+            } else {
+                low = mid + 1;
             }
         }
-        throw new IndexOutOfBoundsException("CombineGenotypeTable: translateSite: index out of range: " + site);
+        if (low == mySiteOffsets.length) {
+            throw new IndexOutOfBoundsException("CombineGenotypeTable: translateSite: index out of range: " + site);
+        }
+        return low - 1;
 
     }
 
@@ -18,6 +18,13 @@ import net.maizegenetics.util.SuperByteMatrixBuilder;
  */
 public class Byte2DBuilder {
 
+    /**
+     * In-memory values are stored sparse (SparseByte2D) when fewer than this
+     * fraction of values are non-zero. Each sparse value costs five bytes
+     * (site index and value) versus one byte for dense storage.
+     */
+    private static final double SPARSE_DENSITY_THRESHOLD = 0.15;
+
     private SuperByteMatrix myValues = null;
     private final boolean myIsHDF5;
     private IHDF5Writer myHDF5Writer = null;
@@ -122,6 +129,9 @@ public class Byte2DBuilder {
         } else {
             SuperByteMatrix temp = myValues;
             myValues = null;
+            if (SparseByte2D.density(temp) < SPARSE_DENSITY_THRESHOLD) {
+                return SparseByte2D.getInstance(mySiteScoreType, temp);
+            }
             return new MemoryByte2D(mySiteScoreType, temp);
         }
     }
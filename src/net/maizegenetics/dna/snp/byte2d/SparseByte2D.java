@@ -0,0 +1,114 @@
+/*
+ *  SparseByte2D
+ */
+package net.maizegenetics.dna.snp.byte2d;
+
+import net.maizegenetics.dna.snp.score.SiteScore;
+import net.maizegenetics.util.SuperByteMatrix;
+
+import java.util.Arrays;
+
+/**
+ * Compressed sparse row storage of 2 dimensional byte encoded values. Only
+ * non-zero values are stored. Each taxon has a sorted array of site indices
+ * and a parallel array of values. This is appropriate for values like read
+ * depths, where most genotypes have a value of zero.
+ */
+public class SparseByte2D extends AbstractByte2D {
+
+    private static final int[] EMPTY_SITES = new int[0];
+    private static final byte[] EMPTY_VALUES = new byte[0];
+
+    private final int[][] mySites;
+    private final byte[][] myValues;
+
+    private SparseByte2D(SiteScore.SITE_SCORE_TYPE scoreType, int numSites, int[][] sites, byte[][] values) {
+        super(scoreType, sites.length, numSites);
+        mySites = sites;
+        myValues = values;
+    }
+
+    /**
+     * Creates sparse storage from the given matrix (rows are taxa and columns
+     * are sites).
+     *
+     * @param scoreType site score type
+     * @param values values
+     *
+     * @return sparse storage
+     */
+    static SparseByte2D getInstance(SiteScore.SITE_SCORE_TYPE scoreType, SuperByteMatrix values) {
+        int numTaxa = values.getNumRows();
+        int numSites = values.getNumColumns();
+        int[][] sites = new int[numTaxa][];
+        byte[][] result = new byte[numTaxa][];
+        for (int t = 0; t < numTaxa; t++) {
+            int count = 0;
+            for (int s = 0; s < numSites; s++) {
+                if (values.get(t, s) != 0) {
+                    count++;
+                }
+            }
+            if (count == 0) {
+                sites[t] = EMPTY_SITES;
+                result[t] = EMPTY_VALUES;
+                continue;
+            }
+            sites[t] = new int[count];
+            result[t] = new byte[count];
+            int index = 0;
+            for (int s = 0; s < numSites; s++) {
+                byte current = values.get(t, s);
+                if (current != 0) {
+                    sites[t][index] = s;
+                    result[t][index++] = current;
+                }
+            }
+        }
+        return new SparseByte2D(scoreType, numSites, sites, result);
+    }
+
+    /**
+     * Returns the fraction of values that are non-zero.
+     *
+     * @param values values
+     *
+     * @return density
+     */
+    static double density(SuperByteMatrix values) {
+        long numValues = (long) values.getNumRows() * (long) values.getNumColumns();
+        if (numValues == 0) {
+            return 0.0;
+        }
+        long count = 0;
+        for (int t = 0; t < values.getNumRows(); t++) {
+            for (int s = 0; s < values.getNumColumns(); s++) {
+                if (values.get(t, s) != 0) {
+                    count++;
+                }
+            }
+        }
+        return (double) count / (double) numValues;
+    }
+
+    @Override
+    public byte valueForAllele(int taxon, int site) {
+        int index = Arrays.binarySearch(mySites[taxon], site);
+        if (index < 0) {
+            return 0;
+        }
+        return myValues[taxon][index];
+    }
+
+    @Override
+    public byte[] valuesForAllSites(int taxon) {
+        byte[] result = new byte[numSites()];
+        int[] sites = mySites[taxon];
+        byte[] values = myValues[taxon];
+        for (int i = 0; i < sites.length; i++) {
+            result[sites[i]] = values[i];
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ *  AvroGenotypeBlockReader
+ */
+package net.maizegenetics.dna.snp.genotypecall;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+
+/**
+ * Reads genotype blocks on demand from an Avro data file written by
+ * ExportAvro. Each block is a separate record preceded by a sync marker. The
+ * file position of each block is recorded as the file is scanned, so blocks
+ * already seen are read with a single seek. Blocks not yet seen are found by
+ * scanning forward from the end of the furthest known block.
+ */
+class AvroGenotypeBlockReader {
+
+    private final DataFileReader<GenericRecord> myReader;
+    private final int myBlockSize;
+    private final int myNumTaxaBlocks;
+    private final long[] myBlockPositions;
+    private long myScanPosition;
+    private GenericRecord myReuse = null;
+
+    AvroGenotypeBlockReader(String filename, int numTaxa, int numSites, int blockSize) {
+        try {
+            myReader = new DataFileReader<>(new File(filename), new GenericDatumReader<>());
+            myScanPosition = myReader.previousSync();
+        } catch (IOException e) {
+            throw new IllegalStateException("AvroGenotypeBlockReader: problem opening: " + filename + ". " + e.getMessage());
+        }
+        myBlockSize = blockSize;
+        myNumTaxaBlocks = (numTaxa + blockSize - 1) / blockSize;
+        int numSiteBlocks = (numSites + blockSize - 1) / blockSize;
+        myBlockPositions = new long[myNumTaxaBlocks * numSiteBlocks];
+        Arrays.fill(myBlockPositions, -1);
+    }
+
+    /**
+     * Returns genotypes for block starting at given taxon and site. First
+     * dimension is sites and second dimension is taxa.
+     *
+     * @param startTaxon first taxon of block
+     * @param startSite first site of block
+     *
+     * @return genotypes
+     */
+    synchronized byte[][] readBlock(int startTaxon, int startSite) {
+
+        int blockIndex = blockIndex(startTaxon, startSite);
+
+        try {
+
+            long position = myBlockPositions[blockIndex];
+            if (position >= 0) {
+                myReader.seek(position);
+                myReuse = myReader.next(myReuse);
+                return decode(myReuse);
+            }
+
+            myReader.seek(myScanPosition);
+            while (myReader.hasNext()) {
+                // Start of the block just loaded by hasNext(). After next(),
+                // this is the start of the following block.
+                long current = myReader.previousSync();
+                myReuse = myReader.next(myReuse);
+                myScanPosition = myReader.previousSync();
+                int currentIndex = blockIndex((int) myReuse.get("taxon_start"), (int) myReuse.get("site_start"));
+                myBlockPositions[currentIndex] = current;
+                if (currentIndex == blockIndex) {
+                    return decode(myReuse);
+                }
+            }
+
+        } catch (IOException e) {
+            throw new IllegalStateException("AvroGenotypeBlockReader: readBlock: problem reading block: taxon: " + startTaxon + " site: " + startSite + ". " + e.getMessage());
+        }
+
+        throw new IllegalStateException("AvroGenotypeBlockReader: readBlock: block not found: taxon: " + startTaxon + " site: " + startSite);
+
+    }
+
+    private int blockIndex(int taxon, int site) {
+        return (site / myBlockSize) * myNumTaxaBlocks + taxon / myBlockSize;
+    }
+
+    private static byte[][] decode(GenericRecord record) {
+        int numTaxa = (int) record.get("num_taxa");
+        int numSites = (int) record.get("num_sites");
+        ByteBuffer genotypes = (ByteBuffer) record.get("genotypes");
+        genotypes.rewind();
+        byte[][] result = new byte[numSites][numTaxa];
+        for (int s = 0; s < numSites; s++) {
+            genotypes.get(result[s]);
+        }
+        return result;
+    }
+
+}
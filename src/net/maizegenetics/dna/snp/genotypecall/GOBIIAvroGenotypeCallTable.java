@@ -34,6 +34,7 @@ public class GOBIIAvroGenotypeCallTable extends AbstractGenotypeCallTable {
     public static final int GENOTYPE_BLOCK_SIZE = 256;
 
     private final GenericRecord myRecord;
+    private final AvroGenotypeBlockReader myBlockReader;
     private final WeakHashMap<Thread, Tuple<Long, byte[][]>> myLastSite = new WeakHashMap<>();
 
     private final Cache<Long, byte[][]> myGenoCache;
@@ -42,7 +43,7 @@ public class GOBIIAvroGenotypeCallTable extends AbstractGenotypeCallTable {
 
     private final ForkJoinPool myThreadPool;
 
-    private GOBIIAvroGenotypeCallTable(int numTaxa, int numSites, boolean phased, GenericRecord record) {
+    private GOBIIAvroGenotypeCallTable(int numTaxa, int numSites, boolean phased, GenericRecord record, AvroGenotypeBlockReader blockReader) {
         super(numTaxa, numSites, phased, NucleotideAlignmentConstants.NUCLEOTIDE_ALLELES);
 
         long oneThirdMemory = Runtime.getRuntime().maxMemory() / 65536;
@@ -55,10 +56,26 @@ public class GOBIIAvroGenotypeCallTable extends AbstractGenotypeCallTable {
         myThreadPool = new ForkJoinPool();
 
         myRecord = record;
+        myBlockReader = blockReader;
     }
 
     public static GOBIIAvroGenotypeCallTable getInstance(int numTaxa, int numSites, boolean phased, GenericRecord record) {
-        return new GOBIIAvroGenotypeCallTable(numTaxa, numSites, phased, record);
+        return new GOBIIAvroGenotypeCallTable(numTaxa, numSites, phased, record, null);
+    }
+
+    /**
+     * Creates instance that reads genotype blocks on demand from an Avro data
+     * file written by ExportAvro (one record per block).
+     *
+     * @param numTaxa number of taxa
+     * @param numSites number of sites
+     * @param phased whether phased
+     * @param filename Avro data file
+     *
+     * @return genotype call table
+     */
+    public static GOBIIAvroGenotypeCallTable getInstance(int numTaxa, int numSites, boolean phased, String filename) {
+        return new GOBIIAvroGenotypeCallTable(numTaxa, numSites, phased, null, new AvroGenotypeBlockReader(filename, numTaxa, numSites, GENOTYPE_BLOCK_SIZE));
     }
 
     public static long getCacheKey(int taxon, int site) {
@@ -181,6 +198,34 @@ public class GOBIIAvroGenotypeCallTable extends AbstractGenotypeCallTable {
         return true;
     }
 
+    /**
+     * Reads block starting at given taxon and site. First dimension of result
+     * is sites and second dimension is taxa.
+     */
+    private byte[][] readBlock(int startTaxon, int startSite) {
+
+        if (myBlockReader != null) {
+            return myBlockReader.readBlock(startTaxon, startSite);
+        }
+
+        GenericData.Array<ByteBuffer> byteBufferArray = (GenericData.Array<ByteBuffer>) myRecord.get(getKey(startTaxon, startSite));
+        if (byteBufferArray == null) {
+            throw new IllegalStateException("GOBIIAvroGenotypeCallTable: byte buffer array is null: " + getKey(startTaxon, startSite));
+        }
+        int numSites = byteBufferArray.size();
+        ByteBuffer current = byteBufferArray.get(0);
+        current.rewind();
+        int numTaxa = current.remaining();
+        byte[][] result = new byte[numSites][numTaxa];
+        for (int s = 0; s < numSites; s++) {
+            current = byteBufferArray.get(s);
+            current.rewind();
+            current.get(result[s]);
+        }
+        return result;
+
+    }
+
     public static int myNumBlocksRead = 0;
     public static long myTimeReading = 0;
     public static int myNumProcesses = 0;
@@ -221,22 +266,7 @@ public class GOBIIAvroGenotypeCallTable extends AbstractGenotypeCallTable {
 
                     myNumBlocksRead++;
                     //long previous = System.nanoTime();
-                    GenericData.Array<ByteBuffer> byteBufferArray = (GenericData.Array<ByteBuffer>) myRecord.get(getKey(myStartTaxa, myStartSite));
-                    if (byteBufferArray == null) {
-                        throw new IllegalStateException("GOBIIAvroGenotypeCallTable: byte buffer array is null: " + getKey(myStartTaxa, myStartSite));
-                    }
-                    int numTaxa = byteBufferArray.size();
-                    ByteBuffer current = byteBufferArray.get(0);
-                    current.rewind();
-                    int numSites = current.remaining();
-                    byte[][] result = new byte[numTaxa][numSites];
-                    for (int t = 0; t < numTaxa; t++) {
-                        current = byteBufferArray.get(t);
-                        current.rewind();
-                        for (int s = 0; s < numSites; s++) {
-                            result[t][s] = current.get();
-                        }
-                    }
+                    byte[][] result = readBlock(myStartTaxa, myStartSite);
 
                     myGenoCache.put(myProcessBlock, result);
 
@@ -268,22 +298,7 @@ public class GOBIIAvroGenotypeCallTable extends AbstractGenotypeCallTable {
                         myNumBlocksRead++;
                         //previous = System.nanoTime();
                         //System.out.println("look ahead after record");
-                        GenericData.Array<ByteBuffer> byteBufferArray = (GenericData.Array<ByteBuffer>) myRecord.get(getKey(lookaheadTaxa, myStartSite));
-                        if (byteBufferArray == null) {
-                            throw new IllegalStateException("GOBIIAvroGenotypeCallTable: byte buffer array is null: " + getKey(lookaheadTaxa, myStartSite));
-                        }
-                        int numTaxa = byteBufferArray.size();
-                        ByteBuffer current = byteBufferArray.get(0);
-                        current.rewind();
-                        int numSites = current.remaining();
-                        byte[][] result = new byte[numTaxa][numSites];
-                        for (int t = 0; t < numTaxa; t++) {
-                            current = byteBufferArray.get(t);
-                            current.rewind();
-                            for (int s = 0; s < numSites; s++) {
-                                result[t][s] = current.get();
-                            }
-                        }
+                        byte[][] result = readBlock(lookaheadTaxa, myStartSite);
                         //myTimeReading += System.nanoTime() - previous;
 
                         myGenoCache.put(myProcessBlock, result);
@@ -310,22 +325,7 @@ public class GOBIIAvroGenotypeCallTable extends AbstractGenotypeCallTable {
                         //System.out.println("look ahead 2 inside check");
                         myNumBlocksRead++;
                         //previous = System.nanoTime();
-                        GenericData.Array<ByteBuffer> byteBufferArray = (GenericData.Array<ByteBuffer>) myRecord.get(getKey(myStartTaxa, lookaheadSite));
-                        if (byteBufferArray == null) {
-                            throw new IllegalStateException("GOBIIAvroGenotypeCallTable: byte buffer array is null: " + getKey(myStartTaxa, lookaheadSite));
-                        }
-                        int numTaxa = byteBufferArray.size();
-                        ByteBuffer current = byteBufferArray.get(0);
-                        current.rewind();
-                        int numSites = current.remaining();
-                        byte[][] result = new byte[numTaxa][numSites];
-                        for (int t = 0; t < numTaxa; t++) {
-                            current = byteBufferArray.get(t);
-                            current.rewind();
-                            for (int s = 0; s < numSites; s++) {
-                                result[t][s] = current.get();
-                            }
-                        }
+                        byte[][] result = readBlock(myStartTaxa, lookaheadSite);
                         //myTimeReading += System.nanoTime() - previous;
 
                         myGenoCache.put(myProcessBlock, result);
@@ -6,6 +6,7 @@ package net.maizegenetics.dna.snp.genotypecall;
 import ch.systemsx.cisd.hdf5.HDF5Factory;
 import ch.systemsx.cisd.hdf5.IHDF5Reader;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
@@ -89,6 +90,22 @@ public class GenotypeCallTableBuilder {
         return new GenotypeCallTableBuilder(matrix);
     }
 
+    /**
+     * Get Genotype Builder over existing genotypes, for example memory mapped.
+     * The genotypes are not copied and can't be changed, so only isPhased(),
+     * alleleEncodings() and build() can be used. Default is unphased and
+     * NucleotideAlignmentConstants.NUCLEOTIDE_ALLELES encoding.
+     *
+     * @param genotypes genotypes of each taxon one after another
+     * @param numTaxa number of taxa
+     * @param numSites number of sites.
+     *
+     * @return Genotype Builder
+     */
+    public static GenotypeCallTableBuilder getInstance(ByteBuffer genotypes, int numTaxa, int numSites) {
+        return new GenotypeCallTableBuilder(SuperByteMatrixBuilder.getInstance(genotypes, numTaxa, numSites));
+    }
+
     public static Tuple<GenotypeCallTable, Translate> getFilteredInstance(GenotypeCallTable genotype, Translate translate) {
         if (genotype == null) {
             return null;
@@ -5,89 +5,121 @@
  */
 package net.maizegenetics.dna.snp.genotypecall;
 
-import java.lang.ref.WeakReference;
+import com.google.common.collect.MapMaker;
+
 import java.util.AbstractList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
+ * Statistics of each taxon or site of a genotype call table, computed when
+ * first requested and cached. Instances are shared through a registry, so
+ * plugins running at the same time on the same table use the same
+ * statistics. Any number of threads can use an instance. Each index is
+ * computed once. A thread that requests an index being computed by another
+ * waits for that result instead of computing it again.
  *
  * @author Terry Casstevens
  */
 public abstract class ListStats extends AbstractList<Stats> {
 
-    private final static Map<GenotypeCallTable, WeakReference<ListStats>> TAXA_INSTANCES = new HashMap<>();
-    private final static Map<GenotypeCallTable, WeakReference<ListStats>> SITE_INSTANCES = new HashMap<>();
+    // Keys are weak and compared by identity. Values are weak, so statistics
+    // are released when no longer used.
+    private final static ConcurrentMap<GenotypeCallTable, ListStats> TAXA_INSTANCES = new MapMaker().weakKeys().weakValues().makeMap();
+    private final static ConcurrentMap<GenotypeCallTable, ListStats> SITE_INSTANCES = new MapMaker().weakKeys().weakValues().makeMap();
 
     protected final GenotypeCallTable myGenotype;
     private final int myNumIndices;
+    // Stats of each index, or CompletableFuture<Stats> while being computed
+    private final AtomicReferenceArray<Object> myCache;
 
     ListStats(GenotypeCallTable genotype, int numIndices) {
         myGenotype = genotype;
         myNumIndices = numIndices;
+        myCache = new AtomicReferenceArray<>(numIndices);
     }
 
     public static ListStats getTaxaInstance(GenotypeCallTable genotype) {
 
-        WeakReference<ListStats> temp = TAXA_INSTANCES.get(genotype);
-
-        ListStats result = null;
-        if (temp != null) {
-            result = temp.get();
+        ListStats result = TAXA_INSTANCES.get(genotype);
+        if (result != null) {
+            return result;
         }
 
-        if (result == null) {
-            if (genotype instanceof FilterGenotypeCallTable) {
-                FilterGenotypeCallTable filter = (FilterGenotypeCallTable) genotype;
-                WeakReference<ListStats> temp1 = TAXA_INSTANCES.get(filter.myBaseGenotype);
-                ListStats base = null;
-                if (temp1 != null) {
-                    base = temp1.get();
-                }
-                if (base == null || filter.myTranslate.hasSiteTranslations()) {
-                    result = new ListStatsTaxa(genotype);
-                } else {
-                    result = new ListStatsFilterTaxa(filter, base);
-                }
-            } else {
-                result = new ListStatsTaxa(genotype);
-            }
-            TAXA_INSTANCES.put(genotype, new WeakReference<>(result));
+        if ((genotype instanceof FilterGenotypeCallTable) && !((FilterGenotypeCallTable) genotype).myTranslate.hasSiteTranslations()) {
+            // Taxa of the filter have the same sites as in the base
+            FilterGenotypeCallTable filter = (FilterGenotypeCallTable) genotype;
+            result = new ListStatsFilterTaxa(filter, getTaxaInstance(filter.myBaseGenotype));
+        } else {
+            result = new ListStatsTaxa(genotype);
         }
 
-        return result;
+        ListStats previous = TAXA_INSTANCES.putIfAbsent(genotype, result);
+        return (previous == null) ? result : previous;
 
     }
 
     public static ListStats getSiteInstance(GenotypeCallTable genotype) {
 
-        WeakReference<ListStats> temp = SITE_INSTANCES.get(genotype);
+        ListStats result = SITE_INSTANCES.get(genotype);
+        if (result != null) {
+            return result;
+        }
 
-        ListStats result = null;
-        if (temp != null) {
-            result = temp.get();
+        if ((genotype instanceof FilterGenotypeCallTable) && !((FilterGenotypeCallTable) genotype).myTranslate.hasTaxaTranslations()) {
+            // Sites of the filter have the same taxa as in the base
+            FilterGenotypeCallTable filter = (FilterGenotypeCallTable) genotype;
+            result = new ListStatsFilterSite(filter, getSiteInstance(filter.myBaseGenotype));
+        } else {
+            result = new ListStatsSite(genotype);
         }
 
-        if (result == null) {
-            if (genotype instanceof FilterGenotypeCallTable) {
-                FilterGenotypeCallTable filter = (FilterGenotypeCallTable) genotype;
-                WeakReference<ListStats> temp1 = SITE_INSTANCES.get(filter.myBaseGenotype);
-                ListStats base = null;
-                if (temp1 != null) {
-                    base = temp1.get();
-                }
-                if (base == null || filter.myTranslate.hasTaxaTranslations()) {
-                    result = new ListStatsSite(genotype);
-                } else {
-                    result = new ListStatsFilterSite(filter, base);
+        ListStats previous = SITE_INSTANCES.putIfAbsent(genotype, result);
+        return (previous == null) ? result : previous;
+
+    }
+
+    /**
+     * Computes statistics of index. Called once for each index, unless it
+     * throws an exception.
+     */
+    abstract Stats compute(int index);
+
+    @Override
+    public Stats get(int index) {
+
+        while (true) {
+
+            Object current = myCache.get(index);
+            if (current instanceof Stats) {
+                return (Stats) current;
+            }
+
+            if (current == null) {
+                CompletableFuture<Stats> future = new CompletableFuture<>();
+                if (myCache.compareAndSet(index, null, future)) {
+                    Stats result;
+                    try {
+                        result = compute(index);
+                    } catch (Throwable e) {
+                        myCache.set(index, null);
+                        future.completeExceptionally(e);
+                        throw e;
+                    }
+                    myCache.set(index, result);
+                    future.complete(result);
+                    return result;
                 }
-            } else {
-                result = new ListStatsSite(genotype);
+                // Another thread started computing this index
+                continue;
             }
-            SITE_INSTANCES.put(genotype, new WeakReference<>(result));
-        }
 
-        return result;
+            @SuppressWarnings("unchecked")
+            CompletableFuture<Stats> future = (CompletableFuture<Stats>) current;
+            return future.join();
+
+        }
 
     }
 
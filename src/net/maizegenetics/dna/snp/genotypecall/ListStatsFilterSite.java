@@ -15,21 +15,20 @@ public class ListStatsFilterSite extends ListStats {
 
     private final ListStats myBase;
     private final Translate myTranslate;
-    private final Stats[] myCache;
 
     ListStatsFilterSite(FilterGenotypeCallTable genotype, ListStats base) {
         super(genotype, genotype.numberOfSites());
         myBase = base;
         myTranslate = genotype.myTranslate;
-        myCache = new Stats[genotype.numberOfSites()];
     }
 
     @Override
-    public Stats get(int index) {
-        if (myCache[index] == null) {
-            myCache[index] = Stats.getInstance(myBase.get(myTranslate.site(index)), index);
+    Stats compute(int index) {
+        int baseIndex = myTranslate.site(index);
+        if (baseIndex == -1) {
+            return myGenotype.siteStats(index);
         }
-        return myCache[index];
+        return Stats.getInstance(myBase.get(baseIndex), index);
     }
 
 }
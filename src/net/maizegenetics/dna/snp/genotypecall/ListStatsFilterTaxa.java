@@ -15,21 +15,20 @@ public class ListStatsFilterTaxa extends ListStats {
 
     private final ListStats myBase;
     private final Translate myTranslate;
-    private final Stats[] myCache;
 
     ListStatsFilterTaxa(FilterGenotypeCallTable genotype, ListStats base) {
         super(genotype, genotype.numberOfTaxa());
         myBase = base;
         myTranslate = genotype.myTranslate;
-        myCache = new Stats[genotype.numberOfTaxa()];
     }
 
     @Override
-    public Stats get(int index) {
-        if (myCache[index] == null) {
-            myCache[index] = Stats.getInstance(myBase.get(myTranslate.taxon(index)), index);
+    Stats compute(int index) {
+        int baseIndex = myTranslate.taxon(index);
+        if (baseIndex == -1) {
+            return myGenotype.taxonStats(index);
         }
-        return myCache[index];
+        return Stats.getInstance(myBase.get(baseIndex), index);
     }
 
 }
@@ -11,19 +11,13 @@ package net.maizegenetics.dna.snp.genotypecall;
  */
 public class ListStatsSite extends ListStats {
 
-    private final Stats[] myCache;
-
     ListStatsSite(GenotypeCallTable genotype) {
         super(genotype, genotype.numberOfSites());
-        myCache = new Stats[genotype.numberOfSites()];
     }
 
     @Override
-    public Stats get(int index) {
-        if (myCache[index] == null) {
-            myCache[index] = myGenotype.siteStats(index);
-        }
-        return myCache[index];
+    Stats compute(int index) {
+        return myGenotype.siteStats(index);
     }
 
 }
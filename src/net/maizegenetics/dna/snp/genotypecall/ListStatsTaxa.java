@@ -11,19 +11,13 @@ package net.maizegenetics.dna.snp.genotypecall;
  */
 public class ListStatsTaxa extends ListStats {
 
-    private final Stats[] myCache;
-
     ListStatsTaxa(GenotypeCallTable genotype) {
         super(genotype, genotype.numberOfTaxa());
-        myCache = new Stats[genotype.numberOfTaxa()];
     }
 
     @Override
-    public Stats get(int index) {
-        if (myCache[index] == null) {
-            myCache[index] = myGenotype.taxonStats(index);
-        }
-        return myCache[index];
+    Stats compute(int index) {
+        return myGenotype.taxonStats(index);
     }
 
 }
@@ -7,12 +7,19 @@ package net.maizegenetics.dna.snp.io;
 
 import com.google.common.collect.SetMultimap;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
@@ -54,7 +61,30 @@ public class BuilderFromHapMap {
     private static final int VARIANT_INDEX = 1;
     private static final int CHROMOSOME_INDEX = 2;
     private static final int POSITION_INDEX = 3;
-    private static final int NUM_VALUES_PROCESSED_TOGETHER = 7 << 20;
+    private static final int BUFFER_SIZE = 1 << 22;
+
+    /**
+     * Diploid genotype for each 1-letter code byte.
+     */
+    private static final byte[] ONE_LETTER_GENOTYPES = new byte[256];
+
+    /**
+     * Diploid genotype for each 2-letter code indexed by (first byte << 8) |
+     * second byte.
+     */
+    private static final byte[] TWO_LETTER_GENOTYPES = new byte[1 << 16];
+
+    static {
+        for (int c = 0; c < 256; c++) {
+            ONE_LETTER_GENOTYPES[c] = NucleotideAlignmentConstants.getNucleotideDiploidByte((char) c);
+        }
+        for (int first = 0; first < 256; first++) {
+            for (int second = 0; second < 256; second++) {
+                // there is a phasing conflict with the existing import approach
+                TWO_LETTER_GENOTYPES[(first << 8) | second] = GenotypeTableUtils.getDiploidValue(ONE_LETTER_GENOTYPES[second], ONE_LETTER_GENOTYPES[first]);
+            }
+        }
+    }
 
     private final String myHapmapFile;
     private boolean mySortTaxaAlphabetically = false;
@@ -77,18 +107,15 @@ public class BuilderFromHapMap {
     public GenotypeTable build() {
 
         ExecutorService pool = null;
-        try (BufferedReader reader = Utils.getBufferedReader(myHapmapFile, 1 << 20)) {
+        try (InputStream input = new BufferedInputStream(Utils.getInputStream(myHapmapFile), 1 << 20)) {
 
             Map<String, SetMultimap<String, String>> sampAnnoBuild = new TreeMap<>();
 
-            String currLine = reader.readLine();
+            String currLine = toString(readLine(input));
             while ((currLine != null) && currLine.startsWith("##")) {
 
                 String[] cat = currLine.split("=", 2);
-                if (cat.length < 2) {
-                    continue;
-                }
-                if (cat[0].startsWith("##SAMPLE")) {
+                if ((cat.length >= 2) && cat[0].startsWith("##SAMPLE")) {
 
                     SetMultimap<String, String> mapOfAnno = TaxaListIOUtils.parseVCFHeadersIntoMap(cat[1]);
                     String taxaID = mapOfAnno.get("ID").iterator().next();
@@ -98,7 +125,7 @@ public class BuilderFromHapMap {
 
                 }
 
-                currLine = reader.readLine();
+                currLine = toString(readLine(input));
             }
 
             TaxaListBuilder taxaList = processTaxa(currLine, sampAnnoBuild);
@@ -106,7 +133,11 @@ public class BuilderFromHapMap {
 
             Map<String, Chromosome> chromosomeLookup = new ConcurrentHashMap<>();
 
-            currLine = reader.readLine();
+            byte[] firstSite = readLine(input);
+            if (firstSite == null) {
+                throw new IllegalStateException("BuilderFromHapMap: No sites in file: " + myHapmapFile);
+            }
+            currLine = toString(firstSite);
 
             boolean isOneLetter = false;
             String[] tokens = WHITESPACE_PATTERN.split(currLine, NUM_HAPMAP_NON_TAXA_HEADERS + 1);
@@ -126,44 +157,59 @@ public class BuilderFromHapMap {
             pool = Executors.newFixedThreadPool(numThreads);
             List<Future<ProcessHapmapBlock>> futures = new ArrayList<>();
 
-            int numSitesToProcessTogether = NUM_VALUES_PROCESSED_TOGETHER / numTaxa;
-            numSitesToProcessTogether = Math.min(1 << 16, numSitesToProcessTogether);
-            numSitesToProcessTogether = Math.max(512, numSitesToProcessTogether);
-
-            ArrayList<String> textLines = new ArrayList<>(numSitesToProcessTogether);
-            int numLines = 0;
-            while (currLine != null) {
-                textLines.add(currLine);
-                numLines++;
-                if (numLines % numSitesToProcessTogether == 0) {
-                    ProcessHapmapBlock processBlock = new ProcessHapmapBlock(textLines, numTaxa, chromosomeLookup, isOneLetter);
-                    futures.add(pool.submit(processBlock));
-                    textLines = new ArrayList<>(numSitesToProcessTogether);
+            // Raw bytes are handed to the parsing threads in blocks of whole
+            // lines, so reading (and gzip inflation) on this thread overlaps
+            // with parsing. Buffers are recycled after parsing, which also
+            // limits how far reading can get ahead.
+            BufferPool buffers = new BufferPool(numThreads * 2);
+            byte[] buffer = buffers.take();
+            if (buffer.length <= firstSite.length) {
+                buffer = new byte[firstSite.length * 2];
+            }
+            System.arraycopy(firstSite, 0, buffer, 0, firstSite.length);
+            buffer[firstSite.length] = '\n';
+            int filled = firstSite.length + 1;
+
+            int numRead;
+            while ((numRead = input.read(buffer, filled, buffer.length - filled)) >= 0) {
+                filled += numRead;
+                if (filled < buffer.length) {
+                    continue;
+                }
+                int endOfLines = filled;
+                while ((endOfLines > 0) && (buffer[endOfLines - 1] != '\n')) {
+                    endOfLines--;
+                }
+                if (endOfLines == 0) {
+                    // single line longer than buffer
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    continue;
                 }
-                currLine = reader.readLine();
+                int remaining = filled - endOfLines;
+                byte[] next = buffers.take();
+                if (next.length <= remaining) {
+                    next = new byte[buffer.length];
+                }
+                System.arraycopy(buffer, endOfLines, next, 0, remaining);
+                futures.add(pool.submit(new ProcessHapmapBlock(buffer, endOfLines, numTaxa, chromosomeLookup, isOneLetter, buffers)));
+                buffer = next;
+                filled = remaining;
             }
 
-            if (textLines.size() > 0) {
-                ProcessHapmapBlock processBlock = new ProcessHapmapBlock(textLines, numTaxa, chromosomeLookup, isOneLetter);
-                futures.add(pool.submit(processBlock));
+            if (filled > 0) {
+                futures.add(pool.submit(new ProcessHapmapBlock(buffer, filled, numTaxa, chromosomeLookup, isOneLetter, buffers)));
+            } else {
+                buffers.release(buffer);
             }
 
-            int currentSite = 0;
-            PositionListBuilder positions = new PositionListBuilder();
-            GenotypeCallTableBuilder genotypes = GenotypeCallTableBuilder.getUnphasedNucleotideGenotypeBuilder(numTaxa, numLines);
-
             int numFutures = futures.size();
+            List<ProcessHapmapBlock> blocks = new ArrayList<>(numFutures);
+            int numSites = 0;
             int count = 0;
             for (Future<ProcessHapmapBlock> future : futures) {
                 ProcessHapmapBlock pb = future.get();
-                positions.addAll(pb.getPositions());
-                SuperByteMatrix bgTS = pb.getGenotypes();
-                for (int t = 0; t < bgTS.getNumRows(); t++) {
-                    for (int s = 0; s < bgTS.getNumColumns(); s++) {
-                        genotypes.setBase(t, currentSite + s, bgTS.get(t, s));
-                    }
-                }
-                currentSite += pb.getNumberSitesProcessed();
+                blocks.add(pb);
+                numSites += pb.getNumberSitesProcessed();
                 if (myProgressListener != null) {
                     count++;
                     myProgressListener.progress(count * 100 / numFutures, null);
@@ -171,6 +217,18 @@ public class BuilderFromHapMap {
             }
             pool.shutdown();
 
+            int currentSite = 0;
+            PositionListBuilder positions = new PositionListBuilder();
+            GenotypeCallTableBuilder genotypes = GenotypeCallTableBuilder.getUnphasedNucleotideGenotypeBuilder(numTaxa, numSites);
+            for (ProcessHapmapBlock pb : blocks) {
+                positions.addAll(pb.getPositions());
+                SuperByteMatrix bgTS = pb.getGenotypes();
+                for (int t = 0; t < bgTS.getNumRows(); t++) {
+                    genotypes.setBaseRangeForTaxon(t, currentSite, bgTS.getAllColumns(t));
+                }
+                currentSite += pb.getNumberSitesProcessed();
+            }
+
             if (mySortTaxaAlphabetically) {
                 taxaList.sortTaxaAlphabetically(genotypes);
             }
@@ -195,110 +253,245 @@ public class BuilderFromHapMap {
 
     }
 
+    /**
+     * Reads one line as raw bytes without the line terminator.
+     *
+     * @return line or null if end of stream
+     */
+    private static byte[] readLine(InputStream input) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream(1024);
+        int current = input.read();
+        if (current < 0) {
+            return null;
+        }
+        while ((current >= 0) && (current != '\n')) {
+            result.write(current);
+            current = input.read();
+        }
+        byte[] line = result.toByteArray();
+        if ((line.length != 0) && (line[line.length - 1] == '\r')) {
+            return Arrays.copyOf(line, line.length - 1);
+        }
+        return line;
+    }
+
+    private static String toString(byte[] line) {
+        if (line == null) {
+            return null;
+        }
+        return new String(line, StandardCharsets.UTF_8);
+    }
+
     private class ProcessHapmapBlock implements Callable<ProcessHapmapBlock> {
 
-        private List<String> myInputLines;
+        private byte[] myBuffer;
+        private final int myLength;
+        private final BufferPool myBufferPool;
         private final Map<String, Chromosome> myChromosomeLookup;
         private final boolean myIsOneLetter;
         private final List<Position> myPositionList;
-        private final int myNumSitesToProcess;
         private final int myNumTaxa;
+        private final int[] myTabPos = new int[NUM_HAPMAP_NON_TAXA_HEADERS];
+        private int myNumSitesToProcess;
         private SuperByteMatrix myGenotypes;
-
-        public ProcessHapmapBlock(List<String> inputLines, int numTaxa, Map<String, Chromosome> chromosomeLookup, boolean isOneLetter) {
-            myInputLines = inputLines;
+        private Chromosome myLastChromosome = null;
+        private int myLastChrStart = 0;
+        private int myLastChrEnd = 0;
+
+        public ProcessHapmapBlock(byte[] buffer, int length, int numTaxa, Map<String, Chromosome> chromosomeLookup, boolean isOneLetter, BufferPool bufferPool) {
+            myBuffer = buffer;
+            myLength = length;
+            myBufferPool = bufferPool;
             myChromosomeLookup = chromosomeLookup;
             myNumTaxa = numTaxa;
             myIsOneLetter = isOneLetter;
-            myNumSitesToProcess = inputLines.size();
-            myPositionList = new ArrayList<>(myNumSitesToProcess);
+            myPositionList = new ArrayList<>();
         }
 
         @Override
         public ProcessHapmapBlock call() throws Exception {
 
-            myGenotypes = SuperByteMatrixBuilder.getInstance(myNumTaxa, myNumSitesToProcess);
-            for (int site = 0; site < myNumSitesToProcess; site++) {
-                String input = myInputLines.get(site);
-                try {
-                    int[] tabPos = new int[NUM_HAPMAP_NON_TAXA_HEADERS];
-                    int tabIndex = 0;
-                    int len = input.length();
-                    for (int i = 0; (tabIndex < NUM_HAPMAP_NON_TAXA_HEADERS) && (i < len); i++) {
-                        if (input.charAt(i) == '\t') {
-                            tabPos[tabIndex++] = i;
-                        }
-                    }
-                    String chrName = input.substring(tabPos[CHROMOSOME_INDEX - 1] + 1, tabPos[CHROMOSOME_INDEX]);
-                    Chromosome currChr = myChromosomeLookup.get(chrName);
-                    if (currChr == null) {
-                        currChr = new Chromosome(new String(chrName));
-                        myChromosomeLookup.put(chrName, currChr);
+            try {
+
+                myNumSitesToProcess = 0;
+                for (int start = 0; start < myLength; start = nextLine(start)) {
+                    if (lineEnd(start) > start) {
+                        myNumSitesToProcess++;
                     }
-                    String variants = input.substring(tabPos[VARIANT_INDEX - 1] + 1, tabPos[VARIANT_INDEX]);
-                    int physicalPos;
-                    try {
-                        physicalPos = Integer.parseInt(input.substring(tabPos[POSITION_INDEX - 1] + 1, tabPos[POSITION_INDEX]));
-                    } catch (Exception ex) {
-                        throw new IllegalArgumentException("BuilderFromHapMap: Position must be an integer: " + input.substring(tabPos[POSITION_INDEX - 1] + 1, tabPos[POSITION_INDEX]).trim());
+                }
+
+                myGenotypes = SuperByteMatrixBuilder.getInstance(myNumTaxa, myNumSitesToProcess);
+                int site = 0;
+                for (int start = 0; start < myLength; start = nextLine(start)) {
+                    int end = lineEnd(start);
+                    if (end == start) {
+                        continue;
                     }
-                    GeneralPosition.Builder apb = new GeneralPosition.Builder(currChr, physicalPos)
-                            .snpName(input.substring(0, tabPos[SNPID_INDEX]))
-                            .knownVariants(variants) //TODO   strand, variants,
-                            ;
-
-                    byte glbMajor = NucleotideAlignmentConstants.getNucleotideDiploidByte(variants.charAt(0));
-                    apb.allele(WHICH_ALLELE.GlobalMajor, glbMajor);
-                    if (variants.length() == 3) {
-                        byte glbMinor = NucleotideAlignmentConstants.getNucleotideDiploidByte(variants.charAt(2));
-                        apb.allele(WHICH_ALLELE.GlobalMinor, glbMinor);
+                    processSite(start, end, site);
+                    swapSitesIfOutOfOrder(site);
+                    site++;
+                }
+
+            } finally {
+                myBufferPool.release(myBuffer);
+                myBuffer = null;
+            }
+
+            return this;
+
+        }
+
+        private int nextLine(int start) {
+            int i = start;
+            while ((i < myLength) && (myBuffer[i] != '\n')) {
+                i++;
+            }
+            return i + 1;
+        }
+
+        /**
+         * Returns end of line starting at given index excluding line
+         * terminator.
+         */
+        private int lineEnd(int start) {
+            int end = nextLine(start) - 1;
+            if ((end > start) && (myBuffer[end - 1] == '\r')) {
+                end--;
+            }
+            return end;
+        }
+
+        private void processSite(int start, int end, int site) {
+
+            try {
+
+                int[] tabPos = myTabPos;
+                int tabIndex = 0;
+                for (int i = start; (tabIndex < NUM_HAPMAP_NON_TAXA_HEADERS) && (i < end); i++) {
+                    if (myBuffer[i] == '\t') {
+                        tabPos[tabIndex++] = i;
                     }
+                }
+                if (tabIndex < NUM_HAPMAP_NON_TAXA_HEADERS) {
+                    throw new IllegalStateException("BuilderFromHapMap: Expected " + NUM_HAPMAP_NON_TAXA_HEADERS + " tab delimited columns before the genotypes.");
+                }
 
-                    myPositionList.add(apb.build());
-                    int offset = tabPos[NUM_HAPMAP_NON_TAXA_HEADERS - 1] + 1;
-
-                    int taxon = 0;
-                    if (myIsOneLetter) {
-                        for (int i = offset; i < len; i += 2) {
-                            if (taxon >= myNumTaxa) {
-                                throw new IllegalStateException("BuilderFromHapMap: SNP Named: " + myPositionList.get(myPositionList.size() - 1).getSNPID() + " has too many values.");
-                            }
-                            byte value = NucleotideAlignmentConstants.getNucleotideDiploidByte(input.charAt(i));
-                            if (value == NucleotideAlignmentConstants.UNDEFINED_DIPLOID_ALLELE) {
-                                throw new IllegalStateException("BuilderFromHapMap: SNP Named: " + myPositionList.get(myPositionList.size() - 1).getSNPID() + " has illegal value: " + input.charAt(i));
-                            }
-                            myGenotypes.set(taxon++, site, value);
+                Chromosome currChr = chromosome(tabPos[CHROMOSOME_INDEX - 1] + 1, tabPos[CHROMOSOME_INDEX]);
+                String variants = string(tabPos[VARIANT_INDEX - 1] + 1, tabPos[VARIANT_INDEX]);
+                int physicalPos = parsePosition(tabPos[POSITION_INDEX - 1] + 1, tabPos[POSITION_INDEX]);
+                GeneralPosition.Builder apb = new GeneralPosition.Builder(currChr, physicalPos)
+                        .snpName(string(start, tabPos[SNPID_INDEX]))
+                        .knownVariants(variants) //TODO   strand, variants,
+                        ;
+
+                byte glbMajor = NucleotideAlignmentConstants.getNucleotideDiploidByte(variants.charAt(0));
+                apb.allele(WHICH_ALLELE.GlobalMajor, glbMajor);
+                if (variants.length() == 3) {
+                    byte glbMinor = NucleotideAlignmentConstants.getNucleotideDiploidByte(variants.charAt(2));
+                    apb.allele(WHICH_ALLELE.GlobalMinor, glbMinor);
+                }
+
+                myPositionList.add(apb.build());
+                int offset = tabPos[NUM_HAPMAP_NON_TAXA_HEADERS - 1] + 1;
+
+                byte[] buffer = myBuffer;
+                int taxon = 0;
+                if (myIsOneLetter) {
+                    for (int i = offset; i < end; i += 2) {
+                        if (taxon >= myNumTaxa) {
+                            throw new IllegalStateException("BuilderFromHapMap: SNP Named: " + myPositionList.get(myPositionList.size() - 1).getSNPID() + " has too many values.");
                         }
-                    } else {
-                        for (int i = offset; i < len; i += 3) {
-                            if (taxon >= myNumTaxa) {
-                                throw new IllegalStateException("BuilderFromHapMap: SNP Named: " + myPositionList.get(myPositionList.size() - 1).getSNPID() + " has too many values.");
-                            }
-                            // there is a phasing conflict with the existing import approach
-                            byte value = GenotypeTableUtils.getDiploidValue(NucleotideAlignmentConstants.getNucleotideDiploidByte(input.charAt(i + 1)),
-                                    NucleotideAlignmentConstants.getNucleotideDiploidByte(input.charAt(i)));
-                            if (value == NucleotideAlignmentConstants.UNDEFINED_DIPLOID_ALLELE) {
-                                throw new IllegalStateException("BuilderFromHapMap: SNP Named: " + myPositionList.get(myPositionList.size() - 1).getSNPID() + " has illegal value: " + input.charAt(i) + input.charAt(i + 1));
-                            }
-                            myGenotypes.set(taxon++, site, value);
+                        byte value = ONE_LETTER_GENOTYPES[buffer[i] & 0xFF];
+                        if (value == NucleotideAlignmentConstants.UNDEFINED_DIPLOID_ALLELE) {
+                            throw new IllegalStateException("BuilderFromHapMap: SNP Named: " + myPositionList.get(myPositionList.size() - 1).getSNPID() + " has illegal value: " + string(i, i + 1));
                         }
+                        myGenotypes.set(taxon++, site, value);
                     }
-                    if (taxon != myNumTaxa) {
-                        throw new IllegalStateException("BuilderFromHapMap: SNP Named: " + myPositionList.get(myPositionList.size() - 1).getSNPID() + " has too few values.");
+                } else {
+                    for (int i = offset; i < end; i += 3) {
+                        if (taxon >= myNumTaxa) {
+                            throw new IllegalStateException("BuilderFromHapMap: SNP Named: " + myPositionList.get(myPositionList.size() - 1).getSNPID() + " has too many values.");
+                        }
+                        if (i + 1 >= end) {
+                            throw new IllegalStateException("BuilderFromHapMap: SNP Named: " + myPositionList.get(myPositionList.size() - 1).getSNPID() + " has illegal value: " + string(i, end));
+                        }
+                        byte value = TWO_LETTER_GENOTYPES[((buffer[i] & 0xFF) << 8) | (buffer[i + 1] & 0xFF)];
+                        if (value == NucleotideAlignmentConstants.UNDEFINED_DIPLOID_ALLELE) {
+                            throw new IllegalStateException("BuilderFromHapMap: SNP Named: " + myPositionList.get(myPositionList.size() - 1).getSNPID() + " has illegal value: " + string(i, i + 2));
+                        }
+                        myGenotypes.set(taxon++, site, value);
                     }
+                }
+                if (taxon != myNumTaxa) {
+                    throw new IllegalStateException("BuilderFromHapMap: SNP Named: " + myPositionList.get(myPositionList.size() - 1).getSNPID() + " has too few values.");
+                }
 
-                    swapSitesIfOutOfOrder(site);
+            } catch (Exception e) {
+                String input = string(start, end);
+                myLogger.error("Error parsing this row " + input);
+                myLogger.debug(e.getMessage(), e);
+                throw new IllegalStateException("BuilderFromHapMap: Error Parsing Line: " + input.substring(0, Math.min(25, input.length())) + "...\n" + e.getMessage());
+            }
+
+        }
+
+        private String string(int start, int end) {
+            return new String(myBuffer, start, end - start, StandardCharsets.UTF_8);
+        }
 
-                } catch (Exception e) {
-                    myLogger.error("Error parsing this row " + input);
-                    myLogger.debug(e.getMessage(), e);
-                    throw new IllegalStateException("BuilderFromHapMap: Error Parsing Line: " + input.substring(0, Math.min(25, input.length())) + "...\n" + e.getMessage());
+        /**
+         * Returns chromosome for name at given range. Consecutive sites are
+         * usually on the same chromosome, so the name bytes are compared to the
+         * previous site before creating a String.
+         */
+        private Chromosome chromosome(int start, int end) {
+            int len = end - start;
+            if ((myLastChromosome != null) && (len == myLastChrEnd - myLastChrStart)) {
+                boolean same = true;
+                for (int i = 0; i < len; i++) {
+                    if (myBuffer[start + i] != myBuffer[myLastChrStart + i]) {
+                        same = false;
+                        break;
+                    }
+                }
+                if (same) {
+                    myLastChrStart = start;
+                    myLastChrEnd = end;
+                    return myLastChromosome;
                 }
             }
-            myInputLines = null;
-
-            return this;
+            myLastChromosome = myChromosomeLookup.computeIfAbsent(string(start, end), Chromosome::new);
+            myLastChrStart = start;
+            myLastChrEnd = end;
+            return myLastChromosome;
+        }
 
+        private int parsePosition(int start, int end) {
+            long result = 0;
+            boolean negative = false;
+            int i = start;
+            if ((i < end) && ((myBuffer[i] == '-') || (myBuffer[i] == '+'))) {
+                negative = myBuffer[i] == '-';
+                i++;
+            }
+            if (i == end) {
+                throw new IllegalArgumentException("BuilderFromHapMap: Position must be an integer: " + string(start, end).trim());
+            }
+            for (; i < end; i++) {
+                int digit = myBuffer[i] - '0';
+                if ((digit < 0) || (digit > 9)) {
+                    throw new IllegalArgumentException("BuilderFromHapMap: Position must be an integer: " + string(start, end).trim());
+                }
+                result = result * 10 + digit;
+                if (result > Integer.MAX_VALUE + 1L) {
+                    throw new IllegalArgumentException("BuilderFromHapMap: Position must be an integer: " + string(start, end).trim());
+                }
+            }
+            result = negative ? -result : result;
+            if (result > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("BuilderFromHapMap: Position must be an integer: " + string(start, end).trim());
+            }
+            return (int) result;
         }
 
         // Swap adjacent misordered sites, often caused by two sites at the same positions with a different name order
@@ -335,6 +528,39 @@ public class BuilderFromHapMap {
 
     }
 
+    /**
+     * Recycles read buffers between the reading thread and the parsing
+     * threads. Only the reading thread calls take().
+     */
+    private static final class BufferPool {
+
+        private final BlockingQueue<byte[]> myBuffers;
+        private final int myMaxBuffers;
+        private int myNumAllocated = 0;
+
+        private BufferPool(int maxBuffers) {
+            myMaxBuffers = maxBuffers;
+            myBuffers = new ArrayBlockingQueue<>(maxBuffers);
+        }
+
+        private byte[] take() throws InterruptedException {
+            byte[] result = myBuffers.poll();
+            if (result != null) {
+                return result;
+            }
+            if (myNumAllocated < myMaxBuffers) {
+                myNumAllocated++;
+                return new byte[BUFFER_SIZE];
+            }
+            return myBuffers.take();
+        }
+
+        private void release(byte[] buffer) {
+            myBuffers.offer(buffer);
+        }
+
+    }
+
     static TaxaListBuilder processTaxa(String readLn, Map<String, SetMultimap<String, String>> taxaAnnotation) {
 
         String[] header = WHITESPACE_PATTERN.split(readLn);
@@ -156,6 +156,14 @@ public class AlleleDepth implements SiteScore {
      * @return depths
      */
     public byte[][] valuesForTaxonByte(int taxon) {
+        if (myValues != null) {
+            byte[][] result = new byte[NUM_ALLELE_DEPTH_TYPES][];
+            int count = 0;
+            for (SITE_SCORE_TYPE current : ALLELE_DEPTH_TYPES) {
+                result[count++] = myValues.get(current).valuesForAllSites(taxon);
+            }
+            return result;
+        }
         byte[][] result = new byte[NUM_ALLELE_DEPTH_TYPES][numSites()];
         int count = 0;
         for (SITE_SCORE_TYPE current : ALLELE_DEPTH_TYPES) {
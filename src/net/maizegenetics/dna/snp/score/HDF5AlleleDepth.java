@@ -4,27 +4,47 @@
 package net.maizegenetics.dna.snp.score;
 
 import ch.systemsx.cisd.hdf5.IHDF5Reader;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
 import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+
 import net.maizegenetics.taxa.TaxaList;
 import net.maizegenetics.taxa.TaxaListBuilder;
 import net.maizegenetics.util.Tassel5HDF5Constants;
-
-import java.util.LinkedHashMap;
-import java.util.Map;
 import net.maizegenetics.dna.snp.byte2d.Byte2D;
 
+import org.apache.log4j.Logger;
+
 /**
+ * HDF5 implementation of AlleleDepth. Depths are read in blocks of 65536
+ * sites per taxon and cached as SparseDepthBlock in a concurrent cache, so
+ * this can be shared by multiple threads.
  *
  * @author Terry Casstevens
  */
 public class HDF5AlleleDepth extends AlleleDepth {
 
-    private static int MAX_CACHE_SIZE = 1 << 16;
-    private static final int HDF5_BLOCK = 1 << 16;
-    private final Map<Long, byte[][]> myDepthCache = new LinkedHashMap<Long, byte[][]>((3 * MAX_CACHE_SIZE) / 2) {
+    private static final Logger myLogger = Logger.getLogger(HDF5AlleleDepth.class);
+
+    private static final int SHIFT_AMOUNT = 16;
+    private static final int HDF5_BLOCK = 1 << SHIFT_AMOUNT;
+    private static final int MAX_CACHE_SIZE = 1 << 16;
+
+    private final LoadingCache<Long, SparseDepthBlock> myDepthCache;
+    private final CacheLoader<Long, SparseDepthBlock> myDepthLoader = new CacheLoader<Long, SparseDepthBlock>() {
         @Override
-        protected boolean removeEldestEntry(Map.Entry eldest) {
-            return size() > MAX_CACHE_SIZE;
+        public SparseDepthBlock load(Long key) {
+            int taxon = getTaxonFromKey(key);
+            int start = getBlockFromKey(key) << SHIFT_AMOUNT;
+            int realSiteCache = Math.min(myNumSites - start, HDF5_BLOCK);
+            byte[][] data;
+            synchronized (myReader) {
+                data = myReader.readByteMatrixBlockWithOffset(Tassel5HDF5Constants.getGenotypesDepthPath(myTaxa.taxaName(taxon)), 6, realSiteCache, 0, start);
+            }
+            return SparseDepthBlock.getInstance(data);
         }
     };
 
@@ -39,10 +59,31 @@ public class HDF5AlleleDepth extends AlleleDepth {
         myReader = reader;
         myNumSites = reader.getIntAttribute(Tassel5HDF5Constants.POSITION_ATTRIBUTES_PATH, Tassel5HDF5Constants.POSITION_NUM_SITES);
         myTaxa = new TaxaListBuilder().buildFromHDF5Genotypes(reader);
+        myDepthCache = CacheBuilder.newBuilder()
+                .maximumSize(MAX_CACHE_SIZE)
+                .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+                .build(myDepthLoader);
     }
 
     private static long getCacheKey(int taxon, int site) {
-        return ((long) taxon << 33) + (site / HDF5_BLOCK);
+        return ((long) taxon << 33) + (site >>> SHIFT_AMOUNT);
+    }
+
+    private static int getTaxonFromKey(long key) {
+        return (int) (key >>> 33);
+    }
+
+    private static int getBlockFromKey(long key) {
+        return (int) ((key << 33) >>> 33);
+    }
+
+    private SparseDepthBlock depthBlock(int taxon, int site) {
+        try {
+            return myDepthCache.get(getCacheKey(taxon, site));
+        } catch (ExecutionException ex) {
+            myLogger.error(ex.getMessage(), ex);
+            throw new IllegalStateException("HDF5AlleleDepth: depthBlock: Error getting depths from cache: " + ex.getMessage());
+        }
     }
 
     /**
@@ -57,16 +98,7 @@ public class HDF5AlleleDepth extends AlleleDepth {
      */
     @Override
     public byte[] valuesByte(int taxon, int site) {
-        long key = getCacheKey(taxon, site);
-        byte[][] data = myDepthCache.get(key);
-        if (data == null) {
-            data = cacheDepthBlock(taxon, site, key);
-        }
-        byte[] result = new byte[6];
-        for (int i = 0; i < 6; i++) {
-            result[i] = data[i][site % MAX_CACHE_SIZE];
-        }
-        return result;
+        return depthBlock(taxon, site).values(site & (HDF5_BLOCK - 1));
     }
 
     /**
@@ -81,30 +113,12 @@ public class HDF5AlleleDepth extends AlleleDepth {
     @Override
     public byte[][] valuesForTaxonByte(int taxon) {
         byte[][] result = new byte[6][myNumSites];
-        for (int site = 0; site < myNumSites; site++) {
-            long key = getCacheKey(taxon, site);
-            byte[][] data = myDepthCache.get(key);
-            if (data == null) {
-                data = cacheDepthBlock(taxon, site, key);
-            }
-            for (int i = 0; i < 6; i++) {
-                result[i][site] = data[i][site % MAX_CACHE_SIZE];
-            }
+        for (int site = 0; site < myNumSites; site += HDF5_BLOCK) {
+            depthBlock(taxon, site).copyTo(result, site);
         }
         return result;
     }
 
-    private byte[][] cacheDepthBlock(int taxon, int site, long key) {
-        int start = (site / MAX_CACHE_SIZE) * MAX_CACHE_SIZE;
-        int realSiteCache = (myNumSites - start < MAX_CACHE_SIZE) ? myNumSites - start : MAX_CACHE_SIZE;
-        byte[][] data = myReader.readByteMatrixBlockWithOffset(Tassel5HDF5Constants.getGenotypesDepthPath(myTaxa.taxaName(taxon)), 6, realSiteCache, 0, start);
-        if (data == null) {
-            return null;
-        }
-        myDepthCache.put(key, data);
-        return data;
-    }
-
     /**
      * Returns the depth of nucleotide (scoreType) at given taxon and site.
      * Depth values are stored in bytes and translated to integer using
@@ -149,12 +163,7 @@ public class HDF5AlleleDepth extends AlleleDepth {
      */
     @Override
     public byte valueByte(int taxon, int site, SITE_SCORE_TYPE scoreType) {
-        long key = getCacheKey(taxon, site);
-        byte[][] data = myDepthCache.get(key);
-        if (data == null) {
-            data = cacheDepthBlock(taxon, site, key);
-        }
-        return data[scoreType.getIndex()][site % MAX_CACHE_SIZE];
+        return depthBlock(taxon, site).value(site & (HDF5_BLOCK - 1), scoreType.getIndex());
     }
 
     @Override
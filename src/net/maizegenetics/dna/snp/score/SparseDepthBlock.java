@@ -0,0 +1,135 @@
+/*
+ *  SparseDepthBlock
+ */
+package net.maizegenetics.dna.snp.score;
+
+import java.util.Arrays;
+
+/**
+ * Sparse storage of allele depths (byte representation) for one taxon and a
+ * block of up to 65536 sites. Only non-zero depths are stored as (site offset,
+ * allele, depth) triplets sorted by site offset. Most GBS genotypes have depth
+ * zero or depth for only one allele, so this takes a fraction of the
+ * byte[6][numSites] representation. Instances are immutable and therefore safe
+ * to share between threads.
+ */
+final class SparseDepthBlock {
+
+    static final int MAX_BLOCK_SIZE = 1 << 16;
+
+    private final int myNumSites;
+    private final char[] mySiteOffsets;
+    private final byte[] myAlleles;
+    private final byte[] myDepths;
+
+    private SparseDepthBlock(int numSites, char[] siteOffsets, byte[] alleles, byte[] depths) {
+        myNumSites = numSites;
+        mySiteOffsets = siteOffsets;
+        myAlleles = alleles;
+        myDepths = depths;
+    }
+
+    /**
+     * Creates sparse block from depths. First dimension is alleles
+     * (ALLELE_DEPTH_TYPES) and second dimension is sites.
+     *
+     * @param depths depths
+     *
+     * @return sparse block
+     */
+    static SparseDepthBlock getInstance(byte[][] depths) {
+        int numAlleles = depths.length;
+        int numSites = depths[0].length;
+        if (numSites > MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("SparseDepthBlock: getInstance: number of sites: " + numSites + " exceeds: " + MAX_BLOCK_SIZE);
+        }
+        int count = 0;
+        for (int a = 0; a < numAlleles; a++) {
+            for (int s = 0; s < numSites; s++) {
+                if (depths[a][s] != 0) {
+                    count++;
+                }
+            }
+        }
+        char[] siteOffsets = new char[count];
+        byte[] alleles = new byte[count];
+        byte[] values = new byte[count];
+        int index = 0;
+        for (int s = 0; s < numSites; s++) {
+            for (int a = 0; a < numAlleles; a++) {
+                if (depths[a][s] != 0) {
+                    siteOffsets[index] = (char) s;
+                    alleles[index] = (byte) a;
+                    values[index++] = depths[a][s];
+                }
+            }
+        }
+        return new SparseDepthBlock(numSites, siteOffsets, alleles, values);
+    }
+
+    int numSites() {
+        return myNumSites;
+    }
+
+    /**
+     * Returns depth (byte representation) for given site offset and allele.
+     *
+     * @param siteOffset site offset within this block
+     * @param allele allele index (see ALLELE_DEPTH_TYPES)
+     *
+     * @return depth
+     */
+    byte value(int siteOffset, int allele) {
+        for (int i = firstIndex(siteOffset); i < mySiteOffsets.length && mySiteOffsets[i] == siteOffset; i++) {
+            if (myAlleles[i] == allele) {
+                return myDepths[i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns depths (byte representation) of all alleles for given site
+     * offset.
+     *
+     * @param siteOffset site offset within this block
+     *
+     * @return depths
+     */
+    byte[] values(int siteOffset) {
+        byte[] result = new byte[AlleleDepth.NUM_ALLELE_DEPTH_TYPES];
+        for (int i = firstIndex(siteOffset); i < mySiteOffsets.length && mySiteOffsets[i] == siteOffset; i++) {
+            result[myAlleles[i]] = myDepths[i];
+        }
+        return result;
+    }
+
+    /**
+     * Copies depths of this block into given array. First dimension of
+     * destination is alleles and second dimension is sites.
+     *
+     * @param dest destination
+     * @param destOffset site offset in destination where this block starts
+     */
+    void copyTo(byte[][] dest, int destOffset) {
+        for (int i = 0; i < mySiteOffsets.length; i++) {
+            dest[myAlleles[i]][destOffset + mySiteOffsets[i]] = myDepths[i];
+        }
+    }
+
+    /**
+     * Returns index of first entry with given site offset or the insertion
+     * point if none exist.
+     */
+    private int firstIndex(int siteOffset) {
+        int index = Arrays.binarySearch(mySiteOffsets, (char) siteOffset);
+        if (index < 0) {
+            return -(index + 1);
+        }
+        while (index > 0 && mySiteOffsets[index - 1] == siteOffset) {
+            index--;
+        }
+        return index;
+    }
+
+}
@@ -12,10 +12,13 @@ import java.util.Arrays;
  */
 public abstract class AbstractTags implements Tags {
 
+    private static final int RUN_SCAN_LENGTH = 16;
+
     protected int tagLengthInLong;  //TODO fully implement on reading
     protected long[][] tags;  // for memory efficiency the rows first and second half of the read
     // columns are the index of the reads.
     protected byte[] tagLength;  // length of tag (number of bases)  // 1 byte
+    private TagLookup myTagLookup = null;  // null unless built with buildTagLookup()
 
     @Override
     public boolean areTagsUnique() {
@@ -38,9 +41,37 @@ public abstract class AbstractTags implements Tags {
 
     @Override
     public int getTagIndex(long[] read) {
+        TagLookup lookup = myTagLookup;
+        if ((lookup == null) || !lookup.isFor(tags[0])) {
+            return lowerBound(0, tags[0].length, read);
+        }
+        int first = lookup.firstIndex(read[0]);
+        if (first < 0) {
+            // Search to find the insertion point
+            return lowerBound(0, tags[0].length, read);
+        }
+        // Tags sharing the first long are checked in order for a few steps,
+        // then searched
+        int end = Math.min(tags[0].length, first + RUN_SCAN_LENGTH);
+        while ((first < end) && (tags[0][first] == read[0]) && (compareTags(first, read) < 0)) {
+            first++;
+        }
+        if ((first == end) && (first < tags[0].length) && (tags[0][first] == read[0])) {
+            return lowerBound(first, tags[0].length, read);
+        }
+        if ((first < tags[0].length) && (compareTags(first, read) == 0)) {
+            return first;
+        }
+        return -(first + 1);
+    }
+
+    /**
+     * Binary search of tags from first (inclusive) to last (exclusive).
+     * Returns index of read if found, otherwise -(insertion point + 1).
+     */
+    private int lowerBound(int first, int last, long[] read) {
         //code inspired by COLT lower bound function
-        int first = 0;
-        int len = tags[0].length - first;
+        int len = last - first;
         int comp = 0;
         while (len > 0) {
             int half = len / 2;
@@ -58,6 +89,19 @@ public abstract class AbstractTags implements Tags {
         return -(first + 1);
     }
 
+    /**
+     * Builds an index used by getTagIndex() to find tags faster, if the tags
+     * are sorted. Subclasses that change tags in place after this should call
+     * clearTagLookup(). Replacing the tags array makes the index unused.
+     */
+    protected void buildTagLookup() {
+        myTagLookup = (tags == null) || (tags.length == 0) ? null : TagLookup.getInstance(tags, tagLengthInLong);
+    }
+
+    protected void clearTagLookup() {
+        myTagLookup = null;
+    }
+
     public int getTagIndexFirst(long readFirst) {
         return Arrays.binarySearch(tags[0], readFirst);
     }
@@ -135,6 +179,7 @@ public abstract class AbstractTags implements Tags {
 
     @Override
     public void swap(int index1, int index2) {
+        myTagLookup = null;
         long temp;
         for (int i = 0; i < tagLengthInLong; i++) {
             temp = tags[i][index1];
@@ -1917,6 +1917,59 @@ public class RepGenSQLite implements RepGenDataWriter, AutoCloseable {
         }
     }
 
+    /**
+     * Returns the tag table id for each given tag.
+     *
+     * @param tags tags
+     *
+     * @return tag ids in same order as tags
+     */
+    public int[] getTagIDs(List<Tag> tags) {
+        loadTagHash(); // get updated list of tags
+        int[] result = new int[tags.size()];
+        for (int i = 0; i < result.length; i++) {
+            Integer tagID = tagTagIDMap.get(tags.get(i));
+            if (tagID == null) {
+                throw new IllegalStateException("RepGenSQLite: getTagIDs: no tagID in tag table for tag: " + tags.get(i).sequence());
+            }
+            result[i] = tagID;
+        }
+        return result;
+    }
+
+    /**
+     * Adds entries to the tagCorrelations table in one transaction.  This is
+     * the bulk version of putTagTagCorrelationMatrix() for when tag ids are
+     * already known (see getTagIDs()).
+     *
+     * @param tag1IDs tag1 ids
+     * @param tag2IDs tag2 ids
+     * @param pearson tag-tag Pearson correlations
+     * @param spearman tag-tag Spearman correlations
+     * @param presAbsPearson presence/absence Pearson correlations
+     * @param r2 presence/absence r-squared
+     * @param count number of entries to add from the arrays
+     */
+    public void putTagTagCorrelations(int[] tag1IDs, int[] tag2IDs, float[] pearson, float[] spearman, float[] presAbsPearson, float[] r2, int count) {
+        try {
+            connection.setAutoCommit(false);
+            for (int i = 0; i < count; i++) {
+                int ind = 1;
+                tagTagCorrelationInsertPS.setInt(ind++, tag1IDs[i]);
+                tagTagCorrelationInsertPS.setInt(ind++, tag2IDs[i]);
+                tagTagCorrelationInsertPS.setDouble(ind++, pearson[i]);
+                tagTagCorrelationInsertPS.setDouble(ind++, spearman[i]);
+                tagTagCorrelationInsertPS.setDouble(ind++, presAbsPearson[i]);
+                tagTagCorrelationInsertPS.setDouble(ind++, r2[i]);
+                tagTagCorrelationInsertPS.addBatch();
+            }
+            tagTagCorrelationInsertPS.executeBatch();
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            throw new IllegalStateException("RepGenSQLite: putTagTagCorrelations: " + e.getMessage());
+        }
+    }
+
     // A tag may show up as tag1 or tag2 in the tagCorrelations table.
     // for a tagX/tagY correlation, the table will contain either an entry for tag1=x, tag2=Y, or
     // an entry for tag1=y/tag2=x.  The info is the same - only 1 entry is present.
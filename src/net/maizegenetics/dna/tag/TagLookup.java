@@ -0,0 +1,108 @@
+/*
+ * TagLookup
+ */
+package net.maizegenetics.dna.tag;
+
+import java.util.Arrays;
+
+/**
+ * Hash index over the first long of sorted tags. Each distinct first long maps
+ * to the index of the first tag having it, so finding a read that is present
+ * takes a probe of this table and a few reads of the tags, instead of a
+ * binary search. The table uses open addressing and is at most 70% full,
+ * which is 6 to 12 bytes per distinct first long. The index only stays valid
+ * while the tags aren't changed.
+ */
+final class TagLookup {
+
+    private static final int EMPTY = -1;
+    private static final double MAX_LOAD = 0.7;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final long[] myFirstLongs;
+    private final int[] myTable;
+    private final int myShift;
+
+    private TagLookup(long[] firstLongs, int numTags, int capacity) {
+        myFirstLongs = firstLongs;
+        myTable = new int[capacity];
+        Arrays.fill(myTable, EMPTY);
+        myShift = 64 - Integer.numberOfTrailingZeros(capacity);
+        int mask = capacity - 1;
+        for (int t = 0; t < numTags; t++) {
+            if ((t == 0) || (firstLongs[t] != firstLongs[t - 1])) {
+                int slot = slot(firstLongs[t]);
+                while (myTable[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                myTable[slot] = t;
+            }
+        }
+    }
+
+    /**
+     * Returns index of the given tags, or null if they aren't sorted or have
+     * too many distinct first longs.
+     *
+     * @param tags tags [long][tag]
+     * @param tagLengthInLong number of longs per tag
+     *
+     * @return index or null
+     */
+    static TagLookup getInstance(long[][] tags, int tagLengthInLong) {
+        long[] firstLongs = tags[0];
+        int numTags = firstLongs.length;
+        int numDistinct = Math.min(numTags, 1);
+        for (int t = 1; t < numTags; t++) {
+            if (firstLongs[t - 1] != firstLongs[t]) {
+                numDistinct++;
+            }
+            for (int i = 0; i < tagLengthInLong; i++) {
+                if (tags[i][t - 1] < tags[i][t]) {
+                    break;
+                }
+                if (tags[i][t - 1] > tags[i][t]) {
+                    return null;
+                }
+            }
+        }
+        if (numDistinct > MAX_LOAD * MAX_CAPACITY) {
+            return null;
+        }
+        int capacity = 2;
+        while (numDistinct > MAX_LOAD * capacity) {
+            capacity <<= 1;
+        }
+        return new TagLookup(firstLongs, numTags, capacity);
+    }
+
+    /**
+     * Returns whether this indexes the given first longs of the tags.
+     */
+    boolean isFor(long[] firstLongs) {
+        return myFirstLongs == firstLongs;
+    }
+
+    /**
+     * Returns index of the first tag with the given first long, or -1 if no
+     * tag has it.
+     */
+    int firstIndex(long firstLong) {
+        int mask = myTable.length - 1;
+        int slot = slot(firstLong);
+        int index;
+        while ((index = myTable[slot]) != EMPTY) {
+            if (myFirstLongs[index] == firstLong) {
+                return index;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int slot(long firstLong) {
+        // Fibonacci hashing, the high bits of the product are best mixed
+        return (int) ((firstLong * 0x9E3779B97F4A7C15L) >>> myShift);
+    }
+
+}
@@ -33,6 +33,7 @@ public class TagsByTaxaByte extends AbstractTagsByTaxa {
             }
             tagLength[i] = (byte) theDistinctReads.getTagLength(i);
         }
+        buildTagLookup();
         for (int i = 0; i < taxaNames.length; i++) {
             this.taxaNames[i] = taxaNames[i];
         }
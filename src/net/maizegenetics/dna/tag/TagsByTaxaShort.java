@@ -34,6 +34,7 @@ public class TagsByTaxaShort extends AbstractTagsByTaxa {
             }
             tagLength[i] = (byte) theDistinctReads.getTagLength(i);
         }
+        buildTagLookup();
         for (int i = 0; i < taxaNames.length; i++) {
             this.taxaNames[i] = taxaNames[i];
         }
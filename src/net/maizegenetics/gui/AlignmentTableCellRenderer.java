@@ -18,6 +18,7 @@ import javax.swing.table.DefaultTableCellRenderer;
 import net.maizegenetics.dna.map.DonorHaplotypes;
 import net.maizegenetics.dna.map.Position;
 import net.maizegenetics.dna.snp.GenotypeTable;
+import net.maizegenetics.dna.snp.GenotypeTableUtils;
 import net.maizegenetics.dna.snp.NucleotideAlignmentConstants;
 import net.maizegenetics.dna.snp.genotypecall.ProjectionGenotypeCallTable;
 import org.apache.log4j.Logger;
@@ -173,7 +174,7 @@ public class AlignmentTableCellRenderer extends DefaultTableCellRenderer {
 
         setHorizontalAlignment(SwingConstants.CENTER);
 
-        String alleles = myAlignment.genotypeAsString(row, myAlignmentTableModel.getRealColumnIndex(col));
+        String alleles = value.toString();
 
         if (isSelected) {
             comp.setBackground(Color.DARK_GRAY);
@@ -193,13 +194,12 @@ public class AlignmentTableCellRenderer extends DefaultTableCellRenderer {
 
         setHorizontalAlignment(SwingConstants.CENTER);
 
-        int site = myAlignmentTableModel.getRealColumnIndex(col);
+        int genotype = myAlignmentTableModel.getGenotype(row, col);
 
         if (isSelected) {
             comp.setBackground(Color.DARK_GRAY);
-        } else if (myAlignment.isHeterozygous(row, site)) {
-            String alleles = myAlignment.genotypeAsString(row, myAlignmentTableModel.getRealColumnIndex(col));
-            comp.setBackground(COLORS_NUCLEOTIDES.get(alleles));
+        } else if ((genotype != AlignmentTableModel.GENOTYPE_NOT_LOADED) && GenotypeTableUtils.isHeterozygous((byte) genotype)) {
+            comp.setBackground(COLORS_NUCLEOTIDES.get(value.toString()));
         } else {
             comp.setBackground(null);
         }
@@ -224,11 +224,13 @@ public class AlignmentTableCellRenderer extends DefaultTableCellRenderer {
         if (alleles.length > 0) {
             major = alleles[0];
         }
-        byte[] diploidValues = myAlignment.genotypeArray(row, site);
+        int genotype = myAlignmentTableModel.getGenotype(row, col);
 
         if (isSelected) {
             comp.setBackground(Color.DARK_GRAY);
-        } else if ((diploidValues[0] == major) || (diploidValues[1] == major)) {
+        } else if (genotype == AlignmentTableModel.GENOTYPE_NOT_LOADED) {
+            comp.setBackground(null);
+        } else if ((((genotype >>> 4) & 0xf) == major) || ((genotype & 0xf) == major)) {
             comp.setBackground(MAJOR_ALLELE_COLOR);
         } else {
             comp.setBackground(null);
@@ -244,11 +246,11 @@ public class AlignmentTableCellRenderer extends DefaultTableCellRenderer {
 
         setHorizontalAlignment(SwingConstants.CENTER);
 
-        int site = myAlignmentTableModel.getRealColumnIndex(col);
+        int genotype = myAlignmentTableModel.getGenotype(row, col);
 
         if (isSelected) {
             comp.setBackground(Color.DARK_GRAY);
-        } else if (myAlignment.isHeterozygous(row, site)) {
+        } else if ((genotype != AlignmentTableModel.GENOTYPE_NOT_LOADED) && GenotypeTableUtils.isHeterozygous((byte) genotype)) {
             comp.setBackground(HETEROZYGOUS_COLOR);
         } else {
             comp.setBackground(null);
@@ -274,11 +276,13 @@ public class AlignmentTableCellRenderer extends DefaultTableCellRenderer {
         if (alleles.length > 1) {
             minor = alleles[1];
         }
-        byte[] diploidValues = myAlignment.genotypeArray(row, site);
+        int genotype = myAlignmentTableModel.getGenotype(row, col);
 
         if (isSelected) {
             comp.setBackground(Color.DARK_GRAY);
-        } else if ((diploidValues[0] == minor) || (diploidValues[1] == minor)) {
+        } else if (genotype == AlignmentTableModel.GENOTYPE_NOT_LOADED) {
+            comp.setBackground(null);
+        } else if ((((genotype >>> 4) & 0xf) == minor) || ((genotype & 0xf) == minor)) {
             comp.setBackground(MINOR_ALLELE_COLOR);
         } else {
             comp.setBackground(null);
@@ -301,7 +305,12 @@ public class AlignmentTableCellRenderer extends DefaultTableCellRenderer {
             myCachedAlleles.put(site, alleles);
         }
 
-        byte[] diploidValues = myAlignment.genotypeArray(row, site);
+        int genotype = myAlignmentTableModel.getGenotype(row, col);
+        if (genotype == AlignmentTableModel.GENOTYPE_NOT_LOADED) {
+            comp.setBackground(isSelected ? Color.DARK_GRAY : null);
+            return comp;
+        }
+        byte[] diploidValues = GenotypeTableUtils.getDiploidValues((byte) genotype);
         if (alleles.length > 1) {
             byte major = alleles[0];
             byte minor = alleles[1];
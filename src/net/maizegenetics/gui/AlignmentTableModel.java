@@ -30,6 +30,8 @@ public class AlignmentTableModel extends AbstractTableModel implements ChangeLis
     private static final NumberFormat NUMBER_FORMAT = NumberFormat.getPercentInstance();
     private static final NumberFormat DECIMAL_FORMAT = NumberFormat.getNumberInstance();
 
+    public static final int GENOTYPE_NOT_LOADED = GenotypeTileCache.NOT_LOADED;
+
     static {
         DECIMAL_FORMAT.setMaximumFractionDigits(2);
     }
@@ -41,6 +43,8 @@ public class AlignmentTableModel extends AbstractTableModel implements ChangeLis
     private COLUMN_NAME_TYPE myColumnNameType = COLUMN_NAME_TYPE.physicalPosition;
     private boolean myIsPhysicalPosition = true;
     private final GenotypeTable myAlignment;
+    // Genotypes loaded in the background, or null if alignment has none
+    private final GenotypeTileCache myTiles;
     private AlignmentTableCellRenderer.RENDERING_TYPE myRenderingType = AlignmentTableCellRenderer.RENDERING_TYPE.Nucleotide;
     // Left and Right variables
     private int myHorizontalPageSize = 0;
@@ -56,6 +60,12 @@ public class AlignmentTableModel extends AbstractTableModel implements ChangeLis
 
         myAlignment = alignment;
 
+        if (myAlignment.hasGenotype()) {
+            myTiles = new GenotypeTileCache(myAlignment, (first, last) -> fireTableRowsUpdated(first, last));
+        } else {
+            myTiles = null;
+        }
+
         myHorizontalCenter = myAlignment.numberOfSites() / 2;
 
         setHorizontalPageSize(horizontalPageSize);
@@ -85,7 +95,8 @@ public class AlignmentTableModel extends AbstractTableModel implements ChangeLis
         }
     }
 
-    // Only works on the visible part of the table
+    // Only works on the visible part of the table. Genotypes not yet loaded
+    // are empty until their tile arrives.
     @Override
     public Object getValueAt(int row, int col) {
 
@@ -96,6 +107,10 @@ public class AlignmentTableModel extends AbstractTableModel implements ChangeLis
             if (myRenderingType == AlignmentTableCellRenderer.RENDERING_TYPE.ReferenceProbability) {
                 return DECIMAL_FORMAT.format(myAlignment.referenceProbability().value(row, realColumn));
             }
+            if ((myTiles != null) && !myTiles.isFailed()) {
+                String result = myTiles.genotypeAsString(row, realColumn);
+                return (result == null) ? "" : result;
+            }
             return myAlignment.genotypeAsString(row, realColumn);
         } catch (Exception e) {
             myLogger.debug(e.getMessage(), e);
@@ -108,6 +123,37 @@ public class AlignmentTableModel extends AbstractTableModel implements ChangeLis
         return col + myHorizontalStart;
     }
 
+    /**
+     * Returns diploid genotype (0 - 255) at row and visible column, or
+     * GENOTYPE_NOT_LOADED if it's still being loaded.
+     *
+     * @param row row
+     * @param col visible column
+     *
+     * @return diploid genotype
+     */
+    public int getGenotype(int row, int col) {
+        int realColumn = col + myHorizontalStart;
+        if ((myTiles != null) && !myTiles.isFailed()) {
+            return myTiles.genotype(row, realColumn);
+        }
+        return myAlignment.genotype(row, realColumn) & 0xFF;
+    }
+
+    /**
+     * Starts loading genotypes of the given rows for the visible columns, and
+     * for one tile beyond them in each direction.
+     *
+     * @param firstRow first visible row
+     * @param lastRow last visible row
+     */
+    public void prefetch(int firstRow, int lastRow) {
+        if ((myTiles == null) || myTiles.isFailed()) {
+            return;
+        }
+        myTiles.prefetch(firstRow, lastRow, myHorizontalStart, myHorizontalEnd);
+    }
+
     @Override
     public String getColumnName(int col) {
 
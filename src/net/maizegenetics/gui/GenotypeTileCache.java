@@ -0,0 +1,231 @@
+/*
+ * GenotypeTileCache
+ */
+package net.maizegenetics.gui;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import javax.swing.SwingUtilities;
+
+import net.maizegenetics.dna.snp.GenotypeTable;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Genotypes of a table in tiles of TILE_TAXA by TILE_SITES, loaded on a
+ * background thread so the Swing event thread never waits on the genotype
+ * backend. A tile is read with one genotypeRange() call per taxon. Requests
+ * for tiles not yet loaded return immediately, and the listener is called on
+ * the event thread with the tile's taxa when it arrives. The most recently
+ * requested tiles are loaded first, and the oldest requests are dropped when
+ * too many are waiting, so scrolling quickly past a region doesn't delay the
+ * region scrolled to.
+ * <p>
+ * Except for the constructor, methods must be called on the event thread.
+ */
+final class GenotypeTileCache {
+
+    private static final Logger myLogger = Logger.getLogger(GenotypeTileCache.class);
+
+    static final int TILE_TAXA = 64;
+    static final int TILE_SITES = 64;
+    static final int NOT_LOADED = -1;
+
+    private static final int MAX_TILES = 2048;
+    private static final int MAX_PENDING = 256;
+
+    private final GenotypeTable myGenotypes;
+    private final int myNumTaxa;
+    private final int myNumSites;
+    private final BiConsumer<Integer, Integer> myListener;
+    private final Map<Long, Tile> myTiles = new LinkedHashMap<Long, Tile>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Tile> eldest) {
+            return size() > MAX_TILES;
+        }
+    };
+    private final Set<Long> myPending = ConcurrentHashMap.newKeySet();
+    private final ThreadPoolExecutor myLoader;
+    private volatile boolean myFailed = false;
+
+    /**
+     * @param genotypes genotype table
+     * @param listener called with the first and last taxon of each tile
+     * loaded
+     */
+    GenotypeTileCache(GenotypeTable genotypes, BiConsumer<Integer, Integer> listener) {
+        myGenotypes = genotypes;
+        myNumTaxa = genotypes.numberOfTaxa();
+        myNumSites = genotypes.numberOfSites();
+        myListener = listener;
+
+        // Last in, first out. Requests past MAX_PENDING drop the oldest.
+        LinkedBlockingDeque<Runnable> queue = new LinkedBlockingDeque<Runnable>() {
+            @Override
+            public boolean offer(Runnable task) {
+                offerFirst(task);
+                while (size() > MAX_PENDING) {
+                    Runnable dropped = pollLast();
+                    if (dropped instanceof TileLoad) {
+                        myPending.remove(((TileLoad) dropped).myKey);
+                    }
+                }
+                return true;
+            }
+        };
+        myLoader = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS, queue, runnable -> {
+            Thread result = new Thread(runnable, "GenotypeTileCache");
+            result.setDaemon(true);
+            return result;
+        });
+        myLoader.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns true if a tile couldn't be loaded, i.e. the genotype table
+     * doesn't support genotypeRange(). Genotypes should then be read directly
+     * from the table.
+     */
+    boolean isFailed() {
+        return myFailed;
+    }
+
+    /**
+     * Returns diploid genotype (0 - 255) of taxon at site, or NOT_LOADED if
+     * its tile hasn't been loaded. In that case, the tile is requested.
+     */
+    int genotype(int taxon, int site) {
+        Tile tile = tile(taxon, site);
+        if (tile == null) {
+            return NOT_LOADED;
+        }
+        return tile.myGenotypes[index(taxon, site)] & 0xFF;
+    }
+
+    /**
+     * Returns genotype of taxon at site as a string, or null if its tile
+     * hasn't been loaded. In that case, the tile is requested.
+     */
+    String genotypeAsString(int taxon, int site) {
+        Tile tile = tile(taxon, site);
+        if (tile == null) {
+            return null;
+        }
+        return tile.myStrings[index(taxon, site)];
+    }
+
+    /**
+     * Requests the tiles covering the given taxa and sites (inclusive), and
+     * the tiles around them, that haven't been loaded. The tiles around are
+     * requested first, so the given ones are loaded first.
+     */
+    void prefetch(int firstTaxon, int lastTaxon, int firstSite, int lastSite) {
+        if ((myNumTaxa == 0) || (myNumSites == 0)) {
+            return;
+        }
+        int firstTaxonTile = Math.max(0, firstTaxon) / TILE_TAXA;
+        int lastTaxonTile = Math.min(myNumTaxa - 1, lastTaxon) / TILE_TAXA;
+        int firstSiteTile = Math.max(0, firstSite) / TILE_SITES;
+        int lastSiteTile = Math.min(myNumSites - 1, lastSite) / TILE_SITES;
+        int maxTaxonTile = (myNumTaxa - 1) / TILE_TAXA;
+        int maxSiteTile = (myNumSites - 1) / TILE_SITES;
+        for (int t = Math.max(0, firstTaxonTile - 1); t <= Math.min(maxTaxonTile, lastTaxonTile + 1); t++) {
+            for (int s = Math.max(0, firstSiteTile - 1); s <= Math.min(maxSiteTile, lastSiteTile + 1); s++) {
+                boolean inside = (t >= firstTaxonTile) && (t <= lastTaxonTile) && (s >= firstSiteTile) && (s <= lastSiteTile);
+                if (!inside && !myTiles.containsKey(key(t, s))) {
+                    request(key(t, s));
+                }
+            }
+        }
+        for (int t = firstTaxonTile; t <= lastTaxonTile; t++) {
+            for (int s = firstSiteTile; s <= lastSiteTile; s++) {
+                if (!myTiles.containsKey(key(t, s))) {
+                    request(key(t, s));
+                }
+            }
+        }
+    }
+
+    private Tile tile(int taxon, int site) {
+        long key = key(taxon / TILE_TAXA, site / TILE_SITES);
+        Tile result = myTiles.get(key);
+        if (result == null) {
+            request(key);
+        }
+        return result;
+    }
+
+    private void request(long key) {
+        if (!myFailed && myPending.add(key)) {
+            myLoader.execute(new TileLoad(key));
+        }
+    }
+
+    private static long key(int taxonTile, int siteTile) {
+        return ((long) taxonTile << 32) | siteTile;
+    }
+
+    private static int index(int taxon, int site) {
+        return (taxon % TILE_TAXA) * TILE_SITES + site % TILE_SITES;
+    }
+
+    private static final class Tile {
+
+        private final byte[] myGenotypes = new byte[TILE_TAXA * TILE_SITES];
+        private final String[] myStrings = new String[TILE_TAXA * TILE_SITES];
+
+    }
+
+    private final class TileLoad implements Runnable {
+
+        private final long myKey;
+
+        private TileLoad(long key) {
+            myKey = key;
+        }
+
+        @Override
+        public void run() {
+
+            int firstTaxon = (int) (myKey >>> 32) * TILE_TAXA;
+            int endTaxon = Math.min(myNumTaxa, firstTaxon + TILE_TAXA);
+            int firstSite = (int) myKey * TILE_SITES;
+            int endSite = Math.min(myNumSites, firstSite + TILE_SITES);
+
+            Tile tile = new Tile();
+            try {
+                for (int t = firstTaxon; t < endTaxon; t++) {
+                    byte[] genotypes = myGenotypes.genotypeRange(t, firstSite, endSite);
+                    int offset = (t - firstTaxon) * TILE_SITES;
+                    for (int s = 0; s < endSite - firstSite; s++) {
+                        tile.myGenotypes[offset + s] = genotypes[s];
+                        tile.myStrings[offset + s] = myGenotypes.diploidAsString(firstSite + s, genotypes[s]);
+                    }
+                }
+            } catch (Exception e) {
+                myLogger.debug(e.getMessage(), e);
+                myFailed = true;
+                myPending.clear();
+                myLoader.getQueue().clear();
+                SwingUtilities.invokeLater(() -> myListener.accept(0, myNumTaxa - 1));
+                return;
+            }
+
+            SwingUtilities.invokeLater(() -> {
+                myTiles.put(myKey, tile);
+                myPending.remove(myKey);
+                myListener.accept(firstTaxon, endTaxon - 1);
+            });
+
+        }
+
+    }
+
+}
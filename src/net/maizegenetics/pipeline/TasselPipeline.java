@@ -62,9 +62,6 @@ import java.io.BufferedReader;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
 import net.maizegenetics.analysis.chart.ManhattanDisplayPlugin;
@@ -89,7 +86,7 @@ public class TasselPipeline implements PluginListener {
         includeTaxaInFile, excludeTaxa, excludeTaxaInFile, includeSiteNames,
         includeSiteNamesInFile, excludeSiteNames, excludeSiteNamesInFile,
         subsetSites, subsetTaxa, newCoordinates,
-        archaeopteryx, filterTaxaNames, maxThreads, mhd, pca,
+        archaeopteryx, filterTaxaNames, maxThreads, runReport, mhd, pca,
         printGenoSummary, printMemoryUsage;
 
         @Override
@@ -112,6 +109,7 @@ public class TasselPipeline implements PluginListener {
     private TasselPipelineStepsDialog myStepsDialog = null;
     private String[] myDescriptions = null;
     private int myCurrentDescriptionIndex = 0;
+    private String myRunReport = null;
 
     /**
      * Creates a new instance of TasselPipeline
@@ -143,14 +141,8 @@ public class TasselPipeline implements PluginListener {
             TasselLogging.basicLoggingInfo();
         }
 
-        final ExecutorService pool;
-        if (myIsInteractive) {
-            pool = null;
-        } else {
-            int numThreads = Runtime.getRuntime().availableProcessors() / 2;
-            numThreads = Math.max(2, numThreads);
-            pool = Executors.newFixedThreadPool(numThreads);
-        }
+        PluginScheduler scheduler = null;
+        LocalDateTime startTime = LocalDateTime.now();
         try {
 
             if (myIsInteractive) {
@@ -159,6 +151,23 @@ public class TasselPipeline implements PluginListener {
 
             parseArgs(args);
 
+            int numPlugins = PluginScheduler.checkAcyclic(myForks.values());
+
+            // Non-interactive pipelines run their branches on a scheduler
+            // limited to maxThreads (which may be set by -maxThreads above),
+            // shared with the parallelism within plugins.
+            if (!myIsInteractive) {
+                scheduler = new PluginScheduler(TasselPrefs.getMaxThreads());
+                for (List<Plugin> current : myForks.values()) {
+                    for (Plugin plugin : current) {
+                        if (plugin instanceof AbstractPlugin) {
+                            ((AbstractPlugin) plugin).setScheduler(scheduler);
+                        }
+                    }
+                }
+                myLogger.info("Running " + numPlugins + " plugins in " + myForks.size() + " pipeline segments with up to " + scheduler.getNumThreads() + " threads");
+            }
+
             for (Map.Entry<String, List<Plugin>> fork : myForks.entrySet()) {
                 List<Plugin> current = fork.getValue();
                 if ((current != null) && (!current.isEmpty())) {
@@ -206,15 +215,14 @@ public class TasselPipeline implements PluginListener {
                     }
                 }
             } else {
-                List<Future<?>> futures = new ArrayList<>();
-
-                myThreads.stream().forEach((current) -> {
-                    futures.add(pool.submit(current));
-                });
-
-                for (Future<?> future : futures) {
-                    future.get();
+                for (ThreadedPluginListener current : myThreads) {
+                    scheduler.submit(current);
                 }
+                scheduler.awaitCompletion();
+            }
+
+            if (myRunReport != null) {
+                writeRunReport(args, startTime, (scheduler == null) ? 1 : scheduler.getNumThreads());
             }
 
             if (myDeprecatedWarning.length() != 0) {
@@ -229,13 +237,28 @@ public class TasselPipeline implements PluginListener {
                 System.exit(1);
             }
         } finally {
-            if (pool != null) {
-                pool.shutdownNow();
+            if (scheduler != null) {
+                scheduler.shutdown();
             }
         }
 
     }
 
+    /**
+     * Writes the metrics of each plugin run by this pipeline as JSON to the
+     * file given with -runReport.
+     */
+    private void writeRunReport(String[] args, LocalDateTime startTime, int numThreads) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("tasselVersion", TASSELMainFrame.version);
+        properties.put("tasselVersionDate", TASSELMainFrame.versionDate);
+        properties.put("arguments", String.join(" ", args));
+        properties.put("start", startTime.toString());
+        properties.put("end", LocalDateTime.now().toString());
+        properties.put("numThreads", String.valueOf(numThreads));
+        PluginMetrics.writeReport(myRunReport, properties);
+    }
+
     public static void main(String args[]) {
 
         String emDash = "\u2014";
@@ -438,6 +461,9 @@ public class TasselPipeline implements PluginListener {
                         throw new IllegalArgumentException("TasselPipeline: parseArgs: Problem with number of max threads: " + str);
                     }
                     TasselPrefs.putMaxThreads(numThreads);
+                } else if (current.equalsIgnoreCase("-runReport")) {
+                    myRunReport = args[index++].trim();
+                    PluginMetrics.setRecording(true);
                 } else if (current.equalsIgnoreCase("-t")) {
                     String traitFile = args[index++].trim();
                     loadFile(traitFile, FileLoadPlugin.TasselFileType.Phenotype);
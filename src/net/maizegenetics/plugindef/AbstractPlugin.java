@@ -68,6 +68,8 @@ abstract public class AbstractPlugin implements Plugin {
     private final boolean myIsInteractive;
     private boolean myTrace = false;
     private boolean myThreaded = false;
+    private PluginScheduler myScheduler = null;
+    private volatile PluginMetrics myMetrics = null;
     protected boolean myWasCancelled = false;
 
     /**
@@ -94,6 +96,8 @@ abstract public class AbstractPlugin implements Plugin {
 
         myCurrentInputData = input;
 
+        PluginMetrics metrics = startMetrics();
+
         try {
 
             preProcessParameters(input);
@@ -110,6 +114,9 @@ abstract public class AbstractPlugin implements Plugin {
             checkParameters();
 
             DataSet output = processData(input);
+            // Finished before listeners are notified, since unthreaded
+            // listeners run their plugins on this thread.
+            metrics.finish(true);
             time = LocalDateTime.now();
             timeStr = time.format(DateTimeFormatter.ofPattern("MMM d, uuuu H:mm:s"));
             myLogger.info("Finished " + getClass().getName() + ": time: " + timeStr);
@@ -118,6 +125,10 @@ abstract public class AbstractPlugin implements Plugin {
 
         } catch (Exception e) {
 
+            if (!metrics.isFinished()) {
+                metrics.finish(false);
+            }
+
             if (isInteractive()) {
                 myLogger.debug(e.getMessage(), e);
                 DialogUtils.showError(e.getMessage() + "\n", getParentFrame());
@@ -130,6 +141,9 @@ abstract public class AbstractPlugin implements Plugin {
             return null;
 
         } finally {
+            if (!metrics.isFinished()) {
+                metrics.finish(false);
+            }
             fireProgress(100);
         }
 
@@ -1714,7 +1728,9 @@ abstract public class AbstractPlugin implements Plugin {
             Iterator<PluginListener> itr = myListeners.iterator();
             while (itr.hasNext()) {
                 try {
-                    if (myThreaded) {
+                    if (myThreaded && (myScheduler != null)) {
+                        myScheduler.submit(itr.next(), event);
+                    } else if (myThreaded) {
                         PluginListener current = itr.next();
                         ThreadedPluginListener thread = new ThreadedPluginListener(current, event);
                         thread.start();
@@ -1818,10 +1834,34 @@ abstract public class AbstractPlugin implements Plugin {
 
         DataSet input = (DataSet) event.getSource();
 
-        performFunction(input);
+        // Also measures plugins that override performFunction()
+        PluginMetrics metrics = startMetrics();
+        boolean succeeded = false;
+        try {
+            performFunction(input);
+            succeeded = true;
+        } finally {
+            if (!metrics.isFinished()) {
+                metrics.finish(succeeded);
+            }
+        }
 
     }
 
+    /**
+     * Starts metrics for an invocation of this plugin, unless this thread
+     * has already started them.
+     */
+    private PluginMetrics startMetrics() {
+        PluginMetrics current = myMetrics;
+        if ((current != null) && !current.isFinished() && current.isCurrentThread()) {
+            return current;
+        }
+        current = PluginMetrics.start(this);
+        myMetrics = current;
+        return current;
+    }
+
     /**
      * No operation for this abstract class.
      */
@@ -1893,6 +1933,42 @@ abstract public class AbstractPlugin implements Plugin {
         myThreaded = threaded;
     }
 
+    /**
+     * Sets scheduler used to run listeners when this plugin is threaded.
+     * Otherwise, a new thread is started for each listener.
+     *
+     * @param scheduler scheduler
+     */
+    public void setScheduler(PluginScheduler scheduler) {
+        myScheduler = scheduler;
+    }
+
+    /**
+     * Adds value to the named counter (i.e. reads, sites, bytesWritten) of
+     * the current invocation of performFunction(). These are reported with
+     * the CPU time, garbage collection, and heap usage of the invocation.
+     * Can be called from any thread.
+     *
+     * @param name counter name
+     * @param value value to add
+     */
+    protected void incrementCounter(String name, long value) {
+        PluginMetrics metrics = myMetrics;
+        if (metrics != null) {
+            metrics.increment(name, value);
+        }
+    }
+
+    /**
+     * Returns the metrics of the current or last invocation of
+     * performFunction().
+     *
+     * @return metrics or null if never invoked
+     */
+    public PluginMetrics getMetrics() {
+        return myMetrics;
+    }
+
     @Override
     public boolean cancel() {
         return false;
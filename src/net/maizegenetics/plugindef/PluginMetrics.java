@@ -0,0 +1,378 @@
+/*
+ * PluginMetrics
+ */
+package net.maizegenetics.plugindef;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Resource usage of one invocation of a plugin's performFunction(). CPU
+ * time of the invoking thread, CPU time of the process, garbage collection
+ * count and time, and peak heap usage are taken from the platform MXBeans.
+ * Counts of the work done (i.e. reads, sites, bytesRead, bytesWritten) are
+ * reported by the plugin with AbstractPlugin.incrementCounter(), and a rate
+ * per second of wall time is given for each.
+ * <p>
+ * Process CPU, garbage collection and heap are measured for the whole JVM,
+ * so when plugins run concurrently each invocation includes the others'
+ * usage over the same interval. Peak heap is the highest usage since the
+ * oldest invocation still running started. Plugins that override
+ * performFunction() are measured from AbstractPlugin.dataSetReturned(),
+ * so their time includes any listeners they notify on the same thread.
+ * <p>
+ * When recording is on (i.e. TasselPipeline -runReport), finished
+ * invocations are kept so they can be written as a JSON run report.
+ */
+public class PluginMetrics {
+
+    private static final Logger myLogger = Logger.getLogger(PluginMetrics.class);
+
+    private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+    private static final OperatingSystemMXBean OS_BEAN = ManagementFactory.getOperatingSystemMXBean();
+
+    private static final List<PluginMetrics> FINISHED = new ArrayList<>();
+    private static boolean myIsRecording = false;
+    private static int myNumRunning = 0;
+
+    private final String myPluginName;
+    private final String myThreadName;
+    private final long myThreadId;
+    private final Instant myStartTime;
+    private final long myStartNanos;
+    private final long myStartThreadCpu;
+    private final long myStartProcessCpu;
+    private final long myStartGCCount;
+    private final long myStartGCTime;
+    private final long myStartHeapUsed;
+    private final Map<String, LongAdder> myCounters = new ConcurrentHashMap<>();
+
+    private volatile long myElapsedNanos = -1;
+    private long myThreadCpuNanos = -1;
+    private long myProcessCpuNanos = -1;
+    private long myGCCount = 0;
+    private long myGCTime = 0;
+    private long myEndHeapUsed = 0;
+    private long myPeakHeapUsed = 0;
+    private boolean mySucceeded = false;
+
+    private PluginMetrics(Plugin plugin) {
+        myPluginName = plugin.getClass().getName();
+        Thread current = Thread.currentThread();
+        myThreadName = current.getName();
+        myThreadId = current.getId();
+        synchronized (FINISHED) {
+            if (myNumRunning == 0) {
+                resetPeakHeap();
+            }
+            myNumRunning++;
+        }
+        myStartTime = Instant.now();
+        myStartHeapUsed = heapUsed();
+        long[] gc = garbageCollection();
+        myStartGCCount = gc[0];
+        myStartGCTime = gc[1];
+        myStartProcessCpu = processCpuTime();
+        myStartThreadCpu = threadCpuTime();
+        myStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Starts measuring an invocation of the given plugin on the current
+     * thread.
+     *
+     * @param plugin plugin
+     *
+     * @return metrics to finish when the invocation returns
+     */
+    public static PluginMetrics start(Plugin plugin) {
+        return new PluginMetrics(plugin);
+    }
+
+    /**
+     * Stops measuring. This must be called on the thread that started.
+     *
+     * @param succeeded whether the plugin finished without error
+     */
+    public void finish(boolean succeeded) {
+        long elapsed = System.nanoTime() - myStartNanos;
+        long threadCpu = threadCpuTime();
+        myThreadCpuNanos = (threadCpu < 0) ? -1 : threadCpu - myStartThreadCpu;
+        long processCpu = processCpuTime();
+        myProcessCpuNanos = (processCpu < 0) ? -1 : processCpu - myStartProcessCpu;
+        long[] gc = garbageCollection();
+        myGCCount = gc[0] - myStartGCCount;
+        myGCTime = gc[1] - myStartGCTime;
+        myEndHeapUsed = heapUsed();
+        mySucceeded = succeeded;
+        myElapsedNanos = elapsed;
+        synchronized (FINISHED) {
+            myPeakHeapUsed = Math.max(peakHeap(), Math.max(myStartHeapUsed, myEndHeapUsed));
+            myNumRunning--;
+            if (myIsRecording) {
+                FINISHED.add(this);
+            }
+        }
+        if (myLogger.isDebugEnabled()) {
+            myLogger.debug(toString());
+        }
+    }
+
+    public boolean isFinished() {
+        return myElapsedNanos >= 0;
+    }
+
+    boolean isCurrentThread() {
+        return myThreadId == Thread.currentThread().getId();
+    }
+
+    /**
+     * Adds value to the named counter. Can be called from any thread.
+     *
+     * @param name counter name
+     * @param value value to add
+     */
+    public void increment(String name, long value) {
+        myCounters.computeIfAbsent(name, k -> new LongAdder()).add(value);
+    }
+
+    public String getPluginName() {
+        return myPluginName;
+    }
+
+    /**
+     * Wall time in nanoseconds, or -1 if not finished.
+     */
+    public long getElapsedNanos() {
+        return myElapsedNanos;
+    }
+
+    /**
+     * CPU time of the invoking thread in nanoseconds, or -1 if not
+     * available. Work done by the plugin on other threads (i.e. parallel
+     * streams) is not included.
+     */
+    public long getThreadCpuNanos() {
+        return myThreadCpuNanos;
+    }
+
+    /**
+     * CPU time of the JVM in nanoseconds, or -1 if not available.
+     */
+    public long getProcessCpuNanos() {
+        return myProcessCpuNanos;
+    }
+
+    public long getGCCount() {
+        return myGCCount;
+    }
+
+    /**
+     * Garbage collection time in milliseconds.
+     */
+    public long getGCMillis() {
+        return myGCTime;
+    }
+
+    public long getPeakHeapUsed() {
+        return myPeakHeapUsed;
+    }
+
+    public Map<String, Long> getCounters() {
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> current : myCounters.entrySet()) {
+            result.put(current.getKey(), current.getValue().sum());
+        }
+        return result;
+    }
+
+    /**
+     * Sets whether finished invocations are kept for writeReport().
+     *
+     * @param record true to keep finished invocations
+     */
+    public static void setRecording(boolean record) {
+        synchronized (FINISHED) {
+            myIsRecording = record;
+        }
+    }
+
+    /**
+     * Returns the finished invocations recorded so far in the order they
+     * finished.
+     *
+     * @return metrics
+     */
+    public static List<PluginMetrics> finished() {
+        synchronized (FINISHED) {
+            return new ArrayList<>(FINISHED);
+        }
+    }
+
+    /**
+     * Writes the finished invocations as a JSON run report.
+     *
+     * @param filename output file
+     * @param properties properties of the run (i.e. version, arguments)
+     * written at the top level of the report
+     */
+    public static void writeReport(String filename, Map<String, String> properties) {
+
+        List<PluginMetrics> finished = finished();
+        Runtime runtime = Runtime.getRuntime();
+
+        Map<String, Object> config = new HashMap<>();
+        config.put(JsonGenerator.PRETTY_PRINTING, true);
+        JsonGeneratorFactory factory = Json.createGeneratorFactory(config);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename));
+                JsonGenerator generator = factory.createGenerator(writer)) {
+
+            generator.writeStartObject();
+            for (Map.Entry<String, String> current : properties.entrySet()) {
+                generator.write(current.getKey(), current.getValue());
+            }
+            generator.write("javaVersion", System.getProperty("java.version"));
+            generator.write("availableProcessors", runtime.availableProcessors());
+            generator.write("maxHeapBytes", runtime.maxMemory());
+
+            generator.writeStartArray("plugins");
+            for (PluginMetrics current : finished) {
+                current.write(generator);
+            }
+            generator.writeEnd();
+
+            generator.writeEnd();
+
+        } catch (IOException e) {
+            myLogger.debug(e.getMessage(), e);
+            throw new IllegalStateException("PluginMetrics: writeReport: problem writing: " + filename + ": " + e.getMessage());
+        }
+
+        myLogger.info("writeReport: wrote metrics for " + finished.size() + " plugin invocations to: " + filename);
+
+    }
+
+    private void write(JsonGenerator generator) {
+        double seconds = myElapsedNanos / 1e9;
+        generator.writeStartObject();
+        generator.write("plugin", myPluginName);
+        generator.write("thread", myThreadName);
+        generator.write("threadId", myThreadId);
+        generator.write("succeeded", mySucceeded);
+        generator.write("start", myStartTime.toString());
+        generator.write("elapsedMillis", myElapsedNanos / 1000000);
+        generator.write("threadCpuMillis", myThreadCpuNanos < 0 ? -1 : myThreadCpuNanos / 1000000);
+        generator.write("processCpuMillis", myProcessCpuNanos < 0 ? -1 : myProcessCpuNanos / 1000000);
+        generator.write("gcCount", myGCCount);
+        generator.write("gcMillis", myGCTime);
+        generator.write("heapUsedStartBytes", myStartHeapUsed);
+        generator.write("heapUsedEndBytes", myEndHeapUsed);
+        generator.write("heapPeakBytes", myPeakHeapUsed);
+        Map<String, Long> counters = getCounters();
+        generator.writeStartObject("counters");
+        for (Map.Entry<String, Long> current : counters.entrySet()) {
+            generator.write(current.getKey(), current.getValue());
+        }
+        generator.writeEnd();
+        generator.writeStartObject("perSecond");
+        for (Map.Entry<String, Long> current : counters.entrySet()) {
+            generator.write(current.getKey(), seconds > 0.0 ? current.getValue() / seconds : 0.0);
+        }
+        generator.writeEnd();
+        generator.writeEnd();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(myPluginName);
+        builder.append(": elapsed: ").append(myElapsedNanos / 1000000).append(" ms");
+        builder.append(" thread cpu: ").append(myThreadCpuNanos < 0 ? -1 : myThreadCpuNanos / 1000000).append(" ms");
+        builder.append(" process cpu: ").append(myProcessCpuNanos < 0 ? -1 : myProcessCpuNanos / 1000000).append(" ms");
+        builder.append(" gc: ").append(myGCCount).append(" (").append(myGCTime).append(" ms)");
+        builder.append(" peak heap: ").append(myPeakHeapUsed / 1048576).append(" MB");
+        for (Map.Entry<String, Long> current : getCounters().entrySet()) {
+            builder.append(" ").append(current.getKey()).append(": ").append(current.getValue());
+        }
+        return builder.toString();
+    }
+
+    private static long threadCpuTime() {
+        try {
+            if (THREAD_BEAN.isCurrentThreadCpuTimeSupported() && THREAD_BEAN.isThreadCpuTimeEnabled()) {
+                return THREAD_BEAN.getCurrentThreadCpuTime();
+            }
+        } catch (UnsupportedOperationException e) {
+            // not available on this JVM
+        }
+        return -1;
+    }
+
+    private static long processCpuTime() {
+        if (OS_BEAN instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) OS_BEAN).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    /**
+     * Returns total collection count and time (ms) of all collectors.
+     */
+    private static long[] garbageCollection() {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean current : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, current.getCollectionCount());
+            time += Math.max(0, current.getCollectionTime());
+        }
+        return new long[]{count, time};
+    }
+
+    private static long heapUsed() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean current : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (current.getType() == MemoryType.HEAP && current.isValid()) {
+                current.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Sum of the peak usage of each heap pool. The pools don't peak at the
+     * same time, so this is an upper bound of the heap used.
+     */
+    private static long peakHeap() {
+        long result = 0;
+        for (MemoryPoolMXBean current : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (current.getType() == MemoryType.HEAP && current.isValid()) {
+                result += current.getPeakUsage().getUsed();
+            }
+        }
+        return result;
+    }
+
+}
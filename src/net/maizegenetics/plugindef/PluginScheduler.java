@@ -0,0 +1,146 @@
+/*
+ * PluginScheduler
+ */
+package net.maizegenetics.plugindef;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Runs the branches of a plugin pipeline as tasks on a pool with a fixed
+ * number of threads. A threaded plugin that has a scheduler submits each of
+ * its listeners here when it returns its data set, instead of starting a new
+ * thread for each. Independent branches run concurrently, but never on more
+ * threads than the pool has. The pool is a ForkJoinPool, so parallel streams
+ * used by a plugin running on it also run on it, and the same thread budget
+ * covers the parallelism within plugins. The first failure of any task is
+ * rethrown by awaitCompletion(), so the pipeline can exit with an error.
+ */
+public class PluginScheduler {
+
+    private static final Logger myLogger = Logger.getLogger(PluginScheduler.class);
+
+    private final ForkJoinPool myPool;
+    // One party for the thread waiting for completion, and one for each task
+    // not yet finished. Tasks submitted by a running task register before
+    // it finishes, so the count can't reach zero until all branches are done.
+    private final Phaser myPending = new Phaser(1);
+    private final AtomicReference<Throwable> myFailure = new AtomicReference<>();
+
+    /**
+     * Creates a new instance of PluginScheduler
+     *
+     * @param numThreads maximum number of threads
+     */
+    public PluginScheduler(int numThreads) {
+        myPool = new ForkJoinPool(Math.max(1, numThreads));
+    }
+
+    /**
+     * Schedules listener to receive event.
+     *
+     * @param listener listener
+     * @param event event
+     */
+    public void submit(PluginListener listener, PluginEvent event) {
+        submit(new ThreadedPluginListener(listener, event));
+    }
+
+    /**
+     * Schedules task to run.
+     *
+     * @param task task
+     */
+    public void submit(Runnable task) {
+        myPending.register();
+        try {
+            myPool.execute(() -> {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    // later failures are only logged
+                    if (!myFailure.compareAndSet(null, e)) {
+                        myLogger.error(e.getMessage(), e);
+                    }
+                } finally {
+                    myPending.arriveAndDeregister();
+                }
+            });
+        } catch (RuntimeException e) {
+            myPending.arriveAndDeregister();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits until all submitted tasks, and all tasks they submitted, have
+     * finished. This can only be called once.
+     *
+     * @throws RuntimeException first failure of a task, wrapped in an
+     * IllegalStateException if it wasn't a RuntimeException
+     */
+    public void awaitCompletion() {
+        myPending.arriveAndAwaitAdvance();
+        Throwable failure = myFailure.get();
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw new IllegalStateException("PluginScheduler: awaitCompletion: " + failure.getMessage(), failure);
+        }
+    }
+
+    /**
+     * Stops the threads of this scheduler.
+     */
+    public void shutdown() {
+        myPool.shutdownNow();
+    }
+
+    public int getNumThreads() {
+        return myPool.getParallelism();
+    }
+
+    /**
+     * Checks that the plugins of the given pipeline segments, connected by
+     * their inputs, form a directed acyclic graph. A cycle would never finish.
+     *
+     * @param segments pipeline segments
+     *
+     * @return number of plugins
+     */
+    public static int checkAcyclic(Collection<List<Plugin>> segments) {
+        // 1 = visiting, 2 = done
+        Map<Plugin, Integer> state = new HashMap<>();
+        for (List<Plugin> segment : segments) {
+            for (Plugin plugin : segment) {
+                checkAcyclic(plugin, state);
+            }
+        }
+        return state.size();
+    }
+
+    private static void checkAcyclic(Plugin plugin, Map<Plugin, Integer> state) {
+        Integer current = state.get(plugin);
+        if (current != null) {
+            if (current == 1) {
+                throw new IllegalArgumentException("PluginScheduler: checkAcyclic: pipeline has a cycle through: " + plugin.getClass().getName());
+            }
+            return;
+        }
+        state.put(plugin, 1);
+        if (plugin instanceof AbstractPlugin) {
+            for (Plugin input : ((AbstractPlugin) plugin).getInputs()) {
+                checkAcyclic(input, state);
+            }
+        }
+        state.put(plugin, 2);
+    }
+
+}
@@ -8,6 +8,8 @@ import java.awt.Component;
 import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.ComponentEvent;
@@ -165,6 +167,7 @@ public class SeqViewerPanel extends JPanel implements ComponentListener, TableMo
         myScrollPane = new JScrollPane(myTable);
         myScrollPane.addComponentListener(this);
         myScrollPane.setRowHeaderView(rowHeaders);
+        myScrollPane.getViewport().addChangeListener(e -> prefetchVisibleRows());
 
         add(getControls(), BorderLayout.NORTH);
         add(myScrollPane, BorderLayout.CENTER);
@@ -644,6 +647,13 @@ public class SeqViewerPanel extends JPanel implements ComponentListener, TableMo
     }
 
     public void tableChanged(TableModelEvent e) {
+
+        // Rows updated as their genotypes are loaded
+        if ((e.getType() == TableModelEvent.UPDATE) && (e.getFirstRow() != TableModelEvent.HEADER_ROW)
+                && (e.getLastRow() != Integer.MAX_VALUE)) {
+            return;
+        }
+
         for (int c = 0; c < myTable.getColumnCount(); c++) {
             TableColumn col = myTable.getColumnModel().getColumn(c);
             col.setHeaderRenderer(new TableCellRenderer() {
@@ -662,6 +672,27 @@ public class SeqViewerPanel extends JPanel implements ComponentListener, TableMo
         } else if (!myTableModel.isPhysicalPosition()) {
             updateSliderSiteNumbers();
         }
+
+        prefetchVisibleRows();
+    }
+
+    /**
+     * Starts loading genotypes of the rows in view for the current columns.
+     */
+    private void prefetchVisibleRows() {
+        if ((myTable == null) || (myScrollPane == null) || (myTable.getRowCount() == 0)) {
+            return;
+        }
+        Rectangle visible = myScrollPane.getViewport().getViewRect();
+        int firstRow = myTable.rowAtPoint(new Point(0, visible.y));
+        int lastRow = myTable.rowAtPoint(new Point(0, visible.y + visible.height - 1));
+        if (firstRow == -1) {
+            firstRow = 0;
+        }
+        if (lastRow == -1) {
+            lastRow = myTable.getRowCount() - 1;
+        }
+        myTableModel.prefetch(firstRow, lastRow);
     }
 
     class RadioListener implements ActionListener {
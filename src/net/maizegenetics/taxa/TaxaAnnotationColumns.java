@@ -0,0 +1,467 @@
+/*
+ *  TaxaAnnotationColumns
+ */
+package net.maizegenetics.taxa;
+
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.SetMultimap;
+import net.maizegenetics.util.GeneralAnnotation;
+import net.maizegenetics.util.GeneralAnnotationStorage;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Column oriented storage of taxa annotations. Each annotation key is a
+ * column. Values of a column are dictionary encoded, so each distinct
+ * key/value pair is stored once regardless of the number of taxa. Columns
+ * where every taxon has at most one value are stored as one int code per
+ * taxon (-1 when absent). Otherwise, codes are stored compressed sparse row
+ * with offsets per taxon. Use {@link Builder} to add values as they are read,
+ * without creating annotation objects per taxon.
+ */
+final class TaxaAnnotationColumns {
+
+    private static final double[] EMPTY_DOUBLE_ARRAY = new double[0];
+
+    private final int myNumTaxa;
+    private final String[] myKeys;
+    private final AnnotationEntry[][] myDictionaries;
+    private final int[][] myCodes;
+    // null for columns with at most one value per taxon
+    private final int[][] myOffsets;
+
+    private TaxaAnnotationColumns(int numTaxa, String[] keys, AnnotationEntry[][] dictionaries, int[][] codes, int[][] offsets) {
+        myNumTaxa = numTaxa;
+        myKeys = keys;
+        myDictionaries = dictionaries;
+        myCodes = codes;
+        myOffsets = offsets;
+    }
+
+    /**
+     * Creates columnar annotations from the annotations of the given taxa.
+     *
+     * @param taxa taxa
+     *
+     * @return columnar annotations
+     */
+    static TaxaAnnotationColumns getInstance(List<Taxon> taxa) {
+        int numTaxa = taxa.size();
+        Builder builder = new Builder();
+        int[] order = new int[numTaxa];
+        for (int t = 0; t < numTaxa; t++) {
+            builder.nextRow();
+            for (Map.Entry<String, String> entry : taxa.get(t).getAnnotation().getAllAnnotationEntries()) {
+                builder.add(t, entry.getKey(), entry.getValue());
+            }
+            order[t] = t;
+        }
+        return builder.build(order);
+    }
+
+    int numTaxa() {
+        return myNumTaxa;
+    }
+
+    /**
+     * Returns index of annotation key or negative if not present.
+     */
+    int keyIndex(String key) {
+        return Arrays.binarySearch(myKeys, key);
+    }
+
+    /**
+     * Returns annotation view for given taxon. Nothing is copied.
+     *
+     * @param taxon taxon index
+     *
+     * @return annotations
+     */
+    GeneralAnnotation annotation(int taxon) {
+        for (int k = 0; k < myKeys.length; k++) {
+            if (start(k, taxon) < end(k, taxon)) {
+                return new TaxonAnnotation(taxon);
+            }
+        }
+        return GeneralAnnotationStorage.EMPTY_ANNOTATION_STORAGE;
+    }
+
+    private int start(int key, int taxon) {
+        int[] offsets = myOffsets[key];
+        if (offsets == null) {
+            return myCodes[key][taxon] < 0 ? 0 : taxon;
+        }
+        return offsets[taxon];
+    }
+
+    private int end(int key, int taxon) {
+        int[] offsets = myOffsets[key];
+        if (offsets == null) {
+            return myCodes[key][taxon] < 0 ? 0 : taxon + 1;
+        }
+        return offsets[taxon + 1];
+    }
+
+    private final class TaxonAnnotation implements GeneralAnnotation {
+
+        private final int myTaxon;
+
+        private TaxonAnnotation(int taxon) {
+            myTaxon = taxon;
+        }
+
+        @Override
+        public String[] getTextAnnotation(String annoName) {
+            int k = keyIndex(annoName);
+            if (k < 0) {
+                return new String[0];
+            }
+            int start = start(k, myTaxon);
+            int end = end(k, myTaxon);
+            String[] result = new String[end - start];
+            for (int i = start; i < end; i++) {
+                result[i - start] = myDictionaries[k][myCodes[k][i]].getValue();
+            }
+            return result;
+        }
+
+        @Override
+        public Map<String, String> getConcatenatedTextAnnotations() {
+            Map<String, String> result = new HashMap<>();
+            for (int k = 0; k < myKeys.length; k++) {
+                String[] values = getTextAnnotation(myKeys[k]);
+                if (values.length != 0) {
+                    result.put(myKeys[k], String.join(",", values));
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public double[] getQuantAnnotation(String annoName) {
+            String[] values = getTextAnnotation(annoName);
+            if (values.length == 0) {
+                return EMPTY_DOUBLE_ARRAY;
+            }
+            try {
+                double[] result = new double[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    result[i] = Double.parseDouble(values[i]);
+                }
+                return result;
+            } catch (Exception e) {
+                return EMPTY_DOUBLE_ARRAY;
+            }
+        }
+
+        @Override
+        public double getAverageAnnotation(String annoName) {
+            double[] values = getQuantAnnotation(annoName);
+            if (values.length == 0) {
+                return Double.NaN;
+            }
+            double result = 0.0;
+            for (double current : values) {
+                result += current;
+            }
+            return result / (double) values.length;
+        }
+
+        @Override
+        public Set<String> getAnnotationKeys() {
+            Set<String> result = new HashSet<>();
+            for (int k = 0; k < myKeys.length; k++) {
+                if (start(k, myTaxon) < end(k, myTaxon)) {
+                    result.add(myKeys[k]);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public SetMultimap<String, String> getAnnotationAsMap() {
+            ImmutableSetMultimap.Builder<String, String> result = new ImmutableSetMultimap.Builder<String, String>()
+                    .orderKeysBy(Ordering.natural()).orderValuesBy(Ordering.natural());
+            for (Map.Entry<String, String> entry : getAllAnnotationEntries()) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+            return result.build();
+        }
+
+        @Override
+        public boolean isAnnotatedWithValue(String annoName, String annoValue) {
+            int k = keyIndex(annoName);
+            if (k < 0) {
+                return false;
+            }
+            int end = end(k, myTaxon);
+            for (int i = start(k, myTaxon); i < end; i++) {
+                if (myDictionaries[k][myCodes[k][i]].getValue().equals(annoValue)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Map.Entry<String, String>[] getAllAnnotationEntries() {
+            AnnotationEntry[] result = new AnnotationEntry[numAnnotations()];
+            int index = 0;
+            for (int k = 0; k < myKeys.length; k++) {
+                int end = end(k, myTaxon);
+                for (int i = start(k, myTaxon); i < end; i++) {
+                    result[index++] = myDictionaries[k][myCodes[k][i]];
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public int numAnnotations() {
+            int result = 0;
+            for (int k = 0; k < myKeys.length; k++) {
+                result += end(k, myTaxon) - start(k, myTaxon);
+            }
+            return result;
+        }
+
+    }
+
+    private static final class AnnotationEntry extends AbstractMap.SimpleImmutableEntry<String, String> {
+
+        private static final long serialVersionUID = 1L;
+
+        private AnnotationEntry(String key, String value) {
+            super(key, value);
+        }
+
+    }
+
+    /**
+     * Collects annotation values by column as rows are read. Each row is
+     * the values of one taxon. When later rows have the same taxon, their
+     * values are merged, skipping values that earlier rows of the taxon
+     * already have.
+     */
+    static final class Builder {
+
+        private final Map<String, ColumnBuilder> myColumns = new TreeMap<>();
+        private int myRow = -1;
+        private int myNumTaxa = 0;
+
+        Builder() {
+        }
+
+        /**
+         * Starts next row. Values added after this belong to the new row.
+         */
+        void nextRow() {
+            myRow++;
+        }
+
+        /**
+         * Adds annotation value to the given taxon from the current row.
+         *
+         * @param taxon taxon index used in {@link #build(int[])}
+         * @param key annotation key
+         * @param value annotation value
+         */
+        void add(int taxon, String key, String value) {
+            ColumnBuilder column = myColumns.get(key);
+            if (column == null) {
+                column = new ColumnBuilder();
+                myColumns.put(key, column);
+            }
+            column.add(taxon, myRow, value);
+            myNumTaxa = Math.max(myNumTaxa, taxon + 1);
+        }
+
+        /**
+         * Creates columnar annotations. Taxa not in the order are dropped.
+         *
+         * @param order taxon index added to the builder for each taxon of
+         * the result
+         *
+         * @return columnar annotations
+         */
+        TaxaAnnotationColumns build(int[] order) {
+
+            int numTaxa = order.length;
+            int[] taxonIndices = new int[myNumTaxa];
+            Arrays.fill(taxonIndices, -1);
+            for (int t = 0; t < numTaxa; t++) {
+                if (order[t] < myNumTaxa) {
+                    taxonIndices[order[t]] = t;
+                }
+            }
+
+            List<String> keys = new ArrayList<>();
+            List<AnnotationEntry[]> dictionaries = new ArrayList<>();
+            List<int[]> codes = new ArrayList<>();
+            List<int[]> offsets = new ArrayList<>();
+
+            for (Map.Entry<String, ColumnBuilder> current : myColumns.entrySet()) {
+
+                ColumnBuilder column = current.getValue();
+                int[] starts = new int[numTaxa + 1];
+                int[] columnCodes = column.codesByTaxon(taxonIndices, starts);
+                if (starts[numTaxa] == 0) {
+                    continue;
+                }
+
+                String key = current.getKey();
+                AnnotationEntry[] dictionary = new AnnotationEntry[column.myDictionary.size()];
+                for (int i = 0; i < dictionary.length; i++) {
+                    dictionary[i] = new AnnotationEntry(key, column.myDictionary.get(i));
+                }
+
+                boolean single = true;
+                for (int t = 0; t < numTaxa; t++) {
+                    if (starts[t + 1] - starts[t] > 1) {
+                        single = false;
+                        break;
+                    }
+                }
+
+                keys.add(key);
+                dictionaries.add(dictionary);
+                if (single) {
+                    int[] singleCodes = new int[numTaxa];
+                    Arrays.fill(singleCodes, -1);
+                    for (int t = 0; t < numTaxa; t++) {
+                        if (starts[t] < starts[t + 1]) {
+                            singleCodes[t] = columnCodes[starts[t]];
+                        }
+                    }
+                    codes.add(singleCodes);
+                    offsets.add(null);
+                } else {
+                    codes.add(columnCodes);
+                    offsets.add(starts);
+                }
+
+            }
+
+            return new TaxaAnnotationColumns(numTaxa, keys.toArray(new String[keys.size()]),
+                    dictionaries.toArray(new AnnotationEntry[dictionaries.size()][]),
+                    codes.toArray(new int[codes.size()][]), offsets.toArray(new int[offsets.size()][]));
+
+        }
+
+    }
+
+    private static final class ColumnBuilder {
+
+        private final Map<String, Integer> myValueToCode = new HashMap<>();
+        private final List<String> myDictionary = new ArrayList<>();
+        private int[] myTaxa = new int[16];
+        private int[] myRows = new int[16];
+        private int[] myCodes = new int[16];
+        private int myNumCodes = 0;
+
+        private void add(int taxon, int row, String value) {
+            Integer code = myValueToCode.get(value);
+            if (code == null) {
+                code = myDictionary.size();
+                myValueToCode.put(value, code);
+                myDictionary.add(value);
+            }
+            if (myNumCodes == myCodes.length) {
+                int newSize = myCodes.length * 2;
+                myCodes = Arrays.copyOf(myCodes, newSize);
+                myTaxa = Arrays.copyOf(myTaxa, newSize);
+                myRows = Arrays.copyOf(myRows, newSize);
+            }
+            myTaxa[myNumCodes] = taxon;
+            myRows[myNumCodes] = row;
+            myCodes[myNumCodes++] = code;
+        }
+
+        /**
+         * Returns codes grouped by result taxon, and sets starts to the
+         * offset of each taxon. Taxon indices give the result taxon of each
+         * added taxon, or -1 to drop it. Codes of a taxon are sorted by value
+         * the same as {@link GeneralAnnotationStorage}.
+         */
+        private int[] codesByTaxon(int[] taxonIndices, int[] starts) {
+
+            int numTaxa = starts.length - 1;
+
+            // stable counting sort keeps rows of a taxon in the order added
+            int[] indices = new int[myNumCodes];
+            for (int i = 0; i < myNumCodes; i++) {
+                indices[i] = taxonIndices[myTaxa[i]];
+                if (indices[i] >= 0) {
+                    starts[indices[i] + 1]++;
+                }
+            }
+            for (int t = 0; t < numTaxa; t++) {
+                starts[t + 1] += starts[t];
+            }
+            int[] next = Arrays.copyOf(starts, numTaxa);
+            int[] grouped = new int[starts[numTaxa]];
+            for (int i = 0; i < myNumCodes; i++) {
+                if (indices[i] >= 0) {
+                    grouped[next[indices[i]]++] = i;
+                }
+            }
+
+            // drops merged values already in an earlier row of the taxon
+            int[] result = new int[grouped.length];
+            int numKept = 0;
+            for (int t = 0; t < numTaxa; t++) {
+                int taxonStart = numKept;
+                int rowStart = numKept;
+                for (int i = starts[t]; i < starts[t + 1]; i++) {
+                    int pair = grouped[i];
+                    if ((i > starts[t]) && (myRows[pair] != myRows[grouped[i - 1]])) {
+                        rowStart = numKept;
+                    }
+                    if ((rowStart == taxonStart) || !contains(result, taxonStart, rowStart, myCodes[pair])) {
+                        result[numKept++] = myCodes[pair];
+                    }
+                }
+                sortByValue(result, taxonStart, numKept);
+                starts[t] = taxonStart;
+            }
+            starts[numTaxa] = numKept;
+
+            return Arrays.copyOf(result, numKept);
+
+        }
+
+        private static boolean contains(int[] codes, int start, int end, int code) {
+            for (int i = start; i < end; i++) {
+                if (codes[i] == code) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void sortByValue(int[] codes, int start, int end) {
+            // few values per taxon, so insertion sort
+            for (int i = start + 1; i < end; i++) {
+                int code = codes[i];
+                String value = myDictionary.get(code);
+                int j = i - 1;
+                while ((j >= start) && (myDictionary.get(codes[j]).compareTo(value) > 0)) {
+                    codes[j + 1] = codes[j];
+                    j--;
+                }
+                codes[j + 1] = code;
+            }
+        }
+
+    }
+
+}
@@ -10,6 +10,10 @@ import java.util.*;
  * In memory immutable instance of {@link TaxaList}. Basic list of taxa
  * (samples) that are used in Alignments and other purposes.
  *
+ * Taxa names are held in an array and annotations in
+ * {@link TaxaAnnotationColumns}. Taxon instances are only created when
+ * requested, so very large lists don't hold an annotation object per taxon.
+ *
  * Use {@link TaxaListBuilder} to instantiate.
  *
  * @author Ed Buckler
@@ -21,19 +25,60 @@ class TaxaArrayList implements TaxaList {
     private final List<Taxon> myTaxaList;
     private final int myNumTaxa;
     private final ImmutableMap<String, Integer> myNameToIndex;
+    private final String[] myNames;
+    private final TaxaAnnotationColumns myAnnotations;
+    // Lazily created.  Taxon is immutable, so a race only creates an equal instance
+    private final Taxon[] myTaxa;
 
     TaxaArrayList(TaxaListBuilder builder) {
-        List<Taxon> srcList = builder.getImmutableList();
-        myTaxaList = new ArrayList<Taxon>(srcList.size());
-        myNumTaxa = srcList.size();
-        int index = 0;
+        this(names(builder.getImmutableList()), TaxaAnnotationColumns.getInstance(builder.getImmutableList()));
+    }
+
+    /**
+     * Creates list from taxa names and their annotations.
+     *
+     * @param names taxa names
+     * @param annotations annotations with the same taxa order
+     */
+    TaxaArrayList(String[] names, TaxaAnnotationColumns annotations) {
+        if (names.length != annotations.numTaxa()) {
+            throw new IllegalArgumentException("TaxaArrayList: init: number of names: " + names.length + " doesn't match annotations: " + annotations.numTaxa());
+        }
+        myNumTaxa = names.length;
+        myNames = names;
+        myTaxa = new Taxon[myNumTaxa];
         ImmutableMap.Builder<String, Integer> nToIBuilder=new ImmutableMap.Builder<>();
-        for (Taxon Taxon : srcList) {
-            myTaxaList.add(Taxon);
-            nToIBuilder.put(Taxon.getName(), index);
-            index++;
+        for (int index = 0; index < myNumTaxa; index++) {
+            nToIBuilder.put(myNames[index], index);
         }
         myNameToIndex=nToIBuilder.build();
+        myAnnotations = annotations;
+        myTaxaList = new AbstractList<Taxon>() {
+
+            @Override
+            public Taxon get(int index) {
+                Taxon result = myTaxa[index];
+                if (result == null) {
+                    result = new Taxon(myNames[index], myAnnotations.annotation(index));
+                    myTaxa[index] = result;
+                }
+                return result;
+            }
+
+            @Override
+            public int size() {
+                return myNumTaxa;
+            }
+
+        };
+    }
+
+    private static String[] names(List<Taxon> taxa) {
+        String[] result = new String[taxa.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = taxa.get(i).getName();
+        }
+        return result;
     }
 
     @Override
@@ -43,7 +88,7 @@ class TaxaArrayList implements TaxaList {
 
     @Override
     public String taxaName(int index) {
-        return myTaxaList.get(index).getName();
+        return myNames[index];
     }
 
     @Override
@@ -65,12 +110,12 @@ class TaxaArrayList implements TaxaList {
 
     @Override
     public boolean isEmpty() {
-        return myTaxaList.isEmpty();
+        return myNumTaxa == 0;
     }
 
     @Override
     public boolean contains(Object o) {
-        return myTaxaList.contains(o);
+        return (o instanceof Taxon) && myNameToIndex.containsKey(((Taxon) o).getName());
     }
 
     @Override
@@ -155,7 +200,10 @@ class TaxaArrayList implements TaxaList {
 
     @Override
     public int lastIndexOf(Object o) {
-        return myTaxaList.lastIndexOf(o);
+        if (!(o instanceof Taxon)) {
+            return -1;
+        }
+        return indexOf((Taxon) o);
     }
 
     @Override
@@ -3,11 +3,13 @@ package net.maizegenetics.taxa;
 import com.google.common.base.Splitter;
 import com.google.common.collect.*;
 
+import net.maizegenetics.util.GeneralAnnotation;
 import net.maizegenetics.util.Utils;
 import net.maizegenetics.util.TableReportUtils;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.IOException;
 import java.util.*;
 
 import org.apache.log4j.Logger;
@@ -236,21 +238,68 @@ public class TaxaListIOUtils {
      * file is processed.
      * @return TaxaList with annotations
      */
-    
-    // New version calls readTaxaAnnotationFileAL, then creates TaxaList from ArrayList
-    public static TaxaList readTaxaAnnotationFile(String fileName, String taxaNameField, Map<String, String> filters, boolean mergeSameNames) {    
-    	// create list
-    	ArrayList<Taxon> taxaAL = readTaxaAnnotationFileAL( fileName,  taxaNameField, filters);
-    	if (taxaAL == null) return null;
-        TaxaListBuilder tlb = new TaxaListBuilder();
-    	taxaAL.stream().forEach(taxa -> {
-    		if (mergeSameNames) {
-    			tlb.addOrMerge(taxa);
-    		} else {
-    			tlb.add(taxa);
-    		}
-    	});
-    	return tlb.sortTaxaAlphabetically().build();   	
+
+    // Annotations go straight into TaxaAnnotationColumns, so no Taxon or
+    // annotation objects are created per row
+    public static TaxaList readTaxaAnnotationFile(String fileName, String taxaNameField, Map<String, String> filters, boolean mergeSameNames) {
+        List<String> names = new ArrayList<>();
+        Map<String, Integer> nameToIndex = new HashMap<>();
+        TaxaAnnotationColumns.Builder annotations = new TaxaAnnotationColumns.Builder();
+        String duplicate = null;
+        try {
+            BufferedReader fileIn = Utils.getBufferedReader(fileName, 1000000);
+            List<String> headers = new ArrayList<>();
+            List<Boolean> isQuant = new ArrayList<>();
+            int indexOfName = readTaxaAnnotationHeader(fileIn, taxaNameField, headers, isQuant);
+            List<String> keys = new ArrayList<>();
+            List<String> values = new ArrayList<>();
+            String line;
+            while ((line = fileIn.readLine()) != null) {
+                String[] s = line.split("\\t");
+                readTaxaAnnotationRow(s, indexOfName, headers, isQuant, keys, values);
+                if (!hasAllAnnotations(keys, values, filters)) {
+                    continue;
+                }
+                Integer taxon = nameToIndex.get(s[indexOfName]);
+                if (taxon == null) {
+                    taxon = names.size();
+                    names.add(s[indexOfName]);
+                    nameToIndex.put(s[indexOfName], taxon);
+                } else if (!mergeSameNames) {
+                    // reported in name order, the same as adding sorted taxa
+                    if ((duplicate == null) || (s[indexOfName].compareTo(duplicate) < 0)) {
+                        duplicate = s[indexOfName];
+                    }
+                    continue;
+                }
+                annotations.nextRow();
+                for (int i = 0, n = keys.size(); i < n; i++) {
+                    annotations.add(taxon, keys.get(i), values.get(i));
+                }
+            }
+            fileIn.close();
+        } catch (Exception e) {
+            System.err.println("Error in Reading Annotated Taxon File:" + fileName);
+            e.printStackTrace();
+            return null;
+        }
+        if (duplicate != null) {
+            throw new IllegalStateException("Taxon [" + duplicate + "] already exists in the list.  Duplicated taxa not allowed.");
+        }
+
+        int numTaxa = names.size();
+        final Integer[] order = new Integer[numTaxa];
+        for (int t = 0; t < numTaxa; t++) {
+            order[t] = t;
+        }
+        Arrays.sort(order, (Integer a, Integer b) -> names.get(a).compareTo(names.get(b)));
+        String[] sortedNames = new String[numTaxa];
+        int[] taxaOrder = new int[numTaxa];
+        for (int t = 0; t < numTaxa; t++) {
+            taxaOrder[t] = order[t];
+            sortedNames[t] = names.get(order[t]);
+        }
+        return new TaxaArrayList(sortedNames, annotations.build(taxaOrder));
     }
     
     //  Version of readTaxaAnnotationFile that returns an ArrayList.  This is called
@@ -259,49 +308,21 @@ public class TaxaListIOUtils {
     public static ArrayList<Taxon> readTaxaAnnotationFileAL(String fileName, String taxaNameField, Map<String, String> filters) {
         try {
             BufferedReader fileIn = Utils.getBufferedReader(fileName, 1000000);
-            fileIn.mark(1 << 16);
-            String line = fileIn.readLine();
             ArrayList<Taxon> taxaAL = new ArrayList<Taxon>();
-            int indexOfName = 0;
             //parse headers
             List<String> headers = new ArrayList<>();
             List<Boolean> isQuant = new ArrayList<>();
-            if (line.contains(taxaNameField)) {
-                int i = 0;
-                for (String header : line.split("\\t")) {
-                    if (header.equals(taxaNameField)) {
-                        indexOfName = i;
-                    }
-                    isQuant.add(header.startsWith("#") || header.startsWith("<#"));
-                    headers.add(header.replace(">", "").replace("<", "").replace("#", ""));
-                    i++;
-                }
-            } else {
-                fileIn.reset();
-            }
+            int indexOfName = readTaxaAnnotationHeader(fileIn, taxaNameField, headers, isQuant);
+            List<String> keys = new ArrayList<>();
+            List<String> values = new ArrayList<>();
+            String line;
             //parse taxa rows
             while ((line = fileIn.readLine()) != null) {
                 String[] s = line.split("\\t");
+                readTaxaAnnotationRow(s, indexOfName, headers, isQuant, keys, values);
                 Taxon.Builder anID = new Taxon.Builder(s[indexOfName]);
-                for (int i = 0; i < s.length; i++) {
-                    if (i == indexOfName) {
-                        continue;
-                    }
-                    String[] cs = s[i].split(";");
-                    for (String ta : cs) {
-                        if (ta == null || ta.isEmpty()) {
-                            continue;
-                        }
-                        if (isQuant.get(i)) {
-                            if (ta.equals("NA")) {
-                                anID.addAnno(headers.get(i), Double.NaN);
-                            } else {
-                                anID.addAnno(headers.get(i), Double.parseDouble(ta));
-                            }
-                        } else {
-                            anID.addAnno(headers.get(i), ta);
-                        }
-                    }
+                for (int i = 0, n = keys.size(); i < n; i++) {
+                    anID.addAnno(keys.get(i), values.get(i));
                 }
                 Taxon t = anID.build();
                 if (doesTaxonHaveAllAnnotations(t, filters)) {           	
@@ -323,6 +344,78 @@ public class TaxaListIOUtils {
         return null;
     }
 
+    /**
+     * Reads header row of taxa annotation file if it has the taxa name
+     * field. Otherwise, the reader is reset to the first line.
+     *
+     * @return index of taxa name field
+     */
+    private static int readTaxaAnnotationHeader(BufferedReader fileIn, String taxaNameField, List<String> headers, List<Boolean> isQuant) throws IOException {
+        fileIn.mark(1 << 16);
+        String line = fileIn.readLine();
+        int indexOfName = 0;
+        if (line.contains(taxaNameField)) {
+            int i = 0;
+            for (String header : line.split("\\t")) {
+                if (header.equals(taxaNameField)) {
+                    indexOfName = i;
+                }
+                isQuant.add(header.startsWith("#") || header.startsWith("<#"));
+                headers.add(header.replace(">", "").replace("<", "").replace("#", ""));
+                i++;
+            }
+        } else {
+            fileIn.reset();
+        }
+        return indexOfName;
+    }
+
+    /**
+     * Parses annotations of a taxa annotation file row into keys and values.
+     * Quantitative values are stored as formatted by Double.toString().
+     */
+    private static void readTaxaAnnotationRow(String[] s, int indexOfName, List<String> headers, List<Boolean> isQuant, List<String> keys, List<String> values) {
+        keys.clear();
+        values.clear();
+        for (int i = 0; i < s.length; i++) {
+            if (i == indexOfName) {
+                continue;
+            }
+            String[] cs = s[i].split(";");
+            for (String ta : cs) {
+                if (ta == null || ta.isEmpty()) {
+                    continue;
+                }
+                keys.add(headers.get(i));
+                if (isQuant.get(i)) {
+                    if (ta.equals("NA")) {
+                        values.add(Double.toString(Double.NaN));
+                    } else {
+                        values.add(Double.toString(Double.parseDouble(ta)));
+                    }
+                } else {
+                    values.add(ta);
+                }
+            }
+        }
+    }
+
+    private static boolean hasAllAnnotations(List<String> keys, List<String> values, Map<String, String> filters) {
+        for (Map.Entry<String, String> entry : filters.entrySet()) {
+            boolean found = false;
+            for (int i = 0, n = keys.size(); i < n; i++) {
+                if (keys.get(i).equals(entry.getKey()) && values.get(i).equals(entry.getValue())) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Returns an annotated TaxaList from a text annotation file in matrix
      * format. This is a tab delimited file. First row in the file with the
@@ -362,20 +455,13 @@ public class TaxaListIOUtils {
      * @return true if all present, false is otherwise
      */
     public static boolean doesTaxonHaveAllAnnotations(Taxon taxon, Map<String, String> filters) {
-        SetMultimap<String, String> taxonAnno = taxon.getAnnotation().getAnnotationAsMap();
-        boolean keep = true;
+        GeneralAnnotation taxonAnno = taxon.getAnnotation();
         for (Map.Entry<String, String> entry : filters.entrySet()) {
-            keep = false;
-            for (String s1 : taxonAnno.get(entry.getKey())) {
-                if (s1.equals(entry.getValue())) {
-                    keep = true;
-                } 
-            }
-            if (keep == false) {
-                break;
+            if (!taxonAnno.isAnnotatedWithValue(entry.getKey(), entry.getValue())) {
+                return false;
             }
         }
-        return keep;
+        return true;
     }
 
     /**
@@ -9,12 +9,18 @@ package net.maizegenetics.taxa.tree;
 
 import net.maizegenetics.taxa.distance.DistanceMatrix;
 
+import java.util.stream.IntStream;
+
 /**
  * constructs a neighbor-joining tree from pairwise distances
  * <br><br>
  * Saitou, N., and Nei, M., (1987) The neighbor-joining method: A new method for
  * reconstructing phylogenetic trees. <i> Mol. Biol. Evol,</i> 4(4):406-425,
  * <br>
+ * The row sums and the search for the next pair are split by row across
+ * threads for larger matrices. Each row keeps its first best pair, and rows
+ * are combined in order, so the tree is the same as a sequential search.
+ * <br>
  *
  * @author Korbinian Strimmer
  * @author Alexei Drummond
@@ -49,6 +55,8 @@ public class NeighborJoiningTree extends SimpleTree {
         finish();
     }
 
+    private static final int PARALLEL_THRESHOLD = 500;
+
     private int numClusters;
     private int besti, abi;
     private int bestj;
@@ -56,6 +64,8 @@ public class NeighborJoiningTree extends SimpleTree {
     private double[][] distance;
     private double[] r;
     private double scale;
+    private double[] rowBest;
+    private int[] rowBestj;
 
     private double getDist(int a, int b) {
         return distance[alias[a]][alias[b]];
@@ -78,6 +88,8 @@ public class NeighborJoiningTree extends SimpleTree {
         }
 
         r = new double[numClusters];
+        rowBest = new double[numClusters];
+        rowBestj = new int[numClusters];
     }
 
     private void finish() {
@@ -95,31 +107,59 @@ public class NeighborJoiningTree extends SimpleTree {
     }
 
     private void findNextPair() {
-        for (int i = 0; i < numClusters; i++) {
-            r[i] = 0;
-            for (int j = 0; j < numClusters; j++) {
-                r[i] += getDist(i, j);
-            }
-        }
+        rows(numClusters).forEach(this::rowSum);
+
+        scale = 1.0 / (numClusters - 2);
+        rows(numClusters - 1).forEach(this::bestInRow);
 
         besti = 0;
         bestj = 1;
         double smax = -1.0;
-        scale = 1.0 / (numClusters - 2);
         for (int i = 0; i < numClusters - 1; i++) {
-            for (int j = i + 1; j < numClusters; j++) {
-                double sij = (r[i] + r[j]) * scale - getDist(i, j);
-
-                if (sij > smax) {
-                    smax = sij;
-                    besti = i;
-                    bestj = j;
-                }
+            if (rowBest[i] > smax) {
+                smax = rowBest[i];
+                besti = i;
+                bestj = rowBestj[i];
             }
         }
         abi = alias[besti];
     }
 
+    private IntStream rows(int numRows) {
+        IntStream result = IntStream.range(0, numRows);
+        return numRows < PARALLEL_THRESHOLD ? result : result.parallel();
+    }
+
+    private void rowSum(int i) {
+        double[] row = distance[alias[i]];
+        double sum = 0;
+        for (int j = 0; j < numClusters; j++) {
+            sum += row[alias[j]];
+        }
+        r[i] = sum;
+    }
+
+    /**
+     * first pair (i, j) with j greater than i that beats -1.0 and all
+     * previous pairs in the row
+     */
+    private void bestInRow(int i) {
+        double[] row = distance[alias[i]];
+        double ri = r[i];
+        double smax = -1.0;
+        int best = -1;
+        for (int j = i + 1; j < numClusters; j++) {
+            double sij = (ri + r[j]) * scale - row[alias[j]];
+
+            if (sij > smax) {
+                smax = sij;
+                best = j;
+            }
+        }
+        rowBest[i] = smax;
+        rowBestj[i] = best;
+    }
+
     private void newBranchLengths() {
         double dij = getDist(besti, bestj);
         double li = (dij + (r[besti] - r[bestj]) * scale) * 0.5;
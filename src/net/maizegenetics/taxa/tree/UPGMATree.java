@@ -4,16 +4,20 @@
 //
 // This package may be distributed under the
 // terms of the Lesser GNU General Public License (LGPL)
-// Known bugs and limitations:
-// - computational complexity O(numSeqs^3)
-//   (this could be brought down to O(numSeqs^2)
-//   but this needs more clever programming ...)
+// computational complexity O(numSeqs^2) on average, O(numSeqs^3) worst case
 package net.maizegenetics.taxa.tree;
 
 import net.maizegenetics.taxa.distance.DistanceMatrix;
 
+import java.util.stream.IntStream;
+
 /**
  * constructs a UPGMA tree from pairwise distances
+ * <br><br>
+ * The first minimum of each row (to the right of the diagonal) is cached, so
+ * finding the next pair only scans the rows. After a join, only rows whose
+ * cached minimum was one of the joined clusters are scanned again. Ties go to
+ * the first pair in row order, so the tree is the same as a full search.
  *
  * @author Korbinian Strimmer
  * @author Alexei Drummond
@@ -59,6 +63,14 @@ public class UPGMATree extends SimpleTree {
     private double[] height;
     private int[] oc;
 
+    private static final int PARALLEL_THRESHOLD = 500;
+
+    // indexed by alias: position of the cluster, and first minimum of its
+    // row with the alias of that column (-1 if none)
+    private int[] position;
+    private double[] rowMin;
+    private int[] rowMinAlias;
+
     private double getDist(int a, int b) {
         return distance[alias[a]][alias[b]];
     }
@@ -85,6 +97,18 @@ public class UPGMATree extends SimpleTree {
             height[i] = 0.0;
             oc[i] = 1;
         }
+
+        position = new int[numClusters];
+        for (int i = 0; i < numClusters; i++) {
+            position[i] = i;
+        }
+        rowMin = new double[numClusters];
+        rowMinAlias = new int[numClusters];
+        IntStream rows = IntStream.range(0, numClusters - 1);
+        if (numClusters >= PARALLEL_THRESHOLD) {
+            rows = rows.parallel();
+        }
+        rows.forEach(this::minInRow);
     }
 
     private void finish() {
@@ -96,18 +120,55 @@ public class UPGMATree extends SimpleTree {
         bestj = 1;
         double dmin = getDist(0, 1);
         for (int i = 0; i < numClusters - 1; i++) {
-            for (int j = i + 1; j < numClusters; j++) {
-                if (getDist(i, j) < dmin) {
-                    dmin = getDist(i, j);
-                    besti = i;
-                    bestj = j;
-                }
+            int ai = alias[i];
+            if (rowMin[ai] < dmin) {
+                dmin = rowMin[ai];
+                besti = i;
+                bestj = position[rowMinAlias[ai]];
             }
         }
         abi = alias[besti];
         abj = alias[bestj];
     }
 
+    /**
+     * first minimum of row i to the right of the diagonal
+     */
+    private void minInRow(int i) {
+        int ai = alias[i];
+        double[] row = distance[ai];
+        double dmin = Double.POSITIVE_INFINITY;
+        int best = -1;
+        for (int j = i + 1; j < numClusters; j++) {
+            if (row[alias[j]] < dmin) {
+                dmin = row[alias[j]];
+                best = alias[j];
+            }
+        }
+        rowMin[ai] = dmin;
+        rowMinAlias[ai] = best;
+    }
+
+    /**
+     * update cached row minimums after besti and bestj are joined into
+     * besti
+     */
+    private void updateRowMins() {
+        for (int i = 0; i < numClusters - 1; i++) {
+            int ai = alias[i];
+            if (i == besti || rowMinAlias[ai] == abi || rowMinAlias[ai] == abj) {
+                minInRow(i);
+            } else if (i < besti) {
+                double d = distance[ai][abi];
+                int current = rowMinAlias[ai];
+                if (d < rowMin[ai] || (d == rowMin[ai] && (current == -1 || besti < position[current]))) {
+                    rowMin[ai] = d;
+                    rowMinAlias[ai] = abi;
+                }
+            }
+        }
+    }
+
     private void newBranchLengths() {
         double dij = getDist(besti, bestj);
 
@@ -135,9 +196,12 @@ public class UPGMATree extends SimpleTree {
         // Update alias
         for (int i = bestj; i < numClusters - 1; i++) {
             alias[i] = alias[i + 1];
+            position[alias[i]] = i;
         }
 
         numClusters--;
+
+        updateRowMins();
     }
 
     /**
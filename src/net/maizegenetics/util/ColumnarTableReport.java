@@ -0,0 +1,245 @@
+/*
+ * ColumnarTableReport
+ */
+package net.maizegenetics.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.stream.IntStream;
+
+/**
+ * Table report that stores each column as an array of primitives. Strings
+ * are stored as int codes into a dictionary of the distinct values of the
+ * column. Values are boxed only when requested through getRow() or
+ * getValueAt(). Use the typed getters, or writeDelimited(), to read them
+ * without boxing. Instances are made with ColumnarTableReportBuilder.
+ */
+public class ColumnarTableReport implements TableReport {
+
+    public enum ColumnType {
+        INT, LONG, FLOAT, DOUBLE, STRING
+    }
+
+    // Rows formatted by each task of writeDelimited()
+    private static final int ROWS_PER_CHUNK = 4096;
+    private static final int CHUNKS_PER_BATCH = 64;
+
+    private final String myTableName;
+    private final Object[] myColumnNames;
+    private final ColumnType[] myColumnTypes;
+    private final int[][] myInts;
+    private final long[][] myLongs;
+    private final float[][] myFloats;
+    private final double[][] myDoubles;
+    private final String[][] myDictionaries;
+    private final int myNumRows;
+
+    /**
+     * Arrays are indexed by column and are only set for columns of the
+     * matching type. String columns have their codes in ints, and their
+     * values in dictionaries. Column arrays can be longer than numRows.
+     */
+    ColumnarTableReport(String tableName, Object[] columnNames, ColumnType[] columnTypes, int[][] ints, long[][] longs, float[][] floats, double[][] doubles, String[][] dictionaries, int numRows) {
+        myTableName = tableName;
+        myColumnNames = columnNames;
+        myColumnTypes = columnTypes;
+        myInts = ints;
+        myLongs = longs;
+        myFloats = floats;
+        myDoubles = doubles;
+        myDictionaries = dictionaries;
+        myNumRows = numRows;
+    }
+
+    @Override
+    public Object[] getTableColumnNames() {
+        return myColumnNames;
+    }
+
+    @Override
+    public String getTableTitle() {
+        return myTableName;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return myColumnTypes.length;
+    }
+
+    @Override
+    public long getRowCount() {
+        return myNumRows;
+    }
+
+    @Override
+    public long getElementCount() {
+        return getRowCount() * getColumnCount();
+    }
+
+    @Override
+    public Object[] getRow(long row) {
+        Object[] result = new Object[myColumnTypes.length];
+        for (int c = 0; c < myColumnTypes.length; c++) {
+            result[c] = getValueAt(row, c);
+        }
+        return result;
+    }
+
+    @Override
+    public Object getValueAt(long row, int col) {
+        int r = checkRow(row);
+        switch (myColumnTypes[col]) {
+            case INT:
+                return myInts[col][r];
+            case LONG:
+                return myLongs[col][r];
+            case FLOAT:
+                return myFloats[col][r];
+            case DOUBLE:
+                return myDoubles[col][r];
+            default:
+                return string(col, r);
+        }
+    }
+
+    public ColumnType getColumnType(int col) {
+        return myColumnTypes[col];
+    }
+
+    /**
+     * Returns value of an INT column.
+     */
+    public int getInt(long row, int col) {
+        checkType(col, ColumnType.INT);
+        return myInts[col][checkRow(row)];
+    }
+
+    /**
+     * Returns value of an INT or LONG column.
+     */
+    public long getLong(long row, int col) {
+        int r = checkRow(row);
+        if (myColumnTypes[col] == ColumnType.INT) {
+            return myInts[col][r];
+        }
+        checkType(col, ColumnType.LONG);
+        return myLongs[col][r];
+    }
+
+    /**
+     * Returns value of a numeric column as a double.
+     */
+    public double getDouble(long row, int col) {
+        int r = checkRow(row);
+        switch (myColumnTypes[col]) {
+            case INT:
+                return myInts[col][r];
+            case LONG:
+                return myLongs[col][r];
+            case FLOAT:
+                return myFloats[col][r];
+            case DOUBLE:
+                return myDoubles[col][r];
+            default:
+                throw new IllegalArgumentException("ColumnarTableReport: getDouble: column: " + col + " is type: " + myColumnTypes[col]);
+        }
+    }
+
+    /**
+     * Returns value of a STRING column, which may be null.
+     */
+    public String getString(long row, int col) {
+        checkType(col, ColumnType.STRING);
+        return string(col, checkRow(row));
+    }
+
+    private String string(int col, int row) {
+        int code = myInts[col][row];
+        return (code < 0) ? null : myDictionaries[col][code];
+    }
+
+    private int checkRow(long row) {
+        if ((row < 0) || (row >= myNumRows)) {
+            throw new IndexOutOfBoundsException("ColumnarTableReport: row: " + row + " number of rows: " + myNumRows);
+        }
+        return (int) row;
+    }
+
+    private void checkType(int col, ColumnType type) {
+        if (myColumnTypes[col] != type) {
+            throw new IllegalArgumentException("ColumnarTableReport: column: " + col + " is type: " + myColumnTypes[col] + " not: " + type);
+        }
+    }
+
+    /**
+     * Writes this table delimited by the given delimiter, in the same format
+     * as TableReportUtils.saveDelimitedTableReport(). Chunks of rows are
+     * formatted in parallel, each with its own DoubleFormat, and written in
+     * order.
+     *
+     * @param writer writer
+     * @param delimiter delimiter
+     * @param includeHeader whether to write the column names first
+     *
+     * @throws IOException if writing fails
+     */
+    public void writeDelimited(BufferedWriter writer, String delimiter, boolean includeHeader) throws IOException {
+
+        if (includeHeader) {
+            for (int c = 0; c < myColumnNames.length; c++) {
+                if (c != 0) {
+                    writer.write(delimiter);
+                }
+                writer.write(myColumnNames[c].toString());
+            }
+            writer.write("\n");
+        }
+
+        int numChunks = (myNumRows + ROWS_PER_CHUNK - 1) / ROWS_PER_CHUNK;
+        for (int batch = 0; batch < numChunks; batch += CHUNKS_PER_BATCH) {
+            int first = batch;
+            String[] chunks = new String[Math.min(CHUNKS_PER_BATCH, numChunks - batch)];
+            IntStream.range(0, chunks.length).parallel().forEach(i -> chunks[i] = formatChunk(first + i, delimiter));
+            for (String current : chunks) {
+                writer.write(current);
+            }
+        }
+
+    }
+
+    private String formatChunk(int chunk, String delimiter) {
+        DoubleFormat format = DoubleFormat.getInstance();
+        int start = chunk * ROWS_PER_CHUNK;
+        int end = Math.min(myNumRows, start + ROWS_PER_CHUNK);
+        StringBuilder builder = new StringBuilder((end - start) * myColumnTypes.length * 8);
+        for (int r = start; r < end; r++) {
+            for (int c = 0; c < myColumnTypes.length; c++) {
+                if (c != 0) {
+                    builder.append(delimiter);
+                }
+                switch (myColumnTypes[c]) {
+                    case INT:
+                        builder.append(myInts[c][r]);
+                        break;
+                    case LONG:
+                        builder.append(myLongs[c][r]);
+                        break;
+                    case FLOAT:
+                        builder.append(myFloats[c][r]);
+                        break;
+                    case DOUBLE:
+                        builder.append(format.apply(myDoubles[c][r]));
+                        break;
+                    default:
+                        String value = string(c, r);
+                        if (value != null) {
+                            builder.append(value);
+                        }
+                }
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+}
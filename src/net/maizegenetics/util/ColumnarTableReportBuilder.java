@@ -0,0 +1,288 @@
+/*
+ * ColumnarTableReportBuilder
+ */
+package net.maizegenetics.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.maizegenetics.util.ColumnarTableReport.ColumnType;
+
+/**
+ * Builds a ColumnarTableReport. Rows are added one value at a time, in column
+ * order, with the add() method for the value's type. A row ends when a value
+ * has been added for every column. An int can be added to a LONG, FLOAT, or
+ * DOUBLE column, and a long or float to a DOUBLE column. Otherwise the value
+ * must match the column type. Rows built as Object[] can be added with
+ * addRow(), which unboxes them.
+ * <p>
+ * This class isn't thread safe.
+ */
+public class ColumnarTableReportBuilder {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final String myTableName;
+    private final Object[] myColumnNames;
+    private final ColumnType[] myColumnTypes;
+    private final int myNumColumns;
+    private final int[][] myInts;
+    private final long[][] myLongs;
+    private final float[][] myFloats;
+    private final double[][] myDoubles;
+    private final List<Map<String, Integer>> myCodes;
+    private final List<List<String>> myDictionaries;
+    private int myCapacity = INITIAL_CAPACITY;
+    private int myNumRows = 0;
+    private int myColumn = 0;
+
+    private ColumnarTableReportBuilder(String tableName, Object[] columnNames, ColumnType[] columnTypes) {
+        if (columnNames.length != columnTypes.length) {
+            throw new IllegalArgumentException("ColumnarTableReportBuilder: init: number of column names: " + columnNames.length + " doesn't equal number of column types: " + columnTypes.length);
+        }
+        myTableName = tableName;
+        myColumnNames = columnNames;
+        myColumnTypes = columnTypes.clone();
+        myNumColumns = columnTypes.length;
+        myInts = new int[myNumColumns][];
+        myLongs = new long[myNumColumns][];
+        myFloats = new float[myNumColumns][];
+        myDoubles = new double[myNumColumns][];
+        myCodes = new ArrayList<>(myNumColumns);
+        myDictionaries = new ArrayList<>(myNumColumns);
+        for (int c = 0; c < myNumColumns; c++) {
+            switch (myColumnTypes[c]) {
+                case INT:
+                case STRING:
+                    myInts[c] = new int[myCapacity];
+                    break;
+                case LONG:
+                    myLongs[c] = new long[myCapacity];
+                    break;
+                case FLOAT:
+                    myFloats[c] = new float[myCapacity];
+                    break;
+                case DOUBLE:
+                    myDoubles[c] = new double[myCapacity];
+                    break;
+            }
+            boolean isString = myColumnTypes[c] == ColumnType.STRING;
+            myCodes.add(isString ? new HashMap<>() : null);
+            myDictionaries.add(isString ? new ArrayList<>() : null);
+        }
+    }
+
+    public static ColumnarTableReportBuilder getInstance(String tableName, Object[] columnNames, ColumnType[] columnTypes) {
+        return new ColumnarTableReportBuilder(tableName, columnNames, columnTypes);
+    }
+
+    public ColumnarTableReportBuilder add(int value) {
+        switch (myColumnTypes[myColumn]) {
+            case INT:
+                myInts[myColumn][myNumRows] = value;
+                break;
+            case LONG:
+                myLongs[myColumn][myNumRows] = value;
+                break;
+            case FLOAT:
+                myFloats[myColumn][myNumRows] = value;
+                break;
+            case DOUBLE:
+                myDoubles[myColumn][myNumRows] = value;
+                break;
+            default:
+                throw wrongType("int");
+        }
+        return next();
+    }
+
+    public ColumnarTableReportBuilder add(long value) {
+        switch (myColumnTypes[myColumn]) {
+            case LONG:
+                myLongs[myColumn][myNumRows] = value;
+                break;
+            case DOUBLE:
+                myDoubles[myColumn][myNumRows] = value;
+                break;
+            default:
+                throw wrongType("long");
+        }
+        return next();
+    }
+
+    public ColumnarTableReportBuilder add(float value) {
+        switch (myColumnTypes[myColumn]) {
+            case FLOAT:
+                myFloats[myColumn][myNumRows] = value;
+                break;
+            case DOUBLE:
+                myDoubles[myColumn][myNumRows] = value;
+                break;
+            default:
+                throw wrongType("float");
+        }
+        return next();
+    }
+
+    public ColumnarTableReportBuilder add(double value) {
+        if (myColumnTypes[myColumn] != ColumnType.DOUBLE) {
+            throw wrongType("double");
+        }
+        myDoubles[myColumn][myNumRows] = value;
+        return next();
+    }
+
+    /**
+     * Adds a value to a STRING column. Null is allowed.
+     */
+    public ColumnarTableReportBuilder add(String value) {
+        if (myColumnTypes[myColumn] != ColumnType.STRING) {
+            throw wrongType("String");
+        }
+        int code = -1;
+        if (value != null) {
+            Map<String, Integer> codes = myCodes.get(myColumn);
+            Integer current = codes.get(value);
+            if (current == null) {
+                List<String> dictionary = myDictionaries.get(myColumn);
+                current = dictionary.size();
+                dictionary.add(value);
+                codes.put(value, current);
+            }
+            code = current;
+        }
+        myInts[myColumn][myNumRows] = code;
+        return next();
+    }
+
+    /**
+     * Adds a row of boxed values, as would be given to
+     * TableReportBuilder.add(). Numbers are converted to their column's type.
+     * Values for STRING columns are converted with toString().
+     */
+    public ColumnarTableReportBuilder addRow(Object[] row) {
+
+        if (myColumn != 0) {
+            throw new IllegalStateException("ColumnarTableReportBuilder: addRow: previous row has only: " + myColumn + " values");
+        }
+        if (myNumColumns != row.length) {
+            throw new IllegalArgumentException("ColumnarTableReportBuilder: addRow: number of row elements: " + row.length + " doesn't equal number of headers: " + myNumColumns);
+        }
+
+        for (Object current : row) {
+            ColumnType type = myColumnTypes[myColumn];
+            if (type == ColumnType.STRING) {
+                add((current == null) ? null : current.toString());
+            } else if (current instanceof Double) {
+                add(((Double) current).doubleValue());
+            } else if (current instanceof Float) {
+                add(((Float) current).floatValue());
+            } else if (current instanceof Long) {
+                if (type == ColumnType.INT) {
+                    add(Math.toIntExact((Long) current));
+                } else {
+                    add(((Long) current).longValue());
+                }
+            } else if ((current instanceof Integer) || (current instanceof Short) || (current instanceof Byte)) {
+                add(((Number) current).intValue());
+            } else {
+                throw wrongType((current == null) ? "null" : current.getClass().getSimpleName());
+            }
+        }
+        return this;
+
+    }
+
+    /**
+     * Returns the number of complete rows added.
+     */
+    public int getRowCount() {
+        return myNumRows;
+    }
+
+    public ColumnarTableReport build() {
+
+        if (myColumn != 0) {
+            throw new IllegalStateException("ColumnarTableReportBuilder: build: last row has only: " + myColumn + " values");
+        }
+
+        String[][] dictionaries = new String[myNumColumns][];
+        for (int c = 0; c < myNumColumns; c++) {
+            List<String> dictionary = myDictionaries.get(c);
+            if (dictionary != null) {
+                dictionaries[c] = dictionary.toArray(new String[dictionary.size()]);
+            }
+        }
+
+        // Columns are trimmed to the number of rows, so the report doesn't
+        // keep the spare capacity, and rows added after this don't change it
+        int[][] ints = new int[myNumColumns][];
+        long[][] longs = new long[myNumColumns][];
+        float[][] floats = new float[myNumColumns][];
+        double[][] doubles = new double[myNumColumns][];
+        for (int c = 0; c < myNumColumns; c++) {
+            switch (myColumnTypes[c]) {
+                case INT:
+                case STRING:
+                    ints[c] = Arrays.copyOf(myInts[c], myNumRows);
+                    break;
+                case LONG:
+                    longs[c] = Arrays.copyOf(myLongs[c], myNumRows);
+                    break;
+                case FLOAT:
+                    floats[c] = Arrays.copyOf(myFloats[c], myNumRows);
+                    break;
+                case DOUBLE:
+                    doubles[c] = Arrays.copyOf(myDoubles[c], myNumRows);
+                    break;
+            }
+        }
+
+        return new ColumnarTableReport(myTableName, myColumnNames, myColumnTypes.clone(), ints, longs, floats, doubles, dictionaries, myNumRows);
+
+    }
+
+    private ColumnarTableReportBuilder next() {
+        myColumn++;
+        if (myColumn == myNumColumns) {
+            myColumn = 0;
+            myNumRows++;
+            if (myNumRows == myCapacity) {
+                grow();
+            }
+        }
+        return this;
+    }
+
+    private void grow() {
+        if (myCapacity == Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("ColumnarTableReportBuilder: grow: This implementation can't support more rows than: " + myCapacity);
+        }
+        myCapacity = (int) Math.min(Integer.MAX_VALUE - 8, 2L * myCapacity);
+        for (int c = 0; c < myNumColumns; c++) {
+            switch (myColumnTypes[c]) {
+                case INT:
+                case STRING:
+                    myInts[c] = Arrays.copyOf(myInts[c], myCapacity);
+                    break;
+                case LONG:
+                    myLongs[c] = Arrays.copyOf(myLongs[c], myCapacity);
+                    break;
+                case FLOAT:
+                    myFloats[c] = Arrays.copyOf(myFloats[c], myCapacity);
+                    break;
+                case DOUBLE:
+                    myDoubles[c] = Arrays.copyOf(myDoubles[c], myCapacity);
+                    break;
+            }
+        }
+    }
+
+    private IllegalArgumentException wrongType(String valueType) {
+        return new IllegalArgumentException("ColumnarTableReportBuilder: add: can't add " + valueType + " to column: " + myColumnNames[myColumn] + " of type: " + myColumnTypes[myColumn]);
+    }
+
+}
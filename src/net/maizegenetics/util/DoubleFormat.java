@@ -3,32 +3,60 @@ package net.maizegenetics.util;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.Locale;
+import java.util.function.DoubleFunction;
 
-public class DoubleFormat {
+public class DoubleFormat implements DoubleFunction<String> {
 
-    private static NumberFormat nfe = null;
-    private static NumberFormat nf = null;
+    private static DoubleFormat myShared = null;
     private static String NAN_STRING = "NaN";
 
+    private final NumberFormat nfe;
+    private final NumberFormat nf;
+
+    private DoubleFormat() {
+        nfe = NumberFormat.getInstance(Locale.ROOT);
+        if (nfe instanceof DecimalFormat) {
+            ((DecimalFormat) nfe).applyPattern("0.0###E0");
+        }
+        nf = NumberFormat.getInstance(Locale.ROOT);
+        if (nf instanceof DecimalFormat) {
+            ((DecimalFormat) nf).applyPattern("0.#####");
+        }
+    }
+
+    /**
+     * Returns a new formatter that gives the same strings as format(). The
+     * static methods share one formatter, which isn't thread safe. Threads
+     * formatting at the same time should each use their own instance.
+     *
+     * @return formatter
+     */
+    public static DoubleFormat getInstance() {
+        return new DoubleFormat();
+    }
+
     public static String format(double value) {
+        if (myShared == null) {
+            myShared = new DoubleFormat();
+        }
+        return myShared.apply(value);
+    }
+
+    public static String format(Double value) {
+        if (value == null) {
+            return NAN_STRING;
+        }
+        return format(value.doubleValue());
+    }
+
+    @Override
+    public String apply(double value) {
         if (Double.isNaN(value)) {
             return NAN_STRING;
         }
         if (Double.isInfinite(value)) {
             return "Infinity";
         }
-        if (nfe == null) {
-            nfe = NumberFormat.getInstance(Locale.ROOT);
-            if (nfe instanceof DecimalFormat) {
-                ((DecimalFormat) nfe).applyPattern("0.0###E0");
-            }
-        }
-        if (nf == null) {
-            nf = NumberFormat.getInstance(Locale.ROOT);
-            if (nf instanceof DecimalFormat) {
-                ((DecimalFormat) nf).applyPattern("0.#####");
-            }
-        }
         if (value == 0) {
             return nf.format(value);
         }
@@ -37,11 +65,4 @@ public class DoubleFormat {
         }
         return nf.format(value);
     }
-
-    public static String format(Double value) {
-        if (value == null) {
-            return NAN_STRING;
-        }
-        return format(value.doubleValue());
-    }
 }
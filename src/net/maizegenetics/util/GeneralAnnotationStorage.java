@@ -15,10 +15,11 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  *
@@ -33,18 +34,24 @@ public class GeneralAnnotationStorage implements GeneralAnnotation {
 
     private static final int MAX_CACHE_SIZE = 1_000_000;
 
-    private static final Map<Map.Entry<String, String>, Map.Entry<String, String>> CACHE = Collections.synchronizedMap(new LinkedHashMap<Map.Entry<String, String>, Map.Entry<String, String>>((3 * MAX_CACHE_SIZE) / 2) {
-
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<Map.Entry<String, String>, Map.Entry<String, String>> eldest) {
-            return size() > MAX_CACHE_SIZE;
-        }
-
-    });
+    /**
+     * Intern table for annotation entries. This is read and written
+     * concurrently without a global lock, since every taxon / position built
+     * in parallel passes through here. Once the table reaches MAX_CACHE_SIZE,
+     * new entries are no longer interned (existing ones are still shared).
+     */
+    private static final ConcurrentMap<Map.Entry<String, String>, Map.Entry<String, String>> CACHE = new ConcurrentHashMap<>(1 << 16);
 
     private static Map.Entry<String, String> getCanonicalAnnotation(String key, String value) {
         Map.Entry<String, String> temp = new AbstractMap.SimpleImmutableEntry<>(key, value);
-        Map.Entry<String, String> entry = CACHE.putIfAbsent(temp, temp);
+        Map.Entry<String, String> entry = CACHE.get(temp);
+        if (entry != null) {
+            return entry;
+        }
+        if (CACHE.size() >= MAX_CACHE_SIZE) {
+            return temp;
+        }
+        entry = CACHE.putIfAbsent(temp, temp);
         return (entry == null) ? temp : entry;
     }
 
@@ -0,0 +1,216 @@
+/*
+ *  SuperByteMatrixBuffer
+ */
+package net.maizegenetics.util;
+
+import java.nio.ByteBuffer;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Read only SuperByteMatrix over a ByteBuffer, for example a memory mapped
+ * file. Rows are stored one after another, so columns are the inner loop.
+ * Nothing is copied, and any number of matrices can share the same mapping.
+ */
+public class SuperByteMatrixBuffer implements SuperByteMatrix {
+
+    private final ByteBuffer myData;
+    private final int myNumRows;
+    private final int myNumColumns;
+
+    SuperByteMatrixBuffer(ByteBuffer data, int rows, int columns) {
+
+        long numElements = (long) rows * (long) columns;
+        if (numElements != data.remaining()) {
+            throw new IllegalArgumentException("SuperByteMatrixBuffer: init: this number of rows: " + rows + "  and columns: " + columns + " doesn't equal buffer size: " + data.remaining());
+        }
+
+        myData = data.slice().asReadOnlyBuffer();
+        myNumRows = rows;
+        myNumColumns = columns;
+
+    }
+
+    @Override
+    public byte get(int row, int column) {
+        return myData.get(getIndex(row, column));
+    }
+
+    @Override
+    public byte[] getAllColumns(int row) {
+
+        if ((row < 0) || (row >= myNumRows)) {
+            throw new IndexOutOfBoundsException("SuperByteMatrixBuffer: getAllColumns: row: " + row);
+        }
+
+        return copy(getIndex(row, 0), myNumColumns);
+
+    }
+
+    @Override
+    public byte[] getColumnRange(int row, int start, int end) {
+
+        if ((row < 0) || (row >= myNumRows)) {
+            throw new IndexOutOfBoundsException("SuperByteMatrixBuffer: getColumnRange: row: " + row);
+        }
+
+        if ((start < 0) || (start >= myNumColumns)) {
+            throw new IndexOutOfBoundsException("SuperByteMatrixBuffer: getColumnRange: start: " + start);
+        }
+
+        if ((end < 0) || (end >= myNumColumns)) {
+            throw new IndexOutOfBoundsException("SuperByteMatrixBuffer: getColumnRange: end: " + end);
+        }
+
+        if (end < start) {
+            throw new IllegalArgumentException("SuperByteMatrixBuffer: getColumnRange: end: " + end + " less than start: " + start);
+        }
+
+        return copy(getIndex(row, start), end - start);
+
+    }
+
+    @Override
+    public byte[] getAllRows(int column) {
+
+        if ((column < 0) || (column >= myNumColumns)) {
+            throw new IndexOutOfBoundsException("SuperByteMatrixBuffer: getAllRows: column: " + column);
+        }
+
+        byte[] result = new byte[myNumRows];
+        int current = column;
+        for (int i = 0; i < myNumRows; i++) {
+            result[i] = myData.get(current);
+            current += myNumColumns;
+        }
+        return result;
+
+    }
+
+    private byte[] copy(int start, int numElements) {
+        // duplicate so concurrent readers don't share a position
+        ByteBuffer source = myData.duplicate();
+        source.position(start);
+        byte[] result = new byte[numElements];
+        source.get(result);
+        return result;
+    }
+
+    private int getIndex(int row, int column) {
+        return row * myNumColumns + column;
+    }
+
+    @Override
+    public int getNumRows() {
+        return myNumRows;
+    }
+
+    @Override
+    public int getNumColumns() {
+        return myNumColumns;
+    }
+
+    @Override
+    public boolean isColumnInnerLoop() {
+        return true;
+    }
+
+    @Override
+    public void set(int row, int column, byte value) {
+        throw new UnsupportedOperationException("SuperByteMatrixBuffer: set: matrix is read only.");
+    }
+
+    @Override
+    public void arraycopy(int row, byte[] src, int startColumn) {
+        throw new UnsupportedOperationException("SuperByteMatrixBuffer: arraycopy: matrix is read only.");
+    }
+
+    @Override
+    public void setAll(byte value) {
+        throw new UnsupportedOperationException("SuperByteMatrixBuffer: setAll: matrix is read only.");
+    }
+
+    @Override
+    public void reorderRows(int[] newIndices) {
+        throw new UnsupportedOperationException("SuperByteMatrixBuffer: reorderRows: matrix is read only.");
+    }
+
+    @Override
+    public void reorderColumns(int[] newIndices) {
+        throw new UnsupportedOperationException("SuperByteMatrixBuffer: reorderColumns: matrix is read only.");
+    }
+
+    @Override
+    public void setHetsTo(byte value) {
+        throw new UnsupportedOperationException("SuperByteMatrixBuffer: setHetsTo: matrix is read only.");
+    }
+
+    @Override
+    public Stream<Byte> stream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    @Override
+    public Stream<Byte> stream(int row) {
+        int start = row * myNumColumns;
+        return StreamSupport.stream(new SuperByteMatrixBufferSpliterator<>(start, start + myNumColumns), true);
+    }
+
+    public Spliterator<Byte> spliterator() {
+        return new SuperByteMatrixBufferSpliterator<>(0, myData.capacity());
+    }
+
+    class SuperByteMatrixBufferSpliterator<T extends Byte> implements Spliterator<Byte> {
+
+        private int myCurrentIndex;
+        private final int myFence;
+
+        SuperByteMatrixBufferSpliterator(int currentIndex, int fence) {
+            myCurrentIndex = currentIndex;
+            myFence = fence;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Byte> action) {
+            for (; myCurrentIndex < myFence; myCurrentIndex++) {
+                action.accept(Byte.valueOf(myData.get(myCurrentIndex)));
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Byte> action) {
+            if (myCurrentIndex < myFence) {
+                action.accept(Byte.valueOf(myData.get(myCurrentIndex)));
+                myCurrentIndex++;
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public Spliterator<Byte> trySplit() {
+            int lo = myCurrentIndex;
+            int mid = (lo + myFence) >>> 1;
+            if (lo < mid) {
+                myCurrentIndex = mid;
+                return new SuperByteMatrixBufferSpliterator<>(lo, mid);
+            } else {
+                return null;
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return (long) (myFence - myCurrentIndex);
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | IMMUTABLE | SUBSIZED;
+        }
+    }
+
+}
@@ -3,6 +3,7 @@
  */
 package net.maizegenetics.util;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -36,6 +37,21 @@ public class SuperByteMatrixBuilder {
         }
     }
     
+    /**
+     * This returns a read only SuperByteMatrix over the remaining bytes of the
+     * given buffer, for example a memory mapped file. Rows are stored one after
+     * another, and the bytes are not copied.
+     *
+     * @param data row major bytes
+     * @param numRows number of rows
+     * @param numColumns number of columns
+     *
+     * @return SuperByteMatrix (double dimension byte array)
+     */
+    public static SuperByteMatrix getInstance(ByteBuffer data, int numRows, int numColumns) {
+        return new SuperByteMatrixBuffer(data, numRows, numColumns);
+    }
+
     public static SuperByteMatrix getInstanceSingleValue(int numRows, int numColumns, byte value) {
         return new SuperByteMatrixSingleValue(numRows, numColumns, value);
     }
@@ -44,7 +60,7 @@ public class SuperByteMatrixBuilder {
 
         int numRows = matrix.getNumRows();
         int numColumns = matrix.getNumColumns();
-        if ((matrix instanceof SuperByteMatrixSingle) || (matrix instanceof SuperByteMatrixMultiple)) {
+        if ((matrix instanceof SuperByteMatrixSingle) || (matrix instanceof SuperByteMatrixMultiple) || (matrix instanceof SuperByteMatrixBuffer)) {
             SuperByteMatrix result = getInstance(numRows, numColumns);
             for (int r = 0; r < numRows; r++) {
                 for (int c = 0; c < numColumns; c++) {
@@ -96,7 +112,7 @@ public class SuperByteMatrixBuilder {
         int numThreads = Runtime.getRuntime().availableProcessors();
         ExecutorService pool = Executors.newFixedThreadPool(numThreads);
 
-        if ((matrix instanceof SuperByteMatrixSingle) || (matrix instanceof SuperByteMatrixMultiple)) {
+        if ((matrix instanceof SuperByteMatrixSingle) || (matrix instanceof SuperByteMatrixMultiple) || (matrix instanceof SuperByteMatrixBuffer)) {
             result = getInstanceTranspose(numRows, numColumns);
             int rowBlockSize = TRANSPOSE_BLOCK_SIZE;
             for (int rowOffset = 0; rowOffset < numRows; rowOffset += TRANSPOSE_BLOCK_SIZE) {
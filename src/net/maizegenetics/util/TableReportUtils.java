@@ -58,6 +58,11 @@ public class TableReportUtils {
             throw new IllegalArgumentException("TableReportUtils: saveDelimitedTableReport: no buffered writer specified.");
         }
 
+        if (theTableSource instanceof ColumnarTableReport) {
+            ((ColumnarTableReport) theTableSource).writeDelimited(bw, delimit, includeHeader);
+            return;
+        }
+
         if (includeHeader) {
             Object[] colNames = theTableSource.getTableColumnNames();
             for (int j = 0; j < colNames.length; j++) {